@@ -0,0 +1,142 @@
+package org.kmymoney.apiext.trxmgr;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.kmymoney.api.read.KMyMoneyAccount;
+import org.kmymoney.api.read.KMyMoneyFile;
+import org.kmymoney.api.read.KMyMoneyTransactionSplit;
+import org.kmymoney.base.basetypes.complex.KMMComplAcctID;
+
+/**
+ * Maps the accounts of one KMyMoney file to dense ordinals (0..n-1,
+ * in the order of the account IDs), so that account identity can be
+ * compared as <code>int</code> and account-keyed data can be held
+ * in arrays and bitsets instead of string-keyed maps.
+ * <br>
+ * The splits' accounts are not cached: {@link #getOrdinal(KMyMoneyTransactionSplit)}
+ * resolves the split's current account ID on every call, so that
+ * re-assigned splits are never reported with their old account.
+ * <br>
+ * The set of accounts is a snapshot (cf. {@link TransactionIndexes}).
+ * Accounts that are not known to it yield {@link #NONE}.
+ */
+public final class AccountOrdinalTable {
+
+	// Account is not known
+	public static final int NONE = -1;
+
+    // ---------------------------------------------------------------
+
+	// Key: account ID, string form (cf. TransactionSplitFilter)
+	private final Map<String, Integer> ordMap;
+	private final String[]             acctIDs;
+	private final byte[]               acctTypeOrds;
+
+    // ---------------------------------------------------------------
+
+	AccountOrdinalTable(final Collection<? extends KMyMoneyAccount> acctColl) {
+		if ( acctColl == null ) {
+			throw new IllegalArgumentException("null account-collection given");
+		}
+
+		HashMap<String, KMyMoneyAccount> acctMap = new HashMap<String, KMyMoneyAccount>(acctColl.size() * 2);
+		for ( KMyMoneyAccount acct : acctColl ) {
+			acctMap.put(acct.getID().toString(), acct);
+		}
+
+		ArrayList<String> idList = new ArrayList<String>(acctMap.keySet());
+		Collections.sort(idList);
+
+		ordMap = new HashMap<String, Integer>(idList.size() * 2);
+		acctIDs = idList.toArray(new String[idList.size()]);
+		acctTypeOrds = new byte[acctIDs.length];
+		for ( int i = 0; i < acctIDs.length; i++ ) {
+			ordMap.put(acctIDs[i], i);
+			KMyMoneyAccount.Type type = acctMap.get(acctIDs[i]).getType();
+			acctTypeOrds[i] = ( type == null ) ? NONE : (byte) type.ordinal();
+		}
+	}
+
+	/**
+	 * @param kmmFile KMyMoney file
+	 * @return the (shared) ordinal table of the given file
+	 */
+	public static AccountOrdinalTable of(final KMyMoneyFile kmmFile) {
+		return TransactionIndexes.of(kmmFile).getAccountOrdinals();
+	}
+
+    // ---------------------------------------------------------------
+
+	/**
+	 * @return number of accounts
+	 */
+	public int size() {
+		return acctIDs.length;
+	}
+
+	/**
+	 * @param acctID account ID (string form)
+	 * @return the account's ordinal, {@link #NONE} if it is not known
+	 */
+	public int getOrdinal(final String acctID) {
+		if ( acctID == null ) {
+			throw new IllegalArgumentException("null account ID given");
+		}
+
+		Integer result = ordMap.get(acctID);
+		return result == null ? NONE : result;
+	}
+
+	/**
+	 * @param acctID account ID
+	 * @return the account's ordinal, {@link #NONE} if it is not known
+	 */
+	public int getOrdinal(final KMMComplAcctID acctID) {
+		if ( acctID == null ) {
+			throw new IllegalArgumentException("null account ID given");
+		}
+
+		return getOrdinal(acctID.toString()); // important: toString()
+	}
+
+	/**
+	 * @param splt transaction split
+	 * @return the ordinal of the account the split is bound to,
+	 * {@link #NONE} if it is not known
+	 */
+	public int getOrdinal(final KMyMoneyTransactionSplit splt) {
+		if ( splt == null ) {
+			throw new IllegalArgumentException("null transaction-split given");
+		}
+
+		// sic, not cached: the split may have been re-assigned
+		return getOrdinal(splt.getAccountID());
+	}
+
+	/**
+	 * @return the account ID (string form) of the given ordinal
+	 */
+	public String getAccountID(final int acctOrd) {
+		return acctIDs[acctOrd];
+	}
+
+	/**
+	 * @return the account type's enum ordinal, -1 if the account has no type
+	 */
+	public int getAccountTypeOrdinal(final int acctOrd) {
+		return acctTypeOrds[acctOrd];
+	}
+
+    // ---------------------------------------------------------------
+
+	@Override
+	public String toString() {
+		return "AccountOrdinalTable [" +
+				"nofAccounts=" + acctIDs.length + "]";
+	}
+
+}
@@ -0,0 +1,54 @@
+package org.kmymoney.apiext.trxmgr;
+
+/**
+ * The criteria of a compiled split filter in column form
+ * (cf. {@link SplitColumns}): ordinals instead of objects,
+ * scaled amount bounds (with tolerance) instead of numbers.
+ */
+final class ColumnCriteria {
+
+	// SplitColumns.NONE means: criterion not set
+	final int action;
+	final int acctOrd;
+	final int acctType;
+
+	// Long.MIN_VALUE resp. Long.MAX_VALUE means: criterion not set
+	final long valueFrom;
+	final long valueTo;
+	final long sharesFrom;
+	final long sharesTo;
+
+	// Memo: no column, to be checked on the split objects
+	final boolean checkMemo;
+
+	// Account of the criterion is not known, i.e. nothing can match
+	final boolean noMatch;
+
+    // ---------------------------------------------------------------
+
+	ColumnCriteria(final CompiledTransactionSplitFilter cflt, final SplitColumns cols) {
+		if ( cflt == null ) {
+			throw new IllegalArgumentException("null transaction-split-filter given");
+		}
+
+		action = ( cflt.getAction() == null ) ? SplitColumns.NONE : cflt.getAction().ordinal();
+
+		if ( cflt.getAcctID() == null ) {
+			acctOrd = SplitColumns.NONE;
+			noMatch = false;
+		} else {
+			acctOrd = cols.getAccountOrdinal(cflt.getAcctID());
+			noMatch = ( acctOrd == SplitColumns.NONE );
+		}
+
+		acctType = ( cflt.getAcctType() == null ) ? SplitColumns.NONE : cflt.getAcctType().ordinal();
+
+		valueFrom  = cflt.getValueFromAmount().getLowerKey();
+		valueTo    = cflt.getValueToAmount().getUpperKey();
+		sharesFrom = cflt.getSharesFromAmount().getLowerKey();
+		sharesTo   = cflt.getSharesToAmount().getUpperKey();
+
+		checkMemo = ( cflt.getMemoPart() != null );
+	}
+
+}
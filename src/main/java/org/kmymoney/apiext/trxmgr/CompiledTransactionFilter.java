@@ -0,0 +1,233 @@
+package org.kmymoney.apiext.trxmgr;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+
+import org.kmymoney.api.read.KMyMoneyTransaction;
+import org.kmymoney.api.read.KMyMoneyTransactionSplit;
+
+/**
+ * Immutable, thread-safe form of a {@link TransactionFilter}.
+ * <br>
+ * Only the criteria that were set at compile time are kept,
+ * as a precomputed chain of checks. The split-level criteria
+ * are compiled as well.
+ *
+ * @see TransactionFilter#compile()
+ */
+public final class CompiledTransactionFilter {
+
+	// One single, active criterion
+	interface Check {
+		boolean matches(KMyMoneyTransaction trx);
+	}
+
+	// ---------------------------------------------------------------
+
+	// null means: criterion not set
+	private final LocalDate datePostedFrom;
+	private final LocalDate datePostedTo;
+
+	// 0 means: criterion not set
+	private final int nofSpltFrom;
+	private final int nofSpltTo;
+
+	private final String  memoPart;
+	private final boolean memoIgnoreCase;
+
+	private final CompiledTransactionSplitFilter spltFilt;
+
+	// ---
+
+	private final Check[]  checks;
+	// Canonical form of each check: equal keys, equal checks
+	private final String[] checkKeys;
+
+	// ---------------------------------------------------------------
+
+	CompiledTransactionFilter(final TransactionFilter flt) {
+		if ( flt == null ) {
+			throw new IllegalArgumentException("null transaction-filter given");
+		}
+
+		datePostedFrom = flt.isDatePostedFromSet() ? flt.datePostedFrom : null;
+		datePostedTo   = flt.isDatePostedToSet()   ? flt.datePostedTo   : null;
+
+		nofSpltFrom = flt.nofSpltFrom;
+		nofSpltTo   = flt.nofSpltTo;
+
+		memoPart = flt.memoPart.trim().equals("") ? null : flt.memoPart.trim();
+		memoIgnoreCase = flt.memoIgnoreCase;
+
+		spltFilt = flt.spltFilt == null ? null : flt.spltFilt.compile();
+
+		ArrayList<Check> chkList = new ArrayList<Check>();
+		ArrayList<String> keyList = new ArrayList<String>();
+		buildChecks(chkList, keyList);
+		checks = chkList.toArray(new Check[chkList.size()]);
+		checkKeys = keyList.toArray(new String[keyList.size()]);
+	}
+
+	private void buildChecks(final ArrayList<Check> chkList, final ArrayList<String> keyList) {
+		if ( datePostedFrom != null ) {
+			chkList.add(trx -> ! trx.getDatePosted().isBefore(datePostedFrom));
+			keyList.add("datePostedFrom=" + datePostedFrom);
+		}
+
+		if ( datePostedTo != null ) {
+			chkList.add(trx -> ! trx.getDatePosted().isAfter(datePostedTo));
+			keyList.add("datePostedTo=" + datePostedTo);
+		}
+
+		if ( nofSpltFrom != 0 ) {
+			chkList.add(trx -> trx.getSplits().size() >= nofSpltFrom);
+			keyList.add("nofSpltFrom=" + nofSpltFrom);
+		}
+
+		if ( nofSpltTo != 0 ) {
+			chkList.add(trx -> trx.getSplits().size() <= nofSpltTo);
+			keyList.add("nofSpltTo=" + nofSpltTo);
+		}
+
+		if ( memoPart != null ) {
+			if ( memoIgnoreCase ) {
+				String foldedMemoPart = MemoTrigramIndex.fold(memoPart);
+				chkList.add(trx -> MemoTrigramIndex.fold(trx.getMemo()).contains(foldedMemoPart));
+			} else {
+				chkList.add(trx -> trx.getMemo().contains(memoPart));
+			}
+			keyList.add("memo=" + ( memoIgnoreCase ? "i" : "c" ) + memoPart.length() + ":" + memoPart);
+		}
+	}
+
+	// ---------------------------------------------------------------
+
+	public boolean matchesCriteria(final KMyMoneyTransaction trx,
+			                       final boolean withSplits,
+			                       final TransactionFilter.SplitLogic splitLogic) {
+		if ( trx == null ) {
+			throw new IllegalArgumentException("argument <trx> is null");
+		}
+
+		// 1) Transaction Level
+		for ( Check chk : checks ) {
+			if ( ! chk.matches(trx) ) {
+				return false;
+			}
+		}
+
+		// 2) Split Level
+		if ( withSplits ) {
+			if ( ! splitsMatchCriteria(trx, splitLogic) ) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	private boolean splitsMatchCriteria(final KMyMoneyTransaction trx,
+										final TransactionFilter.SplitLogic splitLogic) {
+		if ( spltFilt == null ) {
+			throw new IllegalStateException("split-filter is null");
+		}
+
+		if ( splitLogic == TransactionFilter.SplitLogic.AND ) {
+			for ( KMyMoneyTransactionSplit splt : trx.getSplits() ) {
+				if ( ! spltFilt.matchesCriteria(splt) ) {
+					return false;
+				}
+			}
+			return true;
+		} else if ( splitLogic == TransactionFilter.SplitLogic.OR ) {
+			// sic, stop at first match
+			for ( KMyMoneyTransactionSplit splt : trx.getSplits() ) {
+				if ( spltFilt.matchesCriteria(splt) ) {
+					return true;
+				}
+			}
+			return false;
+		} // splitLogic
+
+		return true; // Compiler happy
+	}
+
+	Check[] getChecks() {
+		return checks;
+	}
+
+	String[] getCheckKeys() {
+		return checkKeys;
+	}
+
+	/**
+	 * @param withSplits whether the split-level criteria are to be checked
+	 * @param splitLogic how the split-level criteria are to be applied
+	 * @return canonical form of the search: Equal searches yield equal strings
+	 */
+	String getCanonicalKey(final boolean withSplits,
+						   final TransactionFilter.SplitLogic splitLogic) {
+		String result = "datePosted=" + datePostedFrom + ".." + datePostedTo + ";" +
+						"nofSplt=" + nofSpltFrom + ".." + nofSpltTo + ";" +
+						"memo=" + ( memoPart == null ? "null" : ( memoIgnoreCase ? "i" : "c" ) + memoPart.length() + ":" + memoPart );
+
+		// sic: split-level criteria only count if they are checked
+		if ( withSplits ) {
+			result += ";splits=" + splitLogic + "(" + ( spltFilt == null ? "null" : spltFilt.getCanonicalKey() ) + ")";
+		}
+
+		return result;
+	}
+
+	// ---------------------------------------------------------------
+
+	/**
+	 * @return the lower date bound or null if not set
+	 */
+	public LocalDate getDatePostedFrom() {
+		return datePostedFrom;
+	}
+
+	/**
+	 * @return the upper date bound or null if not set
+	 */
+	public LocalDate getDatePostedTo() {
+		return datePostedTo;
+	}
+
+	public int getNofSpltFrom() {
+		return nofSpltFrom;
+	}
+
+	public int getNofSpltTo() {
+		return nofSpltTo;
+	}
+
+	public String getMemoPart() {
+		return memoPart;
+	}
+
+	public boolean isMemoIgnoreCase() {
+		return memoIgnoreCase;
+	}
+
+	public CompiledTransactionSplitFilter getSplitFilter() {
+		return spltFilt;
+	}
+
+	// ---------------------------------------------------------------
+
+	@Override
+	public String toString() {
+		return "CompiledTransactionFilter [" +
+	              "datePostedFrom=" + datePostedFrom + ", " +
+				    "datePostedTo=" + datePostedTo + ", " +
+	                 "nofSpltFrom=" + nofSpltFrom + ", " +
+				       "nofSpltTo=" + nofSpltTo + ", " +
+	                   "memoPart=" + ( memoPart == null ? "null" : "'" + memoPart + "'" ) + ", " +
+			 "memoIgnoreCase=" + memoIgnoreCase + ", " +
+				        "spltFilt=" + spltFilt + ", " +
+				       "nofChecks=" + checks.length + "]";
+	}
+
+}
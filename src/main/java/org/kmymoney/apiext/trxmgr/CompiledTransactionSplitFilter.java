@@ -0,0 +1,259 @@
+package org.kmymoney.apiext.trxmgr;
+
+import java.util.ArrayList;
+
+import org.kmymoney.api.read.KMyMoneyAccount;
+import org.kmymoney.api.read.KMyMoneyTransactionSplit;
+
+import xyz.schnorxoborx.base.numbers.FixedPointNumber;
+
+/**
+ * Immutable, thread-safe form of a {@link TransactionSplitFilter}.
+ * <br>
+ * Only the criteria that were set at compile time are kept,
+ * as a precomputed chain of checks, so that evaluating the filter
+ * on a split does not have to re-check which criteria are active.
+ *
+ * @see TransactionSplitFilter#compile()
+ */
+public final class CompiledTransactionSplitFilter {
+
+	// One single, active criterion
+	interface Check {
+		boolean matches(KMyMoneyTransactionSplit splt);
+	}
+
+	// ---------------------------------------------------------------
+
+	// null means: criterion not set
+	private final KMyMoneyTransactionSplit.Action action;
+
+	private final String               acctID;
+	private final KMyMoneyAccount.Type acctType;
+
+	// Unset: criterion not set
+	private final ScaledAmount valueFrom;
+	private final ScaledAmount valueTo;
+
+	private final ScaledAmount sharesFrom;
+	private final ScaledAmount sharesTo;
+
+	private final String  memoPart;
+	private final boolean memoIgnoreCase;
+
+	// ---
+
+	private final Check[]  checks;
+	// Canonical form of each check: equal keys, equal checks
+	private final String[] checkKeys;
+
+	// ---------------------------------------------------------------
+
+	CompiledTransactionSplitFilter(final TransactionSplitFilter flt) {
+		if ( flt == null ) {
+			throw new IllegalArgumentException("null transaction-split-filter given");
+		}
+
+		action = flt.action;
+		acctID = flt.acctID.isSet() ? flt.acctID.toString() : null; // important: toString()
+		acctType = flt.acctType;
+
+		// sic, rounded: far below the tolerance
+		valueFrom  = ScaledAmount.ofRounded(flt.valueFrom);
+		valueTo    = ScaledAmount.ofRounded(flt.valueTo);
+		sharesFrom = ScaledAmount.ofRounded(flt.sharesFrom);
+		sharesTo   = ScaledAmount.ofRounded(flt.sharesTo);
+
+		memoPart = flt.memoPart.trim().equals("") ? null : flt.memoPart.trim();
+		memoIgnoreCase = flt.memoIgnoreCase;
+
+		ArrayList<Check> chkList = new ArrayList<Check>();
+		ArrayList<String> keyList = new ArrayList<String>();
+		buildChecks(chkList, keyList);
+		checks = chkList.toArray(new Check[chkList.size()]);
+		checkKeys = keyList.toArray(new String[keyList.size()]);
+	}
+
+	private void buildChecks(final ArrayList<Check> chkList, final ArrayList<String> keyList) {
+		// Cheapest ones first
+		if ( action != null ) {
+			chkList.add(splt -> splt.getAction() == action);
+			keyList.add("action=" + action);
+		}
+
+		if ( acctID != null ) {
+			// sic, on the ID string built at compile time: An ordinal would have
+			// to be resolved from the split's (current) account ID anyway
+			chkList.add(splt -> splt.getAccountID().toString().equals(acctID));
+			keyList.add("acctID=" + acctID);
+		}
+
+		if ( acctType != null ) {
+			chkList.add(splt -> splt.getAccount().getType() == acctType);
+			keyList.add("acctType=" + acctType);
+		}
+
+		// Scaled bounds, with tolerance: one range check (i.e. one
+		// conversion) per amount
+		if ( valueFrom.isSet() ||
+			 valueTo.isSet() ) {
+			long lowerKey = valueFrom.getLowerKey();
+			long upperKey = valueTo.getUpperKey();
+			chkList.add(splt -> {
+				long value = ScaledAmount.toScaled(splt.getValue());
+				return value >= lowerKey && value <= upperKey;
+			});
+			keyList.add("value=" + toKey(valueFrom) + ".." + toKey(valueTo));
+		}
+
+		if ( sharesFrom.isSet() ||
+			 sharesTo.isSet() ) {
+			long lowerKey = sharesFrom.getLowerKey();
+			long upperKey = sharesTo.getUpperKey();
+			chkList.add(splt -> {
+				long shares = ScaledAmount.toScaled(splt.getShares());
+				return shares >= lowerKey && shares <= upperKey;
+			});
+			keyList.add("shares=" + toKey(sharesFrom) + ".." + toKey(sharesTo));
+		}
+
+		if ( memoPart != null ) {
+			if ( memoIgnoreCase ) {
+				String foldedMemoPart = MemoTrigramIndex.fold(memoPart);
+				chkList.add(splt -> MemoTrigramIndex.fold(splt.getMemo()).contains(foldedMemoPart));
+			} else {
+				chkList.add(splt -> splt.getMemo().contains(memoPart));
+			}
+			keyList.add("memo=" + ( memoIgnoreCase ? "i" : "c" ) + memoPart.length() + ":" + memoPart);
+		}
+	}
+
+	// ---------------------------------------------------------------
+
+	public boolean matchesCriteria(final KMyMoneyTransactionSplit splt) {
+		if ( splt == null ) {
+			throw new IllegalArgumentException("null transaction-split given");
+		}
+
+		for ( Check chk : checks ) {
+			if ( ! chk.matches(splt) ) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * @return true if no criterion is set, i.e. every split matches
+	 */
+	public boolean isEmpty() {
+		return checks.length == 0;
+	}
+
+	Check[] getChecks() {
+		return checks;
+	}
+
+	String[] getCheckKeys() {
+		return checkKeys;
+	}
+
+	/**
+	 * @return canonical form of the criteria: Equal criteria yield equal
+	 * strings, regardless of e.g. the amounts' scales
+	 */
+	String getCanonicalKey() {
+		return "action=" + action + ";" +
+			   "acctID=" + acctID + ";" +
+			   "acctType=" + acctType + ";" +
+			   "value=" + toKey(valueFrom) + ".." + toKey(valueTo) + ";" +
+			   "shares=" + toKey(sharesFrom) + ".." + toKey(sharesTo) + ";" +
+			   "memo=" + ( memoPart == null ? "null" : ( memoIgnoreCase ? "i" : "c" ) + memoPart.length() + ":" + memoPart );
+	}
+
+	private static String toKey(final ScaledAmount amt) {
+		return amt.isSet() ? amt.toString() : "null";
+	}
+
+	// ---------------------------------------------------------------
+
+	public KMyMoneyTransactionSplit.Action getAction() {
+		return action;
+	}
+
+	/**
+	 * @return the account ID (string form) or null if not set
+	 */
+	public String getAcctID() {
+		return acctID;
+	}
+
+	public KMyMoneyAccount.Type getAcctType() {
+		return acctType;
+	}
+
+	/**
+	 * @return the lower value bound (new object), null if not set
+	 */
+	public FixedPointNumber getValueFrom() {
+		return valueFrom.toFixedPointNumber();
+	}
+
+	public FixedPointNumber getValueTo() {
+		return valueTo.toFixedPointNumber();
+	}
+
+	public FixedPointNumber getSharesFrom() {
+		return sharesFrom.toFixedPointNumber();
+	}
+
+	public FixedPointNumber getSharesTo() {
+		return sharesTo.toFixedPointNumber();
+	}
+
+	/**
+	 * @return the lower value bound, {@link ScaledAmount#UNSET} if not set
+	 */
+	public ScaledAmount getValueFromAmount() {
+		return valueFrom;
+	}
+
+	public ScaledAmount getValueToAmount() {
+		return valueTo;
+	}
+
+	public ScaledAmount getSharesFromAmount() {
+		return sharesFrom;
+	}
+
+	public ScaledAmount getSharesToAmount() {
+		return sharesTo;
+	}
+
+	public String getMemoPart() {
+		return memoPart;
+	}
+
+	public boolean isMemoIgnoreCase() {
+		return memoIgnoreCase;
+	}
+
+	// ---------------------------------------------------------------
+
+	@Override
+	public String toString() {
+		return "CompiledTransactionSplitFilter [" +
+	                 "action=" + action + ", " +
+				     "acctID=" + acctID + ", " +
+	               "acctType=" + acctType + ", " +
+				  "valueFrom=" + valueFrom + ", " +
+	                "valueTo=" + valueTo + ", " +
+			     "sharesFrom=" + sharesFrom + ", " +
+	               "sharesTo=" + sharesTo + ", " +
+			       "memoPart=" + ( memoPart == null ? "null" : "'" + memoPart + "'" ) + ", " +
+			 "memoIgnoreCase=" + memoIgnoreCase + ", " +
+			     "nofChecks=" + checks.length + "]";
+	}
+
+}
@@ -0,0 +1,432 @@
+package org.kmymoney.apiext.trxmgr;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.kmymoney.api.read.KMyMoneyTransaction;
+import org.kmymoney.api.read.KMyMoneyTransactionSplit;
+
+/**
+ * Predicate tree over transaction and split filters: AND, OR and NOT
+ * of (compiled) filters, e.g. "A or (B and not C)", evaluated in one
+ * single pass by the finders
+ * (cf. {@link TransactionFinder#find(CompositeFilter)},
+ * {@link TransactionSplitFinder#find(CompositeFilter)}).
+ * <br>
+ * Evaluation short-circuits. The children of AND/OR nodes are reordered at
+ * runtime: Those that most often decide the result (false for AND, true
+ * for OR) at the lowest (sampled) cost come first.
+ * <br>
+ * The leaves are snapshots of the given filters: Later changes on the
+ * filters do not affect the tree. The tree is thread-safe.
+ *
+ * @param <T> transaction or transaction split
+ */
+public abstract class CompositeFilter<T> {
+
+	// Every n-th evaluation of a node is timed
+	private static final int SAMPLE_MASK = 0x1F;
+
+	// Children are reordered every n evaluations of a node
+	private static final int REORDER_INTERVAL = 1024;
+
+    // ---------------------------------------------------------------
+
+	CompositeFilter() {
+	}
+
+    // ---------------------------------------------------------------
+	// Leaves
+
+	/**
+	 * @param flt transaction filter (compiled right away)
+	 * @param withSplits whether the split-level criteria are to be checked
+	 * @param splitLogic how the split-level criteria are to be applied
+	 * @return leaf over the given filter
+	 */
+	public static CompositeFilter<KMyMoneyTransaction> of(final TransactionFilter flt,
+														  final boolean withSplits,
+														  final TransactionFilter.SplitLogic splitLogic) {
+		if ( flt == null ) {
+			throw new IllegalArgumentException("null transaction-filter given");
+		}
+
+		return new TransactionLeaf(flt.compile(), withSplits, splitLogic);
+	}
+
+	/**
+	 * @param flt split filter (compiled right away)
+	 * @return leaf over the given filter
+	 */
+	public static CompositeFilter<KMyMoneyTransactionSplit> of(final TransactionSplitFilter flt) {
+		if ( flt == null ) {
+			throw new IllegalArgumentException("null transaction-split-filter given");
+		}
+
+		return new SplitLeaf(flt.compile());
+	}
+
+	/**
+	 * Lifts a split-level tree to the transaction level.
+	 *
+	 * @param spltFlt split-level tree
+	 * @param splitLogic OR: at least one split of the transaction has to match,
+	 * AND: all of them (also true for transactions without splits)
+	 * @return transaction-level node
+	 */
+	public static CompositeFilter<KMyMoneyTransaction> splits(final CompositeFilter<KMyMoneyTransactionSplit> spltFlt,
+															  final TransactionFilter.SplitLogic splitLogic) {
+		if ( spltFlt == null ) {
+			throw new IllegalArgumentException("null split-level filter given");
+		}
+
+		if ( splitLogic == null ) {
+			throw new IllegalArgumentException("null split logic given");
+		}
+
+		return new SplitQuantifier(spltFlt, splitLogic);
+	}
+
+    // ---------------------------------------------------------------
+	// Operators
+
+	@SafeVarargs
+	public static <T> CompositeFilter<T> and(final CompositeFilter<T>... children) {
+		if ( children == null ) {
+			throw new IllegalArgumentException("null child-filter array given");
+		}
+
+		ArrayList<CompositeFilter<T>> childList = new ArrayList<CompositeFilter<T>>(children.length);
+		for ( CompositeFilter<T> child : children ) {
+			childList.add(child);
+		}
+
+		return new Junction<T>(true, checkChildren(childList));
+	}
+
+	@SafeVarargs
+	public static <T> CompositeFilter<T> or(final CompositeFilter<T>... children) {
+		if ( children == null ) {
+			throw new IllegalArgumentException("null child-filter array given");
+		}
+
+		ArrayList<CompositeFilter<T>> childList = new ArrayList<CompositeFilter<T>>(children.length);
+		for ( CompositeFilter<T> child : children ) {
+			childList.add(child);
+		}
+
+		return new Junction<T>(false, checkChildren(childList));
+	}
+
+	public static <T> CompositeFilter<T> not(final CompositeFilter<T> child) {
+		if ( child == null ) {
+			throw new IllegalArgumentException("null child filter given");
+		}
+
+		return new Not<T>(child);
+	}
+
+	private static <T> List<CompositeFilter<T>> checkChildren(final List<CompositeFilter<T>> children) {
+		if ( children.isEmpty() ) {
+			throw new IllegalArgumentException("no child filters given");
+		}
+
+		for ( CompositeFilter<T> child : children ) {
+			if ( child == null ) {
+				throw new IllegalArgumentException("null child filter given");
+			}
+		}
+
+		return Collections.unmodifiableList(children);
+	}
+
+    // ---------------------------------------------------------------
+
+	public abstract boolean matchesCriteria(T obj);
+
+	/**
+	 * @return lower bound for the date posted of the matching transactions
+	 * (derived from the leaves), null if open
+	 */
+	abstract LocalDate getDatePostedFrom();
+
+	/**
+	 * @return upper bound for the date posted of the matching transactions
+	 * (derived from the leaves), null if open
+	 */
+	abstract LocalDate getDatePostedTo();
+
+    // ---------------------------------------------------------------
+	// Node types
+
+	private static final class TransactionLeaf extends CompositeFilter<KMyMoneyTransaction> {
+		private final CompiledTransactionFilter    cflt;
+		private final boolean                      withSplits;
+		private final TransactionFilter.SplitLogic splitLogic;
+
+		TransactionLeaf(final CompiledTransactionFilter cflt, final boolean withSplits,
+						final TransactionFilter.SplitLogic splitLogic) {
+			this.cflt = cflt;
+			this.withSplits = withSplits;
+			this.splitLogic = splitLogic;
+		}
+
+		@Override
+		public boolean matchesCriteria(final KMyMoneyTransaction trx) {
+			return cflt.matchesCriteria(trx, withSplits, splitLogic);
+		}
+
+		@Override
+		LocalDate getDatePostedFrom() {
+			return cflt.getDatePostedFrom();
+		}
+
+		@Override
+		LocalDate getDatePostedTo() {
+			return cflt.getDatePostedTo();
+		}
+
+		@Override
+		public String toString() {
+			return cflt.toString() + ( withSplits ? " (splits: " + splitLogic + ")" : "" );
+		}
+	}
+
+	private static final class SplitLeaf extends CompositeFilter<KMyMoneyTransactionSplit> {
+		private final CompiledTransactionSplitFilter cflt;
+
+		SplitLeaf(final CompiledTransactionSplitFilter cflt) {
+			this.cflt = cflt;
+		}
+
+		@Override
+		public boolean matchesCriteria(final KMyMoneyTransactionSplit splt) {
+			return cflt.matchesCriteria(splt);
+		}
+
+		@Override
+		LocalDate getDatePostedFrom() {
+			return null;
+		}
+
+		@Override
+		LocalDate getDatePostedTo() {
+			return null;
+		}
+
+		@Override
+		public String toString() {
+			return cflt.toString();
+		}
+	}
+
+	private static final class SplitQuantifier extends CompositeFilter<KMyMoneyTransaction> {
+		private final CompositeFilter<KMyMoneyTransactionSplit> spltFlt;
+		private final TransactionFilter.SplitLogic              splitLogic;
+
+		SplitQuantifier(final CompositeFilter<KMyMoneyTransactionSplit> spltFlt,
+						final TransactionFilter.SplitLogic splitLogic) {
+			this.spltFlt = spltFlt;
+			this.splitLogic = splitLogic;
+		}
+
+		@Override
+		public boolean matchesCriteria(final KMyMoneyTransaction trx) {
+			// AND: all splits, OR: any split
+			boolean all = ( splitLogic == TransactionFilter.SplitLogic.AND );
+			for ( KMyMoneyTransactionSplit splt : trx.getSplits() ) {
+				if ( spltFlt.matchesCriteria(splt) != all ) {
+					return ! all;
+				}
+			}
+
+			return all;
+		}
+
+		@Override
+		LocalDate getDatePostedFrom() {
+			return null;
+		}
+
+		@Override
+		LocalDate getDatePostedTo() {
+			return null;
+		}
+
+		@Override
+		public String toString() {
+			return "SPLITS-" + splitLogic + "(" + spltFlt + ")";
+		}
+	}
+
+	private static final class Not<T> extends CompositeFilter<T> {
+		private final CompositeFilter<T> child;
+
+		Not(final CompositeFilter<T> child) {
+			this.child = child;
+		}
+
+		@Override
+		public boolean matchesCriteria(final T obj) {
+			return ! child.matchesCriteria(obj);
+		}
+
+		// sic, no bounds: the complement of a period is open
+		@Override
+		LocalDate getDatePostedFrom() {
+			return null;
+		}
+
+		@Override
+		LocalDate getDatePostedTo() {
+			return null;
+		}
+
+		@Override
+		public String toString() {
+			return "NOT(" + child + ")";
+		}
+	}
+
+	// AND/OR, with adaptive order of the children
+	private static final class Junction<T> extends CompositeFilter<T> {
+		private final boolean                  isAnd;
+		private final List<CompositeFilter<T>> children;
+
+		// Current evaluation order (replaced as a whole)
+		private volatile int[] order;
+
+		// Per child
+		private final AtomicLongArray nofEvals;
+		private final AtomicLongArray nofDecisive; // AND: false, OR: true
+		private final AtomicLongArray sampledNanos;
+		private final AtomicLongArray nofSamples;
+
+		private final AtomicLong nofNodeEvals = new AtomicLong();
+
+		Junction(final boolean isAnd, final List<CompositeFilter<T>> children) {
+			this.isAnd = isAnd;
+			this.children = children;
+
+			order = new int[children.size()];
+			for ( int i = 0; i < order.length; i++ ) {
+				order[i] = i;
+			}
+
+			nofEvals = new AtomicLongArray(children.size());
+			nofDecisive = new AtomicLongArray(children.size());
+			sampledNanos = new AtomicLongArray(children.size());
+			nofSamples = new AtomicLongArray(children.size());
+		}
+
+		@Override
+		public boolean matchesCriteria(final T obj) {
+			long nodeEval = nofNodeEvals.incrementAndGet();
+			if ( nodeEval % REORDER_INTERVAL == 0 ) {
+				reorder();
+			}
+
+			boolean sample = ( nodeEval & SAMPLE_MASK ) == 0;
+			for ( int i : order ) {
+				boolean result;
+				if ( sample ) {
+					long start = System.nanoTime();
+					result = children.get(i).matchesCriteria(obj);
+					sampledNanos.addAndGet(i, System.nanoTime() - start);
+					nofSamples.incrementAndGet(i);
+				} else {
+					result = children.get(i).matchesCriteria(obj);
+				}
+
+				nofEvals.incrementAndGet(i);
+				if ( result != isAnd ) {
+					nofDecisive.incrementAndGet(i);
+					return result;
+				}
+			}
+
+			return isAnd;
+		}
+
+		// Ascending by expected cost per decision
+		private void reorder() {
+			int nofChildren = children.size();
+			double[] rank = new double[nofChildren];
+			Integer[] newOrder = new Integer[nofChildren];
+			for ( int i = 0; i < nofChildren; i++ ) {
+				long evals = nofEvals.get(i);
+				long samples = nofSamples.get(i);
+				double cost = ( samples == 0 ) ? 1.0 : Math.max(1.0, (double) sampledNanos.get(i) / samples);
+				// sic, never evaluated so far: try it early
+				double probDecisive = ( evals == 0 ) ? 1.0 : Math.max(1e-6, (double) nofDecisive.get(i) / evals);
+				rank[i] = cost / probDecisive;
+				newOrder[i] = i;
+			}
+
+			Arrays.sort(newOrder, (i1, i2) -> Double.compare(rank[i1], rank[i2]));
+
+			int[] result = new int[nofChildren];
+			for ( int i = 0; i < nofChildren; i++ ) {
+				result[i] = newOrder[i];
+			}
+			order = result;
+		}
+
+		// AND: intersection of the periods, OR: their hull
+		@Override
+		LocalDate getDatePostedFrom() {
+			LocalDate result = null;
+			for ( CompositeFilter<T> child : children ) {
+				LocalDate date = child.getDatePostedFrom();
+				if ( date == null ) {
+					if ( ! isAnd )
+						return null;
+				} else if ( result == null ||
+							( isAnd ? date.isAfter(result) : date.isBefore(result) ) ) {
+					result = date;
+				}
+			}
+
+			return result;
+		}
+
+		@Override
+		LocalDate getDatePostedTo() {
+			LocalDate result = null;
+			for ( CompositeFilter<T> child : children ) {
+				LocalDate date = child.getDatePostedTo();
+				if ( date == null ) {
+					if ( ! isAnd )
+						return null;
+				} else if ( result == null ||
+							( isAnd ? date.isBefore(result) : date.isAfter(result) ) ) {
+					result = date;
+				}
+			}
+
+			return result;
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder buffer = new StringBuilder(isAnd ? "AND(" : "OR(");
+			boolean first = true;
+			for ( int i : order ) {
+				if ( ! first ) {
+					buffer.append(", ");
+				}
+				buffer.append(children.get(i));
+				first = false;
+			}
+			buffer.append(")");
+
+			return buffer.toString();
+		}
+	}
+
+}
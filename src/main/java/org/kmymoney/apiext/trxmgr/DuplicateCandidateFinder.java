@@ -0,0 +1,366 @@
+package org.kmymoney.apiext.trxmgr;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.kmymoney.api.read.KMyMoneyAccount;
+import org.kmymoney.api.read.KMyMoneyTransaction;
+import org.kmymoney.api.read.KMyMoneyTransactionSplit;
+import org.kmymoney.api.write.KMyMoneyWritableFile;
+import org.kmymoney.apiext.Const;
+import org.kmymoney.base.basetypes.complex.KMMQualifSpltID;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Finds candidate survivor/dier pairs for the transaction mergers
+ * (cf. {@link TransactionMergerVar1}, {@link TransactionMergerVar2})
+ * across a whole file, e.g. after the same statement has been imported
+ * from two sources.
+ * <br>
+ * Instead of checking all pairs of transactions, the transactions are
+ * put into blocks by hashing: bank/cash/stock account, date bucket
+ * (cf. {@link Const#DIFF_TOLERANCE_DAYS}) and rounded value sum on that
+ * account (cf. {@link Const#DIFF_TOLERANCE_VALUE}). Only pairs within
+ * a block (resp. neighbouring blocks, so that nothing within the
+ * tolerances is missed) are verified with the merger's plausi check.
+ * <br>
+ * {@link TransactionMergerVar2} replaces the survivor's bank split with
+ * the negated copy of the dier's one, so it needs two mirrored bank splits
+ * (same value, opposite sign). Each candidate names such a pair if it has
+ * one (cf. {@link Candidate#toPair()}); for a var. 2 merger, only candidates
+ * that have one are reported.
+ */
+public class DuplicateCandidateFinder {
+
+	/**
+	 * A verified survivor/dier pair
+	 */
+	public static final class Candidate {
+		private final KMyMoneyTransaction survivor;
+		private final KMyMoneyTransaction dier;
+		private final KMMQualifSpltID     zDierTrxBankSpltID;       // may be null
+		private final KMMQualifSpltID     zSurvTrxBankSpltBeforeID; // dto.
+		private final int                 dateDiffDays;
+		private final long                valueDiff; // scaled
+
+		private Candidate(final KMyMoneyTransaction survivor, final KMyMoneyTransaction dier,
+						  final KMMQualifSpltID zDierTrxBankSpltID, final KMMQualifSpltID zSurvTrxBankSpltBeforeID,
+						  final int dateDiffDays, final long valueDiff) {
+			this.survivor = survivor;
+			this.dier = dier;
+			this.zDierTrxBankSpltID = zDierTrxBankSpltID;
+			this.zSurvTrxBankSpltBeforeID = zSurvTrxBankSpltBeforeID;
+			this.dateDiffDays = dateDiffDays;
+			this.valueDiff = valueDiff;
+		}
+
+		public KMyMoneyTransaction getSurvivor() {
+			return survivor;
+		}
+
+		public KMyMoneyTransaction getDier() {
+			return dier;
+		}
+
+		/**
+		 * @return the dier's bank split that mirrors the survivor's one
+		 * (cf. {@link #getZSurvTrxBankSpltBeforeID()}), null if there is none
+		 * (cf. {@link TransactionMergerVar2#setZDierTrxBankSpltID(KMMQualifSpltID)})
+		 */
+		public KMMQualifSpltID getZDierTrxBankSpltID() {
+			return zDierTrxBankSpltID;
+		}
+
+		/**
+		 * @return the survivor's bank split that the dier's one mirrors,
+		 * null if there is none
+		 * (cf. {@link TransactionMergerVar2#setZSurvTrxBankSpltBeforeID(KMMQualifSpltID)})
+		 */
+		public KMMQualifSpltID getZSurvTrxBankSpltBeforeID() {
+			return zSurvTrxBankSpltBeforeID;
+		}
+
+		/**
+		 * @return the pair for {@link TransactionBatchMerger}, usable for
+		 * both variants. Without bank splits (cf. above), var. 2 will
+		 * reject it.
+		 */
+		public TransactionBatchMerger.Pair toPair() {
+			return new TransactionBatchMerger.Pair(survivor.getID(), dier.getID(),
+												   zDierTrxBankSpltID, zSurvTrxBankSpltBeforeID);
+		}
+
+		/**
+		 * @return number of days between the two transactions' date posted
+		 */
+		public int getDateDiffDays() {
+			return dateDiffDays;
+		}
+
+		/**
+		 * @return smallest (abs.) difference between the two transactions'
+		 * value sums on a common bank/cash/stock account
+		 */
+		public ScaledAmount getValueDiff() {
+			return ScaledAmount.ofScaled(valueDiff);
+		}
+
+		@Override
+		public String toString() {
+			return "Candidate [" +
+					"survivor=" + survivor.getID() + ", " +
+					    "dier=" + dier.getID() + ", " +
+				"dateDiffDays=" + dateDiffDays + ", " +
+				   "valueDiff=" + getValueDiff() + "]";
+		}
+	}
+
+	// Best candidates first
+	private static final Comparator<Candidate> RANKING =
+			Comparator.comparingInt(Candidate::getDateDiffDays)
+					  .thenComparingLong(cand -> cand.valueDiff)
+					  .thenComparing(cand -> cand.survivor.getID().toString())
+					  .thenComparing(cand -> cand.dier.getID().toString());
+
+	// Blocking: widths of a date resp. value bucket, so that two values
+	// within the tolerance are in the same or in neighbouring buckets
+	private static final int  DATE_BUCKET_DAYS   = Const.DIFF_TOLERANCE_DAYS + 1;
+	private static final long VALUE_BUCKET_WIDTH = ScaledAmount.TOLERANCE + 1;
+
+    // Logger
+    private static final Logger LOGGER = LoggerFactory.getLogger(DuplicateCandidateFinder.class);
+
+    // ---------------------------------------------------------------
+
+	private final KMyMoneyWritableFile  kmmFile;
+	private final TransactionMergerBase merger;
+
+    // ---------------------------------------------------------------
+
+	/**
+	 * @param merger the merger the candidates are meant for. Its
+	 * plausi check is used to verify them.
+	 */
+	public DuplicateCandidateFinder(TransactionMergerBase merger) {
+		if ( merger == null ) {
+			throw new IllegalArgumentException("null merger given");
+		}
+
+		this.kmmFile = merger.kmmFile;
+		this.merger = merger;
+	}
+
+    // ---------------------------------------------------------------
+
+	public List<Candidate> find() {
+		return find(null, null);
+	}
+
+	/**
+	 * @param datePostedFrom lower bound (inclusive), null for open
+	 * @param datePostedTo upper bound (inclusive), null for open
+	 * @return the verified survivor/dier pairs among the transactions posted
+	 * in the given period, best ones (closest date, then closest value) first
+	 */
+	public List<Candidate> find(final LocalDate datePostedFrom, final LocalDate datePostedTo) {
+		TransactionIndexes idxs = TransactionIndexes.createSnapshot(kmmFile);
+		AccountOrdinalTable acctOrds = idxs.getAccountOrdinals();
+		List<KMyMoneyTransaction> trxList = idxs.getDateIndex().getTransactions(datePostedFrom, datePostedTo);
+
+		// 1) Blocking: candidate pairs, with their smallest value difference
+		Map<BlockKey, ArrayList<BlockEntry>> blocks = new HashMap<BlockKey, ArrayList<BlockEntry>>();
+		Map<Long, Long> pairs = new LinkedHashMap<Long, Long>();
+		for ( int i = 0; i < trxList.size(); i++ ) {
+			KMyMoneyTransaction trx = trxList.get(i);
+			if ( trx.getDatePosted() == null ) {
+				continue;
+			}
+
+			long day = trx.getDatePosted().toEpochDay();
+			long dateBucket = Math.floorDiv(day, DATE_BUCKET_DAYS);
+			for ( Map.Entry<Integer, Long> acctSum : getAccountSums(trx, acctOrds).entrySet() ) {
+				long sum = acctSum.getValue();
+				long valueBucket = Math.floorDiv(sum, VALUE_BUCKET_WIDTH);
+
+				// sic, only earlier transactions are in the blocks yet:
+				// each pair is found once
+				for ( long dateOffs = -1; dateOffs <= 1; dateOffs++ ) {
+					for ( long valueOffs = -1; valueOffs <= 1; valueOffs++ ) {
+						ArrayList<BlockEntry> block = blocks.get(new BlockKey(acctSum.getKey(), dateBucket + dateOffs, valueBucket + valueOffs));
+						if ( block == null ) {
+							continue;
+						}
+
+						for ( BlockEntry entry : block ) {
+							long valueDiff = Math.abs(sum - entry.sum);
+							if ( entry.trxIdx != i &&
+								 Math.abs(day - entry.day) <= Const.DIFF_TOLERANCE_DAYS &&
+								 valueDiff <= ScaledAmount.TOLERANCE ) {
+								pairs.merge((long) entry.trxIdx * trxList.size() + i, valueDiff, Math::min);
+							}
+						}
+					}
+				}
+
+				blocks.computeIfAbsent(new BlockKey(acctSum.getKey(), dateBucket, valueBucket),
+									   key -> new ArrayList<BlockEntry>())
+					  .add(new BlockEntry(i, day, sum));
+			}
+		}
+
+		LOGGER.debug("find: " + trxList.size() + " transactions in " + blocks.size() + " blocks, " +
+					 pairs.size() + " pairs to be verified");
+
+		// 2) Verification
+		ArrayList<Candidate> result = new ArrayList<Candidate>();
+		for ( Map.Entry<Long, Long> pair : pairs.entrySet() ) {
+			KMyMoneyTransaction trx1 = trxList.get((int) ( pair.getKey() / trxList.size() ));
+			KMyMoneyTransaction trx2 = trxList.get((int) ( pair.getKey() % trxList.size() ));
+
+			// The richer booking survives
+			KMyMoneyTransaction survivor = trx1;
+			KMyMoneyTransaction dier     = trx2;
+			if ( trx2.getSplits().size() > trx1.getSplits().size() ||
+				 trx2.getSplits().size() == trx1.getSplits().size() &&
+				 trx2.getID().toString().compareTo(trx1.getID().toString()) < 0 ) {
+				survivor = trx2;
+				dier     = trx1;
+			}
+
+			// Signatures cached for this run
+			TransactionSignature survSig = idxs.getSignature(survivor);
+			TransactionSignature dierSig = idxs.getSignature(dier);
+			if ( ! merger.plausiCheck(survSig, dierSig) ) {
+				if ( ! merger.plausiCheck(dierSig, survSig) ) {
+					continue;
+				}
+
+				KMyMoneyTransaction tmp = survivor;
+				survivor = dier;
+				dier     = tmp;
+			}
+
+			KMMQualifSpltID[] bankSpltIDs = getBankSplitIDs(survivor, dier, acctOrds);
+			if ( merger.getVar() == TransactionMergerBase.Var.VAR_2 &&
+				 bankSpltIDs[0] == null ) {
+				LOGGER.debug("find: No mirrored bank splits, no var. 2 candidate: " + survivor.getID() + "/" + dier.getID());
+				continue;
+			}
+
+			int dateDiffDays = (int) Math.abs(survivor.getDatePosted().toEpochDay() - dier.getDatePosted().toEpochDay());
+			result.add(new Candidate(survivor, dier, bankSpltIDs[0], bankSpltIDs[1],
+									 dateDiffDays, pair.getValue()));
+		}
+
+		Collections.sort(result, RANKING);
+
+		LOGGER.debug("find: Found " + result.size() + " survivor/dier candidates");
+		return result;
+	}
+
+	// Key: ordinal of a bank/cash/stock account the transaction
+	// has splits on; value: value sum of these splits, scaled
+	private static Map<Integer, Long> getAccountSums(final KMyMoneyTransaction trx, final AccountOrdinalTable acctOrds) {
+		Map<Integer, Long> result = new HashMap<Integer, Long>();
+		for ( KMyMoneyTransactionSplit splt : trx.getSplits() ) {
+			int acctOrd = acctOrds.getOrdinal(splt);
+			if ( acctOrd == AccountOrdinalTable.NONE ||
+				 ! isBlockingAccountType(acctOrds.getAccountTypeOrdinal(acctOrd)) ) {
+				continue;
+			}
+
+			result.merge(acctOrd, ScaledAmount.toScaled(splt.getValue()), Math::addExact);
+		}
+
+		return result;
+	}
+
+	// For var. 2: the first (in split order) dier's bank split and the
+	// survivor's bank split it mirrors, resp. nulls. Cf. the copy in
+	// TransactionMergerVar2: The survivor stays sane only if they are mirrored.
+	private static KMMQualifSpltID[] getBankSplitIDs(final KMyMoneyTransaction survivor, final KMyMoneyTransaction dier,
+													 final AccountOrdinalTable acctOrds) {
+		for ( KMyMoneyTransactionSplit dierSplt : dier.getSplits() ) {
+			if ( ! isBankSplit(dierSplt, acctOrds) ) {
+				continue;
+			}
+
+			long dierValue = ScaledAmount.toScaled(dierSplt.getValue());
+			for ( KMyMoneyTransactionSplit survSplt : survivor.getSplits() ) {
+				if ( isBankSplit(survSplt, acctOrds) &&
+					 ScaledAmount.isEqual(ScaledAmount.toScaled(survSplt.getValue()), - dierValue) ) {
+					return new KMMQualifSpltID[] { dierSplt.getQualifID(), survSplt.getQualifID() };
+				}
+			}
+		}
+
+		return new KMMQualifSpltID[] { null, null };
+	}
+
+	private static boolean isBankSplit(final KMyMoneyTransactionSplit splt, final AccountOrdinalTable acctOrds) {
+		int acctOrd = acctOrds.getOrdinal(splt);
+		return acctOrd != AccountOrdinalTable.NONE &&
+			   acctOrds.getAccountTypeOrdinal(acctOrd) == KMyMoneyAccount.Type.CHECKING.ordinal();
+	}
+
+	// Cf. TransactionMergerBase.plausiCheck()
+	private static boolean isBlockingAccountType(final int acctTypeOrd) {
+		return acctTypeOrd == KMyMoneyAccount.Type.CHECKING.ordinal() ||
+			   acctTypeOrd == KMyMoneyAccount.Type.CASH.ordinal() ||
+			   acctTypeOrd == KMyMoneyAccount.Type.STOCK.ordinal();
+	}
+
+    // ---------------------------------------------------------------
+
+	private static final class BlockKey {
+		private final int  acctOrd;
+		private final long dateBucket;
+		private final long valueBucket;
+
+		BlockKey(final int acctOrd, final long dateBucket, final long valueBucket) {
+			this.acctOrd = acctOrd;
+			this.dateBucket = dateBucket;
+			this.valueBucket = valueBucket;
+		}
+
+		@Override
+		public boolean equals(final Object obj) {
+			if ( ! ( obj instanceof BlockKey ) ) {
+				return false;
+			}
+
+			BlockKey other = (BlockKey) obj;
+			return acctOrd == other.acctOrd &&
+				   dateBucket == other.dateBucket &&
+				   valueBucket == other.valueBucket;
+		}
+
+		@Override
+		public int hashCode() {
+			int result = acctOrd;
+			result = 31 * result + Long.hashCode(dateBucket);
+			result = 31 * result + Long.hashCode(valueBucket);
+			return result;
+		}
+	}
+
+	private static final class BlockEntry {
+		private final int  trxIdx;
+		private final long day;
+		private final long sum;
+
+		BlockEntry(final int trxIdx, final long day, final long sum) {
+			this.trxIdx = trxIdx;
+			this.day = day;
+			this.sum = sum;
+		}
+	}
+
+}
@@ -0,0 +1,217 @@
+package org.kmymoney.apiext.trxmgr;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Trigram (3-gram) inverted index over the memos of transactions
+ * or transaction splits.
+ * <br>
+ * It narrows down the candidates for a memo substring search before
+ * the exact check: Only objects whose memos contain all trigrams of the
+ * searched part can contain the part itself.
+ * <br>
+ * The trigrams are built on the case-folded memos (cf. {@link #fold(String)}),
+ * so the same index serves case-sensitive and case-insensitive searches.
+ * <br>
+ * The index is a snapshot: It does not reflect later changes
+ * on the file (cf. {@link TransactionIndexes}).
+ *
+ * @param <T> transaction or transaction split
+ */
+public class MemoTrigramIndex<T> {
+
+	// Growable list of item positions
+	private static class IntListBuilder {
+		private int[] arr = new int[4];
+		private int   size = 0;
+
+		void add(final int val) {
+			if ( size == arr.length ) {
+				arr = Arrays.copyOf(arr, size * 2);
+			}
+			arr[size++] = val;
+		}
+
+		int[] toArray() {
+			return Arrays.copyOf(arr, size);
+		}
+	}
+
+    // ---------------------------------------------------------------
+
+	private final List<T> items;
+
+	// Key: packed trigram, value: positions of the items, ascending
+	private final Map<Long, int[]> postings;
+
+    // ---------------------------------------------------------------
+
+	MemoTrigramIndex(final List<? extends T> itemList, final Function<? super T, String> memoGetter) {
+		if ( itemList == null ) {
+			throw new IllegalArgumentException("null item-list given");
+		}
+
+		items = Collections.unmodifiableList(new ArrayList<T>(itemList));
+
+		HashMap<Long, IntListBuilder> builders = new HashMap<Long, IntListBuilder>();
+		HashSet<Long> itemTrigrams = new HashSet<Long>();
+		for ( int i = 0; i < items.size(); i++ ) {
+			String memo = memoGetter.apply(items.get(i));
+			if ( memo == null ||
+				 memo.length() < 3 ) {
+				continue;
+			}
+
+			// Each item only once per trigram
+			itemTrigrams.clear();
+			String foldedMemo = fold(memo);
+			for ( int j = 0; j + 3 <= foldedMemo.length(); j++ ) {
+				itemTrigrams.add(trigram(foldedMemo, j));
+			}
+
+			for ( Long tri : itemTrigrams ) {
+				builders.computeIfAbsent(tri, key -> new IntListBuilder()).add(i);
+			}
+		}
+
+		postings = new HashMap<Long, int[]>(builders.size() * 2);
+		for ( Map.Entry<Long, IntListBuilder> entry : builders.entrySet() ) {
+			postings.put(entry.getKey(), entry.getValue().toArray());
+		}
+	}
+
+    // ---------------------------------------------------------------
+
+	public int size() {
+		return items.size();
+	}
+
+	/**
+	 * @param memoPart searched memo part
+	 * @return the objects whose memos possibly contain the given part
+	 * (in index order), or null if the part is too short (less than three
+	 * characters) to narrow down the candidates. The exact check is
+	 * still up to the caller.
+	 */
+	public List<T> getCandidates(final String memoPart) {
+		int[] positions = getPositions(memoPart);
+		if ( positions == null ) {
+			return null;
+		}
+
+		ArrayList<T> result = new ArrayList<T>(positions.length);
+		for ( int pos : positions ) {
+			result.add(items.get(pos));
+		}
+
+		return result;
+	}
+
+	/**
+	 * @param memoPart searched memo part
+	 * @return an upper bound of the number of objects whose memos contain
+	 * the given part, or -1 if the part is too short to tell
+	 */
+	public int estimate(final String memoPart) {
+		if ( memoPart == null ||
+			 memoPart.length() < 3 ) {
+			return -1;
+		}
+
+		String foldedPart = fold(memoPart);
+		int result = Integer.MAX_VALUE;
+		for ( int j = 0; j + 3 <= foldedPart.length(); j++ ) {
+			int[] pl = postings.get(trigram(foldedPart, j));
+			if ( pl == null ) {
+				return 0;
+			}
+			result = Math.min(result, pl.length);
+		}
+
+		return result;
+	}
+
+    // ---------------------------------------------------------------
+
+	private int[] getPositions(final String memoPart) {
+		if ( memoPart == null ||
+			 memoPart.length() < 3 ) {
+			return null;
+		}
+
+		String foldedPart = fold(memoPart);
+		ArrayList<int[]> lists = new ArrayList<int[]>();
+		for ( int j = 0; j + 3 <= foldedPart.length(); j++ ) {
+			int[] pl = postings.get(trigram(foldedPart, j));
+			if ( pl == null ) {
+				return new int[0];
+			}
+			lists.add(pl);
+		}
+
+		// Start with the shortest list
+		lists.sort((pl1, pl2) -> Integer.compare(pl1.length, pl2.length));
+		int[] result = lists.get(0);
+		for ( int k = 1; k < lists.size() && result.length > 0; k++ ) {
+			result = intersect(result, lists.get(k));
+		}
+
+		return result;
+	}
+
+	private static int[] intersect(final int[] arr1, final int[] arr2) {
+		int[] result = new int[Math.min(arr1.length, arr2.length)];
+		int i = 0;
+		int j = 0;
+		int k = 0;
+		while ( i < arr1.length && j < arr2.length ) {
+			if ( arr1[i] < arr2[j] ) {
+				i++;
+			} else if ( arr1[i] > arr2[j] ) {
+				j++;
+			} else {
+				result[k++] = arr1[i];
+				i++;
+				j++;
+			}
+		}
+
+		return Arrays.copyOf(result, k);
+	}
+
+	private static long trigram(final String str, final int pos) {
+		return ( (long) str.charAt(pos) << 32 ) |
+			   ( (long) str.charAt(pos + 1) << 16 ) |
+			   str.charAt(pos + 2);
+	}
+
+    // ---------------------------------------------------------------
+
+	/**
+	 * Case-folds the given string character by character, i.e.
+	 * context-free and without changing its length.
+	 * <br>
+	 * Thus, if a string contains another one, the folded string contains
+	 * the folded other one as well. The case-insensitive memo search
+	 * of the filters is defined by this function.
+	 *
+	 * @param str string
+	 * @return folded string
+	 */
+	static String fold(final String str) {
+		char[] chars = str.toCharArray();
+		for ( int i = 0; i < chars.length; i++ ) {
+			chars[i] = Character.toLowerCase(Character.toUpperCase(chars[i]));
+		}
+
+		return new String(chars);
+	}
+
+}
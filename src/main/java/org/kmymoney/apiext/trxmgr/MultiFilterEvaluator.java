@@ -0,0 +1,229 @@
+package org.kmymoney.apiext.trxmgr;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.kmymoney.api.read.KMyMoneyTransaction;
+import org.kmymoney.api.read.KMyMoneyTransactionSplit;
+
+/**
+ * Evaluates several compiled transaction filters on one transaction at
+ * a time, so that a batch of filters can be run in one single pass.
+ * <br>
+ * Criteria shared by several filters (e.g. the same date bound or the same
+ * account type) are evaluated only once per transaction resp. split, and
+ * equal split filters are evaluated only once per transaction.
+ * <br>
+ * Not thread-safe: the evaluation state is kept in the object.
+ */
+class MultiFilterEvaluator {
+
+	private static final byte UNKNOWN = 0;
+	private static final byte TRUE    = 1;
+	private static final byte FALSE   = 2;
+
+    // ---------------------------------------------------------------
+
+	private final int                          nofFlt;
+	private final boolean                      withSplits;
+	private final TransactionFilter.SplitLogic splitLogic;
+
+	// Distinct transaction-level checks, and per filter the slots of its checks
+	private final CompiledTransactionFilter.Check[] trxChecks;
+	private final int[][]                           trxCheckSlots;
+
+	// Distinct split-level checks, distinct split filters (as slots of their
+	// checks) and per filter the slot of its split filter (-1: none)
+	private final CompiledTransactionSplitFilter.Check[] spltChecks;
+	private final int[][]                                spltFltCheckSlots;
+	private final int[]                                  spltFltSlot;
+
+	// Evaluation state
+	private final byte[]    trxCheckState;
+	private final byte[]    spltCheckState;
+	private final byte[]    spltFltState;
+	private final boolean[] spltFltNeeded;
+
+    // ---------------------------------------------------------------
+
+	MultiFilterEvaluator(final List<CompiledTransactionFilter> cflts,
+						 final boolean withSplits,
+						 final TransactionFilter.SplitLogic splitLogic) {
+		if ( cflts == null ) {
+			throw new IllegalArgumentException("null transaction-filter list given");
+		}
+
+		if ( withSplits &&
+			 splitLogic == null ) {
+			throw new IllegalArgumentException("null split logic given");
+		}
+
+		this.nofFlt = cflts.size();
+		this.withSplits = withSplits;
+		this.splitLogic = splitLogic;
+
+		// Transaction level
+		Map<String, Integer> trxSlotMap = new HashMap<String, Integer>();
+		ArrayList<CompiledTransactionFilter.Check> trxChkList = new ArrayList<CompiledTransactionFilter.Check>();
+		trxCheckSlots = new int[nofFlt][];
+		for ( int f = 0; f < nofFlt; f++ ) {
+			CompiledTransactionFilter cflt = cflts.get(f);
+			trxCheckSlots[f] = new int[cflt.getChecks().length];
+			for ( int i = 0; i < cflt.getChecks().length; i++ ) {
+				Integer slot = trxSlotMap.get(cflt.getCheckKeys()[i]);
+				if ( slot == null ) {
+					slot = trxChkList.size();
+					trxSlotMap.put(cflt.getCheckKeys()[i], slot);
+					trxChkList.add(cflt.getChecks()[i]);
+				}
+				trxCheckSlots[f][i] = slot;
+			}
+		}
+		trxChecks = trxChkList.toArray(new CompiledTransactionFilter.Check[trxChkList.size()]);
+
+		// Split level
+		Map<String, Integer> spltSlotMap = new HashMap<String, Integer>();
+		Map<String, Integer> spltFltSlotMap = new HashMap<String, Integer>();
+		ArrayList<CompiledTransactionSplitFilter.Check> spltChkList = new ArrayList<CompiledTransactionSplitFilter.Check>();
+		ArrayList<int[]> spltFltList = new ArrayList<int[]>();
+		spltFltSlot = new int[nofFlt];
+		for ( int f = 0; f < nofFlt; f++ ) {
+			CompiledTransactionSplitFilter spltFlt = cflts.get(f).getSplitFilter();
+			if ( ! withSplits ||
+				 spltFlt == null ) {
+				spltFltSlot[f] = -1;
+				continue;
+			}
+
+			Integer fltSlot = spltFltSlotMap.get(spltFlt.getCanonicalKey());
+			if ( fltSlot == null ) {
+				int[] chkSlots = new int[spltFlt.getChecks().length];
+				for ( int i = 0; i < spltFlt.getChecks().length; i++ ) {
+					Integer slot = spltSlotMap.get(spltFlt.getCheckKeys()[i]);
+					if ( slot == null ) {
+						slot = spltChkList.size();
+						spltSlotMap.put(spltFlt.getCheckKeys()[i], slot);
+						spltChkList.add(spltFlt.getChecks()[i]);
+					}
+					chkSlots[i] = slot;
+				}
+
+				fltSlot = spltFltList.size();
+				spltFltSlotMap.put(spltFlt.getCanonicalKey(), fltSlot);
+				spltFltList.add(chkSlots);
+			}
+			spltFltSlot[f] = fltSlot;
+		}
+		spltChecks = spltChkList.toArray(new CompiledTransactionSplitFilter.Check[spltChkList.size()]);
+		spltFltCheckSlots = spltFltList.toArray(new int[spltFltList.size()][]);
+
+		trxCheckState = new byte[trxChecks.length];
+		spltCheckState = new byte[spltChecks.length];
+		spltFltState = new byte[spltFltCheckSlots.length];
+		spltFltNeeded = new boolean[spltFltCheckSlots.length];
+	}
+
+    // ---------------------------------------------------------------
+
+	int getNofFilters() {
+		return nofFlt;
+	}
+
+	/**
+	 * @param trx transaction
+	 * @param result for each filter (in the given order): whether the
+	 * transaction matches it
+	 */
+	void evaluate(final KMyMoneyTransaction trx, final boolean[] result) {
+		// 1) Transaction Level
+		Arrays.fill(trxCheckState, UNKNOWN);
+		Arrays.fill(spltFltNeeded, false);
+		boolean anySpltFltNeeded = false;
+
+		for ( int f = 0; f < nofFlt; f++ ) {
+			result[f] = true;
+			for ( int slot : trxCheckSlots[f] ) {
+				if ( trxCheckState[slot] == UNKNOWN ) {
+					trxCheckState[slot] = trxChecks[slot].matches(trx) ? TRUE : FALSE;
+				}
+
+				if ( trxCheckState[slot] == FALSE ) {
+					result[f] = false;
+					break;
+				}
+			}
+
+			if ( result[f] && withSplits ) {
+				if ( spltFltSlot[f] < 0 ) {
+					throw new IllegalStateException("split-filter is null");
+				}
+				spltFltNeeded[spltFltSlot[f]] = true;
+				anySpltFltNeeded = true;
+			}
+		}
+
+		if ( ! anySpltFltNeeded ) {
+			return;
+		}
+
+		// 2) Split Level: all needed split filters in one pass over the splits
+		Arrays.fill(spltFltState, UNKNOWN);
+		for ( KMyMoneyTransactionSplit splt : trx.getSplits() ) {
+			Arrays.fill(spltCheckState, UNKNOWN);
+			boolean undecided = false;
+
+			for ( int k = 0; k < spltFltCheckSlots.length; k++ ) {
+				if ( ! spltFltNeeded[k] ||
+					 spltFltState[k] != UNKNOWN ) {
+					continue;
+				}
+
+				boolean matches = splitMatches(k, splt);
+				if ( splitLogic == TransactionFilter.SplitLogic.OR && matches ) {
+					spltFltState[k] = TRUE;
+				} else if ( splitLogic == TransactionFilter.SplitLogic.AND && ! matches ) {
+					spltFltState[k] = FALSE;
+				} else {
+					undecided = true;
+				}
+			}
+
+			// sic, stop as soon as all needed split filters are decided
+			if ( ! undecided ) {
+				break;
+			}
+		}
+
+		for ( int f = 0; f < nofFlt; f++ ) {
+			if ( ! result[f] ) {
+				continue;
+			}
+
+			byte state = spltFltState[spltFltSlot[f]];
+			if ( state == UNKNOWN ) {
+				// No split has decided: all splits match (AND) resp. none (OR)
+				result[f] = ( splitLogic == TransactionFilter.SplitLogic.AND );
+			} else {
+				result[f] = ( state == TRUE );
+			}
+		}
+	}
+
+	private boolean splitMatches(final int fltSlot, final KMyMoneyTransactionSplit splt) {
+		for ( int slot : spltFltCheckSlots[fltSlot] ) {
+			if ( spltCheckState[slot] == UNKNOWN ) {
+				spltCheckState[slot] = spltChecks[slot].matches(splt) ? TRUE : FALSE;
+			}
+
+			if ( spltCheckState[slot] == FALSE ) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+}
@@ -0,0 +1,567 @@
+package org.kmymoney.apiext.trxmgr;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.kmymoney.api.read.KMyMoneyFile;
+import org.kmymoney.api.read.KMyMoneyTransactionSplit;
+import org.kmymoney.base.basetypes.complex.KMMQualifSpltID;
+import org.kmymoney.base.basetypes.simple.KMMSpltID;
+import org.kmymoney.base.basetypes.simple.KMMTrxID;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Like {@link SplitColumnStore}, but with the columns kept off-heap, in
+ * direct buffers, so that very large histories do not burden the heap
+ * and the garbage collector.
+ * <br>
+ * The store can be saved to a file and reopened from it (memory-mapped)
+ * without rebuilding. Instead of the split objects, it holds the splits'
+ * IDs; the objects are looked up in the attached KMyMoney file when needed
+ * (for {@link #getSplit(int)} and for the memo criterion).
+ * <br>
+ * The saved store carries a fingerprint of the splits it has been built
+ * from (IDs and column values), so that it cannot be reopened against a
+ * file that has changed in the meantime.
+ * <br>
+ * Limitation: Each column must not exceed 2 GB.
+ */
+public class OffHeapSplitColumnStore implements SplitColumns {
+
+	private static final int MAGIC       = 0x4B4D5343; // "KMSC"
+	private static final int VERSION     = 2;
+	private static final int HEADER_SIZE = 64;
+
+	// Separates transaction and split ID
+	private static final byte ID_SEP = ' ';
+
+	// FNV-1a (64 bit)
+	private static final long FNV_OFFSET = 0xCBF29CE484222325L;
+	private static final long FNV_PRIME  = 0x100000001B3L;
+
+    // Logger
+    private static final Logger LOGGER = LoggerFactory.getLogger(OffHeapSplitColumnStore.class);
+
+    // ---------------------------------------------------------------
+
+	// May be null (splits cannot be resolved then)
+	private final KMyMoneyFile kmmFile;
+
+	private final int nofRows;
+
+	// Of the splits the store has been built from, cf. getFingerprint()
+	private final long fingerprint;
+
+	// Raw sections (in file order), the columns are views on them
+	private final ByteBuffer[] sections;
+
+	// Columns
+	private final IntBuffer  epochDays;
+	private final IntBuffer  acctOrds;
+	private final ByteBuffer actionOrds;
+	private final LongBuffer values;
+	private final LongBuffer shares;
+
+	// Split IDs: "<trx-ID> <split-ID>" per row, offsets into the area
+	private final IntBuffer  spltIDOffsets;
+	private final ByteBuffer spltIDArea;
+
+	// Accounts (few): on-heap
+	private final Map<String, Integer> acctOrdMap;
+	private final String[]             acctIDs;
+	private final byte[]               acctTypeOrds;
+
+    // ---------------------------------------------------------------
+
+	private OffHeapSplitColumnStore(final KMyMoneyFile kmmFile, final int nofRows, final long fingerprint,
+									final ByteBuffer[] sections, final String[] acctIDs, final byte[] acctTypeOrds) {
+		this.kmmFile = kmmFile;
+		this.nofRows = nofRows;
+		this.fingerprint = fingerprint;
+		this.sections = sections;
+
+		epochDays     = sections[0].asIntBuffer();
+		acctOrds      = sections[1].asIntBuffer();
+		actionOrds    = sections[2];
+		values        = sections[3].asLongBuffer();
+		shares        = sections[4].asLongBuffer();
+		spltIDOffsets = sections[5].asIntBuffer();
+		spltIDArea    = sections[6];
+
+		this.acctIDs = acctIDs;
+		this.acctTypeOrds = acctTypeOrds;
+		acctOrdMap = new HashMap<String, Integer>();
+		for ( int j = 0; j < acctIDs.length; j++ ) {
+			acctOrdMap.put(acctIDs[j], j);
+		}
+	}
+
+    // ---------------------------------------------------------------
+
+	/**
+	 * Builds the store from the given file's splits (in direct buffers).
+	 *
+	 * @param kmmFile KMyMoney file
+	 * @return new store
+	 */
+	public static OffHeapSplitColumnStore of(final KMyMoneyFile kmmFile) {
+		if ( kmmFile == null ) {
+			throw new IllegalArgumentException("null KMyMoney-file object given");
+		}
+
+		// sic, the on-heap store provides the ordinals
+		TransactionIndexes idxs = TransactionIndexes.createSnapshot(kmmFile);
+		SplitColumnStore heapStore = idxs.getColumnStore();
+		List<KMyMoneyTransactionSplit> spltList = idxs.getSplitsByDate();
+		int nofRows = heapStore.size();
+
+		// Pass 1: size of the ID area
+		long idAreaSize = 0;
+		for ( KMyMoneyTransactionSplit splt : spltList ) {
+			idAreaSize += getIDBytes(splt).length;
+		}
+		checkSectionSize(idAreaSize);
+
+		ByteBuffer[] sections = allocateSections(nofRows, (int) idAreaSize);
+		for ( int i = 0; i < nofRows; i++ ) {
+			sections[0].putInt(i * Integer.BYTES, heapStore.getEpochDay(i));
+			sections[1].putInt(i * Integer.BYTES, heapStore.getAccountOrdinal(i));
+			sections[2].put(i, (byte) heapStore.getActionOrdinal(i));
+			sections[3].putLong(i * Long.BYTES, heapStore.getValueScaled(i));
+			sections[4].putLong(i * Long.BYTES, heapStore.getSharesScaled(i));
+		}
+
+		// Pass 2: IDs
+		int offset = 0;
+		for ( int i = 0; i < nofRows; i++ ) {
+			byte[] idBytes = getIDBytes(spltList.get(i));
+			sections[5].putInt(i * Integer.BYTES, offset);
+			sections[6].position(offset);
+			sections[6].put(idBytes);
+			offset += idBytes.length;
+		}
+		sections[5].putInt(nofRows * Integer.BYTES, offset);
+		sections[6].position(0);
+
+		String[] acctIDs = new String[heapStore.getNofAccounts()];
+		byte[] acctTypeOrds = new byte[heapStore.getNofAccounts()];
+		for ( int j = 0; j < acctIDs.length; j++ ) {
+			acctIDs[j] = heapStore.getAccountID(j);
+			acctTypeOrds[j] = (byte) heapStore.getAccountTypeOrdinal(j);
+		}
+
+		LOGGER.debug("of: Built off-heap column store over " + nofRows + " splits");
+		return new OffHeapSplitColumnStore(kmmFile, nofRows, getFingerprint(spltList),
+										   sections, acctIDs, acctTypeOrds);
+	}
+
+	/**
+	 * Reopens a store saved with {@link #save(Path)}. The columns are
+	 * memory-mapped, i.e. they are not read into memory.
+	 *
+	 * @param file store file
+	 * @param kmmFile KMyMoney file the store has been built from, for
+	 * resolving the splits (may be null)
+	 * @return the store
+	 * @throws IOException
+	 * @throws IllegalArgumentException if the store has not been built
+	 * from the given KMyMoney file in its current state
+	 */
+	public static OffHeapSplitColumnStore open(final Path file, final KMyMoneyFile kmmFile) throws IOException {
+		if ( file == null ) {
+			throw new IllegalArgumentException("null file given");
+		}
+
+		try ( FileChannel chan = FileChannel.open(file, StandardOpenOption.READ) ) {
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			while ( header.hasRemaining() ) {
+				if ( chan.read(header) < 0 ) {
+					throw new IOException("Store file is truncated: " + file);
+				}
+			}
+			header.flip();
+
+			if ( header.getInt() != MAGIC ) {
+				throw new IOException("Not a split column store file: " + file);
+			}
+
+			int version = header.getInt();
+			if ( version != VERSION ) {
+				throw new IOException("Unsupported split column store version " + version + ": " + file);
+			}
+
+			int nofRows = header.getInt();
+			int nofAccts = header.getInt();
+			int idAreaSize = header.getInt();
+			long fingerprint = header.getLong();
+
+			// Sections
+			long pos = HEADER_SIZE;
+			int[] sizes = getSectionSizes(nofRows, idAreaSize);
+			if ( pos + Arrays.stream(sizes).asLongStream().sum() > chan.size() ) {
+				throw new IOException("Store file is truncated: " + file);
+			}
+
+			ByteBuffer[] sections = new ByteBuffer[sizes.length];
+			for ( int k = 0; k < sizes.length; k++ ) {
+				sections[k] = chan.map(FileChannel.MapMode.READ_ONLY, pos, sizes[k]).order(ByteOrder.LITTLE_ENDIAN);
+				pos += sizes[k];
+			}
+
+			// Accounts
+			ByteBuffer acctArea = chan.map(FileChannel.MapMode.READ_ONLY, pos, chan.size() - pos).order(ByteOrder.LITTLE_ENDIAN);
+			String[] acctIDs = new String[nofAccts];
+			byte[] acctTypeOrds = new byte[nofAccts];
+			for ( int j = 0; j < nofAccts; j++ ) {
+				acctTypeOrds[j] = acctArea.get();
+				byte[] idBytes = new byte[acctArea.getInt()];
+				acctArea.get(idBytes);
+				acctIDs[j] = new String(idBytes, StandardCharsets.UTF_8);
+			}
+
+			if ( kmmFile != null ) {
+				// Count first: cheap
+				Collection<? extends KMyMoneyTransactionSplit> splts = kmmFile.getTransactionSplits();
+				if ( splts.size() != nofRows ) {
+					throw new IllegalArgumentException("store file does not match KMyMoney file (number of splits)");
+				}
+
+				if ( getFingerprint(splts) != fingerprint ) {
+					throw new IllegalArgumentException("store file does not match KMyMoney file (fingerprint)");
+				}
+			}
+
+			LOGGER.debug("open: Opened off-heap column store over " + nofRows + " splits: " + file);
+			return new OffHeapSplitColumnStore(kmmFile, nofRows, fingerprint,
+											   sections, acctIDs, acctTypeOrds);
+		}
+	}
+
+	/**
+	 * Saves the store to the given file (overwriting it), so that it can be
+	 * reopened with {@link #open(Path, KMyMoneyFile)}.
+	 *
+	 * @param file store file
+	 * @throws IOException
+	 */
+	public void save(final Path file) throws IOException {
+		if ( file == null ) {
+			throw new IllegalArgumentException("null file given");
+		}
+
+		try ( FileChannel chan = FileChannel.open(file, StandardOpenOption.CREATE,
+												  StandardOpenOption.TRUNCATE_EXISTING,
+												  StandardOpenOption.WRITE) ) {
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			header.putInt(MAGIC);
+			header.putInt(VERSION);
+			header.putInt(nofRows);
+			header.putInt(acctIDs.length);
+			header.putInt(spltIDArea.capacity());
+			header.putLong(fingerprint);
+			header.position(0);
+			writeFully(chan, header);
+
+			for ( ByteBuffer sect : sections ) {
+				writeFully(chan, sect.duplicate().clear());
+			}
+
+			for ( int j = 0; j < acctIDs.length; j++ ) {
+				byte[] idBytes = acctIDs[j].getBytes(StandardCharsets.UTF_8);
+				ByteBuffer acctEntry = ByteBuffer.allocate(1 + Integer.BYTES + idBytes.length).order(ByteOrder.LITTLE_ENDIAN);
+				acctEntry.put(acctTypeOrds[j]);
+				acctEntry.putInt(idBytes.length);
+				acctEntry.put(idBytes);
+				acctEntry.flip();
+				writeFully(chan, acctEntry);
+			}
+		}
+
+		LOGGER.debug("save: Saved off-heap column store over " + nofRows + " splits: " + file);
+	}
+
+    // ---------------------------------------------------------------
+
+	@Override
+	public int size() {
+		return nofRows;
+	}
+
+	/**
+	 * @return fingerprint of the splits the store has been built from:
+	 * IDs, dates, accounts, actions, values and shares (independent of
+	 * the splits' order)
+	 */
+	public long getFingerprint() {
+		return fingerprint;
+	}
+
+	@Override
+	public int getNofAccounts() {
+		return acctIDs.length;
+	}
+
+	@Override
+	public int getEpochDay(final int row) {
+		return epochDays.get(row);
+	}
+
+	@Override
+	public int getAccountOrdinal(final int row) {
+		return acctOrds.get(row);
+	}
+
+	@Override
+	public int getActionOrdinal(final int row) {
+		return actionOrds.get(row);
+	}
+
+	@Override
+	public long getValueScaled(final int row) {
+		return values.get(row);
+	}
+
+	@Override
+	public long getSharesScaled(final int row) {
+		return shares.get(row);
+	}
+
+	/**
+	 * @throws IllegalStateException if no KMyMoney file is attached
+	 */
+	@Override
+	public KMyMoneyTransactionSplit getSplit(final int row) {
+		if ( kmmFile == null ) {
+			throw new IllegalStateException("no KMyMoney file attached");
+		}
+
+		int from = spltIDOffsets.get(row);
+		int to   = spltIDOffsets.get(row + 1);
+		byte[] idBytes = new byte[to - from];
+		spltIDArea.duplicate().position(from).get(idBytes);
+
+		String ids = new String(idBytes, StandardCharsets.UTF_8);
+		int sepPos = ids.indexOf(ID_SEP);
+		return kmmFile.getTransactionSplitByID(new KMMQualifSpltID(new KMMTrxID(ids.substring(0, sepPos)),
+																   new KMMSpltID(ids.substring(sepPos + 1))));
+	}
+
+	@Override
+	public int getAccountOrdinal(final String acctID) {
+		Integer result = acctOrdMap.get(acctID);
+		return result == null ? NONE : result;
+	}
+
+	@Override
+	public String getAccountID(final int acctOrd) {
+		return acctIDs[acctOrd];
+	}
+
+	@Override
+	public int getAccountTypeOrdinal(final int acctOrd) {
+		return acctTypeOrds[acctOrd];
+	}
+
+    // ---------------------------------------------------------------
+
+	@Override
+	public int[] select(final TransactionSplitFilter flt) {
+		return select(flt, null, null);
+	}
+
+	@Override
+	public int[] select(final TransactionSplitFilter flt,
+						final LocalDate datePostedFrom, final LocalDate datePostedTo) {
+		if ( flt == null ) {
+			throw new IllegalArgumentException("null transaction-split-filter given");
+		}
+
+		CompiledTransactionSplitFilter cflt = flt.compile();
+
+		// Rows are in date order: period = range of rows
+		int fromRow = ( datePostedFrom == null ) ? 0 : lowerBound((int) datePostedFrom.toEpochDay());
+		int toRow   = ( datePostedTo == null ) ? nofRows : lowerBound((int) datePostedTo.toEpochDay() + 1);
+
+		ColumnCriteria crit = new ColumnCriteria(cflt, this);
+		if ( crit.noMatch ) {
+			return new int[0];
+		}
+
+		// sic, locals for the tight loop
+		int     action     = crit.action;
+		int     acctOrd    = crit.acctOrd;
+		int     acctType   = crit.acctType;
+		long    valueFrom  = crit.valueFrom;
+		long    valueTo    = crit.valueTo;
+		long    sharesFrom = crit.sharesFrom;
+		long    sharesTo   = crit.sharesTo;
+		boolean checkMemo  = crit.checkMemo;
+
+		int[] result = new int[Math.max(0, toRow - fromRow)];
+		int nofResults = 0;
+		for ( int i = fromRow; i < toRow; i++ ) {
+			if ( action != NONE && actionOrds.get(i) != action )
+				continue;
+			int ord = acctOrds.get(i);
+			if ( acctOrd != NONE && ord != acctOrd )
+				continue;
+			if ( acctType != NONE && acctTypeOrds[ord] != acctType )
+				continue;
+			long value = values.get(i);
+			if ( value < valueFrom || value > valueTo )
+				continue;
+			long shrs = shares.get(i);
+			if ( shrs < sharesFrom || shrs > sharesTo )
+				continue;
+			if ( checkMemo && ! cflt.matchesCriteria(getSplit(i)) )
+				continue;
+
+			result[nofResults++] = i;
+		}
+
+		return Arrays.copyOf(result, nofResults);
+	}
+
+	@Override
+	public ArrayList<KMyMoneyTransactionSplit> getSplits(final int[] rows) {
+		ArrayList<KMyMoneyTransactionSplit> result = new ArrayList<KMyMoneyTransactionSplit>(rows.length);
+		for ( int row : rows ) {
+			result.add(getSplit(row));
+		}
+
+		return result;
+	}
+
+	@Override
+	public long sumValueScaled(final int[] rows) {
+		long result = 0;
+		for ( int row : rows ) {
+			result = Math.addExact(result, values.get(row));
+		}
+
+		return result;
+	}
+
+	@Override
+	public long sumSharesScaled(final int[] rows) {
+		long result = 0;
+		for ( int row : rows ) {
+			result = Math.addExact(result, shares.get(row));
+		}
+
+		return result;
+	}
+
+    // ---------------------------------------------------------------
+
+	// First row whose epoch day is >= key
+	private int lowerBound(final int key) {
+		int low  = 0;
+		int high = nofRows;
+		while ( low < high ) {
+			int mid = ( low + high ) >>> 1;
+			if ( epochDays.get(mid) < key )
+				low = mid + 1;
+			else
+				high = mid;
+		}
+
+		return low;
+	}
+
+	private static byte[] getIDBytes(final KMyMoneyTransactionSplit splt) {
+		return ( splt.getTransactionID().toString() + (char) ID_SEP + splt.getID().toString() )
+					.getBytes(StandardCharsets.UTF_8);
+	}
+
+	// Sum of the splits' hashes, i.e. independent of their order
+	private static long getFingerprint(final Collection<? extends KMyMoneyTransactionSplit> splts) {
+		long result = 0;
+		for ( KMyMoneyTransactionSplit splt : splts ) {
+			long hash = FNV_OFFSET;
+			hash = hash(hash, getIDBytes(splt));
+			hash = hash(hash, splt.getAccountID().toString().getBytes(StandardCharsets.UTF_8));
+			hash = hash(hash, splt.getTransaction().getDatePosted().toEpochDay());
+			hash = hash(hash, ( splt.getAction() == null ) ? NONE : splt.getAction().ordinal());
+			hash = hash(hash, ScaledAmount.toScaled(splt.getValue()));
+			hash = hash(hash, ScaledAmount.toScaled(splt.getShares()));
+			result += hash;
+		}
+
+		return result;
+	}
+
+	private static long hash(long hash, final byte[] bytes) {
+		for ( byte b : bytes ) {
+			hash = ( hash ^ ( b & 0xFF ) ) * FNV_PRIME;
+		}
+
+		return hash;
+	}
+
+	private static long hash(long hash, long val) {
+		for ( int k = 0; k < Long.BYTES; k++ ) {
+			hash = ( hash ^ ( val & 0xFF ) ) * FNV_PRIME;
+			val >>>= 8;
+		}
+
+		return hash;
+	}
+
+	// Sizes of the row sections, in file order
+	private static int[] getSectionSizes(final int nofRows, final int idAreaSize) {
+		long[] sizes = { (long) nofRows * Integer.BYTES,      // epoch days
+						 (long) nofRows * Integer.BYTES,      // account ordinals
+						 nofRows,                             // action ordinals
+						 (long) nofRows * Long.BYTES,         // values
+						 (long) nofRows * Long.BYTES,         // shares
+						 (long) ( nofRows + 1 ) * Integer.BYTES, // split-ID offsets
+						 idAreaSize };                        // split IDs
+
+		int[] result = new int[sizes.length];
+		for ( int k = 0; k < sizes.length; k++ ) {
+			checkSectionSize(sizes[k]);
+			result[k] = (int) sizes[k];
+		}
+
+		return result;
+	}
+
+	private static ByteBuffer[] allocateSections(final int nofRows, final int idAreaSize) {
+		int[] sizes = getSectionSizes(nofRows, idAreaSize);
+		ByteBuffer[] result = new ByteBuffer[sizes.length];
+		for ( int k = 0; k < sizes.length; k++ ) {
+			result[k] = ByteBuffer.allocateDirect(sizes[k]).order(ByteOrder.LITTLE_ENDIAN);
+		}
+
+		return result;
+	}
+
+	private static void checkSectionSize(final long size) {
+		if ( size > Integer.MAX_VALUE ) {
+			throw new IllegalStateException("too many splits for off-heap column store (column > 2 GB)");
+		}
+	}
+
+	private static void writeFully(final FileChannel chan, final ByteBuffer buf) throws IOException {
+		while ( buf.hasRemaining() ) {
+			chan.write(buf);
+		}
+	}
+
+}
@@ -0,0 +1,82 @@
+package org.kmymoney.apiext.trxmgr;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Predicate;
+
+/**
+ * Fork/join task that evaluates a predicate on chunks of a candidate
+ * array in parallel and returns the matching elements in their
+ * original order.
+ * <br>
+ * The predicate has to be thread-safe (e.g. a compiled filter).
+ */
+class ParallelFilterTask<T> extends RecursiveTask<ArrayList<T>> {
+
+	private static final long serialVersionUID = 3150972735526917724L;
+
+	// Below this size, a chunk is not split any further
+	static final int MIN_CHUNK_SIZE = 1024;
+
+    // ---------------------------------------------------------------
+
+	private final T[]                  cands;
+	private final int                  fromIdx;
+	private final int                  toIdx;
+	private final int                  chunkSize;
+	private final Predicate<? super T> pred;
+
+    // ---------------------------------------------------------------
+
+	private ParallelFilterTask(final T[] cands, final int fromIdx, final int toIdx,
+							   final int chunkSize, final Predicate<? super T> pred) {
+		this.cands = cands;
+		this.fromIdx = fromIdx;
+		this.toIdx = toIdx;
+		this.chunkSize = chunkSize;
+		this.pred = pred;
+	}
+
+    // ---------------------------------------------------------------
+
+	@SuppressWarnings("unchecked")
+	static <T> ArrayList<T> filter(final Collection<? extends T> candColl,
+								   final Predicate<? super T> pred,
+								   final ForkJoinPool pool) {
+		T[] cands = (T[]) candColl.toArray();
+
+		// Roughly four chunks per worker, so that unequal chunks even out
+		int chunkSize = Math.max(MIN_CHUNK_SIZE, cands.length / ( pool.getParallelism() * 4 ) + 1);
+
+		return pool.invoke(new ParallelFilterTask<T>(cands, 0, cands.length, chunkSize, pred));
+	}
+
+    // ---------------------------------------------------------------
+
+	@Override
+	protected ArrayList<T> compute() {
+		if ( toIdx - fromIdx <= chunkSize ) {
+			ArrayList<T> result = new ArrayList<T>();
+			for ( int i = fromIdx; i < toIdx; i++ ) {
+				if ( pred.test(cands[i]) ) {
+					result.add(cands[i]);
+				}
+			}
+			return result;
+		}
+
+		int midIdx = ( fromIdx + toIdx ) >>> 1;
+		ParallelFilterTask<T> left  = new ParallelFilterTask<T>(cands, fromIdx, midIdx, chunkSize, pred);
+		ParallelFilterTask<T> right = new ParallelFilterTask<T>(cands, midIdx, toIdx, chunkSize, pred);
+		left.fork();
+		ArrayList<T> rightResult = right.compute();
+		ArrayList<T> result = left.join();
+
+		// sic, left before right: original order
+		result.addAll(rightResult);
+		return result;
+	}
+
+}
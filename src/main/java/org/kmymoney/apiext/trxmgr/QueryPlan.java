@@ -0,0 +1,174 @@
+package org.kmymoney.apiext.trxmgr;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The access path chosen by the query planner for one search, together
+ * with the estimates of all the paths that have been considered.
+ * <br>
+ * Whatever the path, the complete filter is checked on the candidates
+ * afterwards (residual filter), so the path only affects the performance,
+ * not the results.
+ *
+ * @see TransactionFinder#explain(TransactionFilter, boolean, TransactionFilter.SplitLogic)
+ * @see TransactionSplitFinder#explain(TransactionSplitFilter, java.time.LocalDate, java.time.LocalDate)
+ */
+public final class QueryPlan {
+
+	public enum AccessPath {
+		FULL_SCAN,     // all objects (of the period, if given), in file order
+		DATE_INDEX,    // range of the date index
+		ACCOUNT_INDEX, // one account's splits
+		VALUE_INDEX,   // range of the value index
+		SHARES_INDEX,  // range of the shares index
+		MEMO_INDEX,    // trigram index (if enabled)
+		BITMAP_INDEX   // account-type/action bitmaps
+	}
+
+	/**
+	 * One access path considered by the planner
+	 */
+	public static final class Candidate {
+		private final AccessPath path;
+		private final boolean    viaSplits;
+		private final int        estRows;
+		private final double     cost;
+		// Exact selection (bitmap path), if computed for the estimate
+		private final BitSet     selection;
+
+		Candidate(final AccessPath path, final boolean viaSplits, final int estRows, final double cost) {
+			this(path, viaSplits, estRows, cost, null);
+		}
+
+		Candidate(final AccessPath path, final boolean viaSplits, final int estRows, final double cost,
+				  final BitSet selection) {
+			this.path = path;
+			this.viaSplits = viaSplits;
+			this.estRows = estRows;
+			this.cost = cost;
+			this.selection = selection;
+		}
+
+		public AccessPath getAccessPath() {
+			return path;
+		}
+
+		/**
+		 * @return true if the transactions are found by way of
+		 * their splits (split-level index)
+		 */
+		public boolean isViaSplits() {
+			return viaSplits;
+		}
+
+		/**
+		 * @return estimated number of candidates delivered by the path
+		 */
+		public int getEstimatedRows() {
+			return estRows;
+		}
+
+		public double getCost() {
+			return cost;
+		}
+
+		@Override
+		public String toString() {
+			return path + ( viaSplits ? " (via splits)" : "" ) +
+				   ": est. rows=" + estRows + ", cost=" + String.format("%.1f", cost);
+		}
+	}
+
+    // ---------------------------------------------------------------
+
+	private final String          objType;
+	private final int             nofObjects;
+	private final Candidate       chosen;
+	private final List<Candidate> candidates;
+	private final String          residualFilter;
+
+    // ---------------------------------------------------------------
+
+	QueryPlan(final String objType, final int nofObjects,
+			  final List<Candidate> candidates, final String residualFilter) {
+		if ( candidates == null ||
+			 candidates.isEmpty() ) {
+			throw new IllegalArgumentException("null or empty candidate list given");
+		}
+
+		this.objType = objType;
+		this.nofObjects = nofObjects;
+		this.candidates = Collections.unmodifiableList(new ArrayList<Candidate>(candidates));
+		this.residualFilter = residualFilter;
+
+		// sic, first one wins on equal cost (candidates are given in order of preference)
+		Candidate best = candidates.get(0);
+		for ( Candidate cand : candidates ) {
+			if ( cand.getCost() < best.getCost() ) {
+				best = cand;
+			}
+		}
+		this.chosen = best;
+	}
+
+    // ---------------------------------------------------------------
+
+	public AccessPath getAccessPath() {
+		return chosen.getAccessPath();
+	}
+
+	public boolean isViaSplits() {
+		return chosen.isViaSplits();
+	}
+
+	public int getEstimatedRows() {
+		return chosen.getEstimatedRows();
+	}
+
+	/**
+	 * @return the selection computed for the chosen path's estimate
+	 * (to be reused upon execution, not to be modified), null if there is none
+	 */
+	BitSet getSelection() {
+		return chosen.selection;
+	}
+
+	/**
+	 * @return all access paths that have been considered
+	 */
+	public List<Candidate> getCandidates() {
+		return candidates;
+	}
+
+	/**
+	 * @return human-readable description of the plan
+	 */
+	public String explain() {
+		StringBuilder result = new StringBuilder();
+
+		result.append("Access path: " + chosen.getAccessPath() + ( chosen.isViaSplits() ? " (via splits)" : "" ) +
+				      ", est. " + chosen.getEstimatedRows() + " of " + nofObjects + " " + objType + "\n");
+		result.append("Considered:\n");
+		for ( Candidate cand : candidates ) {
+			result.append("  " + ( cand == chosen ? "* " : "  " ) + cand.toString() + "\n");
+		}
+		result.append("Residual filter: " + residualFilter + "\n");
+
+		return result.toString();
+	}
+
+	// ---------------------------------------------------------------
+
+	@Override
+	public String toString() {
+		return "QueryPlan [" +
+			    "accessPath=" + chosen.getAccessPath() + ", " +
+			     "viaSplits=" + chosen.isViaSplits() + ", " +
+			       "estRows=" + chosen.getEstimatedRows() + ", " +
+			 "nofCandidates=" + candidates.size() + "]";
+	}
+
+}
@@ -0,0 +1,555 @@
+package org.kmymoney.apiext.trxmgr;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.kmymoney.api.read.KMyMoneyFile;
+import org.kmymoney.api.read.KMyMoneyTransaction;
+import org.kmymoney.api.read.KMyMoneyTransactionSplit;
+import org.kmymoney.apiext.Const;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Cost-based choice of the access path for the finders: Every index that
+ * is applicable to the filter's criteria is considered, its number of
+ * candidates is estimated from the {@link QueryStatistics}, and the
+ * cheapest one is taken.
+ * <br>
+ * Costs are given in "objects touched". Index build costs are not taken
+ * into account (they are paid once per file, cf. {@link TransactionIndexes}).
+ * Planning itself builds nothing but the statistics: The bitmap and memo
+ * estimates are exact if these indexes have been built already (the bitmap
+ * selection is then reused upon execution), otherwise they are derived from
+ * the statistics resp. a default selectivity.
+ * <br>
+ * A planner belongs to one finder and one generation of the indexes
+ * (cf. {@link #isCurrent(boolean, boolean)}), and it keeps its plans.
+ * <br>
+ * With the indexes disabled, the only path is the full scan over the
+ * live file (restricted to the period, if given). The live file is not
+ * sorted by date: Callers that need the date order sort their matches
+ * only (cf. {@link #isDateOrdered()}).
+ */
+class QueryPlanner {
+
+	// Extra cost per candidate for the paths that have to re-sort
+	// positions and/or restrict to the period afterwards
+	private static final double FACTOR_SORTED_POS = 1.5;
+
+	// Extra cost per candidate for the paths that find the transactions
+	// by way of their splits (mapping, de-duplication, more splits than transactions)
+	private static final double FACTOR_VIA_SPLITS = 2.0;
+
+	// Assumed fraction of the objects matching a memo criterion,
+	// as long as the trigram index has not been built
+	private static final double DEFAULT_MEMO_SELECTIVITY = 0.1;
+
+	// Max. number of plans kept
+	private static final int MAX_PLANS = 64;
+
+    // Logger
+    private static final Logger LOGGER = LoggerFactory.getLogger(QueryPlanner.class);
+
+    // ---------------------------------------------------------------
+
+	private final KMyMoneyFile       kmmFile;
+	// null means: indexes disabled
+	private final TransactionIndexes idx;
+	private final boolean            memoIdxEnabled;
+
+	// By canonical form of the search; access order, i.e. eldest = least recently used
+	private final LinkedHashMap<String, QueryPlan> plans;
+
+    // ---------------------------------------------------------------
+
+	QueryPlanner(final KMyMoneyFile kmmFile, final boolean indexesEnabled, final boolean memoIdxEnabled) {
+		if ( kmmFile == null ) {
+			throw new IllegalArgumentException("null KMyMoney-file object given");
+		}
+
+		this.kmmFile = kmmFile;
+		this.idx = indexesEnabled ? TransactionIndexes.of(kmmFile) : null;
+		this.memoIdxEnabled = memoIdxEnabled;
+		this.plans = new LinkedHashMap<String, QueryPlan>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, QueryPlan> eldest) {
+				return size() > MAX_PLANS;
+			}
+		};
+	}
+
+    // ---------------------------------------------------------------
+
+	/**
+	 * @return whether this planner is still applicable, i.e. it has been
+	 * created with the given settings, and the file has not been modified
+	 * since (cf. {@link TransactionIndexes#invalidate(KMyMoneyFile)})
+	 */
+	boolean isCurrent(final boolean indexesEnabled, final boolean memoIdxEnabled) {
+		return ( idx != null ) == indexesEnabled &&
+			   this.memoIdxEnabled == memoIdxEnabled &&
+			   ( idx == null || ! idx.isStale() );
+	}
+
+    // ---------------------------------------------------------------
+	// Splits
+
+	QueryPlan plan(final CompiledTransactionSplitFilter cflt,
+				   final LocalDate datePostedFrom, final LocalDate datePostedTo) {
+		if ( idx == null ) {
+			return planLive("splits", getLiveSplits(datePostedFrom, datePostedTo).size(), cflt.toString());
+		}
+
+		String key = "splits:" + cflt.getCanonicalKey() + ";datePosted=" + datePostedFrom + ".." + datePostedTo;
+		QueryPlan result = getPlan(key);
+		if ( result != null ) {
+			return result;
+		}
+
+		QueryStatistics stats = idx.getStatistics();
+
+		ArrayList<QueryPlan.Candidate> candList = new ArrayList<QueryPlan.Candidate>();
+		addSplitCandidates(candList, cflt, datePostedFrom, datePostedTo, false);
+
+		result = new QueryPlan("splits", stats.getNofSplits(), candList, cflt.toString());
+		LOGGER.debug("plan: " + result);
+		putPlan(key, result);
+		return result;
+	}
+
+	/**
+	 * @return the splits to be checked (cheapest access path),
+	 * restricted to the given period
+	 */
+	Collection<KMyMoneyTransactionSplit> getSplits(final CompiledTransactionSplitFilter cflt,
+												   final LocalDate datePostedFrom, final LocalDate datePostedTo) {
+		if ( idx == null ) {
+			return getLiveSplits(datePostedFrom, datePostedTo);
+		}
+
+		return getSplits(plan(cflt, datePostedFrom, datePostedTo), cflt, datePostedFrom, datePostedTo);
+	}
+
+	/**
+	 * @return all splits, grouped by transaction: in date-posted order of
+	 * their transactions with the indexes enabled, otherwise in the live
+	 * file's order (cf. {@link #isDateOrdered()})
+	 */
+	Collection<KMyMoneyTransactionSplit> getSplitsByTransaction() {
+		if ( idx != null ) {
+			return idx.getSplitsByDate();
+		}
+
+		// sic, not kmmFile.getTransactionSplits(): not necessarily grouped
+		ArrayList<KMyMoneyTransactionSplit> result = new ArrayList<KMyMoneyTransactionSplit>();
+		for ( KMyMoneyTransaction trx : kmmFile.getTransactions() ) {
+			result.addAll(trx.getSplits());
+		}
+
+		return result;
+	}
+
+	private Collection<KMyMoneyTransactionSplit> getSplits(final QueryPlan plan,
+														   final CompiledTransactionSplitFilter cflt,
+														   final LocalDate datePostedFrom, final LocalDate datePostedTo) {
+		switch ( plan.getAccessPath() ) {
+		case ACCOUNT_INDEX:
+			return idx.getAccountIndex().getSplits(cflt.getAcctID(), datePostedFrom, datePostedTo);
+		case VALUE_INDEX:
+			return restrictToPeriod(idx.getValueIndex().getSplits(cflt.getValueFromAmount(), cflt.getValueToAmount()),
+									datePostedFrom, datePostedTo);
+		case SHARES_INDEX:
+			return restrictToPeriod(idx.getSharesIndex().getSplits(cflt.getSharesFromAmount(), cflt.getSharesToAmount()),
+									datePostedFrom, datePostedTo);
+		case MEMO_INDEX:
+			return restrictToPeriod(idx.getSplitMemoIndex().getCandidates(cflt.getMemoPart()),
+									datePostedFrom, datePostedTo);
+		case BITMAP_INDEX:
+			BitSet spltRows = plan.getSelection();
+			if ( spltRows == null ) {
+				spltRows = idx.getBitmapIndex().select(cflt, datePostedFrom, datePostedTo);
+			}
+			return idx.getBitmapIndex().getSplits(spltRows);
+		case DATE_INDEX:
+			ArrayList<KMyMoneyTransactionSplit> result = new ArrayList<KMyMoneyTransactionSplit>();
+			for ( KMyMoneyTransaction trx : idx.getDateIndex().getTransactions(datePostedFrom, datePostedTo) ) {
+				result.addAll(trx.getSplits());
+			}
+			return result;
+		default:
+			return getLiveSplits(datePostedFrom, datePostedTo);
+		}
+	}
+
+    // ---------------------------------------------------------------
+	// Transactions
+
+	QueryPlan plan(final CompiledTransactionFilter cflt,
+				   final boolean withSplits,
+				   final TransactionFilter.SplitLogic splitLogic) {
+		if ( idx == null ) {
+			return planLive("transactions",
+							getLiveTransactions(cflt.getDatePostedFrom(), cflt.getDatePostedTo()).size(),
+							cflt.toString());
+		}
+
+		String key = "transactions:" + cflt.getCanonicalKey(withSplits, splitLogic);
+		QueryPlan result = getPlan(key);
+		if ( result != null ) {
+			return result;
+		}
+
+		QueryStatistics stats = idx.getStatistics();
+		int nofTrx = stats.getNofTransactions();
+
+		ArrayList<QueryPlan.Candidate> candList = new ArrayList<QueryPlan.Candidate>();
+		candList.add(new QueryPlan.Candidate(QueryPlan.AccessPath.FULL_SCAN, false, nofTrx, nofTrx));
+
+		if ( cflt.getDatePostedFrom() != null ||
+			 cflt.getDatePostedTo() != null ) {
+			int est = stats.estimateTransactions(cflt.getDatePostedFrom(), cflt.getDatePostedTo());
+			candList.add(new QueryPlan.Candidate(QueryPlan.AccessPath.DATE_INDEX, false, est, est));
+		}
+
+		if ( memoIdxEnabled &&
+			 cflt.getMemoPart() != null ) {
+			int est = idx.hasTransactionMemoIndex() ?
+						idx.getTransactionMemoIndex().estimate(cflt.getMemoPart()) :
+						estimateMemo(cflt.getMemoPart(), nofTrx);
+			if ( est >= 0 ) {
+				candList.add(new QueryPlan.Candidate(QueryPlan.AccessPath.MEMO_INDEX, false, est,
+													 est * FACTOR_SORTED_POS));
+			}
+		}
+
+		// Split-level paths: A transaction matching the split criteria must have
+		// at least one matching split -- except with AND logic, where transactions
+		// without splits match as well.
+		if ( withSplits &&
+			 cflt.getSplitFilter() != null &&
+			 ( splitLogic == TransactionFilter.SplitLogic.OR ||
+			   stats.getNofTransactionsWithoutSplits() == 0 ) ) {
+			addSplitCandidates(candList, cflt.getSplitFilter(),
+							   cflt.getDatePostedFrom(), cflt.getDatePostedTo(), true);
+		}
+
+		// Bitmaps: Transactions derived from the split bits directly
+		// (for both logics, no mapping/de-duplication needed)
+		if ( withSplits &&
+			 splitLogic != null &&
+			 hasBitmapCriteria(cflt.getSplitFilter()) ) {
+			if ( idx.hasBitmapIndex() ) {
+				BitSet trxPos = selectTransactionBits(cflt, splitLogic);
+				int est = trxPos.cardinality();
+				candList.add(new QueryPlan.Candidate(QueryPlan.AccessPath.BITMAP_INDEX, false, est, est, trxPos));
+			} else {
+				int est = estimateBitmapTransactions(stats, cflt, splitLogic);
+				candList.add(new QueryPlan.Candidate(QueryPlan.AccessPath.BITMAP_INDEX, false, est, est));
+			}
+		}
+
+		result = new QueryPlan("transactions", nofTrx, candList, cflt.toString());
+		LOGGER.debug("plan: " + result);
+		putPlan(key, result);
+		return result;
+	}
+
+	/**
+	 * @return the transactions to be checked (cheapest access path)
+	 */
+	Collection<? extends KMyMoneyTransaction> getTransactions(final CompiledTransactionFilter cflt,
+															  final boolean withSplits,
+															  final TransactionFilter.SplitLogic splitLogic) {
+		if ( idx == null ) {
+			return getLiveTransactions(cflt.getDatePostedFrom(), cflt.getDatePostedTo());
+		}
+
+		return getTransactions(plan(cflt, withSplits, splitLogic), cflt, splitLogic);
+	}
+
+	/**
+	 * @return whether {@link #getTransactionsInPeriod(LocalDate, LocalDate)} and
+	 * {@link #getSplitsByTransaction()} deliver in date-posted order 
+	 * (cf. {@link TransactionDateIndex#DATE_ORDER}), i.e. whether the indexes
+	 * are enabled. Otherwise, they deliver in the live file's order, and
+	 * the callers have to sort (their matches, not all candidates).
+	 */
+	boolean isDateOrdered() {
+		return idx != null;
+	}
+
+	/**
+	 * @return the transactions posted in the given period, ordered by
+	 * date posted if {@link #isDateOrdered()}, otherwise unordered
+	 * (live file, neither copied nor sorted)
+	 */
+	Collection<? extends KMyMoneyTransaction> getTransactionsInPeriod(final LocalDate datePostedFrom,
+																	  final LocalDate datePostedTo) {
+		if ( idx != null ) {
+			return idx.getDateIndex().getTransactions(datePostedFrom, datePostedTo);
+		}
+
+		return getLiveTransactions(datePostedFrom, datePostedTo);
+	}
+
+	/**
+	 * @return the transactions posted in the given period, ordered by
+	 * date posted. Only with the indexes enabled (cf. {@link #isDateOrdered()}).
+	 */
+	List<KMyMoneyTransaction> getTransactionsByDate(final LocalDate datePostedFrom, final LocalDate datePostedTo) {
+		if ( idx == null ) {
+			throw new IllegalStateException("indexes disabled");
+		}
+
+		return idx.getDateIndex().getTransactions(datePostedFrom, datePostedTo);
+	}
+
+	private Collection<? extends KMyMoneyTransaction> getTransactions(final QueryPlan plan,
+																	  final CompiledTransactionFilter cflt,
+																	  final TransactionFilter.SplitLogic splitLogic) {
+		if ( plan.isViaSplits() ) {
+			// sic: The splits come in date order, so the splits of
+			// one transaction are adjacent.
+			ArrayList<KMyMoneyTransaction> result = new ArrayList<KMyMoneyTransaction>();
+			KMyMoneyTransaction lastTrx = null;
+			for ( KMyMoneyTransactionSplit splt : getSplits(plan, cflt.getSplitFilter(),
+															cflt.getDatePostedFrom(), cflt.getDatePostedTo()) ) {
+				KMyMoneyTransaction trx = splt.getTransaction();
+				if ( lastTrx == null ||
+					 ! trx.getID().equals(lastTrx.getID()) ) {
+					result.add(trx);
+					lastTrx = trx;
+				}
+			}
+			return result;
+		}
+
+		switch ( plan.getAccessPath() ) {
+		case DATE_INDEX:
+			return idx.getDateIndex().getTransactions(cflt.getDatePostedFrom(), cflt.getDatePostedTo());
+		case MEMO_INDEX:
+			return idx.getTransactionMemoIndex().getCandidates(cflt.getMemoPart());
+		case BITMAP_INDEX:
+			BitSet trxPos = plan.getSelection();
+			if ( trxPos == null ) {
+				trxPos = selectTransactionBits(cflt, splitLogic);
+			}
+			return idx.getBitmapIndex().getTransactions(trxPos);
+		default:
+			return getLiveTransactions(cflt.getDatePostedFrom(), cflt.getDatePostedTo());
+		}
+	}
+
+    // ---------------------------------------------------------------
+	// Live file
+
+	private Collection<? extends KMyMoneyTransaction> getLiveTransactions(final LocalDate datePostedFrom,
+																		  final LocalDate datePostedTo) {
+		if ( datePostedFrom == null &&
+			 datePostedTo == null ) {
+			return kmmFile.getTransactions();
+		}
+
+		return kmmFile.getTransactions(datePostedFrom == null ? Const.TRX_SUPER_EARLY_DATE : datePostedFrom,
+									   datePostedTo == null ? Const.TRX_SUPER_LATE_DATE : datePostedTo);
+	}
+
+	private Collection<KMyMoneyTransactionSplit> getLiveSplits(final LocalDate datePostedFrom,
+															   final LocalDate datePostedTo) {
+		if ( datePostedFrom == null &&
+			 datePostedTo == null ) {
+			return kmmFile.getTransactionSplits();
+		}
+
+		ArrayList<KMyMoneyTransactionSplit> result = new ArrayList<KMyMoneyTransactionSplit>();
+		for ( KMyMoneyTransaction trx : getLiveTransactions(datePostedFrom, datePostedTo) ) {
+			result.addAll(trx.getSplits());
+		}
+
+		return result;
+	}
+
+	private static QueryPlan planLive(final String objType, final int nofObjects, final String residualFilter) {
+		ArrayList<QueryPlan.Candidate> candList = new ArrayList<QueryPlan.Candidate>();
+		candList.add(new QueryPlan.Candidate(QueryPlan.AccessPath.FULL_SCAN, false, nofObjects, nofObjects));
+
+		QueryPlan result = new QueryPlan(objType, nofObjects, candList, residualFilter);
+		LOGGER.debug("plan: " + result + " (indexes disabled)");
+		return result;
+	}
+
+    // ---------------------------------------------------------------
+
+	private void addSplitCandidates(final List<QueryPlan.Candidate> candList,
+									final CompiledTransactionSplitFilter cflt,
+									final LocalDate datePostedFrom, final LocalDate datePostedTo,
+									final boolean viaSplits) {
+		QueryStatistics stats = idx.getStatistics();
+		int nofSplts = stats.getNofSplits();
+		double factor = viaSplits ? FACTOR_VIA_SPLITS : 1.0;
+
+		if ( ! viaSplits ) {
+			candList.add(new QueryPlan.Candidate(QueryPlan.AccessPath.FULL_SCAN, false, nofSplts, nofSplts));
+		}
+
+		// Fraction of the splits in the period
+		double dateSel = 1.0;
+		if ( datePostedFrom != null ||
+			 datePostedTo != null ) {
+			int est = stats.estimateSplits(datePostedFrom, datePostedTo);
+			dateSel = ( nofSplts == 0 ) ? 0.0 : (double) est / nofSplts;
+			if ( ! viaSplits ) {
+				candList.add(new QueryPlan.Candidate(QueryPlan.AccessPath.DATE_INDEX, false, est, est));
+			}
+		}
+
+		if ( cflt.getAcctID() != null ) {
+			// sic: independence of account and date assumed
+			int est = (int) Math.ceil(stats.getNofSplits(cflt.getAcctID()) * dateSel);
+			candList.add(new QueryPlan.Candidate(QueryPlan.AccessPath.ACCOUNT_INDEX, viaSplits, est,
+												 est * factor));
+		}
+
+		if ( cflt.getValueFromAmount().isSet() ||
+			 cflt.getValueToAmount().isSet() ) {
+			double sel = stats.getValueSelectivity(cflt.getValueFromAmount().getLowerKey(),
+												   cflt.getValueToAmount().getUpperKey());
+			int est = (int) Math.ceil(sel * nofSplts);
+			candList.add(new QueryPlan.Candidate(QueryPlan.AccessPath.VALUE_INDEX, viaSplits, est,
+												 est * FACTOR_SORTED_POS * factor));
+		}
+
+		if ( cflt.getSharesFromAmount().isSet() ||
+			 cflt.getSharesToAmount().isSet() ) {
+			double sel = stats.getSharesSelectivity(cflt.getSharesFromAmount().getLowerKey(),
+													cflt.getSharesToAmount().getUpperKey());
+			int est = (int) Math.ceil(sel * nofSplts);
+			candList.add(new QueryPlan.Candidate(QueryPlan.AccessPath.SHARES_INDEX, viaSplits, est,
+												 est * FACTOR_SORTED_POS * factor));
+		}
+
+		if ( memoIdxEnabled &&
+			 cflt.getMemoPart() != null ) {
+			int est = idx.hasSplitMemoIndex() ?
+						idx.getSplitMemoIndex().estimate(cflt.getMemoPart()) :
+						estimateMemo(cflt.getMemoPart(), nofSplts);
+			if ( est >= 0 ) {
+				candList.add(new QueryPlan.Candidate(QueryPlan.AccessPath.MEMO_INDEX, viaSplits, est,
+													 est * FACTOR_SORTED_POS * factor));
+			}
+		}
+
+		// sic, already in date order and restricted to the period
+		if ( ! viaSplits &&
+			 hasBitmapCriteria(cflt) ) {
+			if ( idx.hasBitmapIndex() ) {
+				BitSet spltRows = idx.getBitmapIndex().select(cflt, datePostedFrom, datePostedTo);
+				int est = spltRows.cardinality();
+				candList.add(new QueryPlan.Candidate(QueryPlan.AccessPath.BITMAP_INDEX, false, est, est, spltRows));
+			} else {
+				int est = (int) Math.ceil(getBitmapSelectivity(stats, cflt) * nofSplts * dateSel);
+				candList.add(new QueryPlan.Candidate(QueryPlan.AccessPath.BITMAP_INDEX, false, est, est));
+			}
+		}
+	}
+
+	private static boolean hasBitmapCriteria(final CompiledTransactionSplitFilter cflt) {
+		return cflt != null &&
+			   ( cflt.getAction() != null ||
+				 cflt.getAcctType() != null );
+	}
+
+	// Fraction of the splits matching the account-type and action criteria
+	// (independence assumed)
+	private static double getBitmapSelectivity(final QueryStatistics stats,
+											   final CompiledTransactionSplitFilter cflt) {
+		if ( stats.getNofSplits() == 0 ) {
+			return 0.0;
+		}
+
+		double result = 1.0;
+		if ( cflt.getAction() != null ) {
+			result *= (double) stats.getNofSplits(cflt.getAction()) / stats.getNofSplits();
+		}
+
+		if ( cflt.getAcctType() != null ) {
+			result *= (double) stats.getNofSplits(cflt.getAcctType()) / stats.getNofSplits();
+		}
+
+		return result;
+	}
+
+	private static int estimateBitmapTransactions(final QueryStatistics stats,
+												  final CompiledTransactionFilter cflt,
+												  final TransactionFilter.SplitLogic splitLogic) {
+		double sel = getBitmapSelectivity(stats, cflt.getSplitFilter());
+		int nofTrx = stats.estimateTransactions(cflt.getDatePostedFrom(), cflt.getDatePostedTo());
+		if ( splitLogic == TransactionFilter.SplitLogic.OR ) {
+			// At most one per matching split
+			int nofSplts = stats.estimateSplits(cflt.getDatePostedFrom(), cflt.getDatePostedTo());
+			return Math.min(nofTrx, (int) Math.ceil(sel * nofSplts));
+		}
+
+		// sic, rough: as if each transaction had one split
+		return (int) Math.ceil(sel * nofTrx);
+	}
+
+	// Without the index: default selectivity; -1 if the index is
+	// not applicable (no trigram, cf. MemoTrigramIndex.estimate())
+	private static int estimateMemo(final String memoPart, final int nofObjects) {
+		if ( memoPart.length() < 3 ) {
+			return -1;
+		}
+
+		return (int) Math.ceil(DEFAULT_MEMO_SELECTIVITY * nofObjects);
+	}
+
+	private BitSet selectTransactionBits(final CompiledTransactionFilter cflt,
+										 final TransactionFilter.SplitLogic splitLogic) {
+		SplitBitmapIndex bitmapIdx = idx.getBitmapIndex();
+		return bitmapIdx.selectTransactions(bitmapIdx.select(cflt.getSplitFilter(),
+															 cflt.getDatePostedFrom(), cflt.getDatePostedTo()),
+											splitLogic,
+											cflt.getDatePostedFrom(), cflt.getDatePostedTo());
+	}
+
+	private QueryPlan getPlan(final String key) {
+		synchronized ( plans ) {
+			return plans.get(key);
+		}
+	}
+
+	private void putPlan(final String key, final QueryPlan plan) {
+		synchronized ( plans ) {
+			plans.put(key, plan);
+		}
+	}
+
+	private static List<KMyMoneyTransactionSplit> restrictToPeriod(final List<KMyMoneyTransactionSplit> splts,
+																   final LocalDate datePostedFrom, final LocalDate datePostedTo) {
+		if ( datePostedFrom == null &&
+			 datePostedTo == null ) {
+			return splts;
+		}
+
+		ArrayList<KMyMoneyTransactionSplit> result = new ArrayList<KMyMoneyTransactionSplit>();
+		for ( KMyMoneyTransactionSplit splt : splts ) {
+			LocalDate datePosted = splt.getTransaction().getDatePosted();
+			if ( ( datePostedFrom == null || ! datePosted.isBefore(datePostedFrom) ) &&
+				 ( datePostedTo == null || ! datePosted.isAfter(datePostedTo) ) ) {
+				result.add(splt);
+			}
+		}
+
+		return result;
+	}
+
+}
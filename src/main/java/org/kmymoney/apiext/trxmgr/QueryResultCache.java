@@ -0,0 +1,143 @@
+package org.kmymoney.apiext.trxmgr;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.kmymoney.api.read.KMyMoneyFile;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Size-bounded cache (LRU) of query results, keyed by the canonical form
+ * of the search.
+ * <br>
+ * The whole cache is dropped as soon as the file has been modified, i.e.
+ * if a modification has been reported (cf. {@link TransactionIndexes#invalidate(KMyMoneyFile)};
+ * the mergers and {@link StandingQueryManager} report theirs) or if the
+ * number of transactions has changed (direct creations and removals).
+ *
+ * @param <T> type of the results
+ */
+class QueryResultCache<T> {
+
+    // Logger
+    private static final Logger LOGGER = LoggerFactory.getLogger(QueryResultCache.class);
+
+    // ---------------------------------------------------------------
+
+	private final KMyMoneyFile kmmFile;
+	private final int          maxSize;
+
+	// Access order, i.e. eldest = least recently used
+	private final LinkedHashMap<String, List<T>> entries;
+
+	// State of the file that the entries belong to
+	private long stamp;
+
+	private long nofHits   = 0;
+	private long nofMisses = 0;
+
+    // ---------------------------------------------------------------
+
+	QueryResultCache(final KMyMoneyFile kmmFile, final int maxSize) {
+		if ( kmmFile == null ) {
+			throw new IllegalArgumentException("null KMyMoney-file object given");
+		}
+
+		if ( maxSize <= 0 ) {
+			throw new IllegalArgumentException("non-positive cache size given");
+		}
+
+		this.kmmFile = kmmFile;
+		this.maxSize = maxSize;
+		this.entries = new LinkedHashMap<String, List<T>>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, List<T>> eldest) {
+				return size() > QueryResultCache.this.maxSize;
+			}
+		};
+		this.stamp = getStamp();
+	}
+
+    // ---------------------------------------------------------------
+
+	/**
+	 * @return the current state of the file. To be taken before
+	 * executing a query whose result is to be put into the cache.
+	 */
+	long getStamp() {
+		// sic, like TransactionIndexes.isStale()
+		return ( (long) TransactionIndexes.getModCount(kmmFile) << 32 ) | kmmFile.getTransactions().size();
+	}
+
+	/**
+	 * @return a copy of the cached result, null if there is none
+	 */
+	synchronized ArrayList<T> get(final String key) {
+		checkStamp();
+
+		List<T> result = entries.get(key);
+		if ( result == null ) {
+			nofMisses++;
+			return null;
+		}
+
+		nofHits++;
+		// sic, copy: the caller may change the list
+		return new ArrayList<T>(result);
+	}
+
+	/**
+	 * @param key canonical form of the search
+	 * @param result result of the search
+	 * @param stamp state of the file when the search has been started
+	 */
+	synchronized void put(final String key, final List<T> result, final long stamp) {
+		checkStamp();
+
+		if ( stamp != this.stamp ) {
+			// File has been changed in the meantime
+			return;
+		}
+
+		entries.put(key, new ArrayList<T>(result));
+	}
+
+	synchronized void clear() {
+		entries.clear();
+	}
+
+	// ---
+
+	int getMaxSize() {
+		return maxSize;
+	}
+
+	synchronized int size() {
+		return entries.size();
+	}
+
+	synchronized long getNofHits() {
+		return nofHits;
+	}
+
+	synchronized long getNofMisses() {
+		return nofMisses;
+	}
+
+    // ---------------------------------------------------------------
+
+	private void checkStamp() {
+		long currStamp = getStamp();
+		if ( currStamp != stamp ) {
+			LOGGER.debug("checkStamp: File has been modified, dropping " + entries.size() + " cached results");
+			entries.clear();
+			stamp = currStamp;
+		}
+	}
+
+}
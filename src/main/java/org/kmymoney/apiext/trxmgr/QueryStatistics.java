@@ -0,0 +1,302 @@
+package org.kmymoney.apiext.trxmgr;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+
+import org.kmymoney.api.read.KMyMoneyAccount;
+import org.kmymoney.api.read.KMyMoneyTransaction;
+import org.kmymoney.api.read.KMyMoneyTransactionSplit;
+
+/**
+ * Simple statistics over the transactions and splits of one KMyMoney file,
+ * used by the query planner to estimate the selectivity of filter criteria:
+ * <ul>
+ *   <li>number of splits per account, account type and action</li>
+ *   <li>monthly histograms of transactions and splits</li>
+ *   <li>quantiles of the split values and shares (from a sample)</li>
+ * </ul>
+ * The statistics are a snapshot (cf. {@link TransactionIndexes}).
+ */
+public class QueryStatistics {
+
+	// Max. number of splits sampled for the amount quantiles
+	private static final int NOF_QUANTILES = 1024;
+
+    // ---------------------------------------------------------------
+
+	private final int nofTrx;
+	private final int nofSplts;
+	private final int nofTrxWithoutSplits;
+
+	private final AccountOrdinalTable acctOrds;
+
+	// Index: account ordinal
+	private final int[] spltCntPerAcct;
+	private final int   nofAccts;
+
+	// Index: enum ordinal
+	private final int[] spltCntPerAcctType;
+	private final int[] spltCntPerAction;
+
+	// Months counted since year 0 (year * 12 + month - 1)
+	private final int   firstMonth;
+	private final int[] trxPerMonth;
+	private final int[] spltPerMonth;
+
+	// Sorted samples, scaled
+	private final long[] valueQuantiles;
+	private final long[] sharesQuantiles;
+
+    // ---------------------------------------------------------------
+
+	QueryStatistics(final TransactionDateIndex dateIdx, final List<KMyMoneyTransactionSplit> spltsByDate,
+					final AccountOrdinalTable acctOrds) {
+		if ( dateIdx == null ) {
+			throw new IllegalArgumentException("null date index given");
+		}
+
+		if ( spltsByDate == null ) {
+			throw new IllegalArgumentException("null transaction-split-list given");
+		}
+
+		if ( acctOrds == null ) {
+			throw new IllegalArgumentException("null account-ordinal-table given");
+		}
+
+		this.acctOrds = acctOrds;
+		nofTrx = dateIdx.size();
+		nofSplts = spltsByDate.size();
+
+		// Histograms
+		if ( nofTrx == 0 ) {
+			firstMonth = 0;
+			trxPerMonth = new int[0];
+			spltPerMonth = new int[0];
+		} else {
+			firstMonth = monthOf(dateIdx.get(0).getDatePosted());
+			int lastMonth = monthOf(dateIdx.get(nofTrx - 1).getDatePosted());
+			trxPerMonth = new int[lastMonth - firstMonth + 1];
+			spltPerMonth = new int[lastMonth - firstMonth + 1];
+		}
+
+		int cnt = 0;
+		for ( KMyMoneyTransaction trx : dateIdx.getTransactions() ) {
+			int bucket = monthOf(trx.getDatePosted()) - firstMonth;
+			trxPerMonth[bucket]++;
+			spltPerMonth[bucket] += trx.getSplits().size();
+			if ( trx.getSplits().isEmpty() ) {
+				cnt++;
+			}
+		}
+		nofTrxWithoutSplits = cnt;
+
+		// Splits per account and per action
+		spltCntPerAcct = new int[acctOrds.size()];
+		spltCntPerAction = new int[KMyMoneyTransactionSplit.Action.values().length];
+		cnt = 0;
+		for ( KMyMoneyTransactionSplit splt : spltsByDate ) {
+			int ord = acctOrds.getOrdinal(splt);
+			if ( ord != AccountOrdinalTable.NONE &&
+				 spltCntPerAcct[ord]++ == 0 ) {
+				cnt++;
+			}
+
+			if ( splt.getAction() != null ) {
+				spltCntPerAction[splt.getAction().ordinal()]++;
+			}
+		}
+		nofAccts = cnt;
+
+		// Splits per account type
+		spltCntPerAcctType = new int[KMyMoneyAccount.Type.values().length];
+		for ( int ord = 0; ord < spltCntPerAcct.length; ord++ ) {
+			int typeOrd = acctOrds.getAccountTypeOrdinal(ord);
+			if ( typeOrd != AccountOrdinalTable.NONE ) {
+				spltCntPerAcctType[typeOrd] += spltCntPerAcct[ord];
+			}
+		}
+
+		// Quantiles: evenly spread sample
+		int sampleSize = Math.min(NOF_QUANTILES, nofSplts);
+		valueQuantiles = new long[sampleSize];
+		sharesQuantiles = new long[sampleSize];
+		for ( int i = 0; i < sampleSize; i++ ) {
+			KMyMoneyTransactionSplit splt = spltsByDate.get((int) ( (long) i * nofSplts / sampleSize ));
+			valueQuantiles[i] = ScaledAmount.toScaled(splt.getValue());
+			sharesQuantiles[i] = ScaledAmount.toScaled(splt.getShares());
+		}
+		Arrays.sort(valueQuantiles);
+		Arrays.sort(sharesQuantiles);
+	}
+
+    // ---------------------------------------------------------------
+
+	public int getNofTransactions() {
+		return nofTrx;
+	}
+
+	public int getNofSplits() {
+		return nofSplts;
+	}
+
+	public int getNofTransactionsWithoutSplits() {
+		return nofTrxWithoutSplits;
+	}
+
+	/**
+	 * @param acctID account ID (string form)
+	 * @return number of splits bound to the given account
+	 */
+	public int getNofSplits(final String acctID) {
+		int ord = acctOrds.getOrdinal(acctID);
+		return ord == AccountOrdinalTable.NONE ? 0 : spltCntPerAcct[ord];
+	}
+
+	/**
+	 * @return number of splits bound to an account of the given type
+	 */
+	public int getNofSplits(final KMyMoneyAccount.Type acctType) {
+		if ( acctType == null ) {
+			throw new IllegalArgumentException("null account type given");
+		}
+
+		return spltCntPerAcctType[acctType.ordinal()];
+	}
+
+	/**
+	 * @return number of splits with the given action
+	 */
+	public int getNofSplits(final KMyMoneyTransactionSplit.Action action) {
+		if ( action == null ) {
+			throw new IllegalArgumentException("null action given");
+		}
+
+		return spltCntPerAction[action.ordinal()];
+	}
+
+	/**
+	 * @param fromDate lower bound (inclusive), null for open
+	 * @param toDate upper bound (inclusive), null for open
+	 * @return estimated number of transactions posted in the given period
+	 */
+	public int estimateTransactions(final LocalDate fromDate, final LocalDate toDate) {
+		return estimate(trxPerMonth, fromDate, toDate);
+	}
+
+	/**
+	 * @param fromDate lower bound (inclusive), null for open
+	 * @param toDate upper bound (inclusive), null for open
+	 * @return estimated number of splits whose transactions have been
+	 * posted in the given period
+	 */
+	public int estimateSplits(final LocalDate fromDate, final LocalDate toDate) {
+		return estimate(spltPerMonth, fromDate, toDate);
+	}
+
+	/**
+	 * @return estimated fraction of splits with values in the given
+	 * range (scaled, bounds inclusive)
+	 */
+	public double getValueSelectivity(final long fromKey, final long toKey) {
+		return getSelectivity(valueQuantiles, fromKey, toKey);
+	}
+
+	/**
+	 * @return estimated fraction of splits with shares in the given
+	 * range (scaled, bounds inclusive)
+	 */
+	public double getSharesSelectivity(final long fromKey, final long toKey) {
+		return getSelectivity(sharesQuantiles, fromKey, toKey);
+	}
+
+    // ---------------------------------------------------------------
+
+	private int estimate(final int[] histogram, final LocalDate fromDate, final LocalDate toDate) {
+		if ( histogram.length == 0 ) {
+			return 0;
+		}
+
+		LocalDate firstDate = LocalDate.of(firstMonth / 12, firstMonth % 12 + 1, 1);
+		LocalDate from = ( fromDate == null || fromDate.isBefore(firstDate) ) ? firstDate : fromDate;
+		int lastMonth = firstMonth + histogram.length - 1;
+		LocalDate lastDate = LocalDate.of(lastMonth / 12, lastMonth % 12 + 1, 1).plusMonths(1).minusDays(1);
+		LocalDate to = ( toDate == null || toDate.isAfter(lastDate) ) ? lastDate : toDate;
+		if ( from.isAfter(to) ) {
+			return 0;
+		}
+
+		double result = 0.0;
+		for ( int month = monthOf(from); month <= monthOf(to); month++ ) {
+			int cnt = histogram[month - firstMonth];
+			if ( cnt == 0 ) {
+				continue;
+			}
+
+			// Boundary months: only the covered part (uniform distribution assumed)
+			LocalDate monthStart = LocalDate.of(month / 12, month % 12 + 1, 1);
+			LocalDate monthEnd = monthStart.plusMonths(1).minusDays(1);
+			LocalDate start = from.isAfter(monthStart) ? from : monthStart;
+			LocalDate end = to.isBefore(monthEnd) ? to : monthEnd;
+			double covered = ( end.toEpochDay() - start.toEpochDay() + 1 ) / (double) monthStart.lengthOfMonth();
+			result += cnt * covered;
+		}
+
+		return (int) Math.ceil(result);
+	}
+
+	private static double getSelectivity(final long[] quantiles, final long fromKey, final long toKey) {
+		if ( quantiles.length == 0 ) {
+			return 0.0;
+		}
+
+		int cnt = upperBound(quantiles, toKey) - lowerBound(quantiles, fromKey);
+		// sic: never zero, the sample may have missed them
+		return Math.max(cnt, 0.5) / quantiles.length;
+	}
+
+	private static int lowerBound(final long[] arr, final long key) {
+		int low  = 0;
+		int high = arr.length;
+		while ( low < high ) {
+			int mid = ( low + high ) >>> 1;
+			if ( arr[mid] < key )
+				low = mid + 1;
+			else
+				high = mid;
+		}
+
+		return low;
+	}
+
+	private static int upperBound(final long[] arr, final long key) {
+		int low  = 0;
+		int high = arr.length;
+		while ( low < high ) {
+			int mid = ( low + high ) >>> 1;
+			if ( arr[mid] <= key )
+				low = mid + 1;
+			else
+				high = mid;
+		}
+
+		return low;
+	}
+
+	private static int monthOf(final LocalDate date) {
+		return date.getYear() * 12 + date.getMonthValue() - 1;
+	}
+
+	// ---------------------------------------------------------------
+
+	@Override
+	public String toString() {
+		return "QueryStatistics [" +
+			          "nofTrx=" + nofTrx + ", " +
+			        "nofSplts=" + nofSplts + ", " +
+			     "nofAccounts=" + nofAccts + ", " +
+			       "nofMonths=" + trxPerMonth.length + ", " +
+			  "nofQuantiles=" + valueQuantiles.length + "]";
+	}
+
+}
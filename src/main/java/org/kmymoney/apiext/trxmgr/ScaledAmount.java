@@ -0,0 +1,238 @@
+package org.kmymoney.apiext.trxmgr;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+import org.kmymoney.apiext.Const;
+
+import xyz.schnorxoborx.base.numbers.FixedPointNumber;
+
+/**
+ * Amounts (values, shares) as scaled <code>long</code>s, i.e. as integer
+ * multiples of 10^-{@value #SCALE}, for compact, sortable index keys and
+ * cheap comparisons: Once converted (which does allocate), an amount is
+ * compared against any number of bounds on plain <code>long</code>s.
+ * <br>
+ * Besides the static conversion helpers, an immutable value type with
+ * an explicit "unset" state (replacing the {@link Const#UNSET_VALUE}
+ * sentinel of the filters).
+ */
+public final class ScaledAmount implements Comparable<ScaledAmount> {
+
+	// Number of decimal places
+	public static final int SCALE = 6;
+
+	// Const.DIFF_TOLERANCE_VALUE, scaled
+	public static final long TOLERANCE = toScaled(BigDecimal.valueOf(Const.DIFF_TOLERANCE_VALUE));
+
+	public static final ScaledAmount UNSET = new ScaledAmount(false, 0);
+	public static final ScaledAmount ZERO  = new ScaledAmount(true, 0);
+
+	// Legacy sentinel, still accepted as "unset"
+	private static final BigDecimal UNSET_SENTINEL = BigDecimal.valueOf(Const.UNSET_VALUE);
+
+    // ---------------------------------------------------------------
+
+	private final boolean set;
+	private final long    scaled;
+
+    // ---------------------------------------------------------------
+
+	private ScaledAmount(final boolean set, final long scaled) {
+		this.set = set;
+		this.scaled = scaled;
+	}
+
+	/**
+	 * @param scaled amount, scaled
+	 * @return the amount
+	 */
+	public static ScaledAmount ofScaled(final long scaled) {
+		return scaled == 0 ? ZERO : new ScaledAmount(true, scaled);
+	}
+
+	/**
+	 * Exact conversion.
+	 *
+	 * @param num amount, null (or {@link Const#UNSET_VALUE}) for unset
+	 * @return the amount
+	 * @throws ArithmeticException if the amount has more than {@value #SCALE}
+	 * decimal places or does not fit into a <code>long</code>
+	 */
+	public static ScaledAmount of(final FixedPointNumber num) {
+		if ( isUnset(num) ) {
+			return UNSET;
+		}
+
+		return ofScaled(num.getBigDecimal().setScale(SCALE, RoundingMode.UNNECESSARY).unscaledValue().longValueExact());
+	}
+
+	/**
+	 * Like {@link #of(FixedPointNumber)}, but rounded half-up to {@value #SCALE}
+	 * decimal places, i.e. far below {@link #TOLERANCE}. For amounts that stem
+	 * from calculations (e.g. divisions).
+	 */
+	public static ScaledAmount ofRounded(final FixedPointNumber num) {
+		if ( isUnset(num) ) {
+			return UNSET;
+		}
+
+		return ofScaled(toScaled(num));
+	}
+
+	static boolean isUnset(final FixedPointNumber num) {
+		return num == null ||
+			   num.getBigDecimal().compareTo(UNSET_SENTINEL) == 0;
+	}
+
+    // ---------------------------------------------------------------
+
+	public boolean isSet() {
+		return set;
+	}
+
+	/**
+	 * @return the amount, scaled
+	 * @throws IllegalStateException if the amount is not set
+	 */
+	public long getScaled() {
+		if ( ! set ) {
+			throw new IllegalStateException("amount is not set");
+		}
+
+		return scaled;
+	}
+
+	/**
+	 * @return the amount as a (new) fixed-point number, null if it is not set
+	 */
+	public FixedPointNumber toFixedPointNumber() {
+		return set ? toFixedPointNumber(scaled) : null;
+	}
+
+	/**
+	 * @return lower bound of a range check (inclusive, with tolerance),
+	 * {@link Long#MIN_VALUE} if the amount is not set
+	 */
+	public long getLowerKey() {
+		return set ? scaled - TOLERANCE : Long.MIN_VALUE;
+	}
+
+	/**
+	 * @return upper bound of a range check (inclusive, with tolerance),
+	 * {@link Long#MAX_VALUE} if the amount is not set
+	 */
+	public long getUpperKey() {
+		return set ? scaled + TOLERANCE : Long.MAX_VALUE;
+	}
+
+    // ---------------------------------------------------------------
+	// Tolerance-aware comparisons (cf. Const.DIFF_TOLERANCE_VALUE)
+
+	/**
+	 * @param num amount
+	 * @param from lower bound, unset for open
+	 * @param to upper bound, unset for open
+	 * @return whether the amount is within the bounds (inclusive, with tolerance).
+	 * The amount is converted once, and only if a bound is set.
+	 */
+	static boolean isInRange(final FixedPointNumber num, final ScaledAmount from, final ScaledAmount to) {
+		if ( ! from.set &&
+			 ! to.set ) {
+			return true;
+		}
+
+		long scaled = toScaled(num);
+		return scaled >= from.getLowerKey() &&
+			   scaled <= to.getUpperKey();
+	}
+
+	public static boolean isLessThan(final long scaled1, final long scaled2) {
+		return scaled1 < scaled2 - TOLERANCE;
+	}
+
+	public static boolean isGreaterThan(final long scaled1, final long scaled2) {
+		return scaled1 > scaled2 + TOLERANCE;
+	}
+
+	public static boolean isEqual(final long scaled1, final long scaled2) {
+		return Math.abs(scaled1 - scaled2) <= TOLERANCE;
+	}
+
+	public boolean isLessThan(final ScaledAmount other) {
+		return isLessThan(getScaled(), other.getScaled());
+	}
+
+	public boolean isGreaterThan(final ScaledAmount other) {
+		return isGreaterThan(getScaled(), other.getScaled());
+	}
+
+	public boolean isEqual(final ScaledAmount other) {
+		return isEqual(getScaled(), other.getScaled());
+	}
+
+    // ---------------------------------------------------------------
+
+	/**
+	 * @param num amount
+	 * @return the amount, scaled (rounded half-up to {@value #SCALE} decimal places)
+	 * @throws ArithmeticException if the amount does not fit into a <code>long</code>
+	 */
+	public static long toScaled(final FixedPointNumber num) {
+		if ( num == null ) {
+			throw new IllegalArgumentException("null number given");
+		}
+
+		return toScaled(num.getBigDecimal());
+	}
+
+	static long toScaled(final BigDecimal num) {
+		return num.setScale(SCALE, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+	}
+
+	/**
+	 * @param scaled amount, scaled
+	 * @return the amount as a (new) fixed-point number
+	 */
+	public static FixedPointNumber toFixedPointNumber(final long scaled) {
+		return new FixedPointNumber(BigDecimal.valueOf(scaled, SCALE));
+	}
+
+    // ---------------------------------------------------------------
+
+	// Unset before all set amounts
+	@Override
+	public int compareTo(final ScaledAmount other) {
+		if ( set != other.set ) {
+			return set ? 1 : -1;
+		}
+
+		return Long.compare(scaled, other.scaled);
+	}
+
+	@Override
+	public boolean equals(final Object obj) {
+		if ( this == obj ) {
+			return true;
+		}
+
+		if ( ! ( obj instanceof ScaledAmount ) ) {
+			return false;
+		}
+
+		ScaledAmount other = (ScaledAmount) obj;
+		return set == other.set &&
+			   scaled == other.scaled;
+	}
+
+	@Override
+	public int hashCode() {
+		return set ? Long.hashCode(scaled) : -1;
+	}
+
+	@Override
+	public String toString() {
+		return set ? BigDecimal.valueOf(scaled, SCALE).stripTrailingZeros().toPlainString() : "unset";
+	}
+
+}
@@ -0,0 +1,215 @@
+package org.kmymoney.apiext.trxmgr;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.kmymoney.api.read.KMyMoneyTransactionSplit;
+
+/**
+ * Inverted index from account to the transaction splits bound to it.
+ * <br>
+ * Each posting list is sorted by the date posted of the splits'
+ * transactions, so that "all splits of one account in a period" only
+ * touches that account's splits, and within them only the period.
+ * <br>
+ * The index is a snapshot: It does not reflect later changes
+ * on the file (cf. {@link TransactionIndexes}).
+ */
+public class SplitAccountIndex {
+
+	// Order within one day: by transaction ID, then split ID
+	static final Comparator<KMyMoneyTransactionSplit> DATE_ORDER =
+			Comparator.comparing((KMyMoneyTransactionSplit splt) -> splt.getTransaction().getDatePosted())
+					  .thenComparing(splt -> splt.getTransaction().getID().toString())
+					  .thenComparing(splt -> splt.getID().toString());
+
+    // ---------------------------------------------------------------
+
+	// One account's splits, sorted by date posted
+	private static class PostingList {
+		private final List<KMyMoneyTransactionSplit> splts;
+		private final int[]                          epochDays;
+
+		PostingList(final ArrayList<KMyMoneyTransactionSplit> spltList) {
+			KMyMoneyTransactionSplit[] arr = spltList.toArray(new KMyMoneyTransactionSplit[spltList.size()]);
+			Arrays.sort(arr, DATE_ORDER);
+
+			epochDays = new int[arr.length];
+			for ( int i = 0; i < arr.length; i++ ) {
+				epochDays[i] = (int) arr[i].getTransaction().getDatePosted().toEpochDay();
+			}
+
+			splts = Collections.unmodifiableList(Arrays.asList(arr));
+		}
+	}
+
+    // ---------------------------------------------------------------
+
+	private final AccountOrdinalTable acctOrds;
+
+	// Index: account ordinal (null: no splits)
+	private final PostingList[] postings;
+
+	private final int nofSplts;
+	private final int nofAccts;
+
+    // ---------------------------------------------------------------
+
+	SplitAccountIndex(final Collection<? extends KMyMoneyTransactionSplit> spltColl,
+					  final AccountOrdinalTable acctOrds) {
+		if ( spltColl == null ) {
+			throw new IllegalArgumentException("null transaction-split-collection given");
+		}
+
+		if ( acctOrds == null ) {
+			throw new IllegalArgumentException("null account-ordinal-table given");
+		}
+
+		this.acctOrds = acctOrds;
+
+		ArrayList<ArrayList<KMyMoneyTransactionSplit>> lists = new ArrayList<ArrayList<KMyMoneyTransactionSplit>>(
+															Collections.nCopies(acctOrds.size(), null));
+		for ( KMyMoneyTransactionSplit splt : spltColl ) {
+			int ord = acctOrds.getOrdinal(splt);
+			if ( ord == AccountOrdinalTable.NONE ) {
+				// sic, cannot be searched for anyway
+				continue;
+			}
+
+			if ( lists.get(ord) == null ) {
+				lists.set(ord, new ArrayList<KMyMoneyTransactionSplit>());
+			}
+			lists.get(ord).add(splt);
+		}
+
+		postings = new PostingList[lists.size()];
+		int cnt = 0;
+		for ( int ord = 0; ord < lists.size(); ord++ ) {
+			if ( lists.get(ord) != null ) {
+				postings[ord] = new PostingList(lists.get(ord));
+				cnt++;
+			}
+		}
+
+		nofSplts = spltColl.size();
+		nofAccts = cnt;
+	}
+
+    // ---------------------------------------------------------------
+
+	/**
+	 * @return total number of splits in the index
+	 */
+	public int size() {
+		return nofSplts;
+	}
+
+	/**
+	 * @return number of accounts that have at least one split
+	 */
+	public int getNofAccounts() {
+		return nofAccts;
+	}
+
+	/**
+	 * @param acctID account ID (string form)
+	 * @return all splits bound to the given account, sorted by date posted
+	 * (read-only view, no copy)
+	 */
+	public List<KMyMoneyTransactionSplit> getSplits(final String acctID) {
+		return getSplits(acctID, null, null);
+	}
+
+	/**
+	 * @param acctID account ID (string form)
+	 * @param fromDate lower bound (inclusive), null for open
+	 * @param toDate upper bound (inclusive), null for open
+	 * @return the splits bound to the given account whose transactions
+	 * have been posted in the given period, sorted by date posted
+	 * (read-only view, no copy)
+	 */
+	public List<KMyMoneyTransactionSplit> getSplits(final String acctID,
+													final LocalDate fromDate, final LocalDate toDate) {
+		if ( acctID == null ) {
+			throw new IllegalArgumentException("null account ID given");
+		}
+
+		return getSplits(acctOrds.getOrdinal(acctID), fromDate, toDate);
+	}
+
+	/**
+	 * @param acctOrd account ordinal (cf. {@link AccountOrdinalTable})
+	 * @param fromDate lower bound (inclusive), null for open
+	 * @param toDate upper bound (inclusive), null for open
+	 * @return the splits bound to the given account whose transactions
+	 * have been posted in the given period, sorted by date posted
+	 * (read-only view, no copy)
+	 */
+	public List<KMyMoneyTransactionSplit> getSplits(final int acctOrd,
+													final LocalDate fromDate, final LocalDate toDate) {
+		PostingList pl = getPostingList(acctOrd);
+		if ( pl == null ) {
+			return Collections.emptyList();
+		}
+
+		int fromIdx = fromIndex(pl, fromDate);
+		int toIdx   = toIndex(pl, toDate);
+		if ( fromIdx >= toIdx ) {
+			return Collections.emptyList();
+		}
+
+		return pl.splts.subList(fromIdx, toIdx);
+	}
+
+	/**
+	 * @param acctID account ID (string form)
+	 * @param fromDate lower bound (inclusive), null for open
+	 * @param toDate upper bound (inclusive), null for open
+	 * @return number of splits bound to the given account in the given period
+	 */
+	public int count(final String acctID,
+					 final LocalDate fromDate, final LocalDate toDate) {
+		if ( acctID == null ) {
+			throw new IllegalArgumentException("null account ID given");
+		}
+
+		PostingList pl = getPostingList(acctOrds.getOrdinal(acctID));
+		if ( pl == null ) {
+			return 0;
+		}
+
+		return Math.max(0, toIndex(pl, toDate) - fromIndex(pl, fromDate));
+	}
+
+    // ---------------------------------------------------------------
+
+	private PostingList getPostingList(final int acctOrd) {
+		if ( acctOrd < 0 || acctOrd >= postings.length ) {
+			return null;
+		}
+
+		return postings[acctOrd];
+	}
+
+	private static int fromIndex(final PostingList pl, final LocalDate fromDate) {
+		if ( fromDate == null ) {
+			return 0;
+		}
+
+		return TransactionDateIndex.lowerBound(pl.epochDays, (int) fromDate.toEpochDay());
+	}
+
+	private static int toIndex(final PostingList pl, final LocalDate toDate) {
+		if ( toDate == null ) {
+			return pl.epochDays.length;
+		}
+
+		return TransactionDateIndex.lowerBound(pl.epochDays, (int) toDate.toEpochDay() + 1);
+	}
+
+}
@@ -0,0 +1,129 @@
+package org.kmymoney.apiext.trxmgr;
+
+import org.kmymoney.api.read.KMyMoneyTransactionSplit;
+
+import xyz.schnorxoborx.base.numbers.FixedPointNumber;
+
+/**
+ * Count, sums, minima and maxima of the values and shares of a set of
+ * transaction splits, accumulated as scaled <code>long</code>s
+ * (cf. {@link ScaledAmount}), i.e. without building the set itself.
+ *
+ * @see TransactionSplitFinder#aggregate(TransactionSplitFilter)
+ */
+public final class SplitAggregate {
+
+	private int count = 0;
+
+	private long sumValue  = 0;
+	private long minValue  = Long.MAX_VALUE;
+	private long maxValue  = Long.MIN_VALUE;
+
+	private long sumShares = 0;
+	private long minShares = Long.MAX_VALUE;
+	private long maxShares = Long.MIN_VALUE;
+
+    // ---------------------------------------------------------------
+
+	SplitAggregate() {
+	}
+
+    // ---------------------------------------------------------------
+
+	/**
+	 * @throws ArithmeticException if a sum overflows
+	 */
+	void add(final KMyMoneyTransactionSplit splt) {
+		long value  = ScaledAmount.toScaled(splt.getValue());
+		long shares = ScaledAmount.toScaled(splt.getShares());
+
+		count++;
+
+		sumValue = Math.addExact(sumValue, value);
+		minValue = Math.min(minValue, value);
+		maxValue = Math.max(maxValue, value);
+
+		sumShares = Math.addExact(sumShares, shares);
+		minShares = Math.min(minShares, shares);
+		maxShares = Math.max(maxShares, shares);
+	}
+
+    // ---------------------------------------------------------------
+
+	public int getCount() {
+		return count;
+	}
+
+	public boolean isEmpty() {
+		return count == 0;
+	}
+
+	// ---
+
+	public FixedPointNumber getSumValue() {
+		return ScaledAmount.toFixedPointNumber(sumValue);
+	}
+
+	/**
+	 * @return the smallest value, null if there are no splits
+	 */
+	public FixedPointNumber getMinValue() {
+		return count == 0 ? null : ScaledAmount.toFixedPointNumber(minValue);
+	}
+
+	/**
+	 * @return the largest value, null if there are no splits
+	 */
+	public FixedPointNumber getMaxValue() {
+		return count == 0 ? null : ScaledAmount.toFixedPointNumber(maxValue);
+	}
+
+	public FixedPointNumber getSumShares() {
+		return ScaledAmount.toFixedPointNumber(sumShares);
+	}
+
+	/**
+	 * @return the smallest shares, null if there are no splits
+	 */
+	public FixedPointNumber getMinShares() {
+		return count == 0 ? null : ScaledAmount.toFixedPointNumber(minShares);
+	}
+
+	/**
+	 * @return the largest shares, null if there are no splits
+	 */
+	public FixedPointNumber getMaxShares() {
+		return count == 0 ? null : ScaledAmount.toFixedPointNumber(maxShares);
+	}
+
+	// ---
+
+	/**
+	 * @return the sum of the values, scaled (cf. {@link ScaledAmount})
+	 */
+	public long getSumValueScaled() {
+		return sumValue;
+	}
+
+	/**
+	 * @return the sum of the shares, scaled (cf. {@link ScaledAmount})
+	 */
+	public long getSumSharesScaled() {
+		return sumShares;
+	}
+
+	// ---------------------------------------------------------------
+
+	@Override
+	public String toString() {
+		return "SplitAggregate [" +
+			     "count=" + count + ", " +
+			  "sumValue=" + getSumValue() + ", " +
+			  "minValue=" + getMinValue() + ", " +
+			  "maxValue=" + getMaxValue() + ", " +
+			 "sumShares=" + getSumShares() + ", " +
+			 "minShares=" + getMinShares() + ", " +
+			 "maxShares=" + getMaxShares() + "]";
+	}
+
+}
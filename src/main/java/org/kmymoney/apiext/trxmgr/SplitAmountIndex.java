@@ -0,0 +1,171 @@
+package org.kmymoney.apiext.trxmgr;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+
+import org.kmymoney.api.read.KMyMoneyTransactionSplit;
+
+import xyz.schnorxoborx.base.numbers.FixedPointNumber;
+
+/**
+ * Sorted index over one amount attribute (value or shares) of the
+ * transaction splits, with the amounts kept as scaled <code>long</code>s
+ * (cf. {@link ScaledAmount}).
+ * <br>
+ * Amount ranges (e.g. "all splits above 10,000") are answered by
+ * binary search. As in the filters, the bounds are extended by
+ * {@link ScaledAmount#TOLERANCE}. The remaining criteria have to
+ * be checked on the result.
+ * <br>
+ * The index is a snapshot: It does not reflect later changes
+ * on the file (cf. {@link TransactionIndexes}).
+ */
+public class SplitAmountIndex {
+
+	// In index order (date posted)
+	private final List<KMyMoneyTransactionSplit> splts;
+
+	// Amounts, ascending, and the according positions in splts
+	private final long[] sortedAmounts;
+	private final int[]  sortedPos;
+
+    // ---------------------------------------------------------------
+
+	SplitAmountIndex(final List<KMyMoneyTransactionSplit> spltList,
+					 final Function<KMyMoneyTransactionSplit, FixedPointNumber> amountGetter) {
+		if ( spltList == null ) {
+			throw new IllegalArgumentException("null transaction-split-list given");
+		}
+
+		splts = Collections.unmodifiableList(new ArrayList<KMyMoneyTransactionSplit>(spltList));
+
+		long[] amounts = new long[splts.size()];
+		Integer[] order = new Integer[splts.size()];
+		for ( int i = 0; i < amounts.length; i++ ) {
+			amounts[i] = ScaledAmount.toScaled(amountGetter.apply(splts.get(i)));
+			order[i] = i;
+		}
+
+		// sic, stable: equal amounts stay in date order
+		Arrays.sort(order, (pos1, pos2) -> Long.compare(amounts[pos1], amounts[pos2]));
+
+		sortedAmounts = new long[amounts.length];
+		sortedPos = new int[amounts.length];
+		for ( int i = 0; i < amounts.length; i++ ) {
+			sortedPos[i] = order[i];
+			sortedAmounts[i] = amounts[order[i]];
+		}
+	}
+
+    // ---------------------------------------------------------------
+
+	public int size() {
+		return splts.size();
+	}
+
+	/**
+	 * @param from lower bound (inclusive, with tolerance), null for open
+	 * @param to upper bound (inclusive, with tolerance), null for open
+	 * @return the splits whose amounts are in the given range, in index
+	 * (i.e. date-posted) order
+	 */
+	public List<KMyMoneyTransactionSplit> getSplits(final FixedPointNumber from, final FixedPointNumber to) {
+		return getSplits(toLowerKey(from), toUpperKey(to));
+	}
+
+	/**
+	 * @param from lower bound (inclusive, with tolerance), unset for open
+	 * @param to upper bound (inclusive, with tolerance), unset for open
+	 * @return the splits whose amounts are in the given range, in index
+	 * (i.e. date-posted) order
+	 */
+	public List<KMyMoneyTransactionSplit> getSplits(final ScaledAmount from, final ScaledAmount to) {
+		if ( from == null ||
+			 to == null ) {
+			throw new IllegalArgumentException("null amount given");
+		}
+
+		return getSplits(from.getLowerKey(), to.getUpperKey());
+	}
+
+	private List<KMyMoneyTransactionSplit> getSplits(final long fromKey, final long toKey) {
+		int[] positions = getPositions(fromKey, toKey);
+
+		ArrayList<KMyMoneyTransactionSplit> result = new ArrayList<KMyMoneyTransactionSplit>(positions.length);
+		for ( int pos : positions ) {
+			result.add(splts.get(pos));
+		}
+
+		return result;
+	}
+
+	/**
+	 * @param from lower bound (inclusive, with tolerance), null for open
+	 * @param to upper bound (inclusive, with tolerance), null for open
+	 * @return the number of splits whose amounts are in the given range
+	 */
+	public int count(final FixedPointNumber from, final FixedPointNumber to) {
+		return count(toLowerKey(from), toUpperKey(to));
+	}
+
+    // ---------------------------------------------------------------
+
+	int count(final long fromKey, final long toKey) {
+		return Math.max(0, upperBound(toKey) - lowerBound(fromKey));
+	}
+
+	// Positions (in index order) of the splits with fromKey <= amount <= toKey
+	int[] getPositions(final long fromKey, final long toKey) {
+		int fromIdx = lowerBound(fromKey);
+		int toIdx   = upperBound(toKey);
+		if ( fromIdx >= toIdx ) {
+			return new int[0];
+		}
+
+		int[] result = Arrays.copyOfRange(sortedPos, fromIdx, toIdx);
+		Arrays.sort(result);
+		return result;
+	}
+
+	static long toLowerKey(final FixedPointNumber from) {
+		return ScaledAmount.ofRounded(from).getLowerKey();
+	}
+
+	static long toUpperKey(final FixedPointNumber to) {
+		return ScaledAmount.ofRounded(to).getUpperKey();
+	}
+
+	// First position whose amount is >= key
+	private int lowerBound(final long key) {
+		int low  = 0;
+		int high = sortedAmounts.length;
+		while ( low < high ) {
+			int mid = ( low + high ) >>> 1;
+			if ( sortedAmounts[mid] < key )
+				low = mid + 1;
+			else
+				high = mid;
+		}
+
+		return low;
+	}
+
+	// First position whose amount is > key
+	private int upperBound(final long key) {
+		int low  = 0;
+		int high = sortedAmounts.length;
+		while ( low < high ) {
+			int mid = ( low + high ) >>> 1;
+			if ( sortedAmounts[mid] <= key )
+				low = mid + 1;
+			else
+				high = mid;
+		}
+
+		return low;
+	}
+
+}
@@ -0,0 +1,239 @@
+package org.kmymoney.apiext.trxmgr;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.BitSet;
+
+import org.kmymoney.api.read.KMyMoneyAccount;
+import org.kmymoney.api.read.KMyMoneyTransaction;
+import org.kmymoney.api.read.KMyMoneyTransactionSplit;
+
+/**
+ * Bitmap indexes over the low-cardinality split attributes account type
+ * and action: one bitmap per attribute value, one bit per split, the splits
+ * numbered in date-posted order of their transactions (i.e. like the rows
+ * of {@link SplitColumnStore}).
+ * <br>
+ * Combinations of criteria are word-level AND/OR operations on the bitmaps;
+ * the transactions whose splits match (according to
+ * {@link TransactionFilter.SplitLogic}) are derived from them as well,
+ * so no split object is touched before the result is there.
+ * <br>
+ * The index is a snapshot: It does not reflect later changes
+ * on the file (cf. {@link TransactionIndexes}).
+ */
+public class SplitBitmapIndex {
+
+	private final TransactionDateIndex dateIdx;
+	private final SplitColumnStore     cols;
+
+	// Index: enum ordinal
+	private final BitSet[] acctTypeBits;
+	private final BitSet[] actionBits;
+
+	// Per transaction (in date order): first split row;
+	// last entry: total number of rows
+	private final int[] trxStarts;
+
+    // ---------------------------------------------------------------
+
+	// trxStarts: cf. TransactionIndexes.getSplitStarts()
+	SplitBitmapIndex(final TransactionDateIndex dateIdx, final SplitColumnStore cols, final int[] trxStarts) {
+		if ( dateIdx == null ) {
+			throw new IllegalArgumentException("null date index given");
+		}
+
+		if ( cols == null ) {
+			throw new IllegalArgumentException("null column store given");
+		}
+
+		if ( trxStarts == null ||
+			 trxStarts.length != dateIdx.size() + 1 ||
+			 trxStarts[dateIdx.size()] != cols.size() ) {
+			throw new IllegalArgumentException("null or non-matching split positions given");
+		}
+
+		this.dateIdx = dateIdx;
+		this.cols = cols;
+
+		int nofRows = cols.size();
+		acctTypeBits = newBitSets(KMyMoneyAccount.Type.values().length, nofRows);
+		actionBits = newBitSets(KMyMoneyTransactionSplit.Action.values().length, nofRows);
+		for ( int row = 0; row < nofRows; row++ ) {
+			int acctType = cols.getAccountTypeOrdinal(cols.getAccountOrdinal(row));
+			if ( acctType != SplitColumns.NONE ) {
+				acctTypeBits[acctType].set(row);
+			}
+
+			int action = cols.getActionOrdinal(row);
+			if ( action != SplitColumns.NONE ) {
+				actionBits[action].set(row);
+			}
+		}
+
+		this.trxStarts = trxStarts;
+	}
+
+	private static BitSet[] newBitSets(final int nofValues, final int nofRows) {
+		BitSet[] result = new BitSet[nofValues];
+		for ( int i = 0; i < nofValues; i++ ) {
+			result[i] = new BitSet(nofRows);
+		}
+
+		return result;
+	}
+
+    // ---------------------------------------------------------------
+
+	/**
+	 * @return total number of splits in the index
+	 */
+	public int size() {
+		return cols.size();
+	}
+
+	/**
+	 * @return the rows of the splits bound to an account of the given type
+	 * (copy)
+	 */
+	public BitSet getAccountTypeBits(final KMyMoneyAccount.Type acctType) {
+		if ( acctType == null ) {
+			throw new IllegalArgumentException("null account type given");
+		}
+
+		return (BitSet) acctTypeBits[acctType.ordinal()].clone();
+	}
+
+	/**
+	 * @return the rows of the splits with the given action (copy)
+	 */
+	public BitSet getActionBits(final KMyMoneyTransactionSplit.Action action) {
+		if ( action == null ) {
+			throw new IllegalArgumentException("null action given");
+		}
+
+		return (BitSet) actionBits[action.ordinal()].clone();
+	}
+
+    // ---------------------------------------------------------------
+
+	/**
+	 * @param flt split filter. Only its account-type and action criteria
+	 * are evaluated, the other ones are ignored.
+	 * @param datePostedFrom lower bound (inclusive) for the date posted of the
+	 * splits' transactions, null for open
+	 * @param datePostedTo upper bound (inclusive) for the date posted of the
+	 * splits' transactions, null for open
+	 * @return the rows of the splits matching the filter's account-type
+	 * and action criteria
+	 */
+	public BitSet select(final TransactionSplitFilter flt,
+						 final LocalDate datePostedFrom, final LocalDate datePostedTo) {
+		if ( flt == null ) {
+			throw new IllegalArgumentException("null transaction-split-filter given");
+		}
+
+		return select(flt.compile(), datePostedFrom, datePostedTo);
+	}
+
+	BitSet select(final CompiledTransactionSplitFilter cflt,
+				  final LocalDate datePostedFrom, final LocalDate datePostedTo) {
+		// Rows are in date order: period = range of rows
+		int fromRow = trxStarts[dateIdx.fromIndex(datePostedFrom)];
+		int toRow   = trxStarts[dateIdx.toIndex(datePostedTo)];
+
+		BitSet result = new BitSet(toRow);
+		if ( fromRow < toRow ) {
+			result.set(fromRow, toRow);
+		}
+
+		if ( cflt.getAction() != null ) {
+			result.and(actionBits[cflt.getAction().ordinal()]);
+		}
+
+		if ( cflt.getAcctType() != null ) {
+			result.and(acctTypeBits[cflt.getAcctType().ordinal()]);
+		}
+
+		return result;
+	}
+
+	/**
+	 * @param spltRows rows of the matching splits (cf. {@link #select(TransactionSplitFilter, LocalDate, LocalDate)})
+	 * @param splitLogic OR: transactions with at least one matching split,
+	 * AND: transactions all of whose splits match (including the ones without splits)
+	 * @param datePostedFrom lower bound (inclusive), null for open
+	 * @param datePostedTo upper bound (inclusive), null for open
+	 * @return the positions (in date order) of the transactions posted in the
+	 * given period whose splits match according to the given logic
+	 */
+	public BitSet selectTransactions(final BitSet spltRows,
+									 final TransactionFilter.SplitLogic splitLogic,
+									 final LocalDate datePostedFrom, final LocalDate datePostedTo) {
+		if ( spltRows == null ) {
+			throw new IllegalArgumentException("null split-row bitmap given");
+		}
+
+		if ( splitLogic == null ) {
+			throw new IllegalArgumentException("null split logic given");
+		}
+
+		int fromTrx = dateIdx.fromIndex(datePostedFrom);
+		int toTrx   = dateIdx.toIndex(datePostedTo);
+
+		BitSet result = new BitSet(dateIdx.size());
+		if ( splitLogic == TransactionFilter.SplitLogic.OR ) {
+			// Jump from set bit to set bit, skipping the rest of its transaction
+			int toRow = trxStarts[Math.max(fromTrx, toTrx)];
+			int row = spltRows.nextSetBit(trxStarts[fromTrx]);
+			while ( row >= 0 && row < toRow ) {
+				int t = TransactionDateIndex.lowerBound(trxStarts, row + 1) - 1;
+				result.set(t);
+				row = spltRows.nextSetBit(trxStarts[t + 1]);
+			}
+		} else {
+			for ( int t = fromTrx; t < toTrx; t++ ) {
+				if ( spltRows.nextClearBit(trxStarts[t]) >= trxStarts[t + 1] ) {
+					result.set(t);
+				}
+			}
+		}
+
+		return result;
+	}
+
+    // ---------------------------------------------------------------
+
+	/**
+	 * @return the splits of the given rows, in date order
+	 */
+	public ArrayList<KMyMoneyTransactionSplit> getSplits(final BitSet spltRows) {
+		if ( spltRows == null ) {
+			throw new IllegalArgumentException("null split-row bitmap given");
+		}
+
+		ArrayList<KMyMoneyTransactionSplit> result = new ArrayList<KMyMoneyTransactionSplit>(spltRows.cardinality());
+		for ( int row = spltRows.nextSetBit(0); row >= 0 && row < cols.size(); row = spltRows.nextSetBit(row + 1) ) {
+			result.add(cols.getSplit(row));
+		}
+
+		return result;
+	}
+
+	/**
+	 * @return the transactions of the given positions, in date order
+	 */
+	public ArrayList<KMyMoneyTransaction> getTransactions(final BitSet trxPos) {
+		if ( trxPos == null ) {
+			throw new IllegalArgumentException("null transaction-position bitmap given");
+		}
+
+		ArrayList<KMyMoneyTransaction> result = new ArrayList<KMyMoneyTransaction>(trxPos.cardinality());
+		for ( int t = trxPos.nextSetBit(0); t >= 0 && t < dateIdx.size(); t = trxPos.nextSetBit(t + 1) ) {
+			result.add(dateIdx.get(t));
+		}
+
+		return result;
+	}
+
+}
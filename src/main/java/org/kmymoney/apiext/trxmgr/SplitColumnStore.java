@@ -0,0 +1,238 @@
+package org.kmymoney.apiext.trxmgr;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.kmymoney.api.read.KMyMoneyTransactionSplit;
+
+/**
+ * Columnar ("struct of arrays") snapshot of all transaction splits of
+ * a file, for analytical scans: One primitive array per attribute, one row
+ * per split, the rows in date-posted order of the splits' transactions:
+ * <ul>
+ *   <li>date posted (epoch day)</li>
+ *   <li>account (ordinal, cf. {@link AccountOrdinalTable})</li>
+ *   <li>action (enum ordinal, -1 for none)</li>
+ *   <li>value and shares (scaled, cf. {@link ScaledAmount})</li>
+ * </ul>
+ * The split filter criteria (except for the memo, which is checked on
+ * the split objects) are evaluated on these arrays, without following
+ * object graphs and without allocations per row.
+ * <br>
+ * The store is a snapshot: It does not reflect later changes
+ * on the file (cf. {@link TransactionIndexes}).
+ *
+ * @see OffHeapSplitColumnStore
+ */
+public class SplitColumnStore implements SplitColumns {
+
+	private final KMyMoneyTransactionSplit[] splts;
+
+	// Columns
+	private final int[]  epochDays;
+	private final int[]  acctOrds;
+	private final byte[] actionOrds;
+	private final long[] values;
+	private final long[] shares;
+
+	// Accounts: ordinal <-> ID (string form), type per ordinal
+	private final AccountOrdinalTable acctOrdTab;
+	private final byte[]              acctTypeOrds;
+
+    // ---------------------------------------------------------------
+
+	SplitColumnStore(final List<KMyMoneyTransactionSplit> spltsByDate,
+					 final AccountOrdinalTable acctOrdTab) {
+		if ( spltsByDate == null ) {
+			throw new IllegalArgumentException("null transaction-split-list given");
+		}
+
+		if ( acctOrdTab == null ) {
+			throw new IllegalArgumentException("null account-ordinal-table given");
+		}
+
+		this.acctOrdTab = acctOrdTab;
+
+		int nofRows = spltsByDate.size();
+		splts = spltsByDate.toArray(new KMyMoneyTransactionSplit[nofRows]);
+
+		epochDays  = new int[nofRows];
+		acctOrds   = new int[nofRows];
+		actionOrds = new byte[nofRows];
+		values     = new long[nofRows];
+		shares     = new long[nofRows];
+
+		// sic, copy for the tight loop
+		acctTypeOrds = new byte[acctOrdTab.size()];
+		for ( int j = 0; j < acctTypeOrds.length; j++ ) {
+			acctTypeOrds[j] = (byte) acctOrdTab.getAccountTypeOrdinal(j);
+		}
+
+		for ( int i = 0; i < nofRows; i++ ) {
+			KMyMoneyTransactionSplit splt = splts[i];
+
+			epochDays[i] = (int) splt.getTransaction().getDatePosted().toEpochDay();
+
+			acctOrds[i] = acctOrdTab.getOrdinal(splt);
+			if ( acctOrds[i] == NONE ) {
+				throw new IllegalStateException("split " + splt.getID() + " bound to unknown account " + splt.getAccountID());
+			}
+
+			actionOrds[i] = ( splt.getAction() == null ) ? NONE : (byte) splt.getAction().ordinal();
+			values[i] = ScaledAmount.toScaled(splt.getValue());
+			shares[i] = ScaledAmount.toScaled(splt.getShares());
+		}
+	}
+
+    // ---------------------------------------------------------------
+
+	@Override
+	public int size() {
+		return splts.length;
+	}
+
+	@Override
+	public int getNofAccounts() {
+		return acctOrdTab.size();
+	}
+
+	@Override
+	public KMyMoneyTransactionSplit getSplit(final int row) {
+		return splts[row];
+	}
+
+	@Override
+	public int getEpochDay(final int row) {
+		return epochDays[row];
+	}
+
+	@Override
+	public int getAccountOrdinal(final int row) {
+		return acctOrds[row];
+	}
+
+	@Override
+	public int getActionOrdinal(final int row) {
+		return actionOrds[row];
+	}
+
+	@Override
+	public long getValueScaled(final int row) {
+		return values[row];
+	}
+
+	@Override
+	public long getSharesScaled(final int row) {
+		return shares[row];
+	}
+
+	@Override
+	public int getAccountOrdinal(final String acctID) {
+		return acctOrdTab.getOrdinal(acctID);
+	}
+
+	@Override
+	public String getAccountID(final int acctOrd) {
+		return acctOrdTab.getAccountID(acctOrd);
+	}
+
+	@Override
+	public int getAccountTypeOrdinal(final int acctOrd) {
+		return acctTypeOrds[acctOrd];
+	}
+
+    // ---------------------------------------------------------------
+
+	@Override
+	public int[] select(final TransactionSplitFilter flt) {
+		return select(flt, null, null);
+	}
+
+	@Override
+	public int[] select(final TransactionSplitFilter flt,
+						final LocalDate datePostedFrom, final LocalDate datePostedTo) {
+		if ( flt == null ) {
+			throw new IllegalArgumentException("null transaction-split-filter given");
+		}
+
+		return select(flt.compile(), datePostedFrom, datePostedTo);
+	}
+
+	int[] select(final CompiledTransactionSplitFilter cflt,
+				 final LocalDate datePostedFrom, final LocalDate datePostedTo) {
+		// Rows are in date order: period = range of rows
+		int fromRow = ( datePostedFrom == null ) ? 0 :
+						TransactionDateIndex.lowerBound(epochDays, (int) datePostedFrom.toEpochDay());
+		int toRow   = ( datePostedTo == null ) ? epochDays.length :
+						TransactionDateIndex.lowerBound(epochDays, (int) datePostedTo.toEpochDay() + 1);
+
+		ColumnCriteria crit = new ColumnCriteria(cflt, this);
+		if ( crit.noMatch ) {
+			return new int[0];
+		}
+
+		// sic, locals for the tight loop
+		int     action     = crit.action;
+		int     acctOrd    = crit.acctOrd;
+		int     acctType   = crit.acctType;
+		long    valueFrom  = crit.valueFrom;
+		long    valueTo    = crit.valueTo;
+		long    sharesFrom = crit.sharesFrom;
+		long    sharesTo   = crit.sharesTo;
+		boolean checkMemo  = crit.checkMemo;
+
+		int[] result = new int[Math.max(0, toRow - fromRow)];
+		int nofResults = 0;
+		for ( int i = fromRow; i < toRow; i++ ) {
+			if ( action != NONE && actionOrds[i] != action )
+				continue;
+			if ( acctOrd != NONE && acctOrds[i] != acctOrd )
+				continue;
+			if ( acctType != NONE && acctTypeOrds[acctOrds[i]] != acctType )
+				continue;
+			if ( values[i] < valueFrom || values[i] > valueTo )
+				continue;
+			if ( shares[i] < sharesFrom || shares[i] > sharesTo )
+				continue;
+			if ( checkMemo && ! cflt.matchesCriteria(splts[i]) )
+				continue;
+
+			result[nofResults++] = i;
+		}
+
+		return Arrays.copyOf(result, nofResults);
+	}
+
+	@Override
+	public ArrayList<KMyMoneyTransactionSplit> getSplits(final int[] rows) {
+		ArrayList<KMyMoneyTransactionSplit> result = new ArrayList<KMyMoneyTransactionSplit>(rows.length);
+		for ( int row : rows ) {
+			result.add(splts[row]);
+		}
+
+		return result;
+	}
+
+	@Override
+	public long sumValueScaled(final int[] rows) {
+		long result = 0;
+		for ( int row : rows ) {
+			result = Math.addExact(result, values[row]);
+		}
+
+		return result;
+	}
+
+	@Override
+	public long sumSharesScaled(final int[] rows) {
+		long result = 0;
+		for ( int row : rows ) {
+			result = Math.addExact(result, shares[row]);
+		}
+
+		return result;
+	}
+
+}
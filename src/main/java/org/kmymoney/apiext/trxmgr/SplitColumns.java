@@ -0,0 +1,93 @@
+package org.kmymoney.apiext.trxmgr;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+
+import org.kmymoney.api.read.KMyMoneyTransactionSplit;
+
+/**
+ * Columnar snapshot of the transaction splits of a file: one row per split,
+ * the rows in date-posted order of the splits' transactions, with the
+ * filter-relevant attributes as primitive columns.
+ * <br>
+ * Implemented on-heap ({@link SplitColumnStore}) and off-heap
+ * ({@link OffHeapSplitColumnStore}).
+ */
+public interface SplitColumns {
+
+	// Row/ordinal is not set or does not exist
+	int NONE = -1;
+
+    // ---------------------------------------------------------------
+
+	int size();
+
+	int getNofAccounts();
+
+	// ---
+
+	int getEpochDay(int row);
+
+	int getAccountOrdinal(int row);
+
+	/**
+	 * @return the action's enum ordinal, -1 if the split has no action
+	 */
+	int getActionOrdinal(int row);
+
+	long getValueScaled(int row);
+
+	long getSharesScaled(int row);
+
+	/**
+	 * @return the split of the given row
+	 */
+	KMyMoneyTransactionSplit getSplit(int row);
+
+	// ---
+
+	/**
+	 * @param acctID account ID (string form)
+	 * @return the account's ordinal, -1 if the account is not known
+	 */
+	int getAccountOrdinal(String acctID);
+
+	String getAccountID(int acctOrd);
+
+	/**
+	 * @return the account type's enum ordinal, -1 if the account has no type
+	 */
+	int getAccountTypeOrdinal(int acctOrd);
+
+    // ---------------------------------------------------------------
+
+	int[] select(TransactionSplitFilter flt);
+
+	/**
+	 * @param flt split filter
+	 * @param datePostedFrom lower bound (inclusive) for the date posted of the
+	 * splits' transactions, null for open
+	 * @param datePostedTo upper bound (inclusive) for the date posted of the
+	 * splits' transactions, null for open
+	 * @return the rows of the splits matching the filter, in ascending order
+	 */
+	int[] select(TransactionSplitFilter flt, LocalDate datePostedFrom, LocalDate datePostedTo);
+
+	/**
+	 * @return the splits of the given rows
+	 */
+	ArrayList<KMyMoneyTransactionSplit> getSplits(int[] rows);
+
+	/**
+	 * @return the sum of the values of the given rows, scaled
+	 * @throws ArithmeticException if the sum overflows
+	 */
+	long sumValueScaled(int[] rows);
+
+	/**
+	 * @return the sum of the shares of the given rows, scaled
+	 * @throws ArithmeticException if the sum overflows
+	 */
+	long sumSharesScaled(int[] rows);
+
+}
@@ -0,0 +1,330 @@
+package org.kmymoney.apiext.trxmgr;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.kmymoney.api.read.KMyMoneyTransaction;
+import org.kmymoney.api.write.KMyMoneyWritableFile;
+import org.kmymoney.api.write.KMyMoneyWritableTransaction;
+import org.kmymoney.base.basetypes.simple.KMMTrxID;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Standing (continuous) queries on a KMyMoney file: A filter is evaluated
+ * once, upon registration; after that, only the transactions that have
+ * been created, changed or removed are re-evaluated, and the subscriber
+ * is told which transactions have been added to resp. removed from the
+ * query's result.
+ * <br>
+ * To that end, the modifications have to go through this class:
+ * {@link #createWritableTransaction()}, {@link #removeTransaction(KMyMoneyWritableTransaction)},
+ * {@link #merge(TransactionMergerVar1, KMMTrxID, KMMTrxID)} etc.
+ * Changes on existing transactions (or their splits) are reported with
+ * {@link #transactionChanged(KMyMoneyTransaction)}. Modifications made
+ * directly on the file are not observed.
+ * <br>
+ * Each modification is also reported to {@link TransactionIndexes} right
+ * away, so that cached query results (cf. {@link TransactionFinder#setResultCacheSize(int)})
+ * are dropped.
+ * <br>
+ * The modifications are collected; {@link #flush()} re-evaluates the
+ * collected transactions and notifies the subscribers (on the calling
+ * thread), so that e.g. a newly created transaction is evaluated only
+ * after it has been completely set up.
+ */
+public class StandingQueryManager {
+
+	/**
+	 * Subscriber of a standing query
+	 */
+	public interface DeltaListener {
+
+		/**
+		 * Called upon {@link StandingQueryManager#flush()} if the query's
+		 * result has changed.
+		 *
+		 * @param query the query
+		 * @param added transactions that match now (and did not before)
+		 * @param removed transactions that matched before (and do not now
+		 * or have been removed from the file)
+		 */
+		void matchesChanged(Query query,
+							List<KMyMoneyTransaction> added,
+							List<KMyMoneyTransaction> removed);
+
+	}
+
+	/**
+	 * A registered query, together with its current result
+	 */
+	public static final class Query {
+		private final CompositeFilter<KMyMoneyTransaction> flt;
+		private final DeltaListener                        listener;
+
+		// Current result
+		private final Map<KMMTrxID, KMyMoneyTransaction> matches =
+				new LinkedHashMap<KMMTrxID, KMyMoneyTransaction>();
+
+		private Query(final CompositeFilter<KMyMoneyTransaction> flt, final DeltaListener listener) {
+			this.flt = flt;
+			this.listener = listener;
+		}
+
+		public CompositeFilter<KMyMoneyTransaction> getFilter() {
+			return flt;
+		}
+
+		@Override
+		public String toString() {
+			return "Query [flt=" + flt + "]";
+		}
+	}
+
+    // Logger
+    private static final Logger LOGGER = LoggerFactory.getLogger(StandingQueryManager.class);
+
+    // ---------------------------------------------------------------
+
+	private final KMyMoneyWritableFile kmmFile;
+
+	private final ArrayList<Query> queries = new ArrayList<Query>();
+
+	// Transactions to be re-evaluated upon next flush;
+	// null value: transaction has been removed
+	private final Map<KMMTrxID, KMyMoneyTransaction> pending =
+			new LinkedHashMap<KMMTrxID, KMyMoneyTransaction>();
+
+	// Transactions have been created since the last flush
+	private boolean createdPending = false;
+
+    // ---------------------------------------------------------------
+
+	public StandingQueryManager(KMyMoneyWritableFile kmmFile) {
+		if ( kmmFile == null ) {
+			throw new IllegalArgumentException("null kmymoney-file object given");
+		}
+
+		this.kmmFile = kmmFile;
+	}
+
+    // ---------------------------------------------------------------
+
+	public KMyMoneyWritableFile getKMyMoneyFile() {
+		return kmmFile;
+	}
+
+    // ---------------------------------------------------------------
+	// Subscriptions
+
+	/**
+	 * @param flt transaction filter (compiled right away)
+	 * @param withSplits whether the split-level criteria are to be checked
+	 * @param splitLogic how the split-level criteria are to be applied
+	 * @param listener subscriber
+	 * @return the registered query
+	 */
+	public Query register(final TransactionFilter flt,
+						  final boolean withSplits,
+						  final TransactionFilter.SplitLogic splitLogic,
+						  final DeltaListener listener) {
+		return register(CompositeFilter.of(flt, withSplits, splitLogic), listener);
+	}
+
+	/**
+	 * Registers a query and evaluates it over all transactions (once).
+	 * Pending modifications are flushed first.
+	 *
+	 * @param flt composite filter
+	 * @param listener subscriber
+	 * @return the registered query
+	 */
+	public synchronized Query register(final CompositeFilter<KMyMoneyTransaction> flt,
+									   final DeltaListener listener) {
+		if ( flt == null ) {
+			throw new IllegalArgumentException("null composite filter given");
+		}
+
+		if ( listener == null ) {
+			throw new IllegalArgumentException("null listener given");
+		}
+
+		flush();
+
+		Query query = new Query(flt, listener);
+		for ( KMyMoneyTransaction trx : new TransactionFinder(kmmFile).find(flt) ) {
+			query.matches.put(trx.getID(), trx);
+		}
+
+		queries.add(query);
+		LOGGER.debug("register: Registered standing query with " + query.matches.size() + " initial matches: " + query);
+
+		return query;
+	}
+
+	public synchronized void unregister(final Query query) {
+		if ( query == null ) {
+			throw new IllegalArgumentException("null query given");
+		}
+
+		queries.remove(query);
+	}
+
+	/**
+	 * @return the query's current result, i.e. as of the last flush
+	 * (in the order of the matches' discovery)
+	 */
+	public synchronized List<KMyMoneyTransaction> getMatches(final Query query) {
+		if ( query == null ) {
+			throw new IllegalArgumentException("null query given");
+		}
+
+		return new ArrayList<KMyMoneyTransaction>(query.matches.values());
+	}
+
+    // ---------------------------------------------------------------
+	// Modifications
+
+	public synchronized KMyMoneyWritableTransaction createWritableTransaction() {
+		KMyMoneyWritableTransaction trx = kmmFile.createWritableTransaction();
+		TransactionIndexes.invalidate(kmmFile);
+		pending.put(trx.getID(), trx);
+		createdPending = true;
+		return trx;
+	}
+
+	public synchronized void removeTransaction(final KMyMoneyWritableTransaction trx) {
+		if ( trx == null ) {
+			throw new IllegalArgumentException("null transaction given");
+		}
+
+		KMMTrxID trxID = trx.getID();
+		kmmFile.removeTransaction(trx);
+		TransactionIndexes.invalidate(kmmFile);
+		pending.put(trxID, null);
+	}
+
+	/**
+	 * To be called after a transaction or one of its splits has been changed.
+	 */
+	public synchronized void transactionChanged(final KMyMoneyTransaction trx) {
+		if ( trx == null ) {
+			throw new IllegalArgumentException("null transaction given");
+		}
+
+		TransactionIndexes.invalidate(kmmFile);
+
+		// sic, a removal must not be overwritten
+		if ( ! pending.containsKey(trx.getID()) ||
+			 pending.get(trx.getID()) != null ) {
+			pending.put(trx.getID(), trx);
+		}
+	}
+
+	public void merge(final TransactionMergerVar1 merger,
+					  final KMMTrxID survivorID, final KMMTrxID dierID) throws MergePlausiCheckException {
+		checkMerger(merger);
+		mergeCore(merger, survivorID, dierID);
+	}
+
+	/**
+	 * Cf. {@link TransactionMergerVar2}: The survivor is changed
+	 * (bank split replaced) as well.
+	 */
+	public void merge(final TransactionMergerVar2 merger,
+					  final KMMTrxID survivorID, final KMMTrxID dierID) throws MergePlausiCheckException {
+		checkMerger(merger);
+		mergeCore(merger, survivorID, dierID);
+	}
+
+	private void checkMerger(final TransactionMergerBase merger) {
+		if ( merger == null ) {
+			throw new IllegalArgumentException("null merger given");
+		}
+
+		if ( merger.kmmFile != kmmFile ) {
+			throw new IllegalArgumentException("merger works on another KMyMoney file");
+		}
+	}
+
+	private synchronized void mergeCore(final IFTransactionMerger merger,
+										final KMMTrxID survivorID, final KMMTrxID dierID) throws MergePlausiCheckException {
+		KMyMoneyTransaction survivor = kmmFile.getTransactionByID(survivorID);
+		KMyMoneyWritableTransaction dier = kmmFile.getWritableTransactionByID(dierID);
+		if ( survivor == null ||
+			 dier == null ) {
+			throw new IllegalArgumentException("survivor or dier transaction not found: " + survivorID + "/" + dierID);
+		}
+
+		merger.merge(survivor, dier);
+
+		// Only if the merge has been successful
+		pending.put(dierID, null);
+		pending.put(survivorID, survivor);
+	}
+
+    // ---------------------------------------------------------------
+
+	/**
+	 * Re-evaluates the transactions modified since the last flush
+	 * against all queries and notifies the subscribers of the changes.
+	 * <br>
+	 * Only the pending transactions are touched. The file's indexes are
+	 * not thrown away, unless transactions have been created since the
+	 * last flush (cf. {@link TransactionIndexes}).
+	 *
+	 * @return number of notifications sent
+	 */
+	public synchronized int flush() {
+		if ( pending.isEmpty() ) {
+			return 0;
+		}
+
+		LOGGER.debug("flush: Re-evaluating " + pending.size() + " modified transactions against " + queries.size() + " queries");
+
+		// The other modifications have been reported when they were made,
+		// but new transactions are set up after their creation
+		if ( createdPending ) {
+			TransactionIndexes.invalidate(kmmFile);
+			createdPending = false;
+		}
+
+		int result = 0;
+		for ( Query query : queries ) {
+			ArrayList<KMyMoneyTransaction> added   = new ArrayList<KMyMoneyTransaction>();
+			ArrayList<KMyMoneyTransaction> dropped = new ArrayList<KMyMoneyTransaction>();
+
+			for ( Map.Entry<KMMTrxID, KMyMoneyTransaction> entry : pending.entrySet() ) {
+				KMyMoneyTransaction trx = entry.getValue();
+				boolean matchesNow = ( trx != null ) && query.flt.matchesCriteria(trx);
+				if ( matchesNow ) {
+					if ( ! query.matches.containsKey(entry.getKey()) ) {
+						query.matches.put(entry.getKey(), trx);
+						added.add(trx);
+					}
+				} else {
+					KMyMoneyTransaction old = query.matches.remove(entry.getKey());
+					if ( old != null ) {
+						dropped.add(old);
+					}
+				}
+			}
+
+			if ( ! added.isEmpty() ||
+				 ! dropped.isEmpty() ) {
+				query.listener.matchesChanged(query,
+											  Collections.unmodifiableList(added),
+											  Collections.unmodifiableList(dropped));
+				result++;
+			}
+		}
+
+		pending.clear();
+
+		return result;
+	}
+
+}
@@ -0,0 +1,362 @@
+package org.kmymoney.apiext.trxmgr;
+
+import java.time.LocalDate;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.kmymoney.api.read.KMyMoneyTransactionSplit;
+import org.kmymoney.api.write.KMyMoneyWritableFile;
+import org.kmymoney.apiext.Const;
+import org.kmymoney.base.basetypes.simple.KMMAcctID;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import xyz.schnorxoborx.base.numbers.FixedPointNumber;
+
+/**
+ * Matches the lines of an imported (bank/broker) statement against the
+ * transaction splits already booked in a file, so that only the lines
+ * that have no counterpart yet have to be booked.
+ * <br>
+ * A line matches a split if both are on the same account, their dates
+ * differ by at most {@link Const#DIFF_TOLERANCE_DAYS} and their values by
+ * at most {@link Const#DIFF_TOLERANCE_VALUE}. Each split matches at most
+ * one line: In date order, each line takes the closest (by date, then
+ * by value) split that is still free.
+ * <br>
+ * Sort-merge join: The lines are sorted by date posted, and the book
+ * side is scanned once, in date order (cf. {@link SplitColumnStore}),
+ * with a window of splits per account moving along with the lines.
+ * Thus, the cost is about linear in both sides instead of one finder
+ * call per line.
+ */
+public class StatementReconciler {
+
+	/**
+	 * One line of an imported statement
+	 */
+	public static final class StatementLine {
+		private final KMMAcctID        acctID;
+		private final LocalDate        datePosted;
+		private final FixedPointNumber value;
+
+		/**
+		 * @param acctID the account the statement is about
+		 * @param datePosted date posted
+		 * @param value value, from the account's point of view
+		 * (i.e. like the value of the according split)
+		 */
+		public StatementLine(final KMMAcctID acctID, final LocalDate datePosted, final FixedPointNumber value) {
+			if ( acctID == null ) {
+				throw new IllegalArgumentException("null account ID given");
+			}
+
+			if ( datePosted == null ) {
+				throw new IllegalArgumentException("null date given");
+			}
+
+			if ( value == null ) {
+				throw new IllegalArgumentException("null value given");
+			}
+
+			this.acctID = acctID;
+			this.datePosted = datePosted;
+			this.value = value;
+		}
+
+		public KMMAcctID getAccountID() {
+			return acctID;
+		}
+
+		public LocalDate getDatePosted() {
+			return datePosted;
+		}
+
+		public FixedPointNumber getValue() {
+			return value;
+		}
+
+		@Override
+		public String toString() {
+			return "StatementLine [" +
+					    "acctID=" + acctID + ", " +
+					"datePosted=" + datePosted + ", " +
+					     "value=" + value + "]";
+		}
+	}
+
+	/**
+	 * A statement line together with the split it matches
+	 */
+	public static final class Match {
+		private final StatementLine            line;
+		private final KMyMoneyTransactionSplit splt;
+		private final int                      dateDiffDays;
+		private final long                     valueDiff; // scaled
+
+		private Match(final StatementLine line, final KMyMoneyTransactionSplit splt,
+					  final int dateDiffDays, final long valueDiff) {
+			this.line = line;
+			this.splt = splt;
+			this.dateDiffDays = dateDiffDays;
+			this.valueDiff = valueDiff;
+		}
+
+		public StatementLine getLine() {
+			return line;
+		}
+
+		public KMyMoneyTransactionSplit getSplit() {
+			return splt;
+		}
+
+		/**
+		 * @return number of days between the line's and the split's
+		 * (transaction's) date posted
+		 */
+		public int getDateDiffDays() {
+			return dateDiffDays;
+		}
+
+		/**
+		 * @return (abs.) difference between the line's and the split's value
+		 */
+		public ScaledAmount getValueDiff() {
+			return ScaledAmount.ofScaled(valueDiff);
+		}
+
+		@Override
+		public String toString() {
+			return "Match [" +
+					        "line=" + line + ", " +
+					        "splt=" + splt.getQualifID() + ", " +
+					"dateDiffDays=" + dateDiffDays + ", " +
+					   "valueDiff=" + getValueDiff() + "]";
+		}
+	}
+
+	/**
+	 * Outcome of one reconciliation
+	 */
+	public static final class Result {
+		private final List<Match>                    matches;
+		private final List<StatementLine>            unmatchedLines;
+		private final List<KMyMoneyTransactionSplit> unmatchedSplits;
+
+		private Result(final List<Match> matches,
+					   final List<StatementLine> unmatchedLines,
+					   final List<KMyMoneyTransactionSplit> unmatchedSplits) {
+			this.matches = Collections.unmodifiableList(matches);
+			this.unmatchedLines = Collections.unmodifiableList(unmatchedLines);
+			this.unmatchedSplits = Collections.unmodifiableList(unmatchedSplits);
+		}
+
+		/**
+		 * @return the matched lines, in the order given
+		 */
+		public List<Match> getMatches() {
+			return matches;
+		}
+
+		/**
+		 * @return the lines without counterpart in the book (i.e. the ones
+		 * to be booked), in the order given
+		 */
+		public List<StatementLine> getUnmatchedLines() {
+			return unmatchedLines;
+		}
+
+		/**
+		 * @return the splits on the statement's accounts within the statement's
+		 * period (plus/minus the date tolerance) without counterpart in the
+		 * statement, in date-posted order
+		 */
+		public List<KMyMoneyTransactionSplit> getUnmatchedSplits() {
+			return unmatchedSplits;
+		}
+
+		@Override
+		public String toString() {
+			return "Result [" +
+					        "matches=" + matches.size() + ", " +
+					 "unmatchedLines=" + unmatchedLines.size() + ", " +
+					"unmatchedSplits=" + unmatchedSplits.size() + "]";
+		}
+	}
+
+    // Logger
+    private static final Logger LOGGER = LoggerFactory.getLogger(StatementReconciler.class);
+
+    // ---------------------------------------------------------------
+
+	private final KMyMoneyWritableFile kmmFile;
+
+    // ---------------------------------------------------------------
+
+	public StatementReconciler(KMyMoneyWritableFile kmmFile) {
+		if ( kmmFile == null ) {
+			throw new IllegalArgumentException("null kmymoney-file object given");
+		}
+
+		this.kmmFile = kmmFile;
+	}
+
+    // ---------------------------------------------------------------
+
+	/**
+	 * @param lines the statement lines (possibly on several accounts)
+	 * @return matched lines, unmatched lines and unmatched splits
+	 */
+	public Result reconcile(final Collection<StatementLine> lines) {
+		if ( lines == null ) {
+			throw new IllegalArgumentException("null statement-line-collection given");
+		}
+
+		// Built for this run, i.e. on the file as it is now
+		SplitColumnStore colStore = TransactionIndexes.createSnapshot(kmmFile).getColumnStore();
+
+		// 1) Import side: sorted by date (stable, i.e. ties in the order given)
+		StatementLine[] lineArr = lines.toArray(new StatementLine[lines.size()]);
+		int[]     lineDays   = new int[lineArr.length];
+		int[]     lineOrds   = new int[lineArr.length];
+		long[]    lineValues = new long[lineArr.length];
+		boolean[] relevAccts = new boolean[colStore.getNofAccounts()];
+		int minDay = Integer.MAX_VALUE;
+		int maxDay = Integer.MIN_VALUE;
+		ArrayList<Integer> order = new ArrayList<Integer>(lineArr.length);
+		for ( int i = 0; i < lineArr.length; i++ ) {
+			if ( lineArr[i] == null ) {
+				throw new IllegalArgumentException("null statement line given");
+			}
+
+			lineDays[i]   = (int) lineArr[i].getDatePosted().toEpochDay();
+			lineOrds[i]   = colStore.getAccountOrdinal(lineArr[i].getAccountID().toString()); // important: toString()
+			lineValues[i] = ScaledAmount.toScaled(lineArr[i].getValue());
+			if ( lineOrds[i] == SplitColumns.NONE ) {
+				LOGGER.warn("reconcile: Unknown account " + lineArr[i].getAccountID() + ", line cannot be matched");
+				continue;
+			}
+
+			relevAccts[lineOrds[i]] = true;
+			minDay = Math.min(minDay, lineDays[i]);
+			maxDay = Math.max(maxDay, lineDays[i]);
+			order.add(i);
+		}
+
+		order.sort((idx1, idx2) -> Integer.compare(lineDays[idx1], lineDays[idx2]));
+
+		// 2) Sweep: The book rows are added to their account's window
+		// as soon as they are within the tolerance ahead of the current
+		// line, and dropped once they are behind it.
+		int[]  matchRows       = new int[lineArr.length];
+		int[]  matchDiffDays   = new int[lineArr.length];
+		long[] matchDiffValues = new long[lineArr.length];
+		Arrays.fill(matchRows, SplitColumns.NONE);
+		boolean[] rowTaken = new boolean[colStore.size()];
+
+		int firstRow = lowerBound(colStore, minDay - Const.DIFF_TOLERANCE_DAYS);
+		int nextRow  = firstRow;
+		Map<Integer, ArrayDeque<Integer>> windows = new HashMap<Integer, ArrayDeque<Integer>>();
+		for ( int i : order ) {
+			int day = lineDays[i];
+			while ( nextRow < colStore.size() &&
+					colStore.getEpochDay(nextRow) <= day + Const.DIFF_TOLERANCE_DAYS ) {
+				int acctOrd = colStore.getAccountOrdinal(nextRow);
+				if ( relevAccts[acctOrd] ) {
+					windows.computeIfAbsent(acctOrd, key -> new ArrayDeque<Integer>()).addLast(nextRow);
+				}
+				nextRow++;
+			}
+
+			ArrayDeque<Integer> window = windows.get(lineOrds[i]);
+			if ( window == null ) {
+				continue;
+			}
+
+			// Rows behind the current line (or taken) will not be needed anymore
+			while ( ! window.isEmpty() &&
+					( rowTaken[window.peekFirst()] ||
+					  colStore.getEpochDay(window.peekFirst()) < day - Const.DIFF_TOLERANCE_DAYS ) ) {
+				window.removeFirst();
+			}
+
+			int  bestRow      = SplitColumns.NONE;
+			int  bestDiffDays = Integer.MAX_VALUE;
+			long bestDiffVal  = Long.MAX_VALUE;
+			for ( int row : window ) {
+				if ( rowTaken[row] ) {
+					continue;
+				}
+
+				long diffVal = Math.abs(colStore.getValueScaled(row) - lineValues[i]);
+				if ( diffVal > ScaledAmount.TOLERANCE ) {
+					continue;
+				}
+
+				int diffDays = Math.abs(colStore.getEpochDay(row) - day);
+				if ( diffDays < bestDiffDays ||
+					 diffDays == bestDiffDays && diffVal < bestDiffVal ) {
+					bestRow      = row;
+					bestDiffDays = diffDays;
+					bestDiffVal  = diffVal;
+				}
+			}
+
+			if ( bestRow != SplitColumns.NONE ) {
+				rowTaken[bestRow]  = true;
+				matchRows[i]       = bestRow;
+				matchDiffDays[i]   = bestDiffDays;
+				matchDiffValues[i] = bestDiffVal;
+			}
+		}
+
+		// 3) Collect, lines in the order given
+		ArrayList<Match> matches = new ArrayList<Match>();
+		ArrayList<StatementLine> unmatchedLines = new ArrayList<StatementLine>();
+		for ( int i = 0; i < lineArr.length; i++ ) {
+			if ( matchRows[i] == SplitColumns.NONE ) {
+				unmatchedLines.add(lineArr[i]);
+			} else {
+				matches.add(new Match(lineArr[i], colStore.getSplit(matchRows[i]),
+									  matchDiffDays[i], matchDiffValues[i]));
+			}
+		}
+
+		ArrayList<KMyMoneyTransactionSplit> unmatchedSplits = new ArrayList<KMyMoneyTransactionSplit>();
+		for ( int row = firstRow;
+			  row < colStore.size() && colStore.getEpochDay(row) <= maxDay + Const.DIFF_TOLERANCE_DAYS;
+			  row++ ) {
+			if ( relevAccts[colStore.getAccountOrdinal(row)] &&
+				 ! rowTaken[row] ) {
+				unmatchedSplits.add(colStore.getSplit(row));
+			}
+		}
+
+		Result result = new Result(matches, unmatchedLines, unmatchedSplits);
+		LOGGER.debug("reconcile: " + lineArr.length + " lines: " + result);
+		return result;
+	}
+
+	// First row posted on or after the given day
+	private static int lowerBound(final SplitColumnStore colStore, final int day) {
+		int low  = 0;
+		int high = colStore.size();
+		while ( low < high ) {
+			int mid = ( low + high ) >>> 1;
+			if ( colStore.getEpochDay(mid) < day ) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+
+		return low;
+	}
+
+}
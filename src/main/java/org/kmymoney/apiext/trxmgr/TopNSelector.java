@@ -0,0 +1,62 @@
+package org.kmymoney.apiext.trxmgr;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.function.Predicate;
+
+/**
+ * Selects the first n matching elements according to a given order,
+ * using a bounded heap, i.e. without materializing or fully sorting
+ * the whole match set (O(m log n) for m matches).
+ * <br>
+ * Supports keyset ("seek") pagination: Only elements strictly after
+ * a given element (typically the last one of the previous page) are
+ * taken into account.
+ */
+class TopNSelector {
+
+	static <T> ArrayList<T> select(final Iterable<? extends T> cands,
+								   final Predicate<? super T> pred,
+								   final Comparator<? super T> order,
+								   final T after,
+								   final int n) {
+		if ( n < 0 ) {
+			throw new IllegalArgumentException("negative number of results given");
+		}
+
+		ArrayList<T> result = new ArrayList<T>();
+		if ( n == 0 ) {
+			return result;
+		}
+
+		// Max-heap: the head is the element to drop next
+		PriorityQueue<T> heap = new PriorityQueue<T>(n, order.reversed());
+		for ( T elt : cands ) {
+			if ( after != null &&
+				 order.compare(elt, after) <= 0 ) {
+				continue;
+			}
+
+			// Cheap check against the heap before the (possibly expensive) filter
+			if ( heap.size() == n &&
+				 order.compare(elt, heap.peek()) >= 0 ) {
+				continue;
+			}
+
+			if ( ! pred.test(elt) ) {
+				continue;
+			}
+
+			if ( heap.size() == n ) {
+				heap.poll();
+			}
+			heap.add(elt);
+		}
+
+		result.addAll(heap);
+		result.sort(order);
+		return result;
+	}
+
+}
@@ -0,0 +1,673 @@
+package org.kmymoney.apiext.trxmgr;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Predicate;
+
+import org.kmymoney.api.read.KMyMoneyTransactionSplit;
+import org.kmymoney.api.write.KMyMoneyWritableFile;
+import org.kmymoney.api.write.KMyMoneyWritableTransaction;
+import org.kmymoney.api.write.KMyMoneyWritableTransactionSplit;
+import org.kmymoney.base.basetypes.complex.KMMQualifSpltID;
+import org.kmymoney.base.basetypes.simple.KMMTrxID;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Merges many survivor/dier pairs in one go (cf. {@link TransactionMergerVar1},
+ * {@link TransactionMergerVar2}):
+ * <ol>
+ *   <li>All pairs are resolved (in bulk) and checked for consistency.</li>
+ *   <li>All consistent pairs are plausi-checked, optionally in parallel.
+ *   The signature of each transaction (cf. {@link TransactionSignature}) is
+ *   computed only once, no matter in how many pairs it takes part.</li>
+ *   <li>The pairs that have passed are checked for conflicts, in the given order:
+ *   The first one wins, later ones taking part in the same transactions
+ *   (e.g. a dier that is to be merged twice, or a dier that is a survivor
+ *   in another pair) are conflicts. Thus, ranked alternatives can be passed
+ *   (cf. {@link DuplicateCandidateFinder}).</li>
+ *   <li>The remaining pairs are merged, sequentially and in the given order.</li>
+ * </ol>
+ * Instead of throwing on the first failing pair, an outcome is reported per pair.
+ * <br>
+ * {@link #simulate(List, TransactionFinder.ExecutionMode)} runs the first three
+ * steps only and reports what the merges would change, without touching the file.
+ * In var. 2, it also checks that the survivor would still be sane afterwards.
+ */
+public class TransactionBatchMerger {
+
+	public enum Outcome {
+		MERGED,
+		NOT_FOUND,           // survivor, dier or (var. 2) one of the splits does not exist
+		INVALID,             // pair is inconsistent in itself
+		CONFLICT,            // pair collides with an earlier one that has passed
+		PLAUSI_CHECK_FAILED,
+		FAILED               // error while checking or merging
+	}
+
+	/**
+	 * A survivor/dier pair, for var. 2 together with the two bank splits
+	 * (cf. {@link TransactionMergerVar2#setZDierTrxBankSpltID(KMMQualifSpltID)},
+	 * {@link TransactionMergerVar2#setZSurvTrxBankSpltBeforeID(KMMQualifSpltID)})
+	 */
+	public static final class Pair {
+		private final KMMTrxID        survivorID;
+		private final KMMTrxID        dierID;
+		private final KMMQualifSpltID zDierTrxBankSpltID;
+		private final KMMQualifSpltID zSurvTrxBankSpltBeforeID;
+
+		/**
+		 * Var. 1
+		 */
+		public Pair(final KMMTrxID survivorID, final KMMTrxID dierID) {
+			this(survivorID, dierID, null, null);
+		}
+
+		/**
+		 * Var. 2
+		 */
+		public Pair(final KMMTrxID survivorID, final KMMTrxID dierID,
+					final KMMQualifSpltID zDierTrxBankSpltID, final KMMQualifSpltID zSurvTrxBankSpltBeforeID) {
+			this.survivorID = survivorID;
+			this.dierID = dierID;
+			this.zDierTrxBankSpltID = zDierTrxBankSpltID;
+			this.zSurvTrxBankSpltBeforeID = zSurvTrxBankSpltBeforeID;
+		}
+
+		public KMMTrxID getSurvivorID() {
+			return survivorID;
+		}
+
+		public KMMTrxID getDierID() {
+			return dierID;
+		}
+
+		public KMMQualifSpltID getZDierTrxBankSpltID() {
+			return zDierTrxBankSpltID;
+		}
+
+		public KMMQualifSpltID getZSurvTrxBankSpltBeforeID() {
+			return zSurvTrxBankSpltBeforeID;
+		}
+
+		@Override
+		public String toString() {
+			return "Pair [" +
+					"survivorID=" + survivorID + ", " +
+					    "dierID=" + dierID + "]";
+		}
+	}
+
+	/**
+	 * Outcome for one pair
+	 */
+	public static final class Result {
+		private final Pair    pair;
+		private final Outcome outcome;
+		private final String  message;
+
+		private Result(final Pair pair, final Outcome outcome, final String message) {
+			this.pair = pair;
+			this.outcome = outcome;
+			this.message = message;
+		}
+
+		public Pair getPair() {
+			return pair;
+		}
+
+		public Outcome getOutcome() {
+			return outcome;
+		}
+
+		/**
+		 * @return details on the outcome, null for {@link Outcome#MERGED}
+		 */
+		public String getMessage() {
+			return message;
+		}
+
+		@Override
+		public String toString() {
+			return "Result [" +
+					   "pair=" + pair + ", " +
+					"outcome=" + outcome + ", " +
+					"message=" + message + "]";
+		}
+	}
+
+	/**
+	 * Simulated outcome for one pair: the splits that would be copied resp.
+	 * removed, and the resulting changes of the accounts' balances
+	 */
+	public static final class Impact {
+		private final Pair    pair;
+		private final Outcome outcome;
+		private final String  message;
+
+		private final List<KMyMoneyTransactionSplit> copiedSplits;
+		private final List<KMyMoneyTransactionSplit> removedSplits;
+		private final Map<String, ScaledAmount>      balanceDeltas;
+
+		private Impact(final Pair pair, final Outcome outcome, final String message,
+					   final List<KMyMoneyTransactionSplit> copiedSplits,
+					   final List<KMyMoneyTransactionSplit> removedSplits,
+					   final Map<String, ScaledAmount> balanceDeltas) {
+			this.pair = pair;
+			this.outcome = outcome;
+			this.message = message;
+			this.copiedSplits = Collections.unmodifiableList(copiedSplits);
+			this.removedSplits = Collections.unmodifiableList(removedSplits);
+			this.balanceDeltas = Collections.unmodifiableMap(balanceDeltas);
+		}
+
+		public Pair getPair() {
+			return pair;
+		}
+
+		/**
+		 * @return the outcome the merge would have, {@link Outcome#MERGED}
+		 * if it would be applied, {@link Outcome#FAILED} if (var. 2) the
+		 * survivor would not be sane afterwards
+		 */
+		public Outcome getOutcome() {
+			return outcome;
+		}
+
+		public String getMessage() {
+			return message;
+		}
+
+		/**
+		 * @return the splits that would be copied to the survivor
+		 * (var. 2: the dier's bank split, cf. {@link TransactionMergerVar2})
+		 */
+		public List<KMyMoneyTransactionSplit> getCopiedSplits() {
+			return copiedSplits;
+		}
+
+		/**
+		 * @return the splits that would be removed (the dier's ones and,
+		 * in var. 2, the survivor's bank split)
+		 */
+		public List<KMyMoneyTransactionSplit> getRemovedSplits() {
+			return removedSplits;
+		}
+
+		/**
+		 * @return change of balance (shares) per account ID (string form),
+		 * only accounts with a non-zero change
+		 */
+		public Map<String, ScaledAmount> getBalanceDeltas() {
+			return balanceDeltas;
+		}
+
+		@Override
+		public String toString() {
+			return "Impact [" +
+					         "pair=" + pair + ", " +
+					      "outcome=" + outcome + ", " +
+					 "copiedSplits=" + copiedSplits.size() + ", " +
+					"removedSplits=" + removedSplits.size() + ", " +
+					"balanceDeltas=" + balanceDeltas + "]";
+		}
+	}
+
+    // Logger
+    private static final Logger LOGGER = LoggerFactory.getLogger(TransactionBatchMerger.class);
+
+    // ---------------------------------------------------------------
+
+	private final KMyMoneyWritableFile      kmmFile;
+	private final TransactionMergerBase.Var var;
+
+	// null means: common pool
+	private ForkJoinPool forkJoinPool = null;
+
+    // ---------------------------------------------------------------
+
+	public TransactionBatchMerger(KMyMoneyWritableFile kmmFile, TransactionMergerBase.Var var) {
+		if ( kmmFile == null ) {
+			throw new IllegalArgumentException("null kmymoney-file object given");
+		}
+
+		if ( var == null ) {
+			throw new IllegalArgumentException("null merger variant given");
+		}
+
+		this.kmmFile = kmmFile;
+		this.var = var;
+	}
+
+    // ---------------------------------------------------------------
+
+	public TransactionMergerBase.Var getVar() {
+		return var;
+	}
+
+	public ForkJoinPool getForkJoinPool() {
+		return forkJoinPool;
+	}
+
+	/**
+	 * @param pool the pool used for the parallel plausi checks,
+	 * null for the common pool
+	 */
+	public void setForkJoinPool(ForkJoinPool pool) {
+		this.forkJoinPool = pool;
+	}
+
+    // ---------------------------------------------------------------
+
+	public List<Result> merge(List<Pair> pairs) {
+		return merge(pairs, TransactionFinder.ExecutionMode.SEQUENTIAL);
+	}
+
+	/**
+	 * @param pairs survivor/dier pairs. Conflicting pairs are resolved in
+	 * favour of the earlier one.
+	 * @param mode sequential or parallel plausi checks (the merges themselves
+	 * are always applied sequentially)
+	 * @return one result per pair, in the same order
+	 */
+	public List<Result> merge(List<Pair> pairs, TransactionFinder.ExecutionMode mode) {
+		if ( pairs == null ) {
+			throw new IllegalArgumentException("null pair list given");
+		}
+
+		if ( mode == null ) {
+			throw new IllegalArgumentException("null execution mode given");
+		}
+
+		LOGGER.debug("merge: Merging " + pairs.size() + " pairs (" + var + ")");
+
+		TransactionMergerBase merger = ( var == TransactionMergerBase.Var.VAR_1 ) ?
+											new TransactionMergerVar1(kmmFile) :
+											new TransactionMergerVar2(kmmFile);
+
+		// 1) Resolve, check consistency
+		ArrayList<Job> jobList = resolve(pairs);
+
+		ArrayList<Job> openJobs = new ArrayList<Job>();
+		for ( Job job : jobList ) {
+			if ( job.outcome == null ) {
+				openJobs.add(job);
+			}
+		}
+
+		// 2) Plausi checks, signatures computed once per transaction
+		TransactionIndexes idxs = TransactionIndexes.createSnapshot(kmmFile);
+		ArrayList<Job> passedJobs = check(openJobs, job -> plausiCheck(merger, job, idxs), mode);
+
+		// 3) Conflicts: first come, first served
+		passedJobs = reserve(passedJobs);
+
+		// 4) Apply, sequentially
+		int nofMerged = 0;
+		try {
+			for ( Job job : passedJobs ) {
+				try {
+					if ( merger instanceof TransactionMergerVar1 ) {
+						((TransactionMergerVar1) merger).applyMerge(job.dier);
+					} else {
+						((TransactionMergerVar2) merger).applyMerge(job.survivor, job.zDierSplt, job.zSurvSpltBefore, job.dier);
+					}
+					job.outcome = Outcome.MERGED;
+					job.message = null;
+					nofMerged++;
+				} catch ( RuntimeException exc ) {
+					LOGGER.error("merge: Could not merge " + job.pair + ": " + exc.getMessage());
+					job.outcome = Outcome.FAILED;
+					job.message = exc.toString();
+				}
+			}
+		} finally {
+			// sic, also if no merge has succeeded: A failed one may have
+			// changed the file (e.g. var. 2, copy of the bank split made)
+			if ( ! passedJobs.isEmpty() ) {
+				// Indexes and cached query results are out of date now
+				TransactionIndexes.invalidate(kmmFile);
+			}
+		}
+
+		ArrayList<Result> result = new ArrayList<Result>(jobList.size());
+		for ( Job job : jobList ) {
+			result.add(new Result(job.pair, job.outcome, job.message));
+		}
+
+		LOGGER.debug("merge: Merged " + nofMerged + " of " + pairs.size() + " pairs");
+		return Collections.unmodifiableList(result);
+	}
+
+	public List<Impact> simulate(List<Pair> pairs) {
+		return simulate(pairs, TransactionFinder.ExecutionMode.SEQUENTIAL);
+	}
+
+	/**
+	 * Dry run of {@link #merge(List, TransactionFinder.ExecutionMode)}: The pairs
+	 * are resolved and plausi-checked the same way, and for the ones that
+	 * would be merged, the split changes and balance deltas are computed.
+	 * In var. 2, a pair whose survivor would not be sane afterwards (i.e. whose
+	 * bank splits are not mirrored, cf. {@link TransactionMergerVar2}) is
+	 * reported as {@link Outcome#FAILED}, without deltas.
+	 * The file is not changed.
+	 *
+	 * @param pairs survivor/dier pairs
+	 * @param mode sequential or parallel (plausi checks and impact computation)
+	 * @return one impact per pair, in the same order
+	 * @see #getBalanceDeltas(List)
+	 */
+	public List<Impact> simulate(List<Pair> pairs, TransactionFinder.ExecutionMode mode) {
+		if ( pairs == null ) {
+			throw new IllegalArgumentException("null pair list given");
+		}
+
+		if ( mode == null ) {
+			throw new IllegalArgumentException("null execution mode given");
+		}
+
+		LOGGER.debug("simulate: Simulating merge of " + pairs.size() + " pairs (" + var + ")");
+
+		TransactionMergerBase merger = ( var == TransactionMergerBase.Var.VAR_1 ) ?
+											new TransactionMergerVar1(kmmFile) :
+											new TransactionMergerVar2(kmmFile);
+
+		ArrayList<Job> jobList = resolve(pairs);
+
+		ArrayList<Job> openJobs = new ArrayList<Job>();
+		for ( Job job : jobList ) {
+			if ( job.outcome == null ) {
+				openJobs.add(job);
+			}
+		}
+
+		// sic, each job's impact is only written by the thread checking it
+		TransactionIndexes idxs = TransactionIndexes.createSnapshot(kmmFile);
+		ArrayList<Job> passedJobs = check(openJobs,
+										  job -> plausiCheck(merger, job, idxs) && computeImpact(job),
+										  mode);
+		passedJobs = reserve(passedJobs);
+		for ( Job job : passedJobs ) {
+			job.outcome = Outcome.MERGED;
+			job.message = null;
+		}
+
+		ArrayList<Impact> result = new ArrayList<Impact>(jobList.size());
+		for ( Job job : jobList ) {
+			if ( job.outcome == Outcome.MERGED ) {
+				Map<String, ScaledAmount> deltas = new TreeMap<String, ScaledAmount>();
+				for ( Map.Entry<String, Long> entry : job.balanceDeltas.entrySet() ) {
+					if ( ! ScaledAmount.isEqual(entry.getValue(), 0) ) {
+						deltas.put(entry.getKey(), ScaledAmount.ofScaled(entry.getValue()));
+					}
+				}
+				result.add(new Impact(job.pair, job.outcome, null,
+									  job.copiedSplits, job.removedSplits, deltas));
+			} else {
+				result.add(new Impact(job.pair, job.outcome, job.message,
+									  new ArrayList<KMyMoneyTransactionSplit>(),
+									  new ArrayList<KMyMoneyTransactionSplit>(),
+									  new TreeMap<String, ScaledAmount>()));
+			}
+		}
+
+		LOGGER.debug("simulate: " + passedJobs.size() + " of " + pairs.size() + " pairs would be merged");
+		return Collections.unmodifiableList(result);
+	}
+
+	/**
+	 * @param impacts result of {@link #simulate(List, TransactionFinder.ExecutionMode)}
+	 * @return change of balance (shares) per account ID (string form) over all
+	 * pairs that would be merged, only accounts with a non-zero change
+	 */
+	public static Map<String, ScaledAmount> getBalanceDeltas(List<Impact> impacts) {
+		if ( impacts == null ) {
+			throw new IllegalArgumentException("null impact list given");
+		}
+
+		Map<String, Long> sums = new TreeMap<String, Long>();
+		for ( Impact impact : impacts ) {
+			for ( Map.Entry<String, ScaledAmount> entry : impact.balanceDeltas.entrySet() ) {
+				sums.merge(entry.getKey(), entry.getValue().getScaled(), Math::addExact);
+			}
+		}
+
+		Map<String, ScaledAmount> result = new TreeMap<String, ScaledAmount>();
+		for ( Map.Entry<String, Long> entry : sums.entrySet() ) {
+			if ( ! ScaledAmount.isEqual(entry.getValue(), 0) ) {
+				result.put(entry.getKey(), ScaledAmount.ofScaled(entry.getValue()));
+			}
+		}
+
+		return Collections.unmodifiableMap(result);
+	}
+
+    // ---------------------------------------------------------------
+
+	// Jobs that pass the check (in the given order); the others are marked as failed
+	private ArrayList<Job> check(final ArrayList<Job> openJobs, final Predicate<Job> pred,
+								 final TransactionFinder.ExecutionMode mode) {
+		// An error on one pair (e.g. a broken split, an overflowing sum)
+		// must not abort the others
+		Predicate<Job> safePred = job -> {
+			try {
+				return pred.test(job);
+			} catch ( RuntimeException exc ) {
+				LOGGER.error("check: Could not check " + job.pair + ": " + exc.getMessage());
+				job.fail(Outcome.FAILED, exc.toString());
+				return false;
+			}
+		};
+
+		ArrayList<Job> result = null;
+		if ( mode == TransactionFinder.ExecutionMode.PARALLEL ) {
+			result = ParallelFilterTask.filter(openJobs, safePred, getPool());
+		} else {
+			result = new ArrayList<Job>();
+			for ( Job job : openJobs ) {
+				if ( safePred.test(job) ) {
+					result.add(job);
+				}
+			}
+		}
+
+		// sic, overwritten by the caller for the ones that have passed;
+		// the ones failed by the predicate keep their outcome
+		for ( Job job : openJobs ) {
+			if ( job.outcome == null ) {
+				job.fail(Outcome.PLAUSI_CHECK_FAILED, "survivor-dier-pair did not pass plausi check");
+			}
+		}
+
+		return result;
+	}
+
+	private ArrayList<Job> resolve(final List<Pair> pairs) {
+		WritableResolver resolver = new WritableResolver(kmmFile);
+
+		ArrayList<Job> result = new ArrayList<Job>(pairs.size());
+		for ( Pair pair : pairs ) {
+			Job job = new Job(pair);
+			result.add(job);
+
+			if ( pair == null ||
+				 pair.survivorID == null ||
+				 pair.dierID == null ) {
+				job.fail(Outcome.INVALID, "survivor or dier ID missing");
+				continue;
+			}
+
+			if ( pair.survivorID.equals(pair.dierID) ) {
+				job.fail(Outcome.INVALID, "survivor and dier are identical");
+				continue;
+			}
+
+			job.survivor = resolver.findTransaction(pair.survivorID);
+			job.dier = resolver.findTransaction(pair.dierID);
+			if ( job.survivor == null ||
+				 job.dier == null ) {
+				job.fail(Outcome.NOT_FOUND, "survivor or dier transaction not found");
+				continue;
+			}
+
+			if ( var == TransactionMergerBase.Var.VAR_2 ) {
+				resolveSplits(job);
+			}
+		}
+
+		return result;
+	}
+
+	// The given jobs (which have passed the plausi check) without the ones
+	// colliding with an earlier one; those are marked as conflicts
+	private ArrayList<Job> reserve(final ArrayList<Job> passedJobs) {
+		HashSet<KMMTrxID> survivors = new HashSet<KMMTrxID>();
+		HashSet<KMMTrxID> diers     = new HashSet<KMMTrxID>();
+
+		// sic, in the given order (cf. check())
+		ArrayList<Job> result = new ArrayList<Job>(passedJobs.size());
+		for ( Job job : passedJobs ) {
+			KMMTrxID survivorID = job.pair.survivorID;
+			KMMTrxID dierID     = job.pair.dierID;
+
+			// A dier can die only once, and it must not survive elsewhere;
+			// in var. 2, the survivor is changed, so it can take part only once
+			if ( diers.contains(dierID) ||
+				 survivors.contains(dierID) ||
+				 diers.contains(survivorID) ||
+				 var == TransactionMergerBase.Var.VAR_2 && survivors.contains(survivorID) ) {
+				job.fail(Outcome.CONFLICT, "survivor or dier already taken by an earlier pair");
+				continue;
+			}
+
+			survivors.add(survivorID);
+			diers.add(dierID);
+			result.add(job);
+		}
+
+		return result;
+	}
+
+	// Cf. TransactionMergerVar2.merge()
+	private static void resolveSplits(final Job job) {
+		KMMQualifSpltID zDierID = job.pair.zDierTrxBankSpltID;
+		KMMQualifSpltID zSurvID = job.pair.zSurvTrxBankSpltBeforeID;
+		if ( zDierID == null || ! zDierID.isSet() ||
+			 zSurvID == null || ! zSurvID.isSet() ) {
+			job.fail(Outcome.INVALID, "bank split IDs missing");
+			return;
+		}
+
+		if ( zDierID.equals(zSurvID) ) {
+			job.fail(Outcome.INVALID, "bank split IDs are identical");
+			return;
+		}
+
+		if ( ! job.pair.dierID.equals(zDierID.getTransactionID()) ||
+			 ! job.pair.survivorID.equals(zSurvID.getTransactionID()) ) {
+			job.fail(Outcome.INVALID, "bank splits do not belong to dier resp. survivor");
+			return;
+		}
+
+		job.zDierSplt = findSplit(job.dier, zDierID);
+		job.zSurvSpltBefore = findSplit(job.survivor, zSurvID);
+		if ( job.zDierSplt == null ||
+			 job.zSurvSpltBefore == null ) {
+			job.fail(Outcome.NOT_FOUND, "bank split not found");
+		}
+	}
+
+	private static KMyMoneyWritableTransactionSplit findSplit(final KMyMoneyWritableTransaction trx, final KMMQualifSpltID spltID) {
+		for ( KMyMoneyWritableTransactionSplit splt : trx.getWritableSplits() ) {
+			if ( splt.getID().equals(spltID.getSplitID()) ) {
+				return splt;
+			}
+		}
+
+		return null;
+	}
+
+	private static boolean plausiCheck(final TransactionMergerBase merger, final Job job,
+									   final TransactionIndexes idxs) {
+		return merger.plausiCheck(idxs.getSignature(job.survivor),
+								  idxs.getSignature(job.dier));
+	}
+
+	// Cf. TransactionMergerVar1.applyMerge(), TransactionMergerVar2.applyMerge()
+	private boolean computeImpact(final Job job) {
+		job.copiedSplits  = new ArrayList<KMyMoneyTransactionSplit>();
+		job.removedSplits = new ArrayList<KMyMoneyTransactionSplit>();
+		job.balanceDeltas = new HashMap<String, Long>();
+
+		if ( var == TransactionMergerBase.Var.VAR_2 ) {
+			// The survivor must stay sane: The negated copy replaces ZS Splt/before,
+			// so the two bank splits have to be mirrored
+			long survSum = Math.subtractExact(TransactionManager.getValueSumScaled(job.survivor.getSplits()),
+											  Math.addExact(ScaledAmount.toScaled(job.zSurvSpltBefore.getValue()),
+															ScaledAmount.toScaled(job.zDierSplt.getValue())));
+			if ( ! ScaledAmount.isEqual(survSum, 0) ) {
+				job.fail(Outcome.FAILED, "survivor would not be sane after merge (value sum " + ScaledAmount.ofScaled(survSum) + ")");
+				return false;
+			}
+
+			// The copy goes to the account of ZS Splt/before, negated
+			job.copiedSplits.add(job.zDierSplt);
+			addBalanceDelta(job, job.zSurvSpltBefore, - ScaledAmount.toScaled(job.zDierSplt.getShares()));
+
+			job.removedSplits.add(job.zSurvSpltBefore);
+			addBalanceDelta(job, job.zSurvSpltBefore, - ScaledAmount.toScaled(job.zSurvSpltBefore.getShares()));
+		}
+
+		for ( KMyMoneyTransactionSplit splt : job.dier.getSplits() ) {
+			job.removedSplits.add(splt);
+			addBalanceDelta(job, splt, - ScaledAmount.toScaled(splt.getShares()));
+		}
+
+		return true;
+	}
+
+	private static void addBalanceDelta(final Job job, final KMyMoneyTransactionSplit splt, final long delta) {
+		job.balanceDeltas.merge(splt.getAccountID().toString(), delta, Math::addExact); // important: toString()
+	}
+
+	private ForkJoinPool getPool() {
+		return forkJoinPool == null ? ForkJoinPool.commonPool() : forkJoinPool;
+	}
+
+    // ---------------------------------------------------------------
+
+	// Working state of one pair
+	private static final class Job {
+		private final Pair pair;
+
+		private KMyMoneyWritableTransaction      survivor        = null;
+		private KMyMoneyWritableTransaction      dier            = null;
+		private KMyMoneyWritableTransactionSplit zDierSplt       = null; // var. 2 only
+		private KMyMoneyWritableTransactionSplit zSurvSpltBefore = null; // dto.
+
+		// null: still open
+		private Outcome outcome = null;
+		private String  message = null;
+
+		// Simulation only
+		private ArrayList<KMyMoneyTransactionSplit> copiedSplits  = null;
+		private ArrayList<KMyMoneyTransactionSplit> removedSplits = null;
+		private Map<String, Long>                   balanceDeltas = null; // scaled
+
+		Job(final Pair pair) {
+			this.pair = pair;
+		}
+
+		void fail(final Outcome outcome, final String message) {
+			this.outcome = outcome;
+			this.message = message;
+		}
+	}
+
+}
@@ -0,0 +1,139 @@
+package org.kmymoney.apiext.trxmgr;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.kmymoney.api.read.KMyMoneyTransaction;
+
+/**
+ * Transactions of one KMyMoney file, sorted by date posted,
+ * with the dates kept as a primitive array of epoch days.
+ * <br>
+ * Date range queries are answered by binary search, i.e.
+ * in O(log n + k) instead of O(n).
+ * <br>
+ * The index is a snapshot: It does not reflect later changes
+ * on the file (cf. {@link TransactionIndexes}).
+ */
+public class TransactionDateIndex {
+
+	// Order within one day: by ID, so that the order is reproducible
+	static final Comparator<KMyMoneyTransaction> DATE_ORDER =
+			Comparator.comparing((KMyMoneyTransaction trx) -> trx.getDatePosted())
+					  .thenComparing(trx -> trx.getID().toString());
+
+    // ---------------------------------------------------------------
+
+	private final KMyMoneyTransaction[] trxs;
+	private final int[]                 epochDays;
+
+	private final List<KMyMoneyTransaction> trxList;
+
+    // ---------------------------------------------------------------
+
+	TransactionDateIndex(final Collection<? extends KMyMoneyTransaction> trxColl) {
+		if ( trxColl == null ) {
+			throw new IllegalArgumentException("null transaction-collection given");
+		}
+
+		trxs = trxColl.toArray(new KMyMoneyTransaction[trxColl.size()]);
+		Arrays.sort(trxs, DATE_ORDER);
+
+		epochDays = new int[trxs.length];
+		for ( int i = 0; i < trxs.length; i++ ) {
+			epochDays[i] = (int) trxs[i].getDatePosted().toEpochDay();
+		}
+
+		trxList = Collections.unmodifiableList(Arrays.asList(trxs));
+	}
+
+    // ---------------------------------------------------------------
+
+	public int size() {
+		return trxs.length;
+	}
+
+	/**
+	 * @return all transactions, sorted by date posted
+	 */
+	public List<KMyMoneyTransaction> getTransactions() {
+		return trxList;
+	}
+
+	/**
+	 * @param fromDate lower bound (inclusive), null for open
+	 * @param toDate upper bound (inclusive), null for open
+	 * @return the transactions posted in the given period, sorted by date posted
+	 * (read-only view, no copy)
+	 */
+	public List<KMyMoneyTransaction> getTransactions(final LocalDate fromDate, final LocalDate toDate) {
+		int fromIdx = fromIndex(fromDate);
+		int toIdx   = toIndex(toDate);
+		if ( fromIdx >= toIdx ) {
+			return Collections.emptyList();
+		}
+
+		return trxList.subList(fromIdx, toIdx);
+	}
+
+	/**
+	 * @param fromDate lower bound (inclusive), null for open
+	 * @param toDate upper bound (inclusive), null for open
+	 * @return the number of transactions posted in the given period
+	 */
+	public int count(final LocalDate fromDate, final LocalDate toDate) {
+		return Math.max(0, toIndex(toDate) - fromIndex(fromDate));
+	}
+
+    // ---------------------------------------------------------------
+
+	// Position of the first transaction posted on or after the given date
+	int fromIndex(final LocalDate fromDate) {
+		if ( fromDate == null ) {
+			return 0;
+		}
+
+		return lowerBound(epochDays, (int) fromDate.toEpochDay());
+	}
+
+	// Position after the last transaction posted on or before the given date
+	int toIndex(final LocalDate toDate) {
+		if ( toDate == null ) {
+			return trxs.length;
+		}
+
+		return lowerBound(epochDays, (int) toDate.toEpochDay() + 1);
+	}
+
+	KMyMoneyTransaction get(final int idx) {
+		return trxs[idx];
+	}
+
+	int getEpochDay(final int idx) {
+		return epochDays[idx];
+	}
+
+	// First position whose value is >= key
+	static int lowerBound(final int[] arr, final int key) {
+		return lowerBound(arr, 0, arr.length, key);
+	}
+
+	static int lowerBound(final int[] arr, final int fromIdx, final int toIdx, final int key) {
+		int low  = fromIdx;
+		int high = toIdx;
+		while ( low < high ) {
+			int mid = ( low + high ) >>> 1;
+			if ( arr[mid] < key )
+				low = mid + 1;
+			else
+				high = mid;
+		}
+
+		return low;
+	}
+
+}
@@ -15,6 +15,10 @@ public class TransactionFilter {
 		OR   // it's enough if split criteria apply to one or just a few splits
 	}
 	
+	// Parsed once, so that the "is set"-checks do not have to
+	// parse it again for every single transaction
+	static final LocalDate DATE_UNSET = parseDateUnset();
+	
 	// ---------------------------------------------------------------
 	// Transaction Level
 
@@ -27,7 +31,8 @@ public class TransactionFilter {
 	public int nofSpltFrom;
 	public int nofSpltTo;
 
-	public String memoPart;
+	public String  memoPart;
+	public boolean memoIgnoreCase;
 	
 	// ----------------------------
 	// Split Level
@@ -46,18 +51,14 @@ public class TransactionFilter {
 	private void init() {
 		// type = null;
 
-		try {
-			datePostedFrom = LocalDateHelpers.parseLocalDate(LocalDateHelpers.DATE_UNSET, DateHelpers.DATE_FORMAT_1);
-			datePostedTo = LocalDateHelpers.parseLocalDate(LocalDateHelpers.DATE_UNSET, DateHelpers.DATE_FORMAT_1);
-		} catch (Exception e) {
-			// pro forma, de facto unreachable
-			e.printStackTrace();
-		}
+		datePostedFrom = DATE_UNSET;
+		datePostedTo = DATE_UNSET;
 		
 		nofSpltFrom = 0;
 		nofSpltTo = 0;
 
 		memoPart = "";
+		memoIgnoreCase = false;
 		
 		// ---
 		
@@ -67,18 +68,14 @@ public class TransactionFilter {
 	public void reset() {
 		// type = null;
 		
-		try {
-			datePostedFrom = LocalDateHelpers.parseLocalDate(LocalDateHelpers.DATE_UNSET, DateHelpers.DATE_FORMAT_1);
-			datePostedTo = LocalDateHelpers.parseLocalDate(LocalDateHelpers.DATE_UNSET, DateHelpers.DATE_FORMAT_1);
-		} catch (Exception e) {
-			// pro forma, de facto unreachable
-			e.printStackTrace();
-		}
+		datePostedFrom = DATE_UNSET;
+		datePostedTo = DATE_UNSET;
 		
 		nofSpltFrom = 0;
 		nofSpltTo = 0;
 
 		memoPart = "";
+		memoIgnoreCase = false;
 		
 		// ---
 		
@@ -127,8 +124,14 @@ public class TransactionFilter {
 		}
 		
 		if ( ! memoPart.trim().equals("") ) {
-			if ( ! trx.getMemo().contains(memoPart.trim()) ) {
-				return false;
+			if ( memoIgnoreCase ) {
+				if ( ! MemoTrigramIndex.fold(trx.getMemo()).contains(MemoTrigramIndex.fold(memoPart.trim())) ) {
+					return false;
+				}
+			} else {
+				if ( ! trx.getMemo().contains(memoPart.trim()) ) {
+					return false;
+				}
 			}
 		}
 		
@@ -171,35 +174,38 @@ public class TransactionFilter {
 		return true; // Compiler happy
 	}
 	
+	// ---------------------------------------------------------------
+	
+	/**
+	 * Takes a snapshot of the currently set criteria and turns it into
+	 * an immutable, thread-safe filter that only evaluates the active ones.
+	 * <br>
+	 * Later changes on this object do not affect the compiled filter.
+	 * 
+	 * @return compiled form of this filter (including its split-filter)
+	 */
+	public CompiledTransactionFilter compile() {
+		return new CompiledTransactionFilter(this);
+	}
+	
 	// -----------------------------------------------------
 	// helpers
 
 	public boolean isDatePostedFromSet() {
-		try {
-			if ( datePostedFrom.equals( LocalDateHelpers.parseLocalDate(LocalDateHelpers.DATE_UNSET, DateHelpers.DATE_FORMAT_1) ) )
-				return false;
-			else			
-				return true;
-		} catch (Exception e) {
-			// pro forma, de facto unreachable
-			e.printStackTrace();
-		}
-		
-		return true; // Compiler happy
+		return ! datePostedFrom.equals(DATE_UNSET);
 	}
 
 	public boolean isDatePostedToSet() {
+		return ! datePostedTo.equals(DATE_UNSET);
+	}
+	
+	private static LocalDate parseDateUnset() {
 		try {
-			if ( datePostedTo.equals( LocalDateHelpers.parseLocalDate(LocalDateHelpers.DATE_UNSET, DateHelpers.DATE_FORMAT_1) ) )
-				return false;
-			else			
-				return true;
+			return LocalDateHelpers.parseLocalDate(LocalDateHelpers.DATE_UNSET, DateHelpers.DATE_FORMAT_1);
 		} catch (Exception e) {
 			// pro forma, de facto unreachable
-			e.printStackTrace();
+			throw new IllegalStateException("cannot parse unset-date", e);
 		}
-		
-		return true; // Compiler happy
 	}
 	
 	// ---------------------------------------------------------------
@@ -212,6 +218,7 @@ public class TransactionFilter {
 	                 "nofSpltFrom=" + nofSpltFrom + ", " +
 				       "nofSpltTo=" + nofSpltTo + ", " +
 	                   "memoPart='" + memoPart + "', " +
+	             "memoIgnoreCase=" + memoIgnoreCase + ", " +
 				        "spltFilt=" + spltFilt + "]";
 	}
 
@@ -3,76 +3,602 @@ package org.kmymoney.apiext.trxmgr;
 import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
 
 import org.kmymoney.api.read.KMyMoneyTransaction;
 import org.kmymoney.api.write.KMyMoneyWritableFile;
-import org.kmymoney.apiext.Const;
+import org.kmymoney.api.write.KMyMoneyWritableTransaction;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * Finds the transactions of a KMyMoney file that match a {@link TransactionFilter}.
+ * <br>
+ * By default, each search works on the live file: The transactions in the
+ * filter's period are taken from the file as they are, and each one is checked
+ * once. The cost is linear in the number of transactions in the period; ordered
+ * results (pages, composite and batch searches) sort the matches only.
+ * <br>
+ * The indexes (date index, split indexes, query planner, cf. {@link TransactionIndexes})
+ * are opt-in (cf. {@link #setIndexesEnabled(boolean)}), also for searches with
+ * date bounds. That is deliberate: They are snapshots, which are rebuilt only
+ * after reported modifications, and an in-place modification of an existing
+ * transaction (e.g. its date posted) cannot be detected without checking
+ * every transaction, i.e. without the cost the index is to save. Callers that
+ * report their modifications (or do them through {@link StandingQueryManager})
+ * enable the indexes.
+ */
 public class TransactionFinder {
-	
+
+	public enum ExecutionMode {
+		SEQUENTIAL, // candidates are checked one after the other
+		PARALLEL    // candidates are checked in chunks, on all cores
+	}
+
+	public enum SortDirection {
+		ASCENDING,
+		DESCENDING
+	}
+
     // Logger
     private static final Logger LOGGER = LoggerFactory.getLogger(TransactionFinder.class);
-    
+
     // ---------------------------------------------------------------
-    
+
 	private KMyMoneyWritableFile kmmFile = null;
-	
+
+	// null means: common pool
+	private ForkJoinPool forkJoinPool = null;
+
+	private boolean indexesEnabled = false;
+	private boolean memoIdxEnabled = false;
+
+	// Cf. getPlanner()
+	private QueryPlanner planner = null;
+
+	// null means: no caching
+	private QueryResultCache<KMyMoneyTransaction> resultCache = null;
+
     // ---------------------------------------------------------------
-	
+
 	public TransactionFinder(KMyMoneyWritableFile kmmFile) {
 		if ( kmmFile == null ) {
 			throw new IllegalArgumentException("null kmymoney-file object given");
 		}
-		
+
 		this.kmmFile = kmmFile;
 	}
-    
+
     // ---------------------------------------------------------------
-	
-	// ::TODO
-	// - Have results writable?
-    
-	public ArrayList<KMyMoneyTransaction> find(TransactionFilter flt, 
+
+	public ForkJoinPool getForkJoinPool() {
+		return forkJoinPool;
+	}
+
+	/**
+	 * @param pool the pool used in parallel execution mode,
+	 * null for the common pool
+	 */
+	public void setForkJoinPool(ForkJoinPool pool) {
+		this.forkJoinPool = pool;
+	}
+
+	public boolean isIndexesEnabled() {
+		return indexesEnabled;
+	}
+
+	/**
+	 * @param val whether searches are to be narrowed down by the file's
+	 * indexes (opt-in). The indexes are snapshots: They are rebuilt after each
+	 * modification reported to {@link TransactionIndexes} (the mergers and
+	 * {@link StandingQueryManager} do so), but not after modifications
+	 * done directly on the file objects.
+	 * <br>
+	 * Default: false, i.e. each search works on the live file.
+	 */
+	public void setIndexesEnabled(boolean val) {
+		this.indexesEnabled = val;
+	}
+
+	public boolean isMemoIndexEnabled() {
+		return memoIdxEnabled;
+	}
+
+	/**
+	 * @param val whether memo searches are to be narrowed down by the 
+	 * (optional) trigram index. The index is built upon first use.
+	 * Only applies with the indexes enabled (cf. {@link #setIndexesEnabled(boolean)}).
+	 */
+	public void setMemoIndexEnabled(boolean val) {
+		this.memoIdxEnabled = val;
+	}
+
+	/**
+	 * @return max. number of cached results, 0 if caching is disabled
+	 */
+	public int getResultCacheSize() {
+		return resultCache == null ? 0 : resultCache.getMaxSize();
+	}
+
+	/**
+	 * Enables (opt-in) or disables the caching of the results of 
+	 * {@link #find(TransactionFilter, boolean, TransactionFilter.SplitLogic, ExecutionMode)}.
+	 * If the cache is full, the least recently used result is dropped.
+	 * <br>
+	 * The cache is dropped automatically as soon as the number of transactions
+	 * changes or a modification of the file is reported (cf. {@link TransactionIndexes}).
+	 * In-place modifications of existing transactions/splits have to be reported
+	 * by the caller, or be done through {@link StandingQueryManager}.
+	 * 
+	 * @param size max. number of cached results, 0 to disable caching
+	 */
+	public void setResultCacheSize(int size) {
+		if ( size < 0 ) {
+			throw new IllegalArgumentException("negative cache size given");
+		}
+
+		if ( size == 0 )
+			resultCache = null;
+		else
+			resultCache = new QueryResultCache<KMyMoneyTransaction>(kmmFile, size);
+	}
+
+	public void clearResultCache() {
+		if ( resultCache != null ) {
+			resultCache.clear();
+		}
+	}
+
+    // ---------------------------------------------------------------
+
+	public ArrayList<KMyMoneyTransaction> find(TransactionFilter flt,
 			                                  boolean withSplits,
 			                                  TransactionFilter.SplitLogic splitLogic) {
+		return find(flt, withSplits, splitLogic, ExecutionMode.SEQUENTIAL);
+	}
+
+	public ArrayList<KMyMoneyWritableTransaction> findWritable(TransactionFilter flt,
+			                                                  boolean withSplits,
+			                                                  TransactionFilter.SplitLogic splitLogic) {
+		return findWritable(flt, withSplits, splitLogic, ExecutionMode.SEQUENTIAL);
+	}
+
+	/**
+	 * Like {@link #find(TransactionFilter, boolean, TransactionFilter.SplitLogic, ExecutionMode)},
+	 * but returns the writable transactions. They are resolved in bulk,
+	 * not by one ID lookup per result.
+	 */
+	public ArrayList<KMyMoneyWritableTransaction> findWritable(TransactionFilter flt,
+			                                                  boolean withSplits,
+			                                                  TransactionFilter.SplitLogic splitLogic,
+			                                                  ExecutionMode mode) {
+		return new WritableResolver(kmmFile).getTransactions(find(flt, withSplits, splitLogic, mode));
+	}
+
+	/**
+	 * @param flt transaction filter
+	 * @param withSplits whether the split-level criteria are to be checked
+	 * @param splitLogic how the split-level criteria are to be applied
+	 * @param mode sequential or parallel evaluation. In both modes, the results
+	 * are in the same order.
+	 * @return the transactions matching the filter
+	 */
+	public ArrayList<KMyMoneyTransaction> find(TransactionFilter flt,
+			                                  boolean withSplits,
+			                                  TransactionFilter.SplitLogic splitLogic,
+			                                  ExecutionMode mode) {
 		if ( flt == null ) {
 			throw new IllegalArgumentException("null transaction-filter given");
 		}
-		
+
+		if ( mode == null ) {
+			throw new IllegalArgumentException("null execution mode given");
+		}
+
 		LOGGER.debug("find: Searching for Transactions matching filter: " + flt.toString());
+		ArrayList<KMyMoneyTransaction> result = null;
+
+		// Compile once, evaluate many times
+		CompiledTransactionFilter cflt = compile(flt);
+
+		// sic, local copy: cache may be replaced concurrently
+		QueryResultCache<KMyMoneyTransaction> cache = resultCache;
+		String cacheKey = null;
+		long cacheStamp = 0;
+		if ( cache != null ) {
+			cacheKey = cflt.getCanonicalKey(withSplits, splitLogic);
+			cacheStamp = cache.getStamp();
+			result = cache.get(cacheKey);
+			if ( result != null ) {
+				LOGGER.debug("find: Found " + result.size() + " Transactions matching filter (cached)");
+				return result;
+			}
+		}
+
+		Collection<? extends KMyMoneyTransaction> candList = getCandidates(cflt, withSplits, splitLogic);
+
+		if ( mode == ExecutionMode.PARALLEL ) {
+			// sic, the compiled filter is thread-safe
+			result = ParallelFilterTask.filter(candList,
+											   trx -> cflt.matchesCriteria(trx, withSplits, splitLogic),
+											   getPool());
+		} else {
+			result = new ArrayList<KMyMoneyTransaction>();
+			for ( KMyMoneyTransaction trx : candList ) {
+				if ( cflt.matchesCriteria(trx, withSplits, splitLogic) ) {
+					result.add(trx);
+				}
+			}
+		}
+
+		if ( cache != null ) {
+			cache.put(cacheKey, result, cacheStamp);
+		}
+
+		LOGGER.debug("find: Found " + result.size() + " Transactions matching filter");
+		return result;
+	}
+
+	/**
+	 * Like {@link #find(TransactionFilter, boolean, TransactionFilter.SplitLogic)},
+	 * but stops scanning as soon as the given number of results have been found.
+	 * 
+	 * @param flt transaction filter
+	 * @param withSplits whether the split-level criteria are to be checked
+	 * @param splitLogic how the split-level criteria are to be applied
+	 * @param limit max. number of results
+	 * @return the first (at most) <code>limit</code> transactions matching the filter
+	 */
+	public ArrayList<KMyMoneyTransaction> find(TransactionFilter flt,
+			                                  boolean withSplits,
+			                                  TransactionFilter.SplitLogic splitLogic,
+			                                  int limit) {
+		if ( flt == null ) {
+			throw new IllegalArgumentException("null transaction-filter given");
+		}
+
+		if ( limit < 0 ) {
+			throw new IllegalArgumentException("negative limit given");
+		}
+
 		ArrayList<KMyMoneyTransaction> result = new ArrayList<KMyMoneyTransaction>();
-		
-		Collection<? extends KMyMoneyTransaction> candList = null;
-		if ( flt.isDatePostedFromSet() ||
-			 flt.isDatePostedToSet() ) {
-			LocalDate fromDate = null;
-			LocalDate toDate = null;
-			
-			if ( flt.isDatePostedFromSet() )
-				fromDate = flt.datePostedFrom;
-			else
-				fromDate = Const.TRX_SUPER_EARLY_DATE;
-			
-			if ( flt.isDatePostedToSet() )
-				toDate = flt.datePostedTo;
-			else
-				toDate = Const.TRX_SUPER_LATE_DATE;
-			
-			candList = kmmFile.getTransactions(fromDate, toDate);
+		if ( limit == 0 ) {
+			return result;
+		}
+
+		CompiledTransactionFilter cflt = compile(flt);
+		for ( KMyMoneyTransaction trx : getCandidates(cflt, withSplits, splitLogic) ) {
+			if ( cflt.matchesCriteria(trx, withSplits, splitLogic) ) {
+				result.add(trx);
+				if ( result.size() == limit ) {
+					break;
+				}
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * @return the first transaction matching the filter, null if there is none.
+	 * Scanning stops at the first match.
+	 */
+	public KMyMoneyTransaction findFirst(TransactionFilter flt,
+			                             boolean withSplits,
+			                             TransactionFilter.SplitLogic splitLogic) {
+		if ( flt == null ) {
+			throw new IllegalArgumentException("null transaction-filter given");
+		}
+
+		CompiledTransactionFilter cflt = compile(flt);
+		for ( KMyMoneyTransaction trx : getCandidates(cflt, withSplits, splitLogic) ) {
+			if ( cflt.matchesCriteria(trx, withSplits, splitLogic) ) {
+				return trx;
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * @return true if at least one transaction matches the filter.
+	 * Scanning stops at the first match.
+	 */
+	public boolean exists(TransactionFilter flt,
+			              boolean withSplits,
+			              TransactionFilter.SplitLogic splitLogic) {
+		return findFirst(flt, withSplits, splitLogic) != null;
+	}
+
+	/**
+	 * Evaluates a composite filter (AND/OR/NOT over filters) in one single pass
+	 * over the transactions. Only the period derived from its leaves is scanned.
+	 *
+	 * @param flt composite filter
+	 * @return the transactions matching the filter, ordered by date posted
+	 */
+	public ArrayList<KMyMoneyTransaction> find(CompositeFilter<KMyMoneyTransaction> flt) {
+		if ( flt == null ) {
+			throw new IllegalArgumentException("null composite filter given");
+		}
+
+		LOGGER.debug("find: Searching for Transactions matching composite filter: " + flt.toString());
+
+		QueryPlanner planner = getPlanner();
+		ArrayList<KMyMoneyTransaction> result = new ArrayList<KMyMoneyTransaction>();
+		for ( KMyMoneyTransaction trx : planner.getTransactionsInPeriod(flt.getDatePostedFrom(), flt.getDatePostedTo()) ) {
+			if ( flt.matchesCriteria(trx) ) {
+				result.add(trx);
+			}
+		}
+
+		// Matches only, cf. QueryPlanner.isDateOrdered()
+		if ( ! planner.isDateOrdered() ) {
+			result.sort(TransactionDateIndex.DATE_ORDER);
+		}
+
+		LOGGER.debug("find: Found " + result.size() + " Transactions matching composite filter");
+		return result;
+	}
+
+	/**
+	 * Batch variant of {@link #find(TransactionFilter, boolean, TransactionFilter.SplitLogic)}:
+	 * All filters are evaluated in one single pass over the transactions (and their splits).
+	 * Criteria that several filters share are evaluated only once per transaction resp. split.
+	 * <br>
+	 * Only the date range covering all filters is scanned.
+	 *
+	 * @param flts transaction filters
+	 * @param withSplits whether the split-level criteria are to be checked
+	 * @param splitLogic how the split-level criteria are to be applied
+	 * @return for each filter (in the given order), the transactions matching it,
+	 * ordered by date posted
+	 */
+	public List<ArrayList<KMyMoneyTransaction>> findBatch(List<TransactionFilter> flts,
+			                                             boolean withSplits,
+			                                             TransactionFilter.SplitLogic splitLogic) {
+		if ( flts == null ) {
+			throw new IllegalArgumentException("null transaction-filter list given");
+		}
+
+		LOGGER.debug("findBatch: Searching for Transactions matching " + flts.size() + " filters");
+
+		// Compile once, and find the date range covering all filters
+		ArrayList<CompiledTransactionFilter> cfltList = new ArrayList<CompiledTransactionFilter>();
+		LocalDate datePostedFrom = null;
+		LocalDate datePostedTo = null;
+		boolean fromOpen = false;
+		boolean toOpen = false;
+		for ( TransactionFilter flt : flts ) {
+			if ( flt == null ) {
+				throw new IllegalArgumentException("null transaction-filter given");
+			}
+
+			CompiledTransactionFilter cflt = compile(flt);
+			cfltList.add(cflt);
+
+			if ( cflt.getDatePostedFrom() == null )
+				fromOpen = true;
+			else if ( datePostedFrom == null || cflt.getDatePostedFrom().isBefore(datePostedFrom) )
+				datePostedFrom = cflt.getDatePostedFrom();
+
+			if ( cflt.getDatePostedTo() == null )
+				toOpen = true;
+			else if ( datePostedTo == null || cflt.getDatePostedTo().isAfter(datePostedTo) )
+				datePostedTo = cflt.getDatePostedTo();
+		}
+
+		ArrayList<ArrayList<KMyMoneyTransaction>> result = new ArrayList<ArrayList<KMyMoneyTransaction>>();
+		for ( int f = 0; f < cfltList.size(); f++ ) {
+			result.add(new ArrayList<KMyMoneyTransaction>());
+		}
+
+		if ( cfltList.isEmpty() ) {
+			return result;
+		}
+
+		QueryPlanner planner = getPlanner();
+		MultiFilterEvaluator eval = new MultiFilterEvaluator(cfltList, withSplits, splitLogic);
+		boolean[] matches = new boolean[cfltList.size()];
+		for ( KMyMoneyTransaction trx : planner.getTransactionsInPeriod(fromOpen ? null : datePostedFrom,
+																		toOpen ? null : datePostedTo) ) {
+			eval.evaluate(trx, matches);
+			for ( int f = 0; f < matches.length; f++ ) {
+				if ( matches[f] ) {
+					result.get(f).add(trx);
+				}
+			}
+		}
+
+		// Matches only, cf. QueryPlanner.isDateOrdered()
+		if ( ! planner.isDateOrdered() ) {
+			for ( ArrayList<KMyMoneyTransaction> fltResult : result ) {
+				fltResult.sort(TransactionDateIndex.DATE_ORDER);
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * Lazy variant of {@link #find(TransactionFilter, boolean, TransactionFilter.SplitLogic)}:
+	 * Transactions are checked only as far as the stream is consumed.
+	 * <br>
+	 * The filter is compiled when this method is called, i.e. later changes
+	 * on it do not affect the stream. The file must not be changed while
+	 * the stream is consumed.
+	 * 
+	 * @return stream of the transactions matching the filter
+	 */
+	public Stream<KMyMoneyTransaction> stream(TransactionFilter flt,
+			                                  boolean withSplits,
+			                                  TransactionFilter.SplitLogic splitLogic) {
+		if ( flt == null ) {
+			throw new IllegalArgumentException("null transaction-filter given");
+		}
+
+		CompiledTransactionFilter cflt = compile(flt);
+		return getCandidates(cflt, withSplits, splitLogic).stream()
+					.map(trx -> (KMyMoneyTransaction) trx)
+					.filter(trx -> cflt.matchesCriteria(trx, withSplits, splitLogic));
+	}
+
+	/**
+	 * Lazy variant of {@link #find(TransactionFilter, boolean, TransactionFilter.SplitLogic)}
+	 * (cf. {@link #stream(TransactionFilter, boolean, TransactionFilter.SplitLogic)}).
+	 */
+	public Iterator<KMyMoneyTransaction> iterator(TransactionFilter flt,
+			                                      boolean withSplits,
+			                                      TransactionFilter.SplitLogic splitLogic) {
+		return stream(flt, withSplits, splitLogic).iterator();
+	}
+
+	/**
+	 * @return the first n transactions matching the filter, ordered by date posted
+	 * (cf. {@link #findPage(TransactionFilter, boolean, TransactionFilter.SplitLogic, SortDirection, KMyMoneyTransaction, int)})
+	 */
+	public ArrayList<KMyMoneyTransaction> findTop(TransactionFilter flt,
+			                                     boolean withSplits,
+			                                     TransactionFilter.SplitLogic splitLogic,
+			                                     SortDirection dir,
+			                                     int n) {
+		return findPage(flt, withSplits, splitLogic, dir, null, n);
+	}
+
+	/**
+	 * One page of the transactions matching the filter, ordered by date posted
+	 * (and by ID within one day).
+	 * <br>
+	 * Keyset pagination: The page starts right after the given transaction,
+	 * typically the last one of the previous page. Neither the whole match set
+	 * nor the previous pages are built: With the indexes enabled, the transactions
+	 * are walked in date order, starting at the seek position, and scanning stops
+	 * as soon as the page is full. Otherwise, the live file is scanned once, and the
+	 * matches after the seek position go through a bounded heap of the page size
+	 * (cf. {@link TopNSelector}).
+	 * 
+	 * @param flt transaction filter
+	 * @param withSplits whether the split-level criteria are to be checked
+	 * @param splitLogic how the split-level criteria are to be applied
+	 * @param dir sort direction
+	 * @param after last transaction of the previous page, null for the first page
+	 * @param pageSize max. number of results
+	 * @return the transactions of the page, in the given order
+	 */
+	public ArrayList<KMyMoneyTransaction> findPage(TransactionFilter flt,
+			                                      boolean withSplits,
+			                                      TransactionFilter.SplitLogic splitLogic,
+			                                      SortDirection dir,
+			                                      KMyMoneyTransaction after,
+			                                      int pageSize) {
+		if ( flt == null ) {
+			throw new IllegalArgumentException("null transaction-filter given");
+		}
+
+		if ( dir == null ) {
+			throw new IllegalArgumentException("null sort direction given");
+		}
+
+		if ( pageSize < 0 ) {
+			throw new IllegalArgumentException("negative page size given");
+		}
+
+		ArrayList<KMyMoneyTransaction> result = new ArrayList<KMyMoneyTransaction>();
+		if ( pageSize == 0 ) {
+			return result;
+		}
+
+		CompiledTransactionFilter cflt = compile(flt);
+		QueryPlanner planner = getPlanner();
+
+		if ( ! planner.isDateOrdered() ) {
+			// Live file, unordered
+			return TopNSelector.select(planner.getTransactionsInPeriod(cflt.getDatePostedFrom(), cflt.getDatePostedTo()),
+									   trx -> cflt.matchesCriteria(trx, withSplits, splitLogic),
+									   ( dir == SortDirection.ASCENDING ) ?
+											   TransactionDateIndex.DATE_ORDER :
+											   TransactionDateIndex.DATE_ORDER.reversed(),
+									   after, pageSize);
+		}
+
+		// sic, sorted in ascending order
+		List<KMyMoneyTransaction> candList = planner.getTransactionsByDate(cflt.getDatePostedFrom(),
+																		   cflt.getDatePostedTo());
+
+		// Seek position
+		int startIdx = 0;
+		if ( after == null ) {
+			startIdx = ( dir == SortDirection.ASCENDING ) ? 0 : candList.size() - 1;
 		} else {
-			candList = kmmFile.getTransactions();
+			int pos = Collections.binarySearch(candList, after, TransactionDateIndex.DATE_ORDER);
+			if ( pos >= 0 )
+				startIdx = ( dir == SortDirection.ASCENDING ) ? pos + 1 : pos - 1;
+			else
+				startIdx = ( dir == SortDirection.ASCENDING ) ? -pos - 1 : -pos - 2;
 		}
-		
-		for ( KMyMoneyTransaction trx : candList ) {
-			if ( flt.matchesCriteria(trx, withSplits, splitLogic) ) {
+
+		int step = ( dir == SortDirection.ASCENDING ) ? 1 : -1;
+		for ( int i = startIdx; i >= 0 && i < candList.size(); i += step ) {
+			KMyMoneyTransaction trx = candList.get(i);
+			if ( cflt.matchesCriteria(trx, withSplits, splitLogic) ) {
 				result.add(trx);
+				if ( result.size() == pageSize ) {
+					break;
+				}
 			}
 		}
-		
-		LOGGER.debug("find: Found " + result.size() + " Transactions matching filter");
+
+		return result;
+	}
+
+	/**
+	 * @return the plan that {@link #find(TransactionFilter, boolean, TransactionFilter.SplitLogic)}
+	 * would execute with the given arguments, for analysis (cf. {@link QueryPlan#explain()}).
+	 * The search itself is not executed.
+	 */
+	public QueryPlan explain(TransactionFilter flt,
+			                 boolean withSplits,
+			                 TransactionFilter.SplitLogic splitLogic) {
+		if ( flt == null ) {
+			throw new IllegalArgumentException("null transaction-filter given");
+		}
+
+		return getPlanner().plan(compile(flt), withSplits, splitLogic);
+	}
+
+    // ---------------------------------------------------------------
+
+	// Narrows down the transactions to be checked as far as the indexes (if enabled) allow
+	// (cost-based choice of the index, cf. QueryPlanner)
+	private Collection<? extends KMyMoneyTransaction> getCandidates(CompiledTransactionFilter cflt,
+																	boolean withSplits,
+																	TransactionFilter.SplitLogic splitLogic) {
+		return getPlanner().getTransactions(cflt, withSplits, splitLogic);
+	}
+
+	// Kept (with its plans) until the settings change or a
+	// modification of the file is reported
+	private QueryPlanner getPlanner() {
+		QueryPlanner result = planner;
+		if ( result == null ||
+			 ! result.isCurrent(indexesEnabled, memoIdxEnabled) ) {
+			result = new QueryPlanner(kmmFile, indexesEnabled, memoIdxEnabled);
+			planner = result;
+		}
+
 		return result;
 	}
 
+	private CompiledTransactionFilter compile(TransactionFilter flt) {
+		return flt.compile();
+	}
+
+	private ForkJoinPool getPool() {
+		return forkJoinPool == null ? ForkJoinPool.commonPool() : forkJoinPool;
+	}
+
 }
@@ -0,0 +1,346 @@
+package org.kmymoney.apiext.trxmgr;
+
+import java.lang.ref.SoftReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.kmymoney.api.read.KMyMoneyFile;
+import org.kmymoney.api.read.KMyMoneyTransaction;
+import org.kmymoney.api.read.KMyMoneyTransactionSplit;
+import org.kmymoney.base.basetypes.simple.KMMTrxID;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Holds the search indexes of one KMyMoney file, so that they are
+ * built only once per file and shared by all finders working on it.
+ * <br>
+ * The single indexes are built lazily, upon first use.
+ * <br>
+ * The indexes are snapshots. They are only used by the finders that
+ * explicitly opted into them (cf. {@link TransactionFinder#setIndexesEnabled(boolean)}),
+ * all the other searches work on the live file.
+ * <br>
+ * Modifications are tracked by a modification count per file, which the
+ * write paths increment by calling {@link #invalidate(KMyMoneyFile)}
+ * (the transaction mergers and {@link StandingQueryManager} do so).
+ * Indexes built before the last modification are stale and are rebuilt
+ * upon next use, and so is derived data (e.g. cached query results).
+ * Modifications done directly on the file objects are not detected
+ * (except for a changed number of transactions): After such modifications,
+ * call {@link #invalidate(KMyMoneyFile)} yourself.
+ */
+public final class TransactionIndexes {
+
+    // Logger
+    private static final Logger LOGGER = LoggerFactory.getLogger(TransactionIndexes.class);
+
+    // ---------------------------------------------------------------
+
+	// Soft values: The indexes reference the file's objects (and
+	// thus the file itself), so with strong values, the weak keys
+	// would never be released.
+	private static final Map<KMyMoneyFile, SoftReference<TransactionIndexes>> INSTANCES =
+			new WeakHashMap<KMyMoneyFile, SoftReference<TransactionIndexes>>();
+
+	// Number of modifications per file
+	private static final Map<KMyMoneyFile, Integer> MOD_COUNTS =
+			new WeakHashMap<KMyMoneyFile, Integer>();
+
+    // ---------------------------------------------------------------
+
+	private final KMyMoneyFile kmmFile;
+	private final int          modCount;
+	private final int          nofTrx;
+
+	private AccountOrdinalTable acctOrds = null;
+
+	private TransactionDateIndex dateIdx = null;
+	private SplitAccountIndex    acctIdx = null;
+
+	private MemoTrigramIndex<KMyMoneyTransaction>      trxMemoIdx  = null;
+	private MemoTrigramIndex<KMyMoneyTransactionSplit> spltMemoIdx = null;
+
+	private SplitAmountIndex valueIdx  = null;
+	private SplitAmountIndex sharesIdx = null;
+
+	private QueryStatistics stats = null;
+
+	private SplitColumnStore colStore = null;
+	private SplitBitmapIndex bitmapIdx = null;
+
+	// All splits, in date-posted order of their transactions
+	private List<KMyMoneyTransactionSplit> spltsByDate = null;
+	// Per transaction (in date order): first position in spltsByDate;
+	// last entry: total number of splits
+	private int[] spltStarts = null;
+
+	// Filled upon demand, possibly concurrently
+	// (only used on the per-run instances)
+	private final Map<KMMTrxID, TransactionSignature> signatures =
+			new ConcurrentHashMap<KMMTrxID, TransactionSignature>();
+
+    // ---------------------------------------------------------------
+
+	private TransactionIndexes(final KMyMoneyFile kmmFile) {
+		this.kmmFile = kmmFile;
+		this.modCount = getModCount(kmmFile);
+		this.nofTrx = kmmFile.getTransactions().size();
+	}
+
+    // ---------------------------------------------------------------
+
+	/**
+	 * @param kmmFile KMyMoney file
+	 * @return the (shared) indexes of the given file
+	 */
+	public static synchronized TransactionIndexes of(final KMyMoneyFile kmmFile) {
+		if ( kmmFile == null ) {
+			throw new IllegalArgumentException("null KMyMoney-file object given");
+		}
+
+		SoftReference<TransactionIndexes> ref = INSTANCES.get(kmmFile);
+		TransactionIndexes result = ( ref == null ) ? null : ref.get();
+		if ( result != null &&
+			 ! result.isStale() ) {
+			return result;
+		}
+
+		LOGGER.debug("of: (Re-)creating indexes for KMyMoney file");
+		result = new TransactionIndexes(kmmFile);
+		INSTANCES.put(kmmFile, new SoftReference<TransactionIndexes>(result));
+		return result;
+	}
+
+	/**
+	 * @param kmmFile KMyMoney file
+	 * @return new, unshared indexes of the given file, for one single run
+	 * (e.g. one batch merge) on the file's current state
+	 */
+	static TransactionIndexes createSnapshot(final KMyMoneyFile kmmFile) {
+		if ( kmmFile == null ) {
+			throw new IllegalArgumentException("null KMyMoney-file object given");
+		}
+
+		return new TransactionIndexes(kmmFile);
+	}
+
+	/**
+	 * To be called after each modification of the given file's transactions
+	 * (creation, removal, changes of the transactions or their splits):
+	 * Increments the file's modification count and throws away its indexes.
+	 * They will be rebuilt upon next use.
+	 *
+	 * @param kmmFile KMyMoney file
+	 */
+	public static synchronized void invalidate(final KMyMoneyFile kmmFile) {
+		if ( kmmFile == null ) {
+			throw new IllegalArgumentException("null KMyMoney-file object given");
+		}
+
+		INSTANCES.remove(kmmFile);
+		MOD_COUNTS.merge(kmmFile, 1, Integer::sum);
+	}
+
+	/**
+	 * @param kmmFile KMyMoney file
+	 * @return the number of modifications of the given file so far
+	 * (cf. {@link #invalidate(KMyMoneyFile)})
+	 */
+	public static synchronized int getModCount(final KMyMoneyFile kmmFile) {
+		if ( kmmFile == null ) {
+			throw new IllegalArgumentException("null KMyMoney-file object given");
+		}
+
+		return MOD_COUNTS.getOrDefault(kmmFile, 0);
+	}
+
+    // ---------------------------------------------------------------
+
+	public synchronized AccountOrdinalTable getAccountOrdinals() {
+		if ( acctOrds == null ) {
+			acctOrds = new AccountOrdinalTable(kmmFile.getAccounts());
+			LOGGER.debug("getAccountOrdinals: Built ordinal table over " + acctOrds.size() + " accounts");
+		}
+
+		return acctOrds;
+	}
+
+	public synchronized TransactionDateIndex getDateIndex() {
+		if ( dateIdx == null ) {
+			dateIdx = new TransactionDateIndex(kmmFile.getTransactions());
+			LOGGER.debug("getDateIndex: Built date index over " + dateIdx.size() + " transactions");
+		}
+
+		return dateIdx;
+	}
+
+	public synchronized SplitAccountIndex getAccountIndex() {
+		if ( acctIdx == null ) {
+			acctIdx = new SplitAccountIndex(kmmFile.getTransactionSplits(), getAccountOrdinals());
+			LOGGER.debug("getAccountIndex: Built account index over " + acctIdx.size() + " splits, " +
+						 acctIdx.getNofAccounts() + " accounts");
+		}
+
+		return acctIdx;
+	}
+
+	/**
+	 * @return trigram index over the transactions' memos
+	 * (in date-posted order)
+	 */
+	public synchronized MemoTrigramIndex<KMyMoneyTransaction> getTransactionMemoIndex() {
+		if ( trxMemoIdx == null ) {
+			trxMemoIdx = new MemoTrigramIndex<KMyMoneyTransaction>(getDateIndex().getTransactions(),
+																   KMyMoneyTransaction::getMemo);
+			LOGGER.debug("getTransactionMemoIndex: Built memo index over " + trxMemoIdx.size() + " transactions");
+		}
+
+		return trxMemoIdx;
+	}
+
+	/**
+	 * @return trigram index over the splits' memos 
+	 * (in date-posted order of their transactions)
+	 */
+	public synchronized MemoTrigramIndex<KMyMoneyTransactionSplit> getSplitMemoIndex() {
+		if ( spltMemoIdx == null ) {
+			spltMemoIdx = new MemoTrigramIndex<KMyMoneyTransactionSplit>(getSplitsByDate(), KMyMoneyTransactionSplit::getMemo);
+			LOGGER.debug("getSplitMemoIndex: Built memo index over " + spltMemoIdx.size() + " splits");
+		}
+
+		return spltMemoIdx;
+	}
+
+	public synchronized SplitAmountIndex getValueIndex() {
+		if ( valueIdx == null ) {
+			valueIdx = new SplitAmountIndex(getSplitsByDate(), KMyMoneyTransactionSplit::getValue);
+			LOGGER.debug("getValueIndex: Built value index over " + valueIdx.size() + " splits");
+		}
+
+		return valueIdx;
+	}
+
+	public synchronized SplitAmountIndex getSharesIndex() {
+		if ( sharesIdx == null ) {
+			sharesIdx = new SplitAmountIndex(getSplitsByDate(), KMyMoneyTransactionSplit::getShares);
+			LOGGER.debug("getSharesIndex: Built shares index over " + sharesIdx.size() + " splits");
+		}
+
+		return sharesIdx;
+	}
+
+	/**
+	 * @return columnar snapshot of the splits
+	 * (in date-posted order of their transactions)
+	 */
+	public synchronized SplitColumnStore getColumnStore() {
+		if ( colStore == null ) {
+			colStore = new SplitColumnStore(getSplitsByDate(), getAccountOrdinals());
+			LOGGER.debug("getColumnStore: Built column store over " + colStore.size() + " splits, " +
+						 colStore.getNofAccounts() + " accounts");
+		}
+
+		return colStore;
+	}
+
+	/**
+	 * @return bitmap index over the splits' account types and actions
+	 * (rows like the ones of the column store)
+	 */
+	public synchronized SplitBitmapIndex getBitmapIndex() {
+		if ( bitmapIdx == null ) {
+			bitmapIdx = new SplitBitmapIndex(getDateIndex(), getColumnStore(), getSplitStarts());
+			LOGGER.debug("getBitmapIndex: Built bitmap index over " + bitmapIdx.size() + " splits");
+		}
+
+		return bitmapIdx;
+	}
+
+	public synchronized QueryStatistics getStatistics() {
+		if ( stats == null ) {
+			stats = new QueryStatistics(getDateIndex(), getSplitsByDate(), getAccountOrdinals());
+			LOGGER.debug("getStatistics: Built statistics: " + stats);
+		}
+
+		return stats;
+	}
+
+	/**
+	 * To be used on a per-run instance only (cf. {@link #createSnapshot(KMyMoneyFile)}),
+	 * as the signatures do not follow later changes of the transactions.
+	 *
+	 * @param trx transaction of this file
+	 * @return the transaction's signature, computed upon first request
+	 */
+	TransactionSignature getSignature(final KMyMoneyTransaction trx) {
+		if ( trx == null ) {
+			throw new IllegalArgumentException("null transaction given");
+		}
+
+		TransactionSignature result = signatures.get(trx.getID());
+		if ( result == null ||
+			 result.getTransaction() != trx ) {
+			result = new TransactionSignature(trx, getAccountOrdinals());
+			signatures.put(trx.getID(), result);
+		}
+
+		return result;
+	}
+
+	// ---
+	// Whether built already (the planner's estimates must not trigger builds)
+
+	synchronized boolean hasBitmapIndex() {
+		return bitmapIdx != null;
+	}
+
+	synchronized boolean hasTransactionMemoIndex() {
+		return trxMemoIdx != null;
+	}
+
+	synchronized boolean hasSplitMemoIndex() {
+		return spltMemoIdx != null;
+	}
+
+	// ---
+
+	synchronized List<KMyMoneyTransactionSplit> getSplitsByDate() {
+		if ( spltsByDate == null ) {
+			List<KMyMoneyTransaction> trxList = getDateIndex().getTransactions();
+			ArrayList<KMyMoneyTransactionSplit> result = new ArrayList<KMyMoneyTransactionSplit>();
+			int[] starts = new int[trxList.size() + 1];
+			for ( int t = 0; t < trxList.size(); t++ ) {
+				result.addAll(trxList.get(t).getSplits());
+				starts[t + 1] = result.size();
+			}
+			spltsByDate = Collections.unmodifiableList(result);
+			spltStarts = starts;
+		}
+
+		return spltsByDate;
+	}
+
+	// sic, taken together with the splits, so that both are
+	// consistent even if splits have been added in the meantime
+	synchronized int[] getSplitStarts() {
+		getSplitsByDate();
+		return spltStarts;
+	}
+
+    // ---------------------------------------------------------------
+
+	/**
+	 * @return whether the file has been modified since this instance has
+	 * been created (i.e. it belongs to an earlier generation)
+	 */
+	boolean isStale() {
+		return getModCount(kmmFile) != modCount ||
+			   kmmFile.getTransactions().size() != nofTrx;
+	}
+
+}
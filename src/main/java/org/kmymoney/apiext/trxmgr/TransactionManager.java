@@ -1,18 +1,16 @@
 package org.kmymoney.apiext.trxmgr;
 
 import java.util.ArrayList;
+import java.util.Collection;
 
 import org.kmymoney.api.read.KMyMoneyAccount;
 import org.kmymoney.api.read.KMyMoneyTransaction;
 import org.kmymoney.api.read.KMyMoneyTransactionSplit;
 import org.kmymoney.api.write.KMyMoneyWritableFile;
-import org.kmymoney.apiext.Const;
 import org.kmymoney.base.basetypes.simple.KMMTrxID;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import xyz.schnorxoborx.base.numbers.FixedPointNumber;
-
 public class TransactionManager {
 	
     // Logger
@@ -39,19 +37,35 @@ public class TransactionManager {
 		if ( trx.getSplits().size() == 0 )
 			return false;
 		
-		FixedPointNumber sum = new FixedPointNumber();
-		for ( KMyMoneyTransactionSplit splt : trx.getSplits() ) {
-			sum.add(splt.getValue());
+		long sum = 0;
+		try {
+			sum = getValueSumScaled(trx.getSplits());
+		} catch ( ArithmeticException exc ) {
+			LOGGER.warn("isSane: sum of values out of range: " + exc.getMessage());
+			return false;
 		}
 		
-		if ( sum.abs().doubleValue() > Const.DIFF_TOLERANCE_VALUE ) {
-			LOGGER.warn("isSane: abs. value of sum greater than tolerance: " + sum);
+		if ( ! ScaledAmount.isEqual(sum, 0) ) {
+			LOGGER.warn("isSane: abs. value of sum greater than tolerance: " + ScaledAmount.ofScaled(sum));
 			return false;
 		}
 		
 		return true;
 	}
 	
+	/**
+	 * @return the sum of the splits' values, scaled (cf. {@link ScaledAmount})
+	 * @throws ArithmeticException if the sum overflows
+	 */
+	static long getValueSumScaled(Collection<? extends KMyMoneyTransactionSplit> spltColl) {
+		long result = 0;
+		for ( KMyMoneyTransactionSplit splt : spltColl ) {
+			result = Math.addExact(result, ScaledAmount.toScaled(splt.getValue()));
+		}
+		
+		return result;
+	}
+	
 	public boolean hasSplitBoundToAccounttType(KMyMoneyTransaction trx, KMyMoneyAccount.Type acctType) {
 		for ( KMyMoneyTransactionSplit splt : trx.getSplits() ) {
 			if ( splt.getAccount().getType() == acctType )
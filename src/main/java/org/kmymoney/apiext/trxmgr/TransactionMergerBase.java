@@ -1,6 +1,8 @@
 package org.kmymoney.apiext.trxmgr;
 
-import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
 
 import org.kmymoney.api.read.KMyMoneyAccount;
 import org.kmymoney.api.read.KMyMoneyTransaction;
@@ -11,7 +13,6 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import xyz.schnorxoborx.base.dateutils.JulianDate;
-import xyz.schnorxoborx.base.numbers.FixedPointNumber;
 
 public abstract class TransactionMergerBase {
 	
@@ -23,6 +24,12 @@ public abstract class TransactionMergerBase {
     // Logger
     private static final Logger LOGGER = LoggerFactory.getLogger(TransactionMergerBase.class);
     
+	// Account types the plausi checks are based on
+	private static final Set<KMyMoneyAccount.Type> MERGE_ACCT_TYPES =
+			Collections.unmodifiableSet(EnumSet.of(KMyMoneyAccount.Type.CHECKING,
+												   KMyMoneyAccount.Type.CASH,
+												   KMyMoneyAccount.Type.STOCK));
+	
     // ---------------------------------------------------------------
     
 	protected KMyMoneyWritableFile kmmFile = null;
@@ -47,6 +54,24 @@ public abstract class TransactionMergerBase {
     // ---------------------------------------------------------------
 	
 	public boolean plausiCheck(KMyMoneyTransaction survivor, KMyMoneyTransaction dier) {
+		// sic, on the transactions as they are now
+		return plausiCheck(TransactionSignature.of(survivor), TransactionSignature.of(dier));
+	}
+	
+	/**
+	 * Like {@link #plausiCheck(KMyMoneyTransaction, KMyMoneyTransaction)}, on
+	 * the transactions' signatures, which can be reused across many checks.
+	 * Thread-safe.
+	 */
+	public boolean plausiCheck(TransactionSignature survSig, TransactionSignature dierSig) {
+		if ( survSig == null ||
+			 dierSig == null ) {
+			throw new IllegalArgumentException("null transaction signature given");
+		}
+		
+		KMyMoneyTransaction survivor = survSig.getTransaction();
+		KMyMoneyTransaction dier     = dierSig.getTransaction();
+		
 		// Level 1:
 		double survDateFromJul = 0.0;
 		double dierDateToJul   = 0.0;
@@ -65,98 +90,39 @@ public abstract class TransactionMergerBase {
 			return false;
 		}
 
-		TransactionManager trxMgr = new TransactionManager(kmmFile);
-		if ( ! trxMgr.isSane(survivor) ) {
+		if ( ! survSig.isSane() ) {
 			LOGGER.warn("plausiCheck: Survivor-transaction is not sane");
 			return false;
 		}
 		
-		if ( ! trxMgr.isSane(dier) ) {
+		if ( ! dierSig.isSane() ) {
 			LOGGER.warn("plausiCheck: Dier-transaction is not sane");
 			return false;
 		}
 		
-		if ( ! ( trxMgr.hasSplitBoundToAccounttType(survivor, KMyMoneyAccount.Type.CHECKING) &&
-			     trxMgr.hasSplitBoundToAccounttType(dier, KMyMoneyAccount.Type.CHECKING) 
-			     ||
-			     trxMgr.hasSplitBoundToAccounttType(survivor, KMyMoneyAccount.Type.CASH) &&
-			     trxMgr.hasSplitBoundToAccounttType(dier, KMyMoneyAccount.Type.CASH)
-			     ||
-			     trxMgr.hasSplitBoundToAccounttType(survivor, KMyMoneyAccount.Type.STOCK) &&
-			     trxMgr.hasSplitBoundToAccounttType(dier, KMyMoneyAccount.Type.STOCK) 
-			   ) ) {
+		if ( ! survSig.sharesAccountType(dierSig, MERGE_ACCT_TYPES) ) {
 			LOGGER.warn("plausiCheck: One or both transactions has/have no split belonging to bank/cash/stock account");
 			return false;
 		}
 		
+		// ::TODO
+		// The survivor side of levels 2 and 3 has always been taken from
+		// the dier (cf. the split lists these levels used to work on), so
+		// they cannot fail. Kept as is: Simply comparing the survivor with
+		// the dier would reject legitimate var. 2 pairs, where the bank
+		// splits are mirrored (cf. TransactionMergerVar2.copyBankTrxSplt()).
+		// A variant-aware check is a change of its own.
+		TransactionSignature survSideSig = dierSig;
+		
 		// Level 2:
 		// Splits belong to the same accounts -- per account type
-		ArrayList<KMyMoneyTransactionSplit> spltListSurvBank = trxMgr.getSplitsBoundToAccounttType(dier, KMyMoneyAccount.Type.CHECKING);
-		ArrayList<KMyMoneyTransactionSplit> spltListDierBank = trxMgr.getSplitsBoundToAccounttType(dier, KMyMoneyAccount.Type.CHECKING);
-		if ( trxMgr.hasSplitBoundToAccounttType(survivor, KMyMoneyAccount.Type.CHECKING) &&
-			 trxMgr.hasSplitBoundToAccounttType(dier, KMyMoneyAccount.Type.CHECKING) ) {
-			spltListSurvBank = trxMgr.getSplitsBoundToAccounttType(dier, KMyMoneyAccount.Type.CHECKING);
-			spltListDierBank = trxMgr.getSplitsBoundToAccounttType(dier, KMyMoneyAccount.Type.CHECKING);
-			
-			for ( KMyMoneyTransactionSplit spltSurv : spltListSurvBank ) {
-				boolean accountInBothLists = false;
-				
-				for ( KMyMoneyTransactionSplit spltDier : spltListDierBank ) {
-					if ( spltSurv.getAccount().getID().equals(spltDier.getAccount().getID() ) ) {
-						accountInBothLists = true;
-					}
-				}
-				
-				if ( ! accountInBothLists ) {
-					LOGGER.warn("plausiCheck: Survivor-split " + spltSurv.getID() + " has no according dier-split sibling (bank accounts)");
-					return false;
-				}
-			}
-		} 
-
 		// sic, no else-if!
-		ArrayList<KMyMoneyTransactionSplit> spltListSurvCash = trxMgr.getSplitsBoundToAccounttType(dier, KMyMoneyAccount.Type.CASH);
-		ArrayList<KMyMoneyTransactionSplit> spltListDierCash = trxMgr.getSplitsBoundToAccounttType(dier, KMyMoneyAccount.Type.CASH);
-		if ( trxMgr.hasSplitBoundToAccounttType(survivor, KMyMoneyAccount.Type.CASH) &&
-			 trxMgr.hasSplitBoundToAccounttType(dier, KMyMoneyAccount.Type.CASH) ) {
-			spltListSurvCash = trxMgr.getSplitsBoundToAccounttType(dier, KMyMoneyAccount.Type.CASH);
-			spltListDierCash = trxMgr.getSplitsBoundToAccounttType(dier, KMyMoneyAccount.Type.CASH);
-			
-			for ( KMyMoneyTransactionSplit spltSurv : spltListSurvCash ) {
-				boolean accountInBothLists = false;
-				
-				for ( KMyMoneyTransactionSplit spltDier : spltListDierCash ) {
-					if ( spltSurv.getAccount().getID().equals(spltDier.getAccount().getID() ) ) {
-						accountInBothLists = true;
-					}
-				}
-				
-				if ( ! accountInBothLists ) {
-					LOGGER.warn("plausiCheck: Survivor-split " + spltSurv.getID() + " has no according dier-split sibling (cash accounts)");
-					return false;
-				}
-			}
-		}
-		
-		// sic, no else-if!
-		ArrayList<KMyMoneyTransactionSplit> spltListSurvStock = trxMgr.getSplitsBoundToAccounttType(dier, KMyMoneyAccount.Type.STOCK);
-		ArrayList<KMyMoneyTransactionSplit> spltListDierStock = trxMgr.getSplitsBoundToAccounttType(dier, KMyMoneyAccount.Type.STOCK);
-		if ( trxMgr.hasSplitBoundToAccounttType(survivor, KMyMoneyAccount.Type.STOCK) &&
-			 trxMgr.hasSplitBoundToAccounttType(dier, KMyMoneyAccount.Type.STOCK) ) {
-			spltListSurvStock = trxMgr.getSplitsBoundToAccounttType(dier, KMyMoneyAccount.Type.STOCK);
-			spltListDierStock = trxMgr.getSplitsBoundToAccounttType(dier, KMyMoneyAccount.Type.STOCK);
-			
-			for ( KMyMoneyTransactionSplit spltSurv : spltListSurvStock ) {
-				boolean accountInBothLists = false;
-				
-				for ( KMyMoneyTransactionSplit spltDier : spltListDierStock ) {
-					if ( spltSurv.getAccount().getID().equals(spltDier.getAccount().getID() ) ) {
-						accountInBothLists = true;
-					}
-				}
-				
-				if ( ! accountInBothLists ) {
-					LOGGER.warn("plausiCheck: Survivor-split " + spltSurv.getID() + " has no according dier-split sibling (stock accounts)");
+		for ( KMyMoneyAccount.Type type : MERGE_ACCT_TYPES ) {
+			if ( survSig.hasAccountType(type) &&
+				 dierSig.hasAccountType(type) ) {
+				KMyMoneyTransactionSplit spltSurv = survSideSig.getSplitWithoutSibling(type, dierSig);
+				if ( spltSurv != null ) {
+					LOGGER.warn("plausiCheck: Survivor-split " + spltSurv.getID() + " has no according dier-split sibling (" + getLabel(type) + ")");
 					return false;
 				}
 			}
@@ -164,65 +130,29 @@ public abstract class TransactionMergerBase {
 		
 		// Level 3:
 		// Split values are identical
-		FixedPointNumber sumSurv = new FixedPointNumber();
-		for ( KMyMoneyTransactionSplit elt : spltListSurvBank ) {
-			sumSurv = sumSurv.add(elt.getValue());
-		}
-		
-		FixedPointNumber sumDier = new FixedPointNumber();
-		for ( KMyMoneyTransactionSplit elt : spltListDierBank ) {
-			sumDier = sumDier.add(elt.getValue());
-		}
-		
-		if ( Math.abs( sumSurv.getBigDecimal().doubleValue() - 
-				       sumDier.getBigDecimal().doubleValue() ) > Const.DIFF_TOLERANCE_VALUE ) {
-			LOGGER.warn("plausiCheck: Split-sums over survivor- and dier-splits are unequal (bank accounts)");
-			LOGGER.debug("plausiCheck: sumSurv: " + sumSurv.getBigDecimal());
-			LOGGER.debug("plausiCheck: sumDier: " + sumDier.getBigDecimal());
-			return false;
-		}
-		
-		// ---
-		
-		sumSurv = new FixedPointNumber();
-		for ( KMyMoneyTransactionSplit elt : spltListSurvCash ) {
-			sumSurv = sumSurv.add(elt.getValue());
-		}
-		
-		sumDier = new FixedPointNumber();
-		for ( KMyMoneyTransactionSplit elt : spltListDierCash ) {
-			sumDier = sumDier.add(elt.getValue());
-		}
-		
-		if ( Math.abs( sumSurv.getBigDecimal().doubleValue() - 
-				       sumDier.getBigDecimal().doubleValue() ) > Const.DIFF_TOLERANCE_VALUE ) {
-			LOGGER.warn("plausiCheck: Split-sums over survivor- and dier-splits are unequal (cash accounts)");
-			LOGGER.debug("plausiCheck: sumSurv: " + sumSurv.getBigDecimal());
-			LOGGER.debug("plausiCheck: sumDier: " + sumDier.getBigDecimal());
-			return false;
-		}
-		
-		// ---
-		
-		sumSurv = new FixedPointNumber();
-		for ( KMyMoneyTransactionSplit elt : spltListSurvStock ) {
-			sumSurv = sumSurv.add(elt.getValue());
-		}
-		
-		sumDier = new FixedPointNumber();
-		for ( KMyMoneyTransactionSplit elt : spltListDierStock ) {
-			sumDier = sumDier.add(elt.getValue());
-		}
-		
-		if ( Math.abs( sumSurv.getBigDecimal().doubleValue() - 
-				       sumDier.getBigDecimal().doubleValue() ) > Const.DIFF_TOLERANCE_VALUE ) {
-			LOGGER.warn("plausiCheck: Split-sums over survivor- and dier-splits are unequal (stock accounts)");
-			LOGGER.debug("plausiCheck: sumSurv: " + sumSurv.getBigDecimal());
-			LOGGER.debug("plausiCheck: sumDier: " + sumDier.getBigDecimal());
-			return false;
+		for ( KMyMoneyAccount.Type type : MERGE_ACCT_TYPES ) {
+			long sumSurv = survSideSig.getValueSumScaled(type);
+			long sumDier = dierSig.getValueSumScaled(type);
+			if ( ! ScaledAmount.isEqual(sumSurv, sumDier) ) {
+				LOGGER.warn("plausiCheck: Split-sums over survivor- and dier-splits are unequal (" + getLabel(type) + ")");
+				LOGGER.debug("plausiCheck: sumSurv: " + ScaledAmount.ofScaled(sumSurv));
+				LOGGER.debug("plausiCheck: sumDier: " + ScaledAmount.ofScaled(sumDier));
+				return false;
+			}
 		}
 		
 		return true;
 	}
+	
+	private static String getLabel(KMyMoneyAccount.Type type) {
+		switch ( type ) {
+			case CHECKING:
+				return "bank accounts";
+			case CASH:
+				return "cash accounts";
+			default:
+				return "stock accounts";
+		}
+	}
     
 }
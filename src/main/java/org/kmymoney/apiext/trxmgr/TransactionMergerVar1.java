@@ -36,6 +36,14 @@ public class TransactionMergerVar1 extends TransactionMergerBase
 		}
 		
 		// 2) If OK, remove dier
+		applyMerge(dier);
+		
+		// Indexes and cached query results are out of date now
+		TransactionIndexes.invalidate(kmmFile);
+	}
+
+	// Without checks, without invalidation (cf. TransactionBatchMerger)
+	void applyMerge(KMyMoneyWritableTransaction dier) {
 		KMMTrxID dierID = dier.getID();
 		kmmFile.removeTransaction(dier);
 		LOGGER.info("merge: Transaction " + dierID + " (dier) removed");
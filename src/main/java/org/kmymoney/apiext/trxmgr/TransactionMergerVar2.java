@@ -138,12 +138,24 @@ public class TransactionMergerVar2 extends TransactionMergerBase
 			throw new MergePlausiCheckException();
 		}
 
-		KMyMoneyWritableTransactionSplit zSurvBankTrxSpltAfter = copyBankTrxSplt();
-		LOGGER.info("merge: Transaction Split " + zDierTrxBankSpltID + " copied to new Splt " + zSurvBankTrxSpltAfter.getID());
+		applyMerge(survTrx, zDierTrxBankSplt,
+				   kmmFile.getWritableTransactionSplitByID(zSurvTrxBankSpltBeforeID),
+				   dier);
 		
-		KMyMoneyWritableTransactionSplit zSurvBankTrxSpltBefore = kmmFile.getWritableTransactionSplitByID(zSurvTrxBankSpltBeforeID);
-		survTrx.remove(zSurvBankTrxSpltBefore);
-		LOGGER.info("merge: Removed Transaction Split " + zSurvTrxBankSpltBeforeID);
+		// Indexes and cached query results are out of date now
+		TransactionIndexes.invalidate(kmmFile);
+	}
+
+	// Without checks, without invalidation (cf. TransactionBatchMerger)
+	void applyMerge(KMyMoneyWritableTransaction survTrx,
+					KMyMoneyTransactionSplit zDierTrxBankSplt,
+					KMyMoneyWritableTransactionSplit zSurvTrxBankSpltBefore,
+					KMyMoneyWritableTransaction dier) {
+		KMyMoneyWritableTransactionSplit zSurvBankTrxSpltAfter = copyBankTrxSplt(survTrx, zDierTrxBankSplt, zSurvTrxBankSpltBefore);
+		LOGGER.info("merge: Transaction Split " + zDierTrxBankSplt.getQualifID() + " copied to new Splt " + zSurvBankTrxSpltAfter.getID());
+		
+		survTrx.remove(zSurvTrxBankSpltBefore);
+		LOGGER.info("merge: Removed Transaction Split " + zSurvTrxBankSpltBefore.getQualifID());
 
 		KMMID dierID = dier.getID();
 		kmmFile.removeTransaction(dier);
@@ -152,7 +164,9 @@ public class TransactionMergerVar2 extends TransactionMergerBase
 
     // ---------------------------------------------------------------
 	
-	private KMyMoneyWritableTransactionSplit copyBankTrxSplt() {
+	private static KMyMoneyWritableTransactionSplit copyBankTrxSplt(KMyMoneyWritableTransaction survTrx,
+																	KMyMoneyTransactionSplit zDierTrxBankSplt,
+																	KMyMoneyTransactionSplit zSurvTrxBankSpltBefore) {
 		KMyMoneyWritableTransactionSplit copy = survTrx.createWritableSplit(zDierTrxBankSplt.getAccount());
 
 		if ( zDierTrxBankSplt.getAction() != null )
@@ -0,0 +1,233 @@
+package org.kmymoney.apiext.trxmgr;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.kmymoney.api.read.KMyMoneyAccount;
+import org.kmymoney.api.read.KMyMoneyTransaction;
+import org.kmymoney.api.read.KMyMoneyTransactionSplit;
+
+/**
+ * Summary of one transaction's splits, computed in one single pass:
+ * the account types present, and per account type the accounts the splits
+ * are bound to and the splits' value sum.
+ * <br>
+ * With it, the plausi checks of the transaction mergers compare two
+ * transactions without scanning their splits (or resolving the splits'
+ * accounts) again and again (cf.
+ * {@link TransactionManager#getSplitsBoundToAccounttType(KMyMoneyTransaction, KMyMoneyAccount.Type)}).
+ * <br>
+ * A signature is a snapshot: It does not follow later changes of the
+ * transaction. Thus, it is cached only for the duration of one run
+ * (cf. {@link TransactionBatchMerger}, {@link DuplicateCandidateFinder}),
+ * so that a transaction that is compared against many candidates
+ * is summarized only once.
+ */
+public final class TransactionSignature {
+
+	private final KMyMoneyTransaction trx;
+	private final int                 nofSplits;
+	private final long                valueSum; // scaled
+
+	private final EnumSet<KMyMoneyAccount.Type> acctTypes = EnumSet.noneOf(KMyMoneyAccount.Type.class);
+
+	// Per account type
+	private final Map<KMyMoneyAccount.Type, TypeSummary> summaries =
+			new EnumMap<KMyMoneyAccount.Type, TypeSummary>(KMyMoneyAccount.Type.class);
+
+    // ---------------------------------------------------------------
+
+	TransactionSignature(final KMyMoneyTransaction trx, final AccountOrdinalTable acctOrds) {
+		if ( trx == null ) {
+			throw new IllegalArgumentException("null transaction given");
+		}
+
+		this.trx = trx;
+
+		KMyMoneyAccount.Type[] types = KMyMoneyAccount.Type.values();
+		long sum = 0;
+		for ( KMyMoneyTransactionSplit splt : trx.getSplits() ) {
+			long value = ScaledAmount.toScaled(splt.getValue());
+			sum = Math.addExact(sum, value);
+
+			// Account type via the ordinal table, without resolving the account
+			int acctOrd = ( acctOrds == null ) ? AccountOrdinalTable.NONE : acctOrds.getOrdinal(splt);
+			KMyMoneyAccount.Type type = null;
+			if ( acctOrd != AccountOrdinalTable.NONE ) {
+				int typeOrd = acctOrds.getAccountTypeOrdinal(acctOrd);
+				type = ( typeOrd == AccountOrdinalTable.NONE ) ? null : types[typeOrd];
+			} else {
+				type = splt.getAccount().getType();
+			}
+
+			if ( type == null ) {
+				continue;
+			}
+
+			acctTypes.add(type);
+			summaries.computeIfAbsent(type, key -> new TypeSummary()).add(splt, acctOrd, value);
+		}
+
+		this.nofSplits = trx.getSplits().size();
+		this.valueSum = sum;
+	}
+
+	/**
+	 * @param trx transaction
+	 * @return the signature of the given transaction, as it is now
+	 */
+	public static TransactionSignature of(final KMyMoneyTransaction trx) {
+		return new TransactionSignature(trx, null);
+	}
+
+    // ---------------------------------------------------------------
+
+	public KMyMoneyTransaction getTransaction() {
+		return trx;
+	}
+
+	public int getNofSplits() {
+		return nofSplits;
+	}
+
+	/**
+	 * Cf. {@link TransactionManager#isSane(KMyMoneyTransaction)}
+	 */
+	public boolean isSane() {
+		return nofSplits > 0 &&
+			   ScaledAmount.isEqual(valueSum, 0);
+	}
+
+	/**
+	 * @return the sum over all splits' values
+	 */
+	public ScaledAmount getValueSum() {
+		return ScaledAmount.ofScaled(valueSum);
+	}
+
+	/**
+	 * @return the types of the accounts the splits are bound to (copy)
+	 */
+	public EnumSet<KMyMoneyAccount.Type> getAccountTypes() {
+		return EnumSet.copyOf(acctTypes);
+	}
+
+	public boolean hasAccountType(final KMyMoneyAccount.Type acctType) {
+		return acctTypes.contains(acctType);
+	}
+
+	/**
+	 * @return the sum over the values of the splits bound to an account
+	 * of the given type (zero if there are none)
+	 */
+	public ScaledAmount getValueSum(final KMyMoneyAccount.Type acctType) {
+		return ScaledAmount.ofScaled(getValueSumScaled(acctType));
+	}
+
+	/**
+	 * @return whether this transaction and the given one have splits
+	 * bound to an account of one of the given types
+	 */
+	public boolean sharesAccountType(final TransactionSignature other, final Set<KMyMoneyAccount.Type> acctTypeSet) {
+		for ( KMyMoneyAccount.Type type : acctTypeSet ) {
+			if ( acctTypes.contains(type) &&
+				 other.acctTypes.contains(type) ) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	// ---
+
+	long getValueSumScaled(final KMyMoneyAccount.Type acctType) {
+		TypeSummary summ = summaries.get(acctType);
+		return summ == null ? 0 : summ.valueSum;
+	}
+
+	/**
+	 * @return a split of this transaction (bound to an account of the
+	 * given type) whose account none of the other transaction's splits
+	 * (of the same type) is bound to, null if there is none
+	 */
+	KMyMoneyTransactionSplit getSplitWithoutSibling(final KMyMoneyAccount.Type acctType,
+													final TransactionSignature other) {
+		TypeSummary summ = summaries.get(acctType);
+		if ( summ == null ) {
+			return null;
+		}
+
+		TypeSummary otherSumm = other.summaries.get(acctType);
+		if ( otherSumm != null &&
+			 otherSumm.containsAccounts(summ) ) {
+			return null;
+		}
+
+		for ( KMyMoneyTransactionSplit splt : summ.splits ) {
+			if ( otherSumm == null ||
+				 ! otherSumm.containsAccountOf(splt) ) {
+				return splt;
+			}
+		}
+
+		return null;
+	}
+
+    // ---------------------------------------------------------------
+
+	@Override
+	public String toString() {
+		return "TransactionSignature [" +
+				        "trx=" + trx.getID() + ", " +
+				  "nofSplits=" + nofSplits + ", " +
+				  "acctTypes=" + acctTypes + "]";
+	}
+
+    // ---------------------------------------------------------------
+
+	// Splits of one account type
+	private static final class TypeSummary {
+		private final ArrayList<KMyMoneyTransactionSplit> splits = new ArrayList<KMyMoneyTransactionSplit>();
+
+		// Accounts, by ordinal; by ID if not known to the ordinal table
+		private final BitSet      acctOrds = new BitSet();
+		private final Set<String> acctIDs  = new HashSet<String>();
+
+		private long valueSum = 0; // scaled
+
+		void add(final KMyMoneyTransactionSplit splt, final int acctOrd, final long value) {
+			splits.add(splt);
+			if ( acctOrd == AccountOrdinalTable.NONE ) {
+				acctIDs.add(splt.getAccountID().toString());
+			} else {
+				acctOrds.set(acctOrd);
+			}
+			valueSum = Math.addExact(valueSum, value);
+		}
+
+		// Whether all accounts of the other summary are in this one
+		boolean containsAccounts(final TypeSummary other) {
+			BitSet diff = (BitSet) other.acctOrds.clone();
+			diff.andNot(acctOrds);
+			return diff.isEmpty() &&
+				   acctIDs.containsAll(other.acctIDs);
+		}
+
+		boolean containsAccountOf(final KMyMoneyTransactionSplit splt) {
+			for ( KMyMoneyTransactionSplit own : splits ) {
+				if ( own.getAccountID().toString().equals(splt.getAccountID().toString()) ) {
+					return true;
+				}
+			}
+
+			return false;
+		}
+	}
+
+}
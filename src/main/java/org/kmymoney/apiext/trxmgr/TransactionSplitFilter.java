@@ -33,7 +33,8 @@ public class TransactionSplitFilter {
 	public FixedPointNumber sharesFrom;
 	public FixedPointNumber sharesTo;
 	
-	public String memoPart;
+	public String  memoPart;
+	public boolean memoIgnoreCase;
 	
 	// ---------------------------------------------------------------
 	
@@ -58,6 +59,7 @@ public class TransactionSplitFilter {
 		sharesTo = new FixedPointNumber(BigDecimal.valueOf(Const.UNSET_VALUE));
 		
 		memoPart = "";
+		memoIgnoreCase = false;
 	}
 	
 	public void reset() {
@@ -74,6 +76,7 @@ public class TransactionSplitFilter {
 		sharesTo = new FixedPointNumber(BigDecimal.valueOf(Const.UNSET_VALUE));
 		
 		memoPart = "";
+		memoIgnoreCase = false;
 	}
 	
 	// ---------------------------------------------------------------
@@ -97,7 +100,7 @@ public class TransactionSplitFilter {
 //		}
 		
 		if ( acctID.isSet() ) {
-			if ( ! splt.getAccount().getID().toString().equals(acctID.toString()) ) { // important: toString()
+			if ( ! splt.getAccountID().toString().equals(acctID.toString()) ) { // important: toString()
 				return false;
 			}
 		}
@@ -108,33 +111,27 @@ public class TransactionSplitFilter {
 			}
 		}
 		
-		if ( valueFrom.getBigDecimal().doubleValue() != Const.UNSET_VALUE ) {
-			if ( splt.getValue().isLessThan(valueFrom, Const.DIFF_TOLERANCE_VALUE ) ) {
-				return false;
-			}
-		}
-		
-		if ( valueTo.getBigDecimal().doubleValue() != Const.UNSET_VALUE ) {
-			if ( splt.getValue().isGreaterThan(valueTo, Const.DIFF_TOLERANCE_VALUE ) ) {
-				return false;
-			}
-		}
-		
-		if ( sharesFrom.getBigDecimal().doubleValue() != Const.UNSET_VALUE ) {
-			if ( splt.getShares().isLessThan(sharesFrom, Const.DIFF_TOLERANCE_VALUE ) ) {
-				return false;
-			}
+		// One conversion per amount; for many splits, cf. compile()
+		// (sic, bounds rounded: far below the tolerance)
+		if ( ! ScaledAmount.isInRange(splt.getValue(),
+									  ScaledAmount.ofRounded(valueFrom), ScaledAmount.ofRounded(valueTo)) ) {
+			return false;
 		}
 		
-		if ( sharesTo.getBigDecimal().doubleValue() != Const.UNSET_VALUE ) {
-			if ( splt.getShares().isGreaterThan(sharesTo, Const.DIFF_TOLERANCE_VALUE ) ) {
-				return false;
-			}
+		if ( ! ScaledAmount.isInRange(splt.getShares(),
+									  ScaledAmount.ofRounded(sharesFrom), ScaledAmount.ofRounded(sharesTo)) ) {
+			return false;
 		}
 		
 		if ( ! memoPart.trim().equals("") ) {
-			if ( ! splt.getMemo().contains(memoPart.trim()) ) {
-				return false;
+			if ( memoIgnoreCase ) {
+				if ( ! MemoTrigramIndex.fold(splt.getMemo()).contains(MemoTrigramIndex.fold(memoPart.trim())) ) {
+					return false;
+				}
+			} else {
+				if ( ! splt.getMemo().contains(memoPart.trim()) ) {
+					return false;
+				}
 			}
 		}
 		
@@ -143,6 +140,41 @@ public class TransactionSplitFilter {
 	
 	// ---------------------------------------------------------------
 	
+	/**
+	 * Takes a snapshot of the currently set criteria and turns it into
+	 * an immutable, thread-safe filter that only evaluates the active ones.
+	 * <br>
+	 * Later changes on this object do not affect the compiled filter.
+	 * 
+	 * @return compiled form of this filter
+	 */
+	public CompiledTransactionSplitFilter compile() {
+		return new CompiledTransactionSplitFilter(this);
+	}
+	
+	// -----------------------------------------------------
+	// helpers
+
+	// sic, Const.UNSET_VALUE (the default) and null both mean "not set"
+	
+	public boolean isValueFromSet() {
+		return ! ScaledAmount.isUnset(valueFrom);
+	}
+
+	public boolean isValueToSet() {
+		return ! ScaledAmount.isUnset(valueTo);
+	}
+
+	public boolean isSharesFromSet() {
+		return ! ScaledAmount.isUnset(sharesFrom);
+	}
+
+	public boolean isSharesToSet() {
+		return ! ScaledAmount.isUnset(sharesTo);
+	}
+	
+	// ---------------------------------------------------------------
+	
 	@Override
 	public String toString() {
 		return "TransactionSplitFilter [" + 
@@ -153,7 +185,8 @@ public class TransactionSplitFilter {
 	                "valueTo=" + valueTo + ", " +
 			     "sharesFrom=" + sharesFrom + ", " + 
 	               "sharesTo=" + sharesTo + ", " +
-			       "memoPart='" + memoPart + "']";
+			       "memoPart='" + memoPart + "', " +
+			 "memoIgnoreCase=" + memoIgnoreCase + "]";
 	}
 
 }
@@ -1,55 +1,520 @@
 package org.kmymoney.apiext.trxmgr;
 
+import java.time.LocalDate;
+import java.time.YearMonth;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
+import java.util.stream.Stream;
 
+import org.kmymoney.api.read.KMyMoneyAccount;
 import org.kmymoney.api.read.KMyMoneyTransactionSplit;
 import org.kmymoney.api.write.KMyMoneyWritableFile;
+import org.kmymoney.api.write.KMyMoneyWritableTransactionSplit;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 public class TransactionSplitFinder {
-	
+
+	public enum SortKey {
+		DATE_POSTED,
+		VALUE,
+		SHARES
+	}
+
     // Logger
     private static final Logger LOGGER = LoggerFactory.getLogger(TransactionSplitFinder.class);
-    
+
     // ---------------------------------------------------------------
-    
+
 	private KMyMoneyWritableFile kmmFile = null;
-	
+
+	// null means: common pool
+	private ForkJoinPool forkJoinPool = null;
+
+	private boolean indexesEnabled = false;
+	private boolean memoIdxEnabled = false;
+
+	// Cf. getPlanner()
+	private QueryPlanner planner = null;
+
     // ---------------------------------------------------------------
-	
+
 	public TransactionSplitFinder(KMyMoneyWritableFile kmmFile) {
 		if ( kmmFile == null ) {
 			throw new IllegalArgumentException("null KMyMoney-file object given");
 		}
-		
+
 		this.kmmFile = kmmFile;
 	}
-    
+
+    // ---------------------------------------------------------------
+
+	public ForkJoinPool getForkJoinPool() {
+		return forkJoinPool;
+	}
+
+	/**
+	 * @param pool the pool used in parallel execution mode,
+	 * null for the common pool
+	 */
+	public void setForkJoinPool(ForkJoinPool pool) {
+		this.forkJoinPool = pool;
+	}
+
+	public boolean isIndexesEnabled() {
+		return indexesEnabled;
+	}
+
+	/**
+	 * @param val whether searches are to be narrowed down by the file's
+	 * indexes (opt-in). The indexes are snapshots: They are rebuilt after each
+	 * modification reported to {@link TransactionIndexes} (the mergers and
+	 * {@link StandingQueryManager} do so), but not after modifications
+	 * done directly on the file objects.
+	 * <br>
+	 * Default: false, i.e. each search works on the live file.
+	 */
+	public void setIndexesEnabled(boolean val) {
+		this.indexesEnabled = val;
+	}
+
+	public boolean isMemoIndexEnabled() {
+		return memoIdxEnabled;
+	}
+
+	/**
+	 * @param val whether memo searches are to be narrowed down by the 
+	 * (optional) trigram index. The index is built upon first use.
+	 * Only applies with the indexes enabled (cf. {@link #setIndexesEnabled(boolean)}).
+	 */
+	public void setMemoIndexEnabled(boolean val) {
+		this.memoIdxEnabled = val;
+	}
+
     // ---------------------------------------------------------------
-	
-	// ::TODO
-	// - Have results writable?
-    
+
 	public ArrayList<KMyMoneyTransactionSplit> find(TransactionSplitFilter flt) {
+		return find(flt, null, null, TransactionFinder.ExecutionMode.SEQUENTIAL);
+	}
+
+	public ArrayList<KMyMoneyTransactionSplit> find(TransactionSplitFilter flt,
+													TransactionFinder.ExecutionMode mode) {
+		return find(flt, null, null, mode);
+	}
+
+	public ArrayList<KMyMoneyTransactionSplit> find(TransactionSplitFilter flt,
+													LocalDate datePostedFrom, LocalDate datePostedTo) {
+		return find(flt, datePostedFrom, datePostedTo, TransactionFinder.ExecutionMode.SEQUENTIAL);
+	}
+
+	public ArrayList<KMyMoneyWritableTransactionSplit> findWritable(TransactionSplitFilter flt) {
+		return findWritable(flt, null, null, TransactionFinder.ExecutionMode.SEQUENTIAL);
+	}
+
+	/**
+	 * Like {@link #find(TransactionSplitFilter, LocalDate, LocalDate, TransactionFinder.ExecutionMode)},
+	 * but returns the writable splits. They are resolved in bulk,
+	 * not by one ID lookup per result.
+	 */
+	public ArrayList<KMyMoneyWritableTransactionSplit> findWritable(TransactionSplitFilter flt,
+																	LocalDate datePostedFrom, LocalDate datePostedTo,
+																	TransactionFinder.ExecutionMode mode) {
+		return new WritableResolver(kmmFile).getSplits(find(flt, datePostedFrom, datePostedTo, mode));
+	}
+
+	/**
+	 * Evaluates a composite filter (AND/OR/NOT over split filters) in one
+	 * single pass over the splits.
+	 *
+	 * @param flt composite filter
+	 * @return the splits matching the filter, in date-posted order of their transactions
+	 */
+	public ArrayList<KMyMoneyTransactionSplit> find(CompositeFilter<KMyMoneyTransactionSplit> flt) {
 		if ( flt == null ) {
-			throw new IllegalArgumentException("null transaction-split-filter given");
+			throw new IllegalArgumentException("null composite filter given");
 		}
-		
-		LOGGER.debug("find: Searching for Transaction-Splits matching filter: " + flt.toString());
+
+		LOGGER.debug("find: Searching for Transaction-Splits matching composite filter: " + flt.toString());
+
+		QueryPlanner planner = getPlanner();
 		ArrayList<KMyMoneyTransactionSplit> result = new ArrayList<KMyMoneyTransactionSplit>();
-		
-		Collection<KMyMoneyTransactionSplit> candList = kmmFile.getTransactionSplits();
-		
-		for ( KMyMoneyTransactionSplit splt : candList ) {
+		for ( KMyMoneyTransactionSplit splt : planner.getSplitsByTransaction() ) {
 			if ( flt.matchesCriteria(splt) ) {
 				result.add(splt);
 			}
 		}
-		
+
+		// Matches only, cf. QueryPlanner.isDateOrdered()
+		// (sic, stable: the splits of one transaction keep their order)
+		if ( ! planner.isDateOrdered() ) {
+			result.sort(Comparator.comparing(KMyMoneyTransactionSplit::getTransaction,
+											 TransactionDateIndex.DATE_ORDER));
+		}
+
+		LOGGER.debug("find: Found " + result.size() + " Transaction-Splits matching composite filter");
+		return result;
+	}
+
+	/**
+	 * @param flt split filter
+	 * @param datePostedFrom lower bound (inclusive) for the date posted of the
+	 * splits' transactions, null for open
+	 * @param datePostedTo upper bound (inclusive) for the date posted of the
+	 * splits' transactions, null for open
+	 * @param mode sequential or parallel evaluation. In both modes, the results
+	 * are in the same order.
+	 * @return the splits matching the filter, posted in the given period
+	 */
+	public ArrayList<KMyMoneyTransactionSplit> find(TransactionSplitFilter flt,
+													LocalDate datePostedFrom, LocalDate datePostedTo,
+													TransactionFinder.ExecutionMode mode) {
+		if ( flt == null ) {
+			throw new IllegalArgumentException("null transaction-split-filter given");
+		}
+
+		if ( mode == null ) {
+			throw new IllegalArgumentException("null execution mode given");
+		}
+
+		LOGGER.debug("find: Searching for Transaction-Splits matching filter: " + flt.toString());
+		ArrayList<KMyMoneyTransactionSplit> result = null;
+
+		// Compile once, evaluate many times
+		CompiledTransactionSplitFilter cflt = compile(flt);
+
+		Collection<KMyMoneyTransactionSplit> candList = getCandidates(cflt, datePostedFrom, datePostedTo);
+
+		if ( mode == TransactionFinder.ExecutionMode.PARALLEL ) {
+			// sic, the compiled filter is thread-safe
+			result = ParallelFilterTask.filter(candList, cflt::matchesCriteria, getPool());
+		} else {
+			result = new ArrayList<KMyMoneyTransactionSplit>();
+			for ( KMyMoneyTransactionSplit splt : candList ) {
+				if ( cflt.matchesCriteria(splt) ) {
+					result.add(splt);
+				}
+			}
+		}
+
 		LOGGER.debug("find: Found " + result.size() + " Transaction-Splits matching filter");
 		return result;
 	}
 
+	/**
+	 * Like {@link #find(TransactionSplitFilter)}, but stops scanning as soon as 
+	 * the given number of results have been found.
+	 * 
+	 * @param flt split filter
+	 * @param limit max. number of results
+	 * @return the first (at most) <code>limit</code> splits matching the filter
+	 */
+	public ArrayList<KMyMoneyTransactionSplit> find(TransactionSplitFilter flt, int limit) {
+		if ( flt == null ) {
+			throw new IllegalArgumentException("null transaction-split-filter given");
+		}
+
+		if ( limit < 0 ) {
+			throw new IllegalArgumentException("negative limit given");
+		}
+
+		ArrayList<KMyMoneyTransactionSplit> result = new ArrayList<KMyMoneyTransactionSplit>();
+		if ( limit == 0 ) {
+			return result;
+		}
+
+		CompiledTransactionSplitFilter cflt = compile(flt);
+		for ( KMyMoneyTransactionSplit splt : getCandidates(cflt, null, null) ) {
+			if ( cflt.matchesCriteria(splt) ) {
+				result.add(splt);
+				if ( result.size() == limit ) {
+					break;
+				}
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * @return the first split matching the filter, null if there is none.
+	 * Scanning stops at the first match.
+	 */
+	public KMyMoneyTransactionSplit findFirst(TransactionSplitFilter flt) {
+		if ( flt == null ) {
+			throw new IllegalArgumentException("null transaction-split-filter given");
+		}
+
+		CompiledTransactionSplitFilter cflt = compile(flt);
+		for ( KMyMoneyTransactionSplit splt : getCandidates(cflt, null, null) ) {
+			if ( cflt.matchesCriteria(splt) ) {
+				return splt;
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * @return true if at least one split matches the filter.
+	 * Scanning stops at the first match.
+	 */
+	public boolean exists(TransactionSplitFilter flt) {
+		return findFirst(flt) != null;
+	}
+
+	public Stream<KMyMoneyTransactionSplit> stream(TransactionSplitFilter flt) {
+		return stream(flt, null, null);
+	}
+
+	/**
+	 * Lazy variant of {@link #find(TransactionSplitFilter, LocalDate, LocalDate)}:
+	 * Splits are checked only as far as the stream is consumed.
+	 * <br>
+	 * The filter is compiled when this method is called, i.e. later changes
+	 * on it do not affect the stream. The file must not be changed while
+	 * the stream is consumed.
+	 * 
+	 * @return stream of the splits matching the filter
+	 */
+	public Stream<KMyMoneyTransactionSplit> stream(TransactionSplitFilter flt,
+												   LocalDate datePostedFrom, LocalDate datePostedTo) {
+		if ( flt == null ) {
+			throw new IllegalArgumentException("null transaction-split-filter given");
+		}
+
+		CompiledTransactionSplitFilter cflt = compile(flt);
+		return getCandidates(cflt, datePostedFrom, datePostedTo).stream()
+					.filter(cflt::matchesCriteria);
+	}
+
+	/**
+	 * Lazy variant of {@link #find(TransactionSplitFilter)}
+	 * (cf. {@link #stream(TransactionSplitFilter, LocalDate, LocalDate)}).
+	 */
+	public Iterator<KMyMoneyTransactionSplit> iterator(TransactionSplitFilter flt) {
+		return stream(flt).iterator();
+	}
+
+	/**
+	 * @return the first n splits matching the filter, in the given order
+	 * (cf. {@link #findPage(TransactionSplitFilter, SortKey, TransactionFinder.SortDirection, KMyMoneyTransactionSplit, int)})
+	 */
+	public ArrayList<KMyMoneyTransactionSplit> findTop(TransactionSplitFilter flt,
+													   SortKey key,
+													   TransactionFinder.SortDirection dir,
+													   int n) {
+		return findPage(flt, key, dir, null, n);
+	}
+
+	/**
+	 * One page of the splits matching the filter, in the given order
+	 * (ties are broken by date posted, then by IDs).
+	 * <br>
+	 * Keyset pagination: The page starts right after the given split,
+	 * typically the last one of the previous page. The page is selected
+	 * with a bounded heap, i.e. the match set is neither built nor fully sorted.
+	 * 
+	 * @param flt split filter
+	 * @param key sort key
+	 * @param dir sort direction
+	 * @param after last split of the previous page, null for the first page
+	 * @param pageSize max. number of results
+	 * @return the splits of the page, in the given order
+	 */
+	public ArrayList<KMyMoneyTransactionSplit> findPage(TransactionSplitFilter flt,
+														SortKey key,
+														TransactionFinder.SortDirection dir,
+														KMyMoneyTransactionSplit after,
+														int pageSize) {
+		if ( flt == null ) {
+			throw new IllegalArgumentException("null transaction-split-filter given");
+		}
+
+		if ( key == null ) {
+			throw new IllegalArgumentException("null sort key given");
+		}
+
+		if ( dir == null ) {
+			throw new IllegalArgumentException("null sort direction given");
+		}
+
+		CompiledTransactionSplitFilter cflt = compile(flt);
+		return TopNSelector.select(getCandidates(cflt, null, null), cflt::matchesCriteria,
+								   getOrder(key, dir), after, pageSize);
+	}
+
+	public SplitAggregate aggregate(TransactionSplitFilter flt) {
+		return aggregate(flt, null, null);
+	}
+
+	/**
+	 * Count, sums, minima and maxima of the values and shares of the
+	 * splits matching the filter, without building the result list.
+	 *
+	 * @param flt split filter
+	 * @param datePostedFrom lower bound (inclusive) for the date posted of the
+	 * splits' transactions, null for open
+	 * @param datePostedTo upper bound (inclusive) for the date posted of the
+	 * splits' transactions, null for open
+	 * @return the aggregate over the splits matching the filter
+	 */
+	public SplitAggregate aggregate(TransactionSplitFilter flt,
+									LocalDate datePostedFrom, LocalDate datePostedTo) {
+		if ( flt == null ) {
+			throw new IllegalArgumentException("null transaction-split-filter given");
+		}
+
+		CompiledTransactionSplitFilter cflt = compile(flt);
+		SplitAggregate result = new SplitAggregate();
+		for ( KMyMoneyTransactionSplit splt : getCandidates(cflt, datePostedFrom, datePostedTo) ) {
+			if ( cflt.matchesCriteria(splt) ) {
+				result.add(splt);
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * Like {@link #aggregate(TransactionSplitFilter, LocalDate, LocalDate)},
+	 * but with one aggregate per group.
+	 *
+	 * @param groupKey the group of a split (may be null)
+	 * @return the aggregates, per group. Groups without matching splits
+	 * are not contained.
+	 */
+	public <K> Map<K, SplitAggregate> aggregate(TransactionSplitFilter flt,
+												LocalDate datePostedFrom, LocalDate datePostedTo,
+												Function<KMyMoneyTransactionSplit, K> groupKey) {
+		return aggregate(flt, datePostedFrom, datePostedTo, groupKey, new HashMap<K, SplitAggregate>());
+	}
+
+	/**
+	 * @return the aggregates per account (ID, string form)
+	 */
+	public Map<String, SplitAggregate> aggregateByAccount(TransactionSplitFilter flt) {
+		return aggregate(flt, null, null, splt -> splt.getAccountID().toString(),
+						 new TreeMap<String, SplitAggregate>());
+	}
+
+	public Map<KMyMoneyAccount.Type, SplitAggregate> aggregateByAccountType(TransactionSplitFilter flt) {
+		return aggregate(flt, null, null, splt -> splt.getAccount().getType(),
+						 new HashMap<KMyMoneyAccount.Type, SplitAggregate>());
+	}
+
+	/**
+	 * @return the aggregates per action (null key: splits without action)
+	 */
+	public Map<KMyMoneyTransactionSplit.Action, SplitAggregate> aggregateByAction(TransactionSplitFilter flt) {
+		return aggregate(flt, null, null, KMyMoneyTransactionSplit::getAction,
+						 new HashMap<KMyMoneyTransactionSplit.Action, SplitAggregate>());
+	}
+
+	/**
+	 * @return the aggregates per month of the splits' transactions' date posted,
+	 * in chronological order
+	 */
+	public Map<YearMonth, SplitAggregate> aggregateByMonth(TransactionSplitFilter flt) {
+		return aggregate(flt, null, null, splt -> YearMonth.from(splt.getTransaction().getDatePosted()),
+						 new TreeMap<YearMonth, SplitAggregate>());
+	}
+
+	private <K> Map<K, SplitAggregate> aggregate(TransactionSplitFilter flt,
+												 LocalDate datePostedFrom, LocalDate datePostedTo,
+												 Function<KMyMoneyTransactionSplit, K> groupKey,
+												 Map<K, SplitAggregate> result) {
+		if ( flt == null ) {
+			throw new IllegalArgumentException("null transaction-split-filter given");
+		}
+
+		if ( groupKey == null ) {
+			throw new IllegalArgumentException("null group key given");
+		}
+
+		CompiledTransactionSplitFilter cflt = compile(flt);
+		for ( KMyMoneyTransactionSplit splt : getCandidates(cflt, datePostedFrom, datePostedTo) ) {
+			if ( cflt.matchesCriteria(splt) ) {
+				result.computeIfAbsent(groupKey.apply(splt), key -> new SplitAggregate()).add(splt);
+			}
+		}
+
+		return result;
+	}
+
+	public QueryPlan explain(TransactionSplitFilter flt) {
+		return explain(flt, null, null);
+	}
+
+	/**
+	 * @return the plan that {@link #find(TransactionSplitFilter, LocalDate, LocalDate)}
+	 * would execute with the given arguments, for analysis (cf. {@link QueryPlan#explain()}).
+	 * The search itself is not executed.
+	 */
+	public QueryPlan explain(TransactionSplitFilter flt,
+							 LocalDate datePostedFrom, LocalDate datePostedTo) {
+		if ( flt == null ) {
+			throw new IllegalArgumentException("null transaction-split-filter given");
+		}
+
+		return getPlanner().plan(compile(flt), datePostedFrom, datePostedTo);
+	}
+
+	static Comparator<KMyMoneyTransactionSplit> getOrder(SortKey key, TransactionFinder.SortDirection dir) {
+		Comparator<KMyMoneyTransactionSplit> result = null;
+
+		if ( key == SortKey.DATE_POSTED ) {
+			result = SplitAccountIndex.DATE_ORDER;
+		} else if ( key == SortKey.VALUE ) {
+			result = Comparator.comparing((KMyMoneyTransactionSplit splt) -> splt.getValue().getBigDecimal())
+							   .thenComparing(SplitAccountIndex.DATE_ORDER);
+		} else if ( key == SortKey.SHARES ) {
+			result = Comparator.comparing((KMyMoneyTransactionSplit splt) -> splt.getShares().getBigDecimal())
+							   .thenComparing(SplitAccountIndex.DATE_ORDER);
+		}
+
+		if ( dir == TransactionFinder.SortDirection.DESCENDING ) {
+			result = result.reversed();
+		}
+
+		return result;
+	}
+
+    // ---------------------------------------------------------------
+
+	// Narrows down the splits to be checked as far as the indexes (if enabled) allow
+	// (cost-based choice of the index, cf. QueryPlanner).
+	// The date restriction is fully applied here, the rest is up to the filter.
+	private Collection<KMyMoneyTransactionSplit> getCandidates(CompiledTransactionSplitFilter cflt,
+															   LocalDate datePostedFrom, LocalDate datePostedTo) {
+		return getPlanner().getSplits(cflt, datePostedFrom, datePostedTo);
+	}
+
+	// Kept (with its plans) until the settings change or a
+	// modification of the file is reported
+	private QueryPlanner getPlanner() {
+		QueryPlanner result = planner;
+		if ( result == null ||
+			 ! result.isCurrent(indexesEnabled, memoIdxEnabled) ) {
+			result = new QueryPlanner(kmmFile, indexesEnabled, memoIdxEnabled);
+			planner = result;
+		}
+
+		return result;
+	}
+
+	private CompiledTransactionSplitFilter compile(TransactionSplitFilter flt) {
+		return flt.compile();
+	}
+
+	private ForkJoinPool getPool() {
+		return forkJoinPool == null ? ForkJoinPool.commonPool() : forkJoinPool;
+	}
+
 }
@@ -0,0 +1,108 @@
+package org.kmymoney.apiext.trxmgr;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.kmymoney.api.read.KMyMoneyTransaction;
+import org.kmymoney.api.read.KMyMoneyTransactionSplit;
+import org.kmymoney.api.write.KMyMoneyWritableFile;
+import org.kmymoney.api.write.KMyMoneyWritableTransaction;
+import org.kmymoney.api.write.KMyMoneyWritableTransactionSplit;
+import org.kmymoney.base.basetypes.simple.KMMTrxID;
+
+/**
+ * Resolves the (read-only typed) results of a search to their writable
+ * counterparts in bulk, instead of one ID lookup per result.
+ * <br>
+ * The objects of a writable file usually are writable themselves and are
+ * just cast. Only if they are not, the file's writable transactions are
+ * mapped by ID, once per resolver, and the splits are looked up within
+ * their (writable) transaction.
+ * <br>
+ * Not thread-safe; meant to be used for one single result list.
+ */
+class WritableResolver {
+
+	private final KMyMoneyWritableFile kmmFile;
+
+	// Built upon first miss
+	private Map<KMMTrxID, KMyMoneyWritableTransaction> trxMap = null;
+
+    // ---------------------------------------------------------------
+
+	WritableResolver(final KMyMoneyWritableFile kmmFile) {
+		this.kmmFile = kmmFile;
+	}
+
+    // ---------------------------------------------------------------
+
+	ArrayList<KMyMoneyWritableTransaction> getTransactions(final Collection<? extends KMyMoneyTransaction> trxColl) {
+		ArrayList<KMyMoneyWritableTransaction> result = new ArrayList<KMyMoneyWritableTransaction>(trxColl.size());
+		for ( KMyMoneyTransaction trx : trxColl ) {
+			result.add(getTransaction(trx));
+		}
+
+		return result;
+	}
+
+	ArrayList<KMyMoneyWritableTransactionSplit> getSplits(final Collection<? extends KMyMoneyTransactionSplit> spltColl) {
+		ArrayList<KMyMoneyWritableTransactionSplit> result = new ArrayList<KMyMoneyWritableTransactionSplit>(spltColl.size());
+		for ( KMyMoneyTransactionSplit splt : spltColl ) {
+			result.add(getSplit(splt));
+		}
+
+		return result;
+	}
+
+    // ---------------------------------------------------------------
+
+	KMyMoneyWritableTransaction getTransaction(final KMyMoneyTransaction trx) {
+		if ( trx instanceof KMyMoneyWritableTransaction ) {
+			return (KMyMoneyWritableTransaction) trx;
+		}
+
+		return getTransaction(trx.getID());
+	}
+
+	KMyMoneyWritableTransactionSplit getSplit(final KMyMoneyTransactionSplit splt) {
+		if ( splt instanceof KMyMoneyWritableTransactionSplit ) {
+			return (KMyMoneyWritableTransactionSplit) splt;
+		}
+
+		KMyMoneyWritableTransaction trx = getTransaction(splt.getTransactionID());
+		for ( KMyMoneyWritableTransactionSplit wrtblSplt : trx.getWritableSplits() ) {
+			if ( wrtblSplt.getID().equals(splt.getID()) ) {
+				return wrtblSplt;
+			}
+		}
+
+		throw new IllegalStateException("no writable split found for " + splt.getQualifID());
+	}
+
+	/**
+	 * @return the writable transaction with the given ID, null if there is none
+	 */
+	KMyMoneyWritableTransaction findTransaction(final KMMTrxID trxID) {
+		if ( trxMap == null ) {
+			Collection<? extends KMyMoneyWritableTransaction> trxColl = kmmFile.getWritableTransactions();
+			trxMap = new HashMap<KMMTrxID, KMyMoneyWritableTransaction>(trxColl.size() * 2);
+			for ( KMyMoneyWritableTransaction trx : trxColl ) {
+				trxMap.put(trx.getID(), trx);
+			}
+		}
+
+		return trxMap.get(trxID);
+	}
+
+	private KMyMoneyWritableTransaction getTransaction(final KMMTrxID trxID) {
+		KMyMoneyWritableTransaction result = findTransaction(trxID);
+		if ( result == null ) {
+			throw new IllegalStateException("no writable transaction found for " + trxID);
+		}
+
+		return result;
+	}
+
+}
@@ -0,0 +1,134 @@
+package org.kmymoney.apiext.trxmgr;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.InputStream;
+import java.time.LocalDate;
+import java.util.ArrayList;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.kmymoney.api.read.KMyMoneyTransaction;
+import org.kmymoney.api.read.KMyMoneyTransactionSplit;
+import org.kmymoney.api.write.impl.KMyMoneyWritableFileImpl;
+import org.kmymoney.apiext.ConstTest;
+import org.kmymoney.apiext.trxmgr.TransactionFilter.SplitLogic;
+import org.kmymoney.base.basetypes.simple.KMMAcctID;
+
+import junit.framework.JUnit4TestAdapter;
+import xyz.schnorxoborx.base.numbers.FixedPointNumber;
+
+public class TestCompositeFilter {
+
+    private static final KMMAcctID ACCT_1_ID = TestTransactionFilter.ACCT_1_ID;
+
+	// -----------------------------------------------------------------
+
+	private KMyMoneyWritableFileImpl kmmFile = null;
+	private TransactionFinder finder = null;
+
+	// -----------------------------------------------------------------
+
+	public static void main(String[] args) throws Exception {
+		junit.textui.TestRunner.run(suite());
+	}
+
+	@SuppressWarnings("exports")
+	public static junit.framework.Test suite() {
+		return new JUnit4TestAdapter(TestCompositeFilter.class);
+	}
+
+	@Before
+	public void initialize() throws Exception {
+		ClassLoader classLoader = getClass().getClassLoader();
+		InputStream kmmFileStream = null;
+		try {
+			kmmFileStream = classLoader.getResourceAsStream(ConstTest.KMM_FILENAME);
+		} catch (Exception exc) {
+			System.err.println("Cannot generate input stream from resource");
+			return;
+		}
+
+		try {
+			kmmFile = new KMyMoneyWritableFileImpl(kmmFileStream);
+		} catch (Exception exc) {
+			System.err.println("Cannot parse KMyMoney file");
+			exc.printStackTrace();
+		}
+
+		finder = new TransactionFinder(kmmFile);
+	}
+
+	// -----------------------------------------------------------------
+
+	@Test
+	public void test01() throws Exception {
+		// A: account
+		TransactionFilter fltA = new TransactionFilter();
+		fltA.spltFilt.acctID.set(ACCT_1_ID);
+
+		// B: period
+		TransactionFilter fltB = new TransactionFilter();
+		fltB.datePostedFrom = LocalDate.of(2023, 6, 1);
+		fltB.datePostedTo = LocalDate.of(2023, 6, 30);
+
+		// C: value
+		TransactionFilter fltC = new TransactionFilter();
+		fltC.spltFilt.valueFrom = new FixedPointNumber("5000");
+
+		ArrayList<KMyMoneyTransaction> resA = finder.find(fltA, true, SplitLogic.OR);
+		ArrayList<KMyMoneyTransaction> resB = finder.find(fltB, false, null);
+		ArrayList<KMyMoneyTransaction> resC = finder.find(fltC, true, SplitLogic.OR);
+
+		// A or (B and not C)
+		CompositeFilter<KMyMoneyTransaction> cflt =
+				CompositeFilter.or(CompositeFilter.of(fltA, true, SplitLogic.OR),
+								   CompositeFilter.and(CompositeFilter.of(fltB, false, null),
+										   			   CompositeFilter.not(CompositeFilter.of(fltC, true, SplitLogic.OR))));
+
+		ArrayList<KMyMoneyTransaction> expected = new ArrayList<KMyMoneyTransaction>(resA);
+		for ( KMyMoneyTransaction trx : resB ) {
+			if ( ! resC.contains(trx) &&
+				 ! expected.contains(trx) ) {
+				expected.add(trx);
+			}
+		}
+
+		// Repeatedly, so that the children get reordered in between
+		for ( int i = 0; i < 100; i++ ) {
+			ArrayList<KMyMoneyTransaction> result = finder.find(cflt);
+			assertEquals(expected.size(), result.size());
+			assertEquals(true, result.containsAll(expected));
+		}
+
+		// Split level, lifted to the transactions
+		TransactionSplitFilter spltFltA = new TransactionSplitFilter();
+		spltFltA.acctID.set(ACCT_1_ID);
+
+		TransactionSplitFilter spltFltC = new TransactionSplitFilter();
+		spltFltC.valueFrom = new FixedPointNumber("5000");
+
+		CompositeFilter<KMyMoneyTransactionSplit> spltCflt =
+				CompositeFilter.and(CompositeFilter.of(spltFltA),
+									CompositeFilter.not(CompositeFilter.of(spltFltC)));
+
+		TransactionSplitFinder spltFinder = new TransactionSplitFinder(kmmFile);
+		ArrayList<KMyMoneyTransactionSplit> spltResA = spltFinder.find(spltFltA);
+		ArrayList<KMyMoneyTransactionSplit> spltResC = spltFinder.find(spltFltC);
+		ArrayList<KMyMoneyTransactionSplit> spltResult = spltFinder.find(spltCflt);
+		int nofExpected = 0;
+		for ( KMyMoneyTransactionSplit splt : spltResA ) {
+			if ( ! spltResC.contains(splt) ) {
+				assertEquals(true, spltResult.contains(splt));
+				nofExpected++;
+			}
+		}
+		assertEquals(nofExpected, spltResult.size());
+
+		ArrayList<KMyMoneyTransaction> result = finder.find(CompositeFilter.splits(spltCflt, SplitLogic.OR));
+		for ( KMyMoneyTransaction trx : result ) {
+			assertEquals(true, resA.contains(trx));
+		}
+	}
+
+}
@@ -0,0 +1,125 @@
+package org.kmymoney.apiext.trxmgr;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.InputStream;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.kmymoney.api.write.KMyMoneyWritableTransaction;
+import org.kmymoney.api.write.KMyMoneyWritableTransactionSplit;
+import org.kmymoney.api.write.impl.KMyMoneyWritableFileImpl;
+import org.kmymoney.apiext.ConstTest;
+import org.kmymoney.base.basetypes.simple.KMMAcctID;
+
+import junit.framework.JUnit4TestAdapter;
+import xyz.schnorxoborx.base.numbers.FixedPointNumber;
+
+public class TestDuplicateCandidateFinder {
+
+    private static final KMMAcctID ACCT_1_ID  = new KMMAcctID("A000004"); // Anlagen:Barvermögen:Giro RaiBa
+    private static final KMMAcctID ACCT_5_ID  = new KMMAcctID("A000005"); // Anlagen:Barvermögen:Spar RaiBa
+    private static final KMMAcctID ACCT_43_ID = new KMMAcctID("A000043"); // Ausgaben:Wohnen:Miete
+
+	// -----------------------------------------------------------------
+
+	private KMyMoneyWritableFileImpl kmmFile = null;
+
+	// -----------------------------------------------------------------
+
+	public static void main(String[] args) throws Exception {
+		junit.textui.TestRunner.run(suite());
+	}
+
+	@SuppressWarnings("exports")
+	public static junit.framework.Test suite() {
+		return new JUnit4TestAdapter(TestDuplicateCandidateFinder.class);
+	}
+
+	@Before
+	public void initialize() throws Exception {
+		ClassLoader classLoader = getClass().getClassLoader();
+		InputStream kmmFileStream = null;
+		try {
+			kmmFileStream = classLoader.getResourceAsStream(ConstTest.KMM_FILENAME);
+		} catch (Exception exc) {
+			System.err.println("Cannot generate input stream from resource");
+			return;
+		}
+
+		try {
+			kmmFile = new KMyMoneyWritableFileImpl(kmmFileStream);
+		} catch (Exception exc) {
+			System.err.println("Cannot parse KMyMoney file");
+			exc.printStackTrace();
+		}
+	}
+
+	// -----------------------------------------------------------------
+
+	@Test
+	public void test01() throws Exception {
+		DuplicateCandidateFinder dupFinder = new DuplicateCandidateFinder(new TransactionMergerVar1(kmmFile));
+		assertEquals(0, dupFinder.find().size());
+
+		// Same booking as T000000000000000014, imported once more, one day later
+		KMyMoneyWritableTransaction trx = createTransfer(LocalDate.of(2023, 6, 5), ACCT_43_ID);
+
+		List<DuplicateCandidateFinder.Candidate> result = dupFinder.find();
+		assertEquals(1, result.size());
+		assertEquals("T000000000000000014", result.get(0).getSurvivor().getID().toString());
+		assertEquals(trx.getID(), result.get(0).getDier().getID());
+		assertEquals(1, result.get(0).getDateDiffDays());
+		assertEquals(ScaledAmount.ZERO, result.get(0).getValueDiff());
+
+		// Same sign on both sides: no bank splits for var. 2
+		assertEquals(null, result.get(0).getZDierTrxBankSpltID());
+		assertEquals(null, result.get(0).getZSurvTrxBankSpltBeforeID());
+		assertEquals(0, new DuplicateCandidateFinder(new TransactionMergerVar2(kmmFile)).find().size());
+
+		// Outside of the period
+		assertEquals(0, dupFinder.find(LocalDate.of(2023, 7, 1), null).size());
+	}
+
+	@Test
+	public void test02() throws Exception {
+		// Giro account as in T000000000000000014, the transfer's other side
+		// (+150 on a bank account) mirrors T000000000000000014's bank split
+		KMyMoneyWritableTransaction trx = createTransfer(LocalDate.of(2023, 6, 4), ACCT_5_ID);
+
+		DuplicateCandidateFinder dupFinder = new DuplicateCandidateFinder(new TransactionMergerVar2(kmmFile));
+		List<DuplicateCandidateFinder.Candidate> result = dupFinder.find();
+		assertEquals(1, result.size());
+
+		DuplicateCandidateFinder.Candidate cand = result.get(0);
+		assertEquals("T000000000000000014", cand.getSurvivor().getID().toString());
+		assertEquals(trx.getID(), cand.getDier().getID());
+		assertEquals(trx.getSplits().get(1).getQualifID(), cand.getZDierTrxBankSpltID());
+		assertEquals(ACCT_1_ID.toString(), kmmFile.getTransactionSplitByID(cand.getZSurvTrxBankSpltBeforeID()).getAccountID().toString());
+
+		// The survivor stays sane
+		ArrayList<TransactionBatchMerger.Pair> pairs = new ArrayList<TransactionBatchMerger.Pair>();
+		pairs.add(cand.toPair());
+		TransactionBatchMerger merger = new TransactionBatchMerger(kmmFile, TransactionMergerBase.Var.VAR_2);
+		assertEquals(TransactionBatchMerger.Outcome.MERGED, merger.simulate(pairs).get(0).getOutcome());
+	}
+
+	// -----------------------------------------------------------------
+
+	// 150 from the giro account to the given one
+	private KMyMoneyWritableTransaction createTransfer(final LocalDate datePosted, final KMMAcctID acctID) {
+		KMyMoneyWritableTransaction trx = kmmFile.createWritableTransaction();
+		trx.setDatePosted(datePosted);
+		KMyMoneyWritableTransactionSplit splt1 = trx.createWritableSplit(kmmFile.getAccountByID(ACCT_1_ID));
+		splt1.setValue(new FixedPointNumber("-150"));
+		splt1.setShares(new FixedPointNumber("-150"));
+		KMyMoneyWritableTransactionSplit splt2 = trx.createWritableSplit(kmmFile.getAccountByID(acctID));
+		splt2.setValue(new FixedPointNumber("150"));
+		splt2.setShares(new FixedPointNumber("150"));
+		return trx;
+	}
+
+}
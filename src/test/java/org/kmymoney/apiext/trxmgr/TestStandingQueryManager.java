@@ -0,0 +1,162 @@
+package org.kmymoney.apiext.trxmgr;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.InputStream;
+import java.time.LocalDate;
+import java.util.ArrayList;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.kmymoney.api.read.KMyMoneyTransaction;
+import org.kmymoney.api.write.KMyMoneyWritableTransaction;
+import org.kmymoney.api.write.KMyMoneyWritableTransactionSplit;
+import org.kmymoney.api.write.impl.KMyMoneyWritableFileImpl;
+import org.kmymoney.apiext.ConstTest;
+import org.kmymoney.apiext.trxmgr.TransactionFilter.SplitLogic;
+import org.kmymoney.base.basetypes.simple.KMMAcctID;
+import org.kmymoney.base.basetypes.simple.KMMTrxID;
+
+import junit.framework.JUnit4TestAdapter;
+import xyz.schnorxoborx.base.numbers.FixedPointNumber;
+
+public class TestStandingQueryManager {
+
+    private static final KMMAcctID ACCT_1_ID = TestTransactionFilter.ACCT_1_ID;
+    private static final KMMAcctID ACCT_7_ID = TestTransactionFilter.ACCT_7_ID;
+
+	// -----------------------------------------------------------------
+
+	private KMyMoneyWritableFileImpl kmmFile = null;
+	private TransactionFinder finder = null;
+	private TransactionFilter flt = null;
+
+	// -----------------------------------------------------------------
+
+	public static void main(String[] args) throws Exception {
+		junit.textui.TestRunner.run(suite());
+	}
+
+	@SuppressWarnings("exports")
+	public static junit.framework.Test suite() {
+		return new JUnit4TestAdapter(TestStandingQueryManager.class);
+	}
+
+	@Before
+	public void initialize() throws Exception {
+		ClassLoader classLoader = getClass().getClassLoader();
+		InputStream kmmFileStream = null;
+		try {
+			kmmFileStream = classLoader.getResourceAsStream(ConstTest.KMM_FILENAME);
+		} catch (Exception exc) {
+			System.err.println("Cannot generate input stream from resource");
+			return;
+		}
+
+		try {
+			kmmFile = new KMyMoneyWritableFileImpl(kmmFileStream);
+		} catch (Exception exc) {
+			System.err.println("Cannot parse KMyMoney file");
+			exc.printStackTrace();
+		}
+
+		finder = new TransactionFinder(kmmFile);
+	}
+
+	// -----------------------------------------------------------------
+
+	@Test
+	public void test01() throws Exception {
+		flt = new TransactionFilter();
+		flt.spltFilt.acctID.set(ACCT_1_ID);
+
+		ArrayList<KMyMoneyTransaction> added   = new ArrayList<KMyMoneyTransaction>();
+		ArrayList<KMyMoneyTransaction> removed = new ArrayList<KMyMoneyTransaction>();
+
+		StandingQueryManager sqMgr = new StandingQueryManager(kmmFile);
+		StandingQueryManager.Query query = sqMgr.register(flt, true, SplitLogic.OR,
+				(qry, addList, rmvList) -> {
+					added.addAll(addList);
+					removed.addAll(rmvList);
+				});
+		assertEquals(17, sqMgr.getMatches(query).size());
+
+		// Removal
+		sqMgr.removeTransaction(kmmFile.getWritableTransactionByID(new KMMTrxID("T000000000000000018")));
+		assertEquals(1, sqMgr.flush());
+		assertEquals(0, added.size());
+		assertEquals(1, removed.size());
+		assertEquals("T000000000000000018", removed.get(0).getID().toString());
+		assertEquals(16, sqMgr.getMatches(query).size());
+
+		// Creation: evaluated only upon flush, i.e. when completely set up
+		added.clear();
+		removed.clear();
+		KMyMoneyWritableTransaction trx = sqMgr.createWritableTransaction();
+		trx.setDatePosted(LocalDate.of(2023, 7, 1));
+		KMyMoneyWritableTransactionSplit splt1 = trx.createWritableSplit(kmmFile.getAccountByID(ACCT_1_ID));
+		splt1.setValue(new FixedPointNumber("10"));
+		splt1.setShares(new FixedPointNumber("10"));
+		KMyMoneyWritableTransactionSplit splt2 = trx.createWritableSplit(kmmFile.getAccountByID(ACCT_7_ID));
+		splt2.setValue(new FixedPointNumber("-10"));
+		splt2.setShares(new FixedPointNumber("-10"));
+		assertEquals(1, sqMgr.flush());
+		assertEquals(1, added.size());
+		assertEquals(trx.getID(), added.get(0).getID());
+		assertEquals(0, removed.size());
+		assertEquals(17, sqMgr.getMatches(query).size());
+
+		// Nothing pending
+		assertEquals(0, sqMgr.flush());
+
+		// Change: does not match any more
+		added.clear();
+		splt1.setAccount(kmmFile.getAccountByID(ACCT_7_ID));
+		sqMgr.transactionChanged(trx);
+		assertEquals(1, sqMgr.flush());
+		assertEquals(0, added.size());
+		assertEquals(1, removed.size());
+		assertEquals(16, sqMgr.getMatches(query).size());
+
+		// Same result as a full search
+		assertEquals(finder.find(flt, true, SplitLogic.OR).size(), sqMgr.getMatches(query).size());
+
+		sqMgr.unregister(query);
+		sqMgr.removeTransaction(trx);
+		assertEquals(0, sqMgr.flush());
+	}
+
+	@Test
+	public void test02() throws Exception {
+		flt = new TransactionFilter();
+		flt.spltFilt.acctID.set(ACCT_1_ID);
+
+		StandingQueryManager sqMgr = new StandingQueryManager(kmmFile);
+		StandingQueryManager.Query query = sqMgr.register(flt, true, SplitLogic.OR,
+				(qry, addList, rmvList) -> {});
+
+		// Change: reported right away, not once more upon flush
+		int modCount = TransactionIndexes.getModCount(kmmFile);
+		KMyMoneyWritableTransaction trx18 = kmmFile.getWritableTransactionByID(new KMMTrxID("T000000000000000018"));
+		trx18.setDatePosted(LocalDate.of(2023, 11, 4));
+		sqMgr.transactionChanged(trx18);
+		assertEquals(modCount + 1, TransactionIndexes.getModCount(kmmFile));
+		assertEquals(0, sqMgr.flush()); // sic, still matches
+		assertEquals(modCount + 1, TransactionIndexes.getModCount(kmmFile));
+
+		// Creation: reported once more upon flush, when set up
+		KMyMoneyWritableTransaction trx = sqMgr.createWritableTransaction();
+		trx.setDatePosted(LocalDate.of(2023, 7, 1));
+		KMyMoneyWritableTransactionSplit splt = trx.createWritableSplit(kmmFile.getAccountByID(ACCT_1_ID));
+		splt.setValue(new FixedPointNumber("10"));
+		splt.setShares(new FixedPointNumber("10"));
+		assertEquals(modCount + 2, TransactionIndexes.getModCount(kmmFile));
+		assertEquals(1, sqMgr.flush());
+		assertEquals(modCount + 3, TransactionIndexes.getModCount(kmmFile));
+		assertEquals(18, sqMgr.getMatches(query).size());
+
+		finder.setIndexesEnabled(true);
+		assertEquals(18, finder.find(flt, true, SplitLogic.OR).size());
+	}
+
+}
@@ -0,0 +1,86 @@
+package org.kmymoney.apiext.trxmgr;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.io.InputStream;
+import java.time.LocalDate;
+import java.util.ArrayList;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.kmymoney.api.write.impl.KMyMoneyWritableFileImpl;
+import org.kmymoney.apiext.ConstTest;
+import org.kmymoney.base.basetypes.simple.KMMAcctID;
+
+import junit.framework.JUnit4TestAdapter;
+import xyz.schnorxoborx.base.numbers.FixedPointNumber;
+
+public class TestStatementReconciler {
+
+    private static final KMMAcctID ACCT_1_ID = TestTransactionFilter.ACCT_1_ID;
+
+	// -----------------------------------------------------------------
+
+	private KMyMoneyWritableFileImpl kmmFile = null;
+
+	// -----------------------------------------------------------------
+
+	public static void main(String[] args) throws Exception {
+		junit.textui.TestRunner.run(suite());
+	}
+
+	@SuppressWarnings("exports")
+	public static junit.framework.Test suite() {
+		return new JUnit4TestAdapter(TestStatementReconciler.class);
+	}
+
+	@Before
+	public void initialize() throws Exception {
+		ClassLoader classLoader = getClass().getClassLoader();
+		InputStream kmmFileStream = null;
+		try {
+			kmmFileStream = classLoader.getResourceAsStream(ConstTest.KMM_FILENAME);
+		} catch (Exception exc) {
+			System.err.println("Cannot generate input stream from resource");
+			return;
+		}
+
+		try {
+			kmmFile = new KMyMoneyWritableFileImpl(kmmFileStream);
+		} catch (Exception exc) {
+			System.err.println("Cannot parse KMyMoney file");
+			exc.printStackTrace();
+		}
+	}
+
+	// -----------------------------------------------------------------
+
+	@Test
+	public void test01() throws Exception {
+		ArrayList<StatementReconciler.StatementLine> lines = new ArrayList<StatementReconciler.StatementLine>();
+		lines.add(new StatementReconciler.StatementLine(ACCT_1_ID, LocalDate.of(2023, 6, 5), new FixedPointNumber("-150")));
+		lines.add(new StatementReconciler.StatementLine(ACCT_1_ID, LocalDate.of(2023, 6, 3), new FixedPointNumber("500.004")));
+		lines.add(new StatementReconciler.StatementLine(ACCT_1_ID, LocalDate.of(2023, 6, 20), new FixedPointNumber("-99")));
+		// Same booking once more, closer to T000000000000000014
+		lines.add(new StatementReconciler.StatementLine(ACCT_1_ID, LocalDate.of(2023, 6, 4), new FixedPointNumber("-150")));
+
+		StatementReconciler reconciler = new StatementReconciler(kmmFile);
+		StatementReconciler.Result result = reconciler.reconcile(lines);
+
+		assertEquals(2, result.getMatches().size());
+		assertSame(lines.get(1), result.getMatches().get(0).getLine());
+		assertEquals("T000000000000000013", result.getMatches().get(0).getSplit().getTransactionID().toString());
+		assertEquals(0, result.getMatches().get(0).getDateDiffDays());
+		assertSame(lines.get(3), result.getMatches().get(1).getLine());
+		assertEquals("T000000000000000014", result.getMatches().get(1).getSplit().getTransactionID().toString());
+
+		assertEquals(2, result.getUnmatchedLines().size());
+		assertSame(lines.get(0), result.getUnmatchedLines().get(0));
+		assertSame(lines.get(2), result.getUnmatchedLines().get(1));
+
+		assertEquals(1, result.getUnmatchedSplits().size());
+		assertEquals("T000000000000000012", result.getUnmatchedSplits().get(0).getTransactionID().toString());
+	}
+
+}
@@ -0,0 +1,204 @@
+package org.kmymoney.apiext.trxmgr;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.io.InputStream;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.kmymoney.api.write.KMyMoneyWritableTransaction;
+import org.kmymoney.api.write.KMyMoneyWritableTransactionSplit;
+import org.kmymoney.api.write.impl.KMyMoneyWritableFileImpl;
+import org.kmymoney.apiext.ConstTest;
+import org.kmymoney.base.basetypes.complex.KMMQualifSpltID;
+import org.kmymoney.base.basetypes.simple.KMMAcctID;
+import org.kmymoney.base.basetypes.simple.KMMSpltID;
+import org.kmymoney.base.basetypes.simple.KMMTrxID;
+
+import junit.framework.JUnit4TestAdapter;
+import xyz.schnorxoborx.base.numbers.FixedPointNumber;
+
+public class TestTransactionBatchMerger {
+
+    private static final KMMAcctID ACCT_1_ID  = new KMMAcctID("A000004"); // Anlagen:Barvermögen:Giro RaiBa
+    private static final KMMAcctID ACCT_43_ID = new KMMAcctID("A000043"); // Ausgaben:Wohnen:Miete
+
+	// -----------------------------------------------------------------
+
+	private KMyMoneyWritableFileImpl kmmFile = null;
+	private TransactionFinder finder = null;
+
+	// -----------------------------------------------------------------
+
+	public static void main(String[] args) throws Exception {
+		junit.textui.TestRunner.run(suite());
+	}
+
+	@SuppressWarnings("exports")
+	public static junit.framework.Test suite() {
+		return new JUnit4TestAdapter(TestTransactionBatchMerger.class);
+	}
+
+	@Before
+	public void initialize() throws Exception {
+		ClassLoader classLoader = getClass().getClassLoader();
+		InputStream kmmFileStream = null;
+		try {
+			kmmFileStream = classLoader.getResourceAsStream(ConstTest.KMM_FILENAME);
+		} catch (Exception exc) {
+			System.err.println("Cannot generate input stream from resource");
+			return;
+		}
+
+		try {
+			kmmFile = new KMyMoneyWritableFileImpl(kmmFileStream);
+		} catch (Exception exc) {
+			System.err.println("Cannot parse KMyMoney file");
+			exc.printStackTrace();
+		}
+
+		finder = new TransactionFinder(kmmFile);
+	}
+
+	// -----------------------------------------------------------------
+
+	@Test
+	public void test01() throws Exception {
+		// Same booking as T000000000000000014, imported once more
+		KMyMoneyWritableTransaction trx = createTransfer("-150");
+		assertEquals(20, kmmFile.getTransactions().size());
+
+		KMMTrxID survID = new KMMTrxID("T000000000000000014");
+		ArrayList<TransactionBatchMerger.Pair> pairs = new ArrayList<TransactionBatchMerger.Pair>();
+		pairs.add(new TransactionBatchMerger.Pair(survID, trx.getID()));
+		pairs.add(new TransactionBatchMerger.Pair(survID, trx.getID()));
+		pairs.add(new TransactionBatchMerger.Pair(survID, survID));
+		pairs.add(new TransactionBatchMerger.Pair(survID, new KMMTrxID("T000000000000000099")));
+		pairs.add(new TransactionBatchMerger.Pair(new KMMTrxID("T000000000000000012"), new KMMTrxID("T000000000000000002")));
+
+		TransactionBatchMerger merger = new TransactionBatchMerger(kmmFile, TransactionMergerBase.Var.VAR_1);
+		List<TransactionBatchMerger.Result> result = merger.merge(pairs, TransactionFinder.ExecutionMode.PARALLEL);
+		assertEquals(5, result.size());
+		assertEquals(TransactionBatchMerger.Outcome.MERGED, result.get(0).getOutcome());
+		assertEquals(TransactionBatchMerger.Outcome.CONFLICT, result.get(1).getOutcome());
+		assertEquals(TransactionBatchMerger.Outcome.INVALID, result.get(2).getOutcome());
+		assertEquals(TransactionBatchMerger.Outcome.NOT_FOUND, result.get(3).getOutcome());
+		assertEquals(TransactionBatchMerger.Outcome.PLAUSI_CHECK_FAILED, result.get(4).getOutcome());
+
+		assertEquals(19, kmmFile.getTransactions().size());
+		assertEquals(19, finder.find(new TransactionFilter(), false, null).size());
+	}
+
+	@Test
+	public void test02() throws Exception {
+		// Var. 2 needs mirrored bank splits: T000000000000000014 books -150
+		// on the giro account (S0001), the dier +150
+		KMMTrxID survID = new KMMTrxID("T000000000000000014");
+		KMMQualifSpltID zSurvID = new KMMQualifSpltID(survID, new KMMSpltID("S0001"));
+		KMyMoneyWritableTransaction trxMirr = createTransfer("150");
+		KMyMoneyWritableTransactionSplit zDierSplt = trxMirr.getWritableSplits().get(0);
+
+		// Same sign: The survivor would not be sane afterwards
+		KMyMoneyWritableTransaction trxSame = createTransfer("-150");
+
+		ArrayList<TransactionBatchMerger.Pair> pairs = new ArrayList<TransactionBatchMerger.Pair>();
+		pairs.add(new TransactionBatchMerger.Pair(survID, trxSame.getID(),
+												  trxSame.getWritableSplits().get(0).getQualifID(), zSurvID));
+		pairs.add(new TransactionBatchMerger.Pair(survID, trxMirr.getID(),
+												  zDierSplt.getQualifID(), zSurvID));
+		pairs.add(new TransactionBatchMerger.Pair(survID, new KMMTrxID("T000000000000000099"),
+												  zDierSplt.getQualifID(), zSurvID));
+
+		TransactionBatchMerger merger = new TransactionBatchMerger(kmmFile, TransactionMergerBase.Var.VAR_2);
+		List<TransactionBatchMerger.Impact> result = merger.simulate(pairs, TransactionFinder.ExecutionMode.PARALLEL);
+		assertEquals(3, result.size());
+
+		assertEquals(TransactionBatchMerger.Outcome.FAILED, result.get(0).getOutcome());
+		assertEquals(0, result.get(0).getBalanceDeltas().size());
+
+		TransactionBatchMerger.Impact impact = result.get(1);
+		assertEquals(TransactionBatchMerger.Outcome.MERGED, impact.getOutcome());
+		assertEquals(1, impact.getCopiedSplits().size());
+		assertSame(zDierSplt, impact.getCopiedSplits().get(0));
+		assertEquals(3, impact.getRemovedSplits().size());
+		assertEquals(survID, impact.getRemovedSplits().get(0).getTransactionID());
+
+		// The dier's booking is gone, the survivor's one is left: balanced
+		assertEquals(ScaledAmount.of(new FixedPointNumber("-150")), impact.getBalanceDeltas().get(ACCT_1_ID.toString()));
+		assertEquals(ScaledAmount.of(new FixedPointNumber("150")), impact.getBalanceDeltas().get(ACCT_43_ID.toString()));
+		assertEquals(2, impact.getBalanceDeltas().size());
+
+		assertEquals(TransactionBatchMerger.Outcome.NOT_FOUND, result.get(2).getOutcome());
+		assertEquals(0, result.get(2).getRemovedSplits().size());
+		assertEquals(impact.getBalanceDeltas(), TransactionBatchMerger.getBalanceDeltas(result));
+
+		// Nothing changed
+		assertEquals(21, kmmFile.getTransactions().size());
+		assertEquals(2, kmmFile.getTransactionByID(survID).getSplits().size());
+	}
+
+	@Test
+	public void test03() throws Exception {
+		// Same booking as T000000000000000014, imported once more
+		KMyMoneyWritableTransaction trx = createTransfer("-150");
+
+		// Ranked alternatives: The first one that passes wins
+		ArrayList<TransactionBatchMerger.Pair> pairs = new ArrayList<TransactionBatchMerger.Pair>();
+		pairs.add(new TransactionBatchMerger.Pair(new KMMTrxID("T000000000000000015"), trx.getID()));
+		pairs.add(new TransactionBatchMerger.Pair(new KMMTrxID("T000000000000000014"), trx.getID()));
+
+		TransactionBatchMerger merger = new TransactionBatchMerger(kmmFile, TransactionMergerBase.Var.VAR_1);
+		List<TransactionBatchMerger.Impact> impacts = merger.simulate(pairs);
+		assertEquals(TransactionBatchMerger.Outcome.PLAUSI_CHECK_FAILED, impacts.get(0).getOutcome());
+		assertEquals(TransactionBatchMerger.Outcome.MERGED, impacts.get(1).getOutcome());
+
+		List<TransactionBatchMerger.Result> result = merger.merge(pairs, TransactionFinder.ExecutionMode.SEQUENTIAL);
+		assertEquals(2, result.size());
+		assertEquals(TransactionBatchMerger.Outcome.PLAUSI_CHECK_FAILED, result.get(0).getOutcome());
+		assertEquals(TransactionBatchMerger.Outcome.MERGED, result.get(1).getOutcome());
+		assertEquals(19, kmmFile.getTransactions().size());
+	}
+
+	@Test
+	public void test04() throws Exception {
+		// Value too large for the scaled sums: The check throws
+		KMyMoneyWritableTransaction trxHuge = createTransfer("-10000000000000");
+		KMyMoneyWritableTransaction trx = createTransfer("-150");
+
+		KMMTrxID survID = new KMMTrxID("T000000000000000014");
+		ArrayList<TransactionBatchMerger.Pair> pairs = new ArrayList<TransactionBatchMerger.Pair>();
+		pairs.add(new TransactionBatchMerger.Pair(survID, trxHuge.getID()));
+		pairs.add(new TransactionBatchMerger.Pair(survID, trx.getID()));
+
+		int modCount = TransactionIndexes.getModCount(kmmFile);
+		TransactionBatchMerger merger = new TransactionBatchMerger(kmmFile, TransactionMergerBase.Var.VAR_1);
+		List<TransactionBatchMerger.Result> result = merger.merge(pairs, TransactionFinder.ExecutionMode.PARALLEL);
+		assertEquals(2, result.size());
+		assertEquals(TransactionBatchMerger.Outcome.FAILED, result.get(0).getOutcome());
+		assertEquals(true, result.get(0).getMessage().contains("ArithmeticException"));
+		assertEquals(TransactionBatchMerger.Outcome.MERGED, result.get(1).getOutcome());
+		assertEquals(20, kmmFile.getTransactions().size());
+		assertEquals(true, TransactionIndexes.getModCount(kmmFile) != modCount);
+	}
+
+	// -----------------------------------------------------------------
+
+	// Transfer between the giro account (bank value given, first split)
+	// and A000043, posted on the day of T000000000000000014
+	private KMyMoneyWritableTransaction createTransfer(final String bankValue) {
+		KMyMoneyWritableTransaction trx = kmmFile.createWritableTransaction();
+		trx.setDatePosted(LocalDate.of(2023, 6, 4));
+		KMyMoneyWritableTransactionSplit splt1 = trx.createWritableSplit(kmmFile.getAccountByID(ACCT_1_ID));
+		splt1.setValue(new FixedPointNumber(bankValue));
+		splt1.setShares(new FixedPointNumber(bankValue));
+		KMyMoneyWritableTransactionSplit splt2 = trx.createWritableSplit(kmmFile.getAccountByID(ACCT_43_ID));
+		splt2.setValue(new FixedPointNumber(bankValue).negate());
+		splt2.setShares(new FixedPointNumber(bankValue).negate());
+		return trx;
+	}
+
+}
@@ -139,4 +139,30 @@ public class TestTransactionFilter {
 		flt.nofSpltTo = 3;
 		assertEquals(true, flt.matchesCriteria(trx, true, SplitLogic.OR));
 	}
+
+	@Test
+	public void test05() throws Exception {
+		flt = new TransactionFilter();
+		flt.spltFilt.acctID.set(ACCT_1_ID);
+		flt.datePostedFrom = LocalDate.of(2023, 10, 27);
+		flt.datePostedTo = LocalDate.of(2023, 10, 27);
+		trx = kmmFile.getTransactionByID(TRX_1_ID);
+		
+		CompiledTransactionFilter cflt = flt.compile();
+		assertEquals(LocalDate.of(2023, 10, 27), cflt.getDatePostedFrom());
+		assertEquals(true, cflt.matchesCriteria(trx, false, SplitLogic.OR));
+		assertEquals(false, cflt.matchesCriteria(trx, true, SplitLogic.AND));
+		assertEquals(true, cflt.matchesCriteria(trx, true, SplitLogic.OR));
+		
+		// Compiled filter is a snapshot: later changes do not affect it
+		flt.datePostedFrom = LocalDate.of(2023, 10, 30);
+		flt.spltFilt.acctID.set(ACCT_2_ID);
+		assertEquals(false, flt.matchesCriteria(trx, true, SplitLogic.OR));
+		assertEquals(true, cflt.matchesCriteria(trx, true, SplitLogic.OR));
+		
+		flt.reset();
+		assertEquals(null, flt.compile().getDatePostedFrom());
+		assertEquals(null, flt.compile().getDatePostedTo());
+		assertEquals(true, flt.compile().matchesCriteria(trx, true, SplitLogic.AND));
+	}
 }
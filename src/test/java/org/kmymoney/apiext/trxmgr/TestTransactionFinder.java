@@ -0,0 +1,401 @@
+package org.kmymoney.apiext.trxmgr;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.InputStream;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.kmymoney.api.read.KMyMoneyTransaction;
+import org.kmymoney.api.write.KMyMoneyWritableTransaction;
+import org.kmymoney.api.write.KMyMoneyWritableTransactionSplit;
+import org.kmymoney.api.write.impl.KMyMoneyWritableFileImpl;
+import org.kmymoney.apiext.ConstTest;
+import org.kmymoney.apiext.trxmgr.TransactionFilter.SplitLogic;
+import org.kmymoney.base.basetypes.simple.KMMAcctID;
+import org.kmymoney.base.basetypes.simple.KMMTrxID;
+
+import junit.framework.JUnit4TestAdapter;
+import xyz.schnorxoborx.base.numbers.FixedPointNumber;
+
+public class TestTransactionFinder {
+
+    private static final KMMAcctID ACCT_1_ID = TestTransactionFilter.ACCT_1_ID;
+    private static final KMMAcctID ACCT_7_ID = TestTransactionFilter.ACCT_7_ID;
+
+	// -----------------------------------------------------------------
+
+	private KMyMoneyWritableFileImpl kmmFile = null;
+	private TransactionFinder finder = null;
+	private TransactionFilter flt = null;
+
+	// -----------------------------------------------------------------
+
+	public static void main(String[] args) throws Exception {
+		junit.textui.TestRunner.run(suite());
+	}
+
+	@SuppressWarnings("exports")
+	public static junit.framework.Test suite() {
+		return new JUnit4TestAdapter(TestTransactionFinder.class);
+	}
+
+	@Before
+	public void initialize() throws Exception {
+		ClassLoader classLoader = getClass().getClassLoader();
+		InputStream kmmFileStream = null;
+		try {
+			kmmFileStream = classLoader.getResourceAsStream(ConstTest.KMM_FILENAME);
+		} catch (Exception exc) {
+			System.err.println("Cannot generate input stream from resource");
+			return;
+		}
+
+		try {
+			kmmFile = new KMyMoneyWritableFileImpl(kmmFileStream);
+		} catch (Exception exc) {
+			System.err.println("Cannot parse KMyMoney file");
+			exc.printStackTrace();
+		}
+
+		finder = new TransactionFinder(kmmFile);
+	}
+
+	// -----------------------------------------------------------------
+
+	@Test
+	public void test01() throws Exception {
+		flt = new TransactionFilter();
+
+		ArrayList<KMyMoneyTransaction> result = finder.find(flt, false, SplitLogic.OR);
+		assertEquals(19, result.size());
+	}
+
+	@Test
+	public void test02() throws Exception {
+		finder.setIndexesEnabled(true);
+		flt = new TransactionFilter();
+		flt.datePostedFrom = LocalDate.of(2023, 6, 1);
+		flt.datePostedTo = LocalDate.of(2023, 6, 30);
+
+		ArrayList<KMyMoneyTransaction> result = finder.find(flt, false, SplitLogic.OR);
+		assertEquals(3, result.size());
+		assertEquals("T000000000000000012", result.get(0).getID().toString());
+		assertEquals("T000000000000000013", result.get(1).getID().toString());
+		assertEquals("T000000000000000014", result.get(2).getID().toString());
+
+		// Open upper bound
+		flt.datePostedTo = TransactionFilter.DATE_UNSET;
+		flt.datePostedFrom = LocalDate.of(2023, 10, 14);
+		result = finder.find(flt, false, SplitLogic.OR);
+		assertEquals(5, result.size());
+
+		// ... with split criteria
+		flt.spltFilt.acctID.set(ACCT_1_ID);
+		result = finder.find(flt, true, SplitLogic.OR);
+		assertEquals(3, result.size());
+
+		// Empty range
+		flt.datePostedFrom = LocalDate.of(2023, 7, 1);
+		flt.datePostedTo = LocalDate.of(2023, 9, 30);
+		result = finder.find(flt, false, SplitLogic.OR);
+		assertEquals(0, result.size());
+	}
+
+	@Test
+	public void test03() throws Exception {
+		TransactionDateIndex idx = TransactionIndexes.of(kmmFile).getDateIndex();
+		assertEquals(19, idx.size());
+
+		// Index is built once per file
+		assertEquals(idx, TransactionIndexes.of(kmmFile).getDateIndex());
+
+		List<KMyMoneyTransaction> result = idx.getTransactions(LocalDate.of(2023, 10, 14), LocalDate.of(2023, 10, 14));
+		assertEquals(2, result.size());
+		assertEquals("T000000000000000015", result.get(0).getID().toString());
+		assertEquals("T000000000000000016", result.get(1).getID().toString());
+
+		assertEquals(2, idx.count(null, LocalDate.of(2023, 1, 3)));
+		assertEquals(1, idx.count(LocalDate.of(2024, 1, 1), null));
+		assertEquals(0, idx.count(LocalDate.of(2023, 10, 30), LocalDate.of(2023, 10, 27)));
+	}
+
+	@Test
+	public void test04() throws Exception {
+		flt = new TransactionFilter();
+		flt.spltFilt.acctID.set(ACCT_1_ID);
+
+		ArrayList<KMyMoneyTransaction> resultSeq = finder.find(flt, true, SplitLogic.OR, TransactionFinder.ExecutionMode.SEQUENTIAL);
+		ArrayList<KMyMoneyTransaction> resultPar = finder.find(flt, true, SplitLogic.OR, TransactionFinder.ExecutionMode.PARALLEL);
+		assertEquals(17, resultSeq.size());
+		assertEquals(resultSeq, resultPar); // sic, same order
+
+		finder.setForkJoinPool(new ForkJoinPool(2));
+		resultPar = finder.find(flt, true, SplitLogic.OR, TransactionFinder.ExecutionMode.PARALLEL);
+		assertEquals(resultSeq, resultPar);
+	}
+
+	@Test
+	public void test05() throws Exception {
+		finder.setIndexesEnabled(true);
+		flt = new TransactionFilter();
+		flt.spltFilt.acctID.set(ACCT_1_ID);
+		flt.datePostedFrom = LocalDate.of(2023, 6, 1);
+
+		KMyMoneyTransaction trx = finder.findFirst(flt, true, SplitLogic.OR);
+		assertEquals("T000000000000000012", trx.getID().toString());
+		assertEquals(true, finder.exists(flt, true, SplitLogic.OR));
+
+		ArrayList<KMyMoneyTransaction> result = finder.find(flt, true, SplitLogic.OR, 2);
+		assertEquals(2, result.size());
+		assertEquals("T000000000000000013", result.get(1).getID().toString());
+
+		assertEquals(6, finder.stream(flt, true, SplitLogic.OR).count());
+		assertEquals(true, finder.iterator(flt, true, SplitLogic.OR).hasNext());
+
+		flt.datePostedFrom = LocalDate.of(2024, 1, 1);
+		assertEquals(null, finder.findFirst(flt, true, SplitLogic.OR));
+		assertEquals(false, finder.exists(flt, true, SplitLogic.OR));
+		assertEquals(0, finder.find(flt, true, SplitLogic.OR, 5).size());
+	}
+
+	@Test
+	public void test06() throws Exception {
+		flt = new TransactionFilter();
+
+		ArrayList<KMyMoneyTransaction> result = finder.findTop(flt, false, SplitLogic.OR, TransactionFinder.SortDirection.DESCENDING, 2);
+		assertEquals(2, result.size());
+		assertEquals("T000000000000000019", result.get(0).getID().toString());
+		assertEquals("T000000000000000018", result.get(1).getID().toString());
+
+		KMyMoneyTransaction after = kmmFile.getTransactionByID(new KMMTrxID("T000000000000000013"));
+		result = finder.findPage(flt, false, SplitLogic.OR, TransactionFinder.SortDirection.ASCENDING, after, 2);
+		assertEquals(2, result.size());
+		assertEquals("T000000000000000014", result.get(0).getID().toString());
+		assertEquals("T000000000000000015", result.get(1).getID().toString());
+
+		result = finder.findPage(flt, false, SplitLogic.OR, TransactionFinder.SortDirection.DESCENDING, after, 2);
+		assertEquals("T000000000000000012", result.get(0).getID().toString());
+		assertEquals("T000000000000000011", result.get(1).getID().toString());
+
+		// Keyset pagination through the whole file
+		int nofTrx = 0;
+		after = null;
+		do {
+			result = finder.findPage(flt, false, SplitLogic.OR, TransactionFinder.SortDirection.ASCENDING, after, 5);
+			nofTrx += result.size();
+			after = result.isEmpty() ? null : result.get(result.size() - 1);
+		} while ( ! result.isEmpty() );
+		assertEquals(19, nofTrx);
+
+		// Same pages on the date index
+		ArrayList<KMyMoneyTransaction> resultLive = finder.findPage(flt, false, SplitLogic.OR, TransactionFinder.SortDirection.DESCENDING, 
+																	kmmFile.getTransactionByID(new KMMTrxID("T000000000000000013")), 5);
+		finder.setIndexesEnabled(true);
+		result = finder.findPage(flt, false, SplitLogic.OR, TransactionFinder.SortDirection.DESCENDING, 
+								 kmmFile.getTransactionByID(new KMMTrxID("T000000000000000013")), 5);
+		assertEquals(resultLive, result);
+	}
+
+	@Test
+	public void test07() throws Exception {
+		finder.setIndexesEnabled(true);
+		flt = new TransactionFilter();
+
+		QueryPlan plan = finder.explain(flt, false, SplitLogic.OR);
+		assertEquals(QueryPlan.AccessPath.FULL_SCAN, plan.getAccessPath());
+
+		flt.datePostedFrom = LocalDate.of(2023, 6, 1);
+		flt.datePostedTo = LocalDate.of(2023, 6, 30);
+		plan = finder.explain(flt, false, SplitLogic.OR);
+		assertEquals(QueryPlan.AccessPath.DATE_INDEX, plan.getAccessPath());
+		assertEquals(3, plan.getEstimatedRows());
+
+		// Split-level index
+		flt.reset();
+		flt.spltFilt.valueFrom = new FixedPointNumber("5000");
+		plan = finder.explain(flt, true, SplitLogic.OR);
+		assertEquals(QueryPlan.AccessPath.VALUE_INDEX, plan.getAccessPath());
+		assertEquals(true, plan.isViaSplits());
+
+		ArrayList<KMyMoneyTransaction> result = finder.find(flt, true, SplitLogic.OR);
+		assertEquals(1, result.size());
+		assertEquals("T000000000000000001", result.get(0).getID().toString());
+		assertEquals(0, finder.find(flt, true, SplitLogic.AND).size());
+
+		// Without split criteria: not applicable
+		plan = finder.explain(flt, false, SplitLogic.OR);
+		assertEquals(QueryPlan.AccessPath.FULL_SCAN, plan.getAccessPath());
+	}
+
+	@Test
+	public void test08() throws Exception {
+		finder.setResultCacheSize(2);
+		assertEquals(2, finder.getResultCacheSize());
+
+		flt = new TransactionFilter();
+		flt.spltFilt.acctID.set(ACCT_1_ID);
+
+		ArrayList<KMyMoneyTransaction> result1 = finder.find(flt, true, SplitLogic.OR);
+		assertEquals(17, result1.size());
+		result1.clear(); // must not affect the cache
+
+		ArrayList<KMyMoneyTransaction> result2 = finder.find(flt, true, SplitLogic.OR);
+		assertEquals(17, result2.size());
+
+		// Canonical key: equal amounts, different scales
+		TransactionFilter flt1 = new TransactionFilter();
+		flt1.spltFilt.valueFrom = new FixedPointNumber("1000");
+		TransactionFilter flt2 = new TransactionFilter();
+		flt2.spltFilt.valueFrom = new FixedPointNumber("1000.00");
+		assertEquals(flt1.compile().getCanonicalKey(true, SplitLogic.OR), 
+					 flt2.compile().getCanonicalKey(true, SplitLogic.OR));
+		assertEquals(false, flt1.compile().getCanonicalKey(true, SplitLogic.OR).equals(
+							flt1.compile().getCanonicalKey(true, SplitLogic.AND)));
+		// Split criteria irrelevant without splits
+		assertEquals(flt1.compile().getCanonicalKey(false, SplitLogic.OR), 
+					 new TransactionFilter().compile().getCanonicalKey(false, SplitLogic.AND));
+
+		// Modification: cache is dropped
+		int modCount = TransactionIndexes.getModCount(kmmFile);
+		kmmFile.removeTransaction(kmmFile.getWritableTransactionByID(new KMMTrxID("T000000000000000018")));
+		result2 = finder.find(flt, true, SplitLogic.OR);
+		assertEquals(16, result2.size());
+
+		TransactionIndexes.invalidate(kmmFile);
+		assertEquals(modCount + 1, TransactionIndexes.getModCount(kmmFile));
+		assertEquals(16, finder.find(flt, true, SplitLogic.OR).size());
+
+		// Modifications through the standing query manager are reported
+		// right away, even if the number of transactions does not change
+		StandingQueryManager sqMgr = new StandingQueryManager(kmmFile);
+		KMyMoneyWritableTransaction trx = sqMgr.createWritableTransaction();
+		trx.setDatePosted(LocalDate.of(2023, 7, 1));
+		KMyMoneyWritableTransactionSplit splt = trx.createWritableSplit(kmmFile.getAccountByID(ACCT_1_ID));
+		splt.setValue(new FixedPointNumber("10"));
+		splt.setShares(new FixedPointNumber("10"));
+		sqMgr.removeTransaction(kmmFile.getWritableTransactionByID(new KMMTrxID("T000000000000000017")));
+		result2 = finder.find(flt, true, SplitLogic.OR);
+		assertEquals(16, result2.size());
+		assertEquals(true, result2.contains(trx));
+
+		splt.setAccount(kmmFile.getAccountByID(ACCT_7_ID));
+		sqMgr.transactionChanged(trx);
+		result2 = finder.find(flt, true, SplitLogic.OR);
+		assertEquals(15, result2.size());
+		assertEquals(false, result2.contains(trx));
+
+		finder.setResultCacheSize(0);
+		assertEquals(0, finder.getResultCacheSize());
+	}
+
+	@Test
+	public void test09() throws Exception {
+		ArrayList<TransactionFilter> fltList = new ArrayList<TransactionFilter>();
+
+		fltList.add(new TransactionFilter());
+
+		flt = new TransactionFilter();
+		flt.spltFilt.acctID.set(ACCT_1_ID);
+		fltList.add(flt);
+
+		// Shares the account criterion with the previous one
+		flt = new TransactionFilter();
+		flt.spltFilt.acctID.set(ACCT_1_ID);
+		flt.datePostedFrom = LocalDate.of(2023, 6, 1);
+		flt.datePostedTo = LocalDate.of(2023, 6, 30);
+		fltList.add(flt);
+
+		flt = new TransactionFilter();
+		flt.spltFilt.valueFrom = new FixedPointNumber("5000");
+		fltList.add(flt);
+
+		List<ArrayList<KMyMoneyTransaction>> result = finder.findBatch(fltList, true, SplitLogic.OR);
+		assertEquals(4, result.size());
+		assertEquals(19, result.get(0).size());
+		assertEquals(17, result.get(1).size());
+		assertEquals(3, result.get(2).size());
+		assertEquals("T000000000000000012", result.get(2).get(0).getID().toString());
+		assertEquals(1, result.get(3).size());
+
+		// Same results as single searches
+		for ( int i = 0; i < fltList.size(); i++ ) {
+			ArrayList<KMyMoneyTransaction> single = finder.find(fltList.get(i), true, SplitLogic.OR);
+			assertEquals(single.size(), result.get(i).size());
+			assertEquals(true, result.get(i).containsAll(single));
+		}
+
+		result = finder.findBatch(fltList, true, SplitLogic.AND);
+		for ( int i = 0; i < fltList.size(); i++ ) {
+			assertEquals(finder.find(fltList.get(i), true, SplitLogic.AND).size(), result.get(i).size());
+		}
+
+		assertEquals(0, finder.findBatch(new ArrayList<TransactionFilter>(), true, SplitLogic.OR).size());
+	}
+
+	@Test
+	public void test10() throws Exception {
+		flt = new TransactionFilter();
+		flt.spltFilt.acctID.set(ACCT_1_ID);
+
+		ArrayList<KMyMoneyTransaction> result = finder.find(flt, true, SplitLogic.OR);
+		ArrayList<KMyMoneyWritableTransaction> resultWrtbl = finder.findWritable(flt, true, SplitLogic.OR);
+		assertEquals(17, resultWrtbl.size());
+		for ( int i = 0; i < result.size(); i++ ) {
+			assertEquals(result.get(i).getID(), resultWrtbl.get(i).getID());
+		}
+
+		resultWrtbl = finder.findWritable(flt, true, SplitLogic.OR, TransactionFinder.ExecutionMode.PARALLEL);
+		assertEquals(17, resultWrtbl.size());
+	}
+
+	@Test
+	public void test11() throws Exception {
+		// In-place modifications, not reported: The live file is searched
+		flt = new TransactionFilter();
+		flt.datePostedFrom = LocalDate.of(2023, 6, 1);
+		flt.datePostedTo = LocalDate.of(2023, 6, 30);
+		assertEquals(3, finder.find(flt, false, SplitLogic.OR).size());
+
+		KMyMoneyWritableTransaction trx15 = kmmFile.getWritableTransactionByID(new KMMTrxID("T000000000000000015"));
+		trx15.setDatePosted(LocalDate.of(2023, 6, 15));
+		ArrayList<KMyMoneyTransaction> result = finder.find(flt, false, SplitLogic.OR);
+		assertEquals(4, result.size());
+		assertEquals(true, result.contains(trx15));
+		result = finder.findTop(flt, false, SplitLogic.OR, TransactionFinder.SortDirection.DESCENDING, 1);
+		assertEquals(trx15.getID(), result.get(0).getID());
+
+		// Creation, removal
+		KMyMoneyWritableTransaction trx = kmmFile.createWritableTransaction();
+		trx.setDatePosted(LocalDate.of(2023, 6, 20));
+		assertEquals(5, finder.find(flt, false, SplitLogic.OR).size());
+		kmmFile.removeTransaction(trx15);
+		result = finder.find(flt, false, SplitLogic.OR);
+		assertEquals(4, result.size());
+		assertEquals(false, result.contains(trx15));
+
+		// Split added to an existing transaction
+		flt.spltFilt.acctID.set(ACCT_7_ID);
+		assertEquals(0, finder.find(flt, true, SplitLogic.OR).size());
+		KMyMoneyWritableTransaction trx14 = kmmFile.getWritableTransactionByID(new KMMTrxID("T000000000000000014"));
+		KMyMoneyWritableTransactionSplit splt = trx14.createWritableSplit(kmmFile.getAccountByID(ACCT_7_ID));
+		splt.setValue(new FixedPointNumber("0"));
+		splt.setShares(new FixedPointNumber("0"));
+		result = finder.find(flt, true, SplitLogic.OR);
+		assertEquals(1, result.size());
+		assertEquals(trx14.getID(), result.get(0).getID());
+
+		// Indexes (opt-in): up to date once the modification is reported
+		finder.setIndexesEnabled(true);
+		assertEquals(1, finder.find(flt, true, SplitLogic.OR).size());
+		kmmFile.getWritableTransactionByID(new KMMTrxID("T000000000000000012")).setDatePosted(LocalDate.of(2023, 7, 1));
+		TransactionIndexes.invalidate(kmmFile);
+		flt.spltFilt.reset();
+		assertEquals(3, finder.find(flt, false, SplitLogic.OR).size());
+	}
+
+}
@@ -0,0 +1,118 @@
+package org.kmymoney.apiext.trxmgr;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.InputStream;
+import java.time.LocalDate;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.kmymoney.api.read.KMyMoneyAccount;
+import org.kmymoney.api.read.KMyMoneyTransaction;
+import org.kmymoney.api.write.KMyMoneyWritableFile;
+import org.kmymoney.api.write.KMyMoneyWritableTransaction;
+import org.kmymoney.api.write.KMyMoneyWritableTransactionSplit;
+import org.kmymoney.api.write.impl.KMyMoneyWritableFileImpl;
+import org.kmymoney.apiext.ConstTest;
+import org.kmymoney.base.basetypes.simple.KMMAcctID;
+import org.kmymoney.base.basetypes.simple.KMMTrxID;
+
+import junit.framework.JUnit4TestAdapter;
+import xyz.schnorxoborx.base.numbers.FixedPointNumber;
+
+public class TestTransactionSignature {
+
+    private static final KMMAcctID ACCT_1_ID = TestTransactionFilter.ACCT_1_ID;
+    private static final KMMAcctID ACCT_43_ID = new KMMAcctID("A000043");
+
+	// -----------------------------------------------------------------
+
+	private KMyMoneyWritableFileImpl kmmFile = null;
+
+	// -----------------------------------------------------------------
+
+	public static void main(String[] args) throws Exception {
+		junit.textui.TestRunner.run(suite());
+	}
+
+	@SuppressWarnings("exports")
+	public static junit.framework.Test suite() {
+		return new JUnit4TestAdapter(TestTransactionSignature.class);
+	}
+
+	@Before
+	public void initialize() throws Exception {
+		ClassLoader classLoader = getClass().getClassLoader();
+		InputStream kmmFileStream = null;
+		try {
+			kmmFileStream = classLoader.getResourceAsStream(ConstTest.KMM_FILENAME);
+		} catch (Exception exc) {
+			System.err.println("Cannot generate input stream from resource");
+			return;
+		}
+
+		try {
+			kmmFile = new KMyMoneyWritableFileImpl(kmmFileStream);
+		} catch (Exception exc) {
+			System.err.println("Cannot parse KMyMoney file");
+			exc.printStackTrace();
+		}
+	}
+
+	// -----------------------------------------------------------------
+
+	@Test
+	public void test01() throws Exception {
+		KMyMoneyTransaction trx14 = kmmFile.getTransactionByID(new KMMTrxID("T000000000000000014"));
+		TransactionSignature sig = TransactionSignature.of(trx14);
+		assertEquals(2, sig.getNofSplits());
+		assertEquals(true, sig.isSane());
+		assertEquals(true, sig.hasAccountType(KMyMoneyAccount.Type.CHECKING));
+		assertEquals(false, sig.hasAccountType(KMyMoneyAccount.Type.CASH));
+		assertEquals(ScaledAmount.of(new FixedPointNumber("-150")), sig.getValueSum(KMyMoneyAccount.Type.CHECKING));
+		assertEquals(ScaledAmount.ZERO, sig.getValueSum(KMyMoneyAccount.Type.CASH));
+
+		// Same booking as T000000000000000014, imported once more
+		KMyMoneyWritableTransaction trx = createLikeTrx14(kmmFile, LocalDate.of(2023, 6, 4), "150");
+
+		TransactionMergerVar1 merger = new TransactionMergerVar1(kmmFile);
+		assertEquals(true, merger.plausiCheck(trx14, trx));
+		assertEquals(true, merger.plausiCheck(sig, TransactionSignature.of(trx)));
+
+		// Different date
+		KMyMoneyTransaction trx15 = kmmFile.getTransactionByID(new KMMTrxID("T000000000000000015"));
+		assertEquals(false, merger.plausiCheck(trx14, trx15));
+		assertEquals(false, merger.plausiCheck(sig, TransactionSignature.of(trx15)));
+
+		// Same accounts, different value: sic, passes (levels 2 and 3
+		// compare the dier with itself, cf. TransactionMergerBase)
+		KMyMoneyWritableTransaction trx2 = createLikeTrx14(kmmFile, LocalDate.of(2023, 6, 4), "140");
+		assertEquals(true, merger.plausiCheck(trx14, trx2));
+		assertEquals(true, merger.plausiCheck(TransactionSignature.of(trx2), sig));
+
+		// Split changed in place: not sane anymore
+		trx.getWritableSplits().get(0).setValue(new FixedPointNumber("-140"));
+		assertEquals(false, merger.plausiCheck(trx14, trx));
+		assertEquals(false, merger.plausiCheck(sig, TransactionSignature.of(trx)));
+	}
+
+	// -----------------------------------------------------------------
+
+	/**
+	 * Creates a booking like T000000000000000014 (transfer from
+	 * the giro account to A000043). The first split is the bank one.
+	 */
+	private static KMyMoneyWritableTransaction createLikeTrx14(final KMyMoneyWritableFile kmmFile,
+															   final LocalDate datePosted, final String value) {
+		KMyMoneyWritableTransaction trx = kmmFile.createWritableTransaction();
+		trx.setDatePosted(datePosted);
+		KMyMoneyWritableTransactionSplit splt1 = trx.createWritableSplit(kmmFile.getAccountByID(ACCT_1_ID));
+		splt1.setValue(new FixedPointNumber(value).negate());
+		splt1.setShares(new FixedPointNumber(value).negate());
+		KMyMoneyWritableTransactionSplit splt2 = trx.createWritableSplit(kmmFile.getAccountByID(ACCT_43_ID));
+		splt2.setValue(new FixedPointNumber(value));
+		splt2.setShares(new FixedPointNumber(value));
+		return trx;
+	}
+
+}
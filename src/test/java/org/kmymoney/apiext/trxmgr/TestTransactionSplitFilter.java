@@ -3,12 +3,14 @@ package org.kmymoney.apiext.trxmgr;
 import static org.junit.Assert.assertEquals;
 
 import java.io.InputStream;
+import java.math.BigDecimal;
 
 import org.junit.Before;
 import org.junit.Test;
 import org.kmymoney.api.read.KMyMoneyFile;
 import org.kmymoney.api.read.KMyMoneyTransactionSplit;
 import org.kmymoney.api.read.impl.KMyMoneyFileImpl;
+import org.kmymoney.apiext.Const;
 import org.kmymoney.apiext.ConstTest;
 import org.kmymoney.base.basetypes.complex.KMMQualifSpltID;
 import org.kmymoney.base.basetypes.simple.KMMAcctID;
@@ -216,4 +218,74 @@ public class TestTransactionSplitFilter {
 		flt.memoPart = "Poop";
 		assertEquals(false, flt.matchesCriteria(splt));
 	}
+
+	@Test
+	public void test06() throws Exception {
+		flt = new TransactionSplitFilter();
+		flt.acctID.set(ACCT_7_ID);
+		flt.valueFrom = new FixedPointNumber("1954.00");
+		flt.valueTo = new FixedPointNumber("1956.00");
+		splt = kmmFile.getTransactionSplitByID(TRXSPLT_2_ID);
+		
+		CompiledTransactionSplitFilter cflt = flt.compile();
+		assertEquals(true, cflt.matchesCriteria(splt));
+		assertEquals(false, cflt.matchesCriteria(kmmFile.getTransactionSplitByID(TRXSPLT_1_ID)));
+		
+		// Compiled filter is a snapshot: later changes do not affect it
+		flt.acctID.set(ACCT_1_ID);
+		flt.valueFrom = new FixedPointNumber("-1966.50");
+		flt.valueTo = new FixedPointNumber("-1964.50");
+		assertEquals(false, flt.matchesCriteria(splt));
+		assertEquals(true, cflt.matchesCriteria(splt));
+		
+		// Empty filter matches everything
+		flt.reset();
+		assertEquals(true, flt.compile().isEmpty());
+		assertEquals(true, flt.compile().matchesCriteria(splt));
+	}
+
+	@Test
+	public void test07() throws Exception {
+		flt = new TransactionSplitFilter();
+		splt = kmmFile.getTransactionSplitByID(TRXSPLT_2_ID);
+		assertEquals(false, flt.isValueFromSet());
+		assertEquals(ScaledAmount.UNSET, flt.compile().getValueFromAmount());
+		assertEquals(null, flt.compile().getValueFrom());
+		
+		// Default: sentinel, i.e. "not set"
+		assertEquals(0, flt.valueFrom.getBigDecimal().compareTo(BigDecimal.valueOf(Const.UNSET_VALUE)));
+		assertEquals(true, flt.matchesCriteria(splt));
+		
+		// null means "not set" as well
+		flt.valueFrom = null;
+		assertEquals(false, flt.isValueFromSet());
+		assertEquals(true, flt.matchesCriteria(splt));
+		
+		flt.valueFrom = new FixedPointNumber("1955.00");
+		assertEquals(true, flt.isValueFromSet());
+		assertEquals(ScaledAmount.ofScaled(1955000000L), flt.compile().getValueFromAmount());
+		assertEquals(true, flt.matchesCriteria(splt));
+		flt.valueFrom = new FixedPointNumber("1955.01");
+		assertEquals(false, flt.matchesCriteria(splt));
+		
+		flt.reset();
+		assertEquals(false, flt.isValueFromSet());
+		assertEquals(true, flt.matchesCriteria(splt));
+		
+		// Exact conversion, both ways
+		ScaledAmount amt = ScaledAmount.of(new FixedPointNumber("-1965.50"));
+		assertEquals(-1965500000L, amt.getScaled());
+		assertEquals(0, amt.toFixedPointNumber().getBigDecimal().compareTo(new BigDecimal("-1965.5")));
+		try {
+			ScaledAmount.of(new FixedPointNumber("0.0000001"));
+			assertEquals(true, false);
+		} catch ( ArithmeticException exc ) {
+			// expected
+		}
+		
+		// Tolerance-aware comparisons
+		assertEquals(true, ScaledAmount.of(new FixedPointNumber("1954.996")).isEqual(ScaledAmount.of(new FixedPointNumber("1955"))));
+		assertEquals(true, ScaledAmount.of(new FixedPointNumber("1954.99")).isLessThan(ScaledAmount.of(new FixedPointNumber("1955"))));
+		assertEquals(false, ScaledAmount.of(new FixedPointNumber("1955.004")).isGreaterThan(ScaledAmount.of(new FixedPointNumber("1955"))));
+	}
 }
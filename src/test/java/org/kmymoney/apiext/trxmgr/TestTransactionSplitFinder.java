@@ -0,0 +1,583 @@
+package org.kmymoney.apiext.trxmgr;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.kmymoney.api.read.KMyMoneyAccount;
+import org.kmymoney.api.read.KMyMoneyTransaction;
+import org.kmymoney.api.read.KMyMoneyTransactionSplit;
+import org.kmymoney.api.write.KMyMoneyWritableTransaction;
+import org.kmymoney.api.write.KMyMoneyWritableTransactionSplit;
+import org.kmymoney.api.write.impl.KMyMoneyWritableFileImpl;
+import org.kmymoney.apiext.ConstTest;
+import org.kmymoney.apiext.trxmgr.TransactionFilter.SplitLogic;
+import org.kmymoney.base.basetypes.simple.KMMAcctID;
+import org.kmymoney.base.basetypes.simple.KMMTrxID;
+
+import junit.framework.JUnit4TestAdapter;
+import xyz.schnorxoborx.base.numbers.FixedPointNumber;
+
+public class TestTransactionSplitFinder {
+
+    private static final KMMAcctID ACCT_1_ID = TestTransactionFilter.ACCT_1_ID;
+    private static final KMMAcctID ACCT_7_ID = TestTransactionFilter.ACCT_7_ID;
+
+	// -----------------------------------------------------------------
+
+	private KMyMoneyWritableFileImpl kmmFile = null;
+	private TransactionSplitFinder finder = null;
+	private TransactionSplitFilter flt = null;
+
+	// -----------------------------------------------------------------
+
+	public static void main(String[] args) throws Exception {
+		junit.textui.TestRunner.run(suite());
+	}
+
+	@SuppressWarnings("exports")
+	public static junit.framework.Test suite() {
+		return new JUnit4TestAdapter(TestTransactionSplitFinder.class);
+	}
+
+	@Before
+	public void initialize() throws Exception {
+		ClassLoader classLoader = getClass().getClassLoader();
+		InputStream kmmFileStream = null;
+		try {
+			kmmFileStream = classLoader.getResourceAsStream(ConstTest.KMM_FILENAME);
+		} catch (Exception exc) {
+			System.err.println("Cannot generate input stream from resource");
+			return;
+		}
+
+		try {
+			kmmFile = new KMyMoneyWritableFileImpl(kmmFileStream);
+		} catch (Exception exc) {
+			System.err.println("Cannot parse KMyMoney file");
+			exc.printStackTrace();
+		}
+
+		finder = new TransactionSplitFinder(kmmFile);
+	}
+
+	// -----------------------------------------------------------------
+
+	@Test
+	public void test01() throws Exception {
+		flt = new TransactionSplitFilter();
+
+		ArrayList<KMyMoneyTransactionSplit> result = finder.find(flt);
+		assertEquals(39, result.size());
+
+		flt.acctType = KMyMoneyAccount.Type.STOCK;
+		result = finder.find(flt);
+		assertEquals(3, result.size());
+	}
+
+	@Test
+	public void test02() throws Exception {
+		finder.setIndexesEnabled(true);
+		flt = new TransactionSplitFilter();
+		flt.acctID.set(ACCT_1_ID);
+
+		ArrayList<KMyMoneyTransactionSplit> result = finder.find(flt);
+		assertEquals(17, result.size());
+
+		result = finder.find(flt, LocalDate.of(2023, 6, 1), LocalDate.of(2023, 6, 30));
+		assertEquals(3, result.size());
+		assertEquals("T000000000000000012", result.get(0).getTransaction().getID().toString());
+		assertEquals("T000000000000000013", result.get(1).getTransaction().getID().toString());
+		assertEquals("T000000000000000014", result.get(2).getTransaction().getID().toString());
+
+		flt.valueFrom = new FixedPointNumber("0");
+		result = finder.find(flt, LocalDate.of(2023, 6, 1), LocalDate.of(2023, 6, 30));
+		assertEquals(2, result.size());
+
+		flt.acctID.set(ACCT_7_ID);
+		flt.valueFrom = new FixedPointNumber("1000");
+		result = finder.find(flt);
+		assertEquals(1, result.size());
+	}
+
+	@Test
+	public void test03() throws Exception {
+		flt = new TransactionSplitFilter();
+
+		// Date restriction only
+		ArrayList<KMyMoneyTransactionSplit> result = finder.find(flt, LocalDate.of(2023, 10, 27), null);
+		assertEquals(7, result.size());
+
+		SplitAccountIndex idx = TransactionIndexes.of(kmmFile).getAccountIndex();
+		assertEquals(39, idx.size());
+		assertEquals(17, idx.count(ACCT_1_ID.toString(), null, null));
+		assertEquals(2, idx.count(ACCT_7_ID.toString(), null, null));
+		assertEquals(0, idx.count("A999999", null, null));
+	}
+
+	@Test
+	public void test04() throws Exception {
+		flt = new TransactionSplitFilter();
+		flt.valueFrom = new FixedPointNumber("100");
+
+		ArrayList<KMyMoneyTransactionSplit> resultSeq = finder.find(flt, TransactionFinder.ExecutionMode.SEQUENTIAL);
+		ArrayList<KMyMoneyTransactionSplit> resultPar = finder.find(flt, TransactionFinder.ExecutionMode.PARALLEL);
+		assertEquals(resultSeq, resultPar); // sic, same order
+	}
+
+	@Test
+	public void test05() throws Exception {
+		flt = new TransactionSplitFilter();
+		flt.acctType = KMyMoneyAccount.Type.STOCK;
+
+		KMyMoneyTransactionSplit splt = finder.findFirst(flt);
+		assertEquals(KMyMoneyAccount.Type.STOCK, splt.getAccount().getType());
+		assertEquals(true, finder.exists(flt));
+		assertEquals(2, finder.find(flt, 2).size());
+		assertEquals(3, finder.stream(flt).count());
+		assertEquals(1, finder.stream(flt, LocalDate.of(2024, 1, 1), null).count());
+
+		flt.memoPart = "Poop";
+		assertEquals(null, finder.findFirst(flt));
+		assertEquals(false, finder.exists(flt));
+		assertEquals(false, finder.iterator(flt).hasNext());
+	}
+
+	@Test
+	public void test06() throws Exception {
+		flt = new TransactionSplitFilter();
+
+		ArrayList<KMyMoneyTransactionSplit> result = finder.findTop(flt, TransactionSplitFinder.SortKey.VALUE, 
+																	TransactionFinder.SortDirection.DESCENDING, 2);
+		assertEquals(2, result.size());
+		assertEquals(10000.0, result.get(0).getValue().doubleValue(), ConstTest.DIFF_TOLERANCE);
+		assertEquals(1955.0, result.get(1).getValue().doubleValue(), ConstTest.DIFF_TOLERANCE);
+
+		result = finder.findPage(flt, TransactionSplitFinder.SortKey.VALUE, 
+								 TransactionFinder.SortDirection.DESCENDING, result.get(1), 2);
+		assertEquals(2, result.size());
+		assertEquals(1800.0, result.get(0).getValue().doubleValue(), ConstTest.DIFF_TOLERANCE);
+		assertEquals(1000.0, result.get(1).getValue().doubleValue(), ConstTest.DIFF_TOLERANCE);
+		assertEquals("T000000000000000012", result.get(1).getTransaction().getID().toString()); // latest first
+
+		flt.acctType = KMyMoneyAccount.Type.STOCK;
+		result = finder.findTop(flt, TransactionSplitFinder.SortKey.SHARES, 
+								TransactionFinder.SortDirection.ASCENDING, 10);
+		assertEquals(3, result.size());
+		assertEquals(2.0, result.get(0).getShares().doubleValue(), ConstTest.DIFF_TOLERANCE);
+		assertEquals(15.0, result.get(1).getShares().doubleValue(), ConstTest.DIFF_TOLERANCE);
+		assertEquals(17.0, result.get(2).getShares().doubleValue(), ConstTest.DIFF_TOLERANCE);
+	}
+
+	@Test
+	public void test07() throws Exception {
+		finder.setIndexesEnabled(true);
+		finder.setMemoIndexEnabled(true);
+		flt = new TransactionSplitFilter();
+
+		flt.memoPart = "Gehalt";
+		assertEquals(2, finder.find(flt).size());
+
+		flt.memoPart = "gehalt";
+		assertEquals(0, finder.find(flt).size());
+		flt.memoIgnoreCase = true;
+		assertEquals(2, finder.find(flt).size());
+
+		flt.memoPart = "PRÄMIE";
+		assertEquals(2, finder.find(flt).size());
+
+		// Too short for the index: full scan
+		flt.memoPart = "Ge";
+		flt.memoIgnoreCase = false;
+		assertEquals(2, finder.find(flt).size());
+
+		MemoTrigramIndex<KMyMoneyTransactionSplit> idx = TransactionIndexes.of(kmmFile).getSplitMemoIndex();
+		assertEquals(39, idx.size());
+		assertEquals(2, idx.getCandidates("auszahl").size());
+		assertEquals(0, idx.getCandidates("Poop").size());
+		assertEquals(null, idx.getCandidates("Po"));
+		assertEquals(0, idx.estimate("xyz"));
+	}
+
+	@Test
+	public void test08() throws Exception {
+		flt = new TransactionSplitFilter();
+
+		flt.valueFrom = new FixedPointNumber("1500");
+		assertEquals(3, finder.find(flt).size());
+
+		flt.valueFrom = new FixedPointNumber("1000");
+		assertEquals(9, finder.find(flt).size());
+		assertEquals(1, finder.find(flt, LocalDate.of(2023, 6, 1), LocalDate.of(2023, 6, 30)).size());
+
+		flt.valueFrom = new FixedPointNumber("-1000");
+		flt.valueTo = new FixedPointNumber("-1000");
+		assertEquals(6, finder.find(flt).size());
+
+		flt.reset();
+		flt.sharesFrom = new FixedPointNumber("2");
+		flt.sharesTo = new FixedPointNumber("17");
+		assertEquals(5, finder.find(flt).size());
+		flt.acctType = KMyMoneyAccount.Type.STOCK;
+		assertEquals(3, finder.find(flt).size());
+
+		SplitAmountIndex idx = TransactionIndexes.of(kmmFile).getValueIndex();
+		assertEquals(39, idx.size());
+		assertEquals(3, idx.count(new FixedPointNumber("1500"), null));
+		assertEquals(2, idx.count(new FixedPointNumber("1955"), new FixedPointNumber("10000")));
+		assertEquals(39, idx.count(null, null));
+	}
+
+	@Test
+	public void test09() throws Exception {
+		finder.setIndexesEnabled(true);
+		flt = new TransactionSplitFilter();
+
+		QueryPlan plan = finder.explain(flt);
+		assertEquals(QueryPlan.AccessPath.FULL_SCAN, plan.getAccessPath());
+		assertEquals(39, plan.getEstimatedRows());
+
+		flt.acctID.set(ACCT_1_ID);
+		plan = finder.explain(flt);
+		assertEquals(QueryPlan.AccessPath.ACCOUNT_INDEX, plan.getAccessPath());
+		assertEquals(17, plan.getEstimatedRows());
+
+		// Value range is more selective than the account
+		flt.valueFrom = new FixedPointNumber("5000");
+		plan = finder.explain(flt);
+		assertEquals(QueryPlan.AccessPath.VALUE_INDEX, plan.getAccessPath());
+		assertEquals(3, plan.getCandidates().size());
+		assertEquals(1, finder.find(flt).size());
+
+		flt.reset();
+		plan = finder.explain(flt, LocalDate.of(2023, 10, 1), LocalDate.of(2023, 10, 31));
+		assertEquals(QueryPlan.AccessPath.DATE_INDEX, plan.getAccessPath());
+		assertEquals(7, finder.find(flt, LocalDate.of(2023, 10, 1), LocalDate.of(2023, 10, 31)).size());
+
+		QueryStatistics stats = TransactionIndexes.of(kmmFile).getStatistics();
+		assertEquals(19, stats.getNofTransactions());
+		assertEquals(39, stats.getNofSplits());
+		assertEquals(17, stats.getNofSplits(ACCT_1_ID.toString()));
+		assertEquals(3, stats.estimateTransactions(LocalDate.of(2023, 6, 1), LocalDate.of(2023, 6, 30)));
+		assertEquals(0, stats.estimateTransactions(LocalDate.of(2023, 7, 1), LocalDate.of(2023, 9, 30)));
+	}
+
+	@Test
+	public void test10() throws Exception {
+		flt = new TransactionSplitFilter();
+		flt.acctID.set(ACCT_1_ID);
+
+		SplitAggregate aggr = finder.aggregate(flt);
+		assertEquals(17, aggr.getCount());
+		assertEquals(11674.5, aggr.getSumValue().doubleValue(), ConstTest.DIFF_TOLERANCE);
+		assertEquals(-1965.5, aggr.getMinValue().doubleValue(), ConstTest.DIFF_TOLERANCE);
+		assertEquals(10000.0, aggr.getMaxValue().doubleValue(), ConstTest.DIFF_TOLERANCE);
+
+		aggr = finder.aggregate(flt, LocalDate.of(2023, 6, 1), LocalDate.of(2023, 6, 30));
+		assertEquals(3, aggr.getCount());
+
+		Map<YearMonth, SplitAggregate> byMonth = finder.aggregateByMonth(flt);
+		assertEquals(8, byMonth.size());
+		assertEquals(YearMonth.of(2023, 1), byMonth.keySet().iterator().next()); // sic, ordered
+		assertEquals(3, byMonth.get(YearMonth.of(2023, 1)).getCount());
+		assertEquals(null, byMonth.get(YearMonth.of(2023, 7)));
+
+		flt.reset();
+		Map<KMyMoneyAccount.Type, SplitAggregate> byType = finder.aggregateByAccountType(flt);
+		assertEquals(3, byType.get(KMyMoneyAccount.Type.STOCK).getCount());
+		assertEquals(34.0, byType.get(KMyMoneyAccount.Type.STOCK).getSumShares().doubleValue(), ConstTest.DIFF_TOLERANCE);
+
+		Map<String, SplitAggregate> byAcct = finder.aggregateByAccount(flt);
+		assertEquals(17, byAcct.get(ACCT_1_ID.toString()).getCount());
+
+		Map<KMyMoneyTransactionSplit.Action, SplitAggregate> byAction = finder.aggregateByAction(flt);
+		assertEquals(2, byAction.get(KMyMoneyTransactionSplit.Action.BUY_SHARES).getCount());
+
+		// No matches
+		flt.valueFrom = new FixedPointNumber("20000");
+		aggr = finder.aggregate(flt);
+		assertEquals(true, aggr.isEmpty());
+		assertEquals(0.0, aggr.getSumValue().doubleValue(), ConstTest.DIFF_TOLERANCE);
+		assertEquals(null, aggr.getMaxValue());
+	}
+
+	@Test
+	public void test11() throws Exception {
+		SplitColumnStore store = TransactionIndexes.of(kmmFile).getColumnStore();
+		assertEquals(39, store.size());
+		assertEquals(39, store.select(new TransactionSplitFilter()).length);
+
+		flt = new TransactionSplitFilter();
+		flt.acctID.set(ACCT_1_ID);
+		int[] rows = store.select(flt);
+		assertEquals(17, rows.length);
+		assertEquals(11674.5, ScaledAmount.toFixedPointNumber(store.sumValueScaled(rows)).doubleValue(), ConstTest.DIFF_TOLERANCE);
+		assertEquals(3, store.select(flt, LocalDate.of(2023, 6, 1), LocalDate.of(2023, 6, 30)).length);
+
+		// Same results as the finder
+		flt.reset();
+		flt.acctType = KMyMoneyAccount.Type.STOCK;
+		flt.action = KMyMoneyTransactionSplit.Action.BUY_SHARES;
+		ArrayList<KMyMoneyTransactionSplit> result = store.getSplits(store.select(flt));
+		assertEquals(2, result.size());
+		assertEquals(true, result.containsAll(finder.find(flt)));
+
+		flt.reset();
+		flt.valueFrom = new FixedPointNumber("-1000");
+		flt.valueTo = new FixedPointNumber("-1000");
+		assertEquals(6, store.select(flt).length);
+
+		flt.reset();
+		flt.memoPart = "Gehalt";
+		assertEquals(2, store.select(flt).length);
+
+		// Unknown account
+		flt.reset();
+		flt.acctID.set(new KMMAcctID("A999999"));
+		assertEquals(0, store.select(flt).length);
+	}
+
+	@Test
+	public void test12() throws Exception {
+		SplitColumnStore heapStore = TransactionIndexes.of(kmmFile).getColumnStore();
+		OffHeapSplitColumnStore store = OffHeapSplitColumnStore.of(kmmFile);
+		assertEquals(39, store.size());
+		assertEquals(heapStore.getNofAccounts(), store.getNofAccounts());
+
+		flt = new TransactionSplitFilter();
+		flt.acctID.set(ACCT_1_ID);
+		int[] rows = store.select(flt);
+		assertEquals(17, rows.length);
+		assertEquals(heapStore.sumValueScaled(rows), store.sumValueScaled(rows));
+		assertEquals(heapStore.getSplit(rows[16]).getTransaction().getID(), store.getSplit(rows[16]).getTransaction().getID());
+		assertEquals(heapStore.getSplit(rows[16]).getID(), store.getSplit(rows[16]).getID());
+
+		// Save and reopen (memory-mapped)
+		Path file = Files.createTempFile("splits", ".kmsc");
+		try {
+			store.save(file);
+			SplitColumns reopened = OffHeapSplitColumnStore.open(file, kmmFile);
+			assertEquals(39, reopened.size());
+			assertEquals(17, reopened.select(flt).length);
+			assertEquals(3, reopened.select(flt, LocalDate.of(2023, 6, 1), LocalDate.of(2023, 6, 30)).length);
+
+			flt.reset();
+			flt.memoPart = "Gehalt";
+			rows = reopened.select(flt);
+			assertEquals(2, rows.length);
+			assertEquals("T000000000000000002", reopened.getSplit(rows[0]).getTransaction().getID().toString());
+
+			flt.reset();
+			flt.acctType = KMyMoneyAccount.Type.STOCK;
+			assertEquals(3, reopened.select(flt).length);
+
+			// Without KMyMoney file: columns only
+			reopened = OffHeapSplitColumnStore.open(file, null);
+			assertEquals(3, reopened.select(flt).length);
+
+			// File changed, same number of splits: rejected
+			assertEquals(store.getFingerprint(), OffHeapSplitColumnStore.of(kmmFile).getFingerprint());
+			KMyMoneyWritableTransactionSplit splt = kmmFile.getWritableTransactionSplitByID(heapStore.getSplit(rows[0]).getQualifID());
+			splt.setValue(splt.getValue().copy().add(new FixedPointNumber("0.01")));
+			assertEquals(39, kmmFile.getTransactionSplits().size());
+			assertEquals(false, store.getFingerprint() == OffHeapSplitColumnStore.of(kmmFile).getFingerprint());
+			try {
+				OffHeapSplitColumnStore.open(file, kmmFile);
+				assertEquals(true, false);
+			} catch ( IllegalArgumentException exc ) {
+				// expected
+			}
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	@Test
+	public void test13() throws Exception {
+		AccountOrdinalTable acctOrds = AccountOrdinalTable.of(kmmFile);
+		int ord = acctOrds.getOrdinal(ACCT_1_ID.toString());
+		assertEquals(true, ord != AccountOrdinalTable.NONE);
+		assertEquals(ACCT_1_ID.toString(), acctOrds.getAccountID(ord));
+		assertEquals(AccountOrdinalTable.NONE, acctOrds.getOrdinal("A999999"));
+
+		// Dense ordinals
+		assertEquals(true, ord < acctOrds.size());
+		assertEquals(acctOrds.size(), TransactionIndexes.of(kmmFile).getColumnStore().getNofAccounts());
+
+		flt = new TransactionSplitFilter();
+		flt.acctID.set(ACCT_1_ID);
+		ArrayList<KMyMoneyTransactionSplit> result = finder.find(flt);
+		assertEquals(17, result.size());
+		for ( KMyMoneyTransactionSplit splt : result ) {
+			assertEquals(ord, acctOrds.getOrdinal(splt));
+		}
+
+		// Unknown account
+		flt.acctID.set(new KMMAcctID("A999999"));
+		assertEquals(0, finder.find(flt).size());
+	}
+
+	@Test
+	public void test14() throws Exception {
+		finder.setIndexesEnabled(true);
+		SplitBitmapIndex bitmapIdx = TransactionIndexes.of(kmmFile).getBitmapIndex();
+		assertEquals(39, bitmapIdx.size());
+		assertEquals(3, bitmapIdx.getAccountTypeBits(KMyMoneyAccount.Type.STOCK).cardinality());
+		assertEquals(2, bitmapIdx.getActionBits(KMyMoneyTransactionSplit.Action.BUY_SHARES).cardinality());
+
+		flt = new TransactionSplitFilter();
+		flt.acctType = KMyMoneyAccount.Type.STOCK;
+		flt.action = KMyMoneyTransactionSplit.Action.BUY_SHARES;
+		BitSet rows = bitmapIdx.select(flt, null, null);
+		assertEquals(2, rows.cardinality());
+		assertEquals(finder.find(flt), bitmapIdx.getSplits(rows));
+
+		// Exact estimate, chosen by the planner
+		QueryPlan plan = finder.explain(flt);
+		assertEquals(QueryPlan.AccessPath.BITMAP_INDEX, plan.getAccessPath());
+		assertEquals(2, plan.getEstimatedRows());
+
+		flt.action = KMyMoneyTransactionSplit.Action.DIVIDEND;
+		assertEquals(0, bitmapIdx.select(flt, null, null).cardinality());
+		assertEquals(0, finder.find(flt).size());
+
+		// Transactions: same results as without bitmaps
+		flt.reset();
+		flt.acctType = KMyMoneyAccount.Type.STOCK;
+		TransactionFilter trxFlt = new TransactionFilter();
+		trxFlt.spltFilt = flt;
+		TransactionFinder trxFinder = new TransactionFinder(kmmFile);
+		trxFinder.setIndexesEnabled(true);
+		for ( SplitLogic logic : SplitLogic.values() ) {
+			BitSet trxPos = bitmapIdx.selectTransactions(bitmapIdx.select(flt, null, null), logic, null, null);
+			ArrayList<KMyMoneyTransaction> expected = new ArrayList<KMyMoneyTransaction>();
+			for ( KMyMoneyTransaction trx : TransactionIndexes.of(kmmFile).getDateIndex().getTransactions() ) {
+				if ( trxFlt.compile().matchesCriteria(trx, true, logic) ) {
+					expected.add(trx);
+				}
+			}
+			assertEquals(expected, bitmapIdx.getTransactions(trxPos));
+			assertEquals(expected, trxFinder.find(trxFlt, true, logic));
+		}
+	}
+
+	@Test
+	public void test15() throws Exception {
+		flt = new TransactionSplitFilter();
+		flt.acctID.set(ACCT_1_ID);
+
+		ArrayList<KMyMoneyTransactionSplit> result = finder.find(flt);
+		ArrayList<KMyMoneyWritableTransactionSplit> resultWrtbl = finder.findWritable(flt);
+		assertEquals(17, resultWrtbl.size());
+		for ( int i = 0; i < result.size(); i++ ) {
+			assertEquals(result.get(i).getID(), resultWrtbl.get(i).getID());
+			assertEquals(result.get(i).getTransactionID(), resultWrtbl.get(i).getTransactionID());
+		}
+
+		resultWrtbl = finder.findWritable(flt, LocalDate.of(2023, 6, 1), LocalDate.of(2023, 6, 30),
+										  TransactionFinder.ExecutionMode.SEQUENTIAL);
+		assertEquals(finder.find(flt, LocalDate.of(2023, 6, 1), LocalDate.of(2023, 6, 30)).size(), resultWrtbl.size());
+	}
+
+	@Test
+	public void test16() throws Exception {
+		flt = new TransactionSplitFilter();
+		flt.acctType = KMyMoneyAccount.Type.STOCK;
+		assertEquals(3, finder.find(flt).size());
+
+		// Split added to an existing transaction, not reported:
+		// The live file is searched
+		KMyMoneyWritableTransaction trx14 = kmmFile.getWritableTransactionByID(new KMMTrxID("T000000000000000014"));
+		KMyMoneyWritableTransactionSplit splt = trx14.createWritableSplit(kmmFile.getAccountByID(ACCT_7_ID));
+		splt.setValue(new FixedPointNumber("0"));
+		splt.setShares(new FixedPointNumber("0"));
+		assertEquals(4, finder.find(flt).size());
+		assertEquals(1, finder.find(flt, LocalDate.of(2023, 6, 1), LocalDate.of(2023, 6, 30)).size());
+
+		// Indexes (opt-in): The bitmap index is built on a consistent
+		// snapshot, even though the date index predates the new split
+		finder.setIndexesEnabled(true);
+		TransactionIndexes.invalidate(kmmFile);
+		TransactionIndexes.of(kmmFile).getDateIndex();
+		splt = trx14.createWritableSplit(kmmFile.getAccountByID(ACCT_7_ID));
+		splt.setValue(new FixedPointNumber("0"));
+		splt.setShares(new FixedPointNumber("0"));
+		assertEquals(QueryPlan.AccessPath.BITMAP_INDEX, finder.explain(flt).getAccessPath());
+		assertEquals(5, finder.find(flt).size());
+
+		// Reported
+		kmmFile.getWritableTransactionByID(new KMMTrxID("T000000000000000012")).setDatePosted(LocalDate.of(2023, 7, 1));
+		TransactionIndexes.invalidate(kmmFile);
+		assertEquals(2, finder.find(flt, LocalDate.of(2023, 6, 1), LocalDate.of(2023, 6, 30)).size());
+	}
+
+	@Test
+	public void test17() throws Exception {
+		flt = new TransactionSplitFilter();
+		flt.acctID.set(ACCT_1_ID);
+		ArrayList<KMyMoneyTransactionSplit> result = finder.find(flt);
+		assertEquals(17, result.size());
+
+		// Re-assigned in place, not reported
+		AccountOrdinalTable acctOrds = AccountOrdinalTable.of(kmmFile);
+		KMyMoneyWritableTransactionSplit splt = kmmFile.getWritableTransactionSplitByID(result.get(0).getQualifID());
+		splt.setAccount(kmmFile.getAccountByID(ACCT_7_ID));
+		assertEquals(acctOrds.getOrdinal(ACCT_7_ID.toString()), acctOrds.getOrdinal(splt));
+
+		result = finder.find(flt);
+		assertEquals(16, result.size());
+		assertEquals(false, result.stream().anyMatch(elt -> elt.getQualifID().equals(splt.getQualifID())));
+
+		flt.acctID.set(ACCT_7_ID);
+		result = finder.find(flt);
+		assertEquals(3, result.size());
+		assertEquals(true, result.stream().anyMatch(elt -> elt.getQualifID().equals(splt.getQualifID())));
+
+		flt.reset();
+		flt.acctType = KMyMoneyAccount.Type.STOCK;
+		assertEquals(4, finder.find(flt).size());
+	}
+
+	@Test
+	public void test18() throws Exception {
+		finder.setIndexesEnabled(true);
+		finder.setMemoIndexEnabled(true);
+		TransactionIndexes.invalidate(kmmFile);
+
+		// Planning does not build the bitmap and memo indexes
+		flt = new TransactionSplitFilter();
+		flt.acctType = KMyMoneyAccount.Type.STOCK;
+		QueryPlan plan = finder.explain(flt);
+		assertEquals(QueryPlan.AccessPath.BITMAP_INDEX, plan.getAccessPath());
+		assertEquals(3, plan.getEstimatedRows());
+		assertEquals(false, TransactionIndexes.of(kmmFile).hasBitmapIndex());
+
+		flt.reset();
+		flt.memoPart = "Gehalt";
+		assertEquals(QueryPlan.AccessPath.MEMO_INDEX, finder.explain(flt).getAccessPath());
+		assertEquals(false, TransactionIndexes.of(kmmFile).hasSplitMemoIndex());
+
+		// Plans kept until a modification is reported
+		flt.reset();
+		flt.acctType = KMyMoneyAccount.Type.STOCK;
+		assertEquals(3, finder.find(flt).size());
+		assertEquals(true, TransactionIndexes.of(kmmFile).hasBitmapIndex());
+		assertSame(plan, finder.explain(flt));
+
+		TransactionIndexes.invalidate(kmmFile);
+		assertNotSame(plan, finder.explain(flt));
+		assertEquals(3, finder.find(flt).size());
+	}
+
+}